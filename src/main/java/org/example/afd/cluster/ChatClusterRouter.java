@@ -0,0 +1,324 @@
+package org.example.afd.cluster;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.dto.ChatMessageDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 聊天集群路由
+ *
+ * 1. 用户在某节点上的第一个连接建立时登记该节点，最后一个连接断开时注销
+ * 2. 目录记录是有期限的租约，节点每隔 presence-refresh-ms 为本节点上的全部在线用户续期；
+ *    节点崩溃或长时间停顿后租约过期，用户不再被路由到该节点
+ * 3. 接收者连接在本节点的会话直接投递，连接在其他节点的通过消息总线转发到各节点
+ * 4. 目标节点投递后回送确认；未投递或超时只记入指标，不删除目录记录，
+ *    单次停顿（如 GC）不会让仍在线的用户从目录中消失
+ *
+ * 消息在转发前已经持久化，转发失败只影响实时推送，接收者上线后仍可拉取。
+ */
+@Component
+@Slf4j
+public class ChatClusterRouter {
+
+    /**
+     * 本地投递回调，由 WebSocket 处理器提供
+     */
+    public interface LocalDelivery {
+
+        /**
+         * 投递到本节点上的用户连接
+         *
+         * @return 用户在本节点有可用连接且已发送时返回 true
+         */
+        boolean deliver(Integer userId, ChatMessageDTO message);
+    }
+
+    /**
+     * 转发载荷的序列化，时间字段按 DTO 上声明的格式读写以保证往返一致；
+     * 应用的 ObjectMapper 输出带时区的 ISO 格式，面向客户端，不能按原格式读回
+     */
+    private static final ObjectMapper PAYLOAD_MAPPER = JsonMapper.builder()
+        .addModule(new JavaTimeModule())
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+        .build();
+
+    @Autowired
+    private ClusterMessageBus messageBus;
+
+    @Autowired
+    private PresenceDirectory presenceDirectory;
+
+    @Value("${chat.cluster.node-id:}")
+    private String nodeId;
+
+    @Value("${chat.cluster.ack-timeout-ms:3000}")
+    private long ackTimeoutMs;
+
+    /**
+     * 本节点上有连接的用户，定期续期目录租约
+     */
+    private final Set<Integer> localUsers = ConcurrentHashMap.newKeySet();
+
+    private volatile LocalDelivery localDelivery;
+
+    private final Map<String, PendingAck> pendingAcks = new ConcurrentHashMap<>();
+
+    private final AtomicLong localDelivered = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong remoteDelivered = new AtomicLong();
+    private final AtomicLong remoteMissed = new AtomicLong();
+    private final AtomicLong ackTimeouts = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+
+    private static final class PendingAck {
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        final Integer userId;
+        final String targetNode;
+        final long deadline;
+
+        PendingAck(Integer userId, String targetNode, long deadline) {
+            this.userId = userId;
+            this.targetNode = targetNode;
+            this.deadline = deadline;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (nodeId == null || nodeId.isBlank()) {
+            nodeId = defaultNodeId();
+        }
+        messageBus.subscribe(nodeId, this::onEnvelope);
+        log.info("聊天集群路由已启动: nodeId={}, bus={}", nodeId, messageBus.getName());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        messageBus.unsubscribe(nodeId);
+        for (Integer userId : localUsers) {
+            try {
+                presenceDirectory.unregister(userId, nodeId);
+            } catch (Exception e) {
+                // 注销失败时租约会自然过期
+                log.warn("停止时注销目录记录失败: userId={}", userId);
+                break;
+            }
+        }
+    }
+
+    public void bindLocalDelivery(LocalDelivery localDelivery) {
+        this.localDelivery = localDelivery;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 用户在本节点的第一个连接建立
+     */
+    public void online(Integer userId) {
+        localUsers.add(userId);
+        presenceDirectory.register(userId, nodeId);
+    }
+
+    /**
+     * 用户在本节点的连接全部断开
+     */
+    public void offline(Integer userId) {
+        localUsers.remove(userId);
+        presenceDirectory.unregister(userId, nodeId);
+    }
+
+    /**
+     * 为本节点上的全部在线用户续期目录租约，同时修复登记与注销交错造成的遗漏
+     */
+    @Scheduled(fixedDelayString = "${chat.cluster.presence-refresh-ms:10000}")
+    public void refreshPresence() {
+        if (localUsers.isEmpty()) {
+            return;
+        }
+        try {
+            presenceDirectory.registerAll(new ArrayList<>(localUsers), nodeId);
+        } catch (Exception e) {
+            log.error("续期用户节点目录失败: users={}", localUsers.size(), e);
+        }
+    }
+
+    /**
+     * 用户是否连接在集群中的某个节点
+     */
+    public boolean isOnline(Integer userId) {
+        return !presenceDirectory.lookup(userId).isEmpty();
+    }
+
+    /**
+     * 批量查询在集群中在线的用户，包括连接在任意节点和在任意节点心跳的用户
+     */
+    public Set<Integer> onlineAmong(Collection<Integer> userIds) {
+        return presenceDirectory.onlineAmong(userIds);
+    }
+
+    /**
+     * 发布只靠心跳在线的用户，其他节点查询在线状态时可见
+     */
+    public void heartbeat(Integer userId, long ttlMs) {
+        presenceDirectory.heartbeat(userId, ttlMs);
+    }
+
+    /**
+     * 撤销用户的心跳在线记录
+     */
+    public void clearHeartbeat(Integer userId) {
+        presenceDirectory.clearHeartbeat(userId);
+    }
+
+    /**
+     * 向用户推送消息，用户可能同时连接在多个节点（多设备），每个节点各投递一次
+     *
+     * @return 完成值表示是否至少送达一个连接；不在线、转发失败或确认超时为 false
+     */
+    public CompletableFuture<Boolean> route(Integer userId, ChatMessageDTO message) {
+        LocalDelivery delivery = localDelivery;
+        boolean local = delivery != null && delivery.deliver(userId, message);
+        if (local) {
+            localDelivered.incrementAndGet();
+        }
+
+        List<CompletableFuture<Boolean>> remotes = new ArrayList<>();
+        for (String targetNode : presenceDirectory.lookup(userId)) {
+            if (!targetNode.equals(nodeId)) {
+                remotes.add(forward(targetNode, userId, message));
+            }
+        }
+        if (remotes.isEmpty()) {
+            return CompletableFuture.completedFuture(local);
+        }
+        return CompletableFuture.allOf(remotes.toArray(new CompletableFuture[0])).thenApply(v -> {
+            boolean delivered = local;
+            for (CompletableFuture<Boolean> remote : remotes) {
+                delivered |= remote.join();
+            }
+            return delivered;
+        });
+    }
+
+    private CompletableFuture<Boolean> forward(String targetNode, Integer userId, ChatMessageDTO message) {
+        String routeId = UUID.randomUUID().toString();
+        PendingAck pending = new PendingAck(userId, targetNode, System.currentTimeMillis() + ackTimeoutMs);
+        pendingAcks.put(routeId, pending);
+        try {
+            String payload = PAYLOAD_MAPPER.writeValueAsString(message);
+            messageBus.publish(targetNode, new ClusterEnvelope(ClusterEnvelope.TYPE_DELIVER, routeId, nodeId, userId, payload, null));
+            forwarded.incrementAndGet();
+        } catch (Exception e) {
+            log.error("转发消息到节点{}失败: userId={}", targetNode, userId, e);
+            pendingAcks.remove(routeId);
+            pending.future.complete(false);
+        }
+        return pending.future;
+    }
+
+    /**
+     * 清理超时未确认的转发；目标节点若已下线，其租约会自然过期
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void expireAcks() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, PendingAck>> iterator = pendingAcks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            PendingAck pending = iterator.next().getValue();
+            if (pending.deadline <= now) {
+                iterator.remove();
+                ackTimeouts.incrementAndGet();
+                log.warn("转发确认超时: userId={}, node={}", pending.userId, pending.targetNode);
+                pending.future.complete(false);
+            }
+        }
+    }
+
+    /**
+     * 运行指标
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("bus", messageBus.getName());
+        stats.put("localDelivered", localDelivered.get());
+        stats.put("forwarded", forwarded.get());
+        stats.put("remoteDelivered", remoteDelivered.get());
+        stats.put("remoteMissed", remoteMissed.get());
+        stats.put("ackTimeouts", ackTimeouts.get());
+        stats.put("received", received.get());
+        stats.put("pendingAcks", pendingAcks.size());
+        stats.put("localUsers", localUsers.size());
+        return stats;
+    }
+
+    private void onEnvelope(ClusterEnvelope envelope) {
+        if (envelope.getType() == null) {
+            return;
+        }
+        if (envelope.getType() == ClusterEnvelope.TYPE_DELIVER) {
+            received.incrementAndGet();
+            boolean delivered = false;
+            try {
+                LocalDelivery delivery = localDelivery;
+                ChatMessageDTO message = PAYLOAD_MAPPER.readValue(envelope.getPayload(), ChatMessageDTO.class);
+                delivered = delivery != null && delivery.deliver(envelope.getUserId(), message);
+            } catch (Exception e) {
+                log.error("投递转发消息失败: routeId={}", envelope.getRouteId(), e);
+            }
+            try {
+                messageBus.publish(envelope.getSourceNode(),
+                    new ClusterEnvelope(ClusterEnvelope.TYPE_ACK, envelope.getRouteId(), nodeId, envelope.getUserId(), null, delivered));
+            } catch (Exception e) {
+                log.error("回送确认失败: node={}, routeId={}", envelope.getSourceNode(), envelope.getRouteId(), e);
+            }
+        } else if (envelope.getType() == ClusterEnvelope.TYPE_ACK) {
+            PendingAck pending = pendingAcks.remove(envelope.getRouteId());
+            if (pending == null) {
+                return;
+            }
+            boolean delivered = Boolean.TRUE.equals(envelope.getDelivered());
+            if (delivered) {
+                remoteDelivered.incrementAndGet();
+            } else {
+                remoteMissed.incrementAndGet();
+            }
+            pending.future.complete(delivered);
+        }
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
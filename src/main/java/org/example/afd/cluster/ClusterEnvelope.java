@@ -0,0 +1,54 @@
+package org.example.afd.cluster;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 节点间转发的消息信封
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterEnvelope {
+
+    /**
+     * 投递请求
+     */
+    public static final int TYPE_DELIVER = 1;
+
+    /**
+     * 投递确认
+     */
+    public static final int TYPE_ACK = 2;
+
+    /**
+     * 信封类型，1-投递，2-确认
+     */
+    private Integer type;
+
+    /**
+     * 路由ID，确认消息据此找到等待中的投递
+     */
+    private String routeId;
+
+    /**
+     * 发出节点
+     */
+    private String sourceNode;
+
+    /**
+     * 接收用户ID
+     */
+    private Integer userId;
+
+    /**
+     * 聊天消息JSON，确认消息为空
+     */
+    private String payload;
+
+    /**
+     * 是否已投递到接收者的连接，仅确认消息使用
+     */
+    private Boolean delivered;
+}
@@ -0,0 +1,32 @@
+package org.example.afd.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * 聊天节点间的消息总线
+ *
+ * 每个节点订阅以自己节点ID命名的通道，发往某节点的信封只由该节点接收。
+ * 总线不保证送达，可靠性由 {@link ChatClusterRouter} 的确认与超时处理。
+ */
+public interface ClusterMessageBus {
+
+    /**
+     * 向指定节点发送信封
+     */
+    void publish(String nodeId, ClusterEnvelope envelope);
+
+    /**
+     * 订阅发往本节点的信封
+     */
+    void subscribe(String nodeId, Consumer<ClusterEnvelope> listener);
+
+    /**
+     * 取消订阅
+     */
+    void unsubscribe(String nodeId);
+
+    /**
+     * 实现名称，用于运行指标
+     */
+    String getName();
+}
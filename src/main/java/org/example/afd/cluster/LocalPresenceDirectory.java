@@ -0,0 +1,92 @@
+package org.example.afd.cluster;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内用户节点目录，单节点部署和测试使用
+ */
+public class LocalPresenceDirectory implements PresenceDirectory {
+
+    private final long ttlMs;
+
+    /**
+     * 用户ID -> (节点ID -> 租约到期时间)
+     */
+    private final Map<Integer, Map<String, Long>> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * 用户ID -> 心跳在线到期时间
+     */
+    private final Map<Integer, Long> heartbeats = new ConcurrentHashMap<>();
+
+    public LocalPresenceDirectory(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    @Override
+    public void register(Integer userId, String nodeId) {
+        nodes.computeIfAbsent(userId, k -> new ConcurrentHashMap<>())
+            .put(nodeId, System.currentTimeMillis() + ttlMs);
+    }
+
+    @Override
+    public void registerAll(Collection<Integer> userIds, String nodeId) {
+        for (Integer userId : userIds) {
+            register(userId, nodeId);
+        }
+    }
+
+    @Override
+    public void unregister(Integer userId, String nodeId) {
+        nodes.computeIfPresent(userId, (k, leases) -> {
+            leases.remove(nodeId);
+            return leases.isEmpty() ? null : leases;
+        });
+    }
+
+    @Override
+    public Set<String> lookup(Integer userId) {
+        Map<String, Long> leases = nodes.get(userId);
+        if (leases == null) {
+            return Collections.emptySet();
+        }
+        long now = System.currentTimeMillis();
+        Set<String> result = new HashSet<>();
+        for (Map.Entry<String, Long> lease : leases.entrySet()) {
+            if (lease.getValue() > now) {
+                result.add(lease.getKey());
+            } else {
+                leases.remove(lease.getKey(), lease.getValue());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void heartbeat(Integer userId, long ttlMs) {
+        heartbeats.put(userId, System.currentTimeMillis() + ttlMs);
+    }
+
+    @Override
+    public void clearHeartbeat(Integer userId) {
+        heartbeats.remove(userId);
+    }
+
+    @Override
+    public Set<Integer> onlineAmong(Collection<Integer> userIds) {
+        long now = System.currentTimeMillis();
+        Set<Integer> result = new HashSet<>();
+        for (Integer userId : userIds) {
+            Long expireAt = heartbeats.get(userId);
+            if ((expireAt != null && expireAt > now) || !lookup(userId).isEmpty()) {
+                result.add(userId);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.afd.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * 进程内消息总线
+ *
+ * 未启用 Redis 时的单节点部署使用；测试中多个路由器共享同一实例即可模拟多节点。
+ * 信封在独立线程上异步分发，与网络总线一样不在发送方线程内回调，
+ * 发往未订阅节点的信封直接丢弃。
+ */
+@Slf4j
+public class LoopbackMessageBus implements ClusterMessageBus {
+
+    private final Map<String, Consumer<ClusterEnvelope>> listeners = new ConcurrentHashMap<>();
+
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "chat-loopback-bus");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    public void publish(String nodeId, ClusterEnvelope envelope) {
+        Consumer<ClusterEnvelope> listener = listeners.get(nodeId);
+        if (listener == null) {
+            log.debug("节点{}未订阅，丢弃信封: routeId={}", nodeId, envelope.getRouteId());
+            return;
+        }
+        dispatcher.execute(() -> {
+            try {
+                listener.accept(envelope);
+            } catch (Exception e) {
+                log.error("处理集群信封异常: node={}, routeId={}", nodeId, envelope.getRouteId(), e);
+            }
+        });
+    }
+
+    @Override
+    public void subscribe(String nodeId, Consumer<ClusterEnvelope> listener) {
+        listeners.put(nodeId, listener);
+    }
+
+    @Override
+    public void unsubscribe(String nodeId) {
+        listeners.remove(nodeId);
+    }
+
+    @Override
+    public String getName() {
+        return "loopback";
+    }
+}
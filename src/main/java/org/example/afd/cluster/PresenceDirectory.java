@@ -0,0 +1,48 @@
+package org.example.afd.cluster;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * 用户所在节点目录，多设备登录的用户可能同时连接在多个节点
+ *
+ * 每条记录是一份有期限的租约：节点定期为本节点上的全部在线用户续期，
+ * 节点崩溃或长时间失联后记录自然过期，不依赖其他节点删除。
+ */
+public interface PresenceDirectory {
+
+    /**
+     * 记录用户在指定节点有连接，或为已有记录续期
+     */
+    void register(Integer userId, String nodeId);
+
+    /**
+     * 批量为节点上的用户续期，定期心跳使用
+     */
+    void registerAll(Collection<Integer> userIds, String nodeId);
+
+    /**
+     * 移除用户在指定节点的记录，不影响其他节点
+     */
+    void unregister(Integer userId, String nodeId);
+
+    /**
+     * 查询用户所在节点，只返回未过期的记录，不在线返回空集合
+     */
+    Set<String> lookup(Integer userId);
+
+    /**
+     * 记录只靠心跳在线的用户，期限内视为在线，但不参与消息路由
+     */
+    void heartbeat(Integer userId, long ttlMs);
+
+    /**
+     * 移除用户的心跳在线记录
+     */
+    void clearHeartbeat(Integer userId);
+
+    /**
+     * 批量查询在线用户，有未过期的连接租约或心跳记录即视为在线，一次往返完成
+     */
+    Set<Integer> onlineAmong(Collection<Integer> userIds);
+}
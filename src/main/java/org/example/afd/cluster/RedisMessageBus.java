@@ -0,0 +1,82 @@
+package org.example.afd.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 基于 Redis 发布订阅的消息总线
+ *
+ * 每个节点订阅通道 chat:node:{nodeId}，信封以 JSON 字符串传输。
+ */
+@Slf4j
+public class RedisMessageBus implements ClusterMessageBus {
+
+    private static final String CHANNEL_PREFIX = "chat:node:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer container;
+    private final ObjectMapper objectMapper;
+    private final Map<String, MessageListener> listeners = new ConcurrentHashMap<>();
+
+    public RedisMessageBus(RedisConnectionFactory connectionFactory, ObjectMapper objectMapper) {
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.objectMapper = objectMapper;
+        this.container = new RedisMessageListenerContainer();
+        this.container.setConnectionFactory(connectionFactory);
+        this.container.afterPropertiesSet();
+        this.container.start();
+    }
+
+    @Override
+    public void publish(String nodeId, ClusterEnvelope envelope) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL_PREFIX + nodeId, objectMapper.writeValueAsString(envelope));
+        } catch (Exception e) {
+            throw new IllegalStateException("发布集群信封失败: node=" + nodeId, e);
+        }
+    }
+
+    @Override
+    public void subscribe(String nodeId, Consumer<ClusterEnvelope> listener) {
+        MessageListener messageListener = (message, pattern) -> {
+            try {
+                String body = new String(message.getBody(), StandardCharsets.UTF_8);
+                listener.accept(objectMapper.readValue(body, ClusterEnvelope.class));
+            } catch (Exception e) {
+                log.error("处理集群信封异常: node={}", nodeId, e);
+            }
+        };
+        listeners.put(nodeId, messageListener);
+        container.addMessageListener(messageListener, new ChannelTopic(CHANNEL_PREFIX + nodeId));
+    }
+
+    @Override
+    public void unsubscribe(String nodeId) {
+        MessageListener listener = listeners.remove(nodeId);
+        if (listener != null) {
+            container.removeMessageListener(listener);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "redis";
+    }
+
+    /**
+     * 停止监听容器，随 Bean 销毁调用
+     */
+    public void shutdown() throws Exception {
+        container.destroy();
+    }
+}
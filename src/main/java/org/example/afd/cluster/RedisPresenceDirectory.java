@@ -0,0 +1,144 @@
+package org.example.afd.cluster;
+
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Redis 哈希的用户节点目录，键为 chat:nodes:{userId}，字段为节点ID，值为租约到期时间（毫秒）
+ *
+ * 字段级别没有过期时间，查询时过滤掉过期字段（不在查询时删除，避免误删刚续期的租约）；
+ * 整个键随最后一次续期一起过期，所有节点都失联的用户不会永久显示在线。
+ * 只靠心跳在线的用户另存为带过期时间的键 chat:heartbeat:{userId}，不出现在路由查询中。
+ */
+public class RedisPresenceDirectory implements PresenceDirectory {
+
+    private static final String KEY_PREFIX = "chat:nodes:";
+
+    private static final String HEARTBEAT_PREFIX = "chat:heartbeat:";
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final long ttlMs;
+
+    public RedisPresenceDirectory(RedisConnectionFactory connectionFactory, long ttlMs) {
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.ttlMs = ttlMs;
+    }
+
+    @Override
+    public void register(Integer userId, String nodeId) {
+        registerAll(Collections.singletonList(userId), nodeId);
+    }
+
+    @Override
+    public void registerAll(Collection<Integer> userIds, String nodeId) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        String expireAt = String.valueOf(System.currentTimeMillis() + ttlMs);
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (Integer userId : userIds) {
+                    String key = KEY_PREFIX + userId;
+                    operations.opsForHash().put(key, nodeId, expireAt);
+                    operations.expire(key, ttlMs, TimeUnit.MILLISECONDS);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void unregister(Integer userId, String nodeId) {
+        redisTemplate.opsForHash().delete(KEY_PREFIX + userId, nodeId);
+    }
+
+    @Override
+    public Set<String> lookup(Integer userId) {
+        Map<Object, Object> leases = redisTemplate.opsForHash().entries(KEY_PREFIX + userId);
+        if (leases == null || leases.isEmpty()) {
+            return Collections.emptySet();
+        }
+        long now = System.currentTimeMillis();
+        Set<String> result = new HashSet<>();
+        for (Map.Entry<Object, Object> lease : leases.entrySet()) {
+            if (parseLong(lease.getValue()) > now) {
+                result.add(lease.getKey().toString());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void heartbeat(Integer userId, long ttlMs) {
+        redisTemplate.opsForValue().set(HEARTBEAT_PREFIX + userId, "1", ttlMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void clearHeartbeat(Integer userId) {
+        redisTemplate.delete(HEARTBEAT_PREFIX + userId);
+    }
+
+    @Override
+    public Set<Integer> onlineAmong(Collection<Integer> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        List<Integer> ordered = new ArrayList<>(userIds);
+        // 每个用户依次读取连接租约与心跳键，结果按相同顺序返回
+        List<Object> replies = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                for (Integer userId : ordered) {
+                    operations.opsForHash().entries(KEY_PREFIX + userId);
+                    operations.hasKey(HEARTBEAT_PREFIX + userId);
+                }
+                return null;
+            }
+        });
+        long now = System.currentTimeMillis();
+        Set<Integer> result = new HashSet<>();
+        for (int i = 0; i < ordered.size(); i++) {
+            Object leases = replies.get(2 * i);
+            Object heartbeat = replies.get(2 * i + 1);
+            if (Boolean.TRUE.equals(heartbeat) || hasLiveLease(leases, now)) {
+                result.add(ordered.get(i));
+            }
+        }
+        return result;
+    }
+
+    private static boolean hasLiveLease(Object leases, long now) {
+        if (!(leases instanceof Map<?, ?> map)) {
+            return false;
+        }
+        for (Object expireAt : map.values()) {
+            if (parseLong(expireAt) > now) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long parseLong(Object value) {
+        try {
+            return Long.parseLong(value.toString());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+}
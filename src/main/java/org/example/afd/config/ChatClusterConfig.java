@@ -0,0 +1,45 @@
+package org.example.afd.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.cluster.ClusterMessageBus;
+import org.example.afd.cluster.LocalPresenceDirectory;
+import org.example.afd.cluster.LoopbackMessageBus;
+import org.example.afd.cluster.PresenceDirectory;
+import org.example.afd.cluster.RedisMessageBus;
+import org.example.afd.cluster.RedisPresenceDirectory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * 聊天集群配置类
+ * 启用Redis时通过Redis发布订阅在节点间转发消息，否则使用进程内总线（单节点）
+ */
+@Slf4j
+@Configuration
+public class ChatClusterConfig {
+
+    @Bean
+    public ClusterMessageBus clusterMessageBus(ObjectProvider<RedisTemplate<String, Object>> redisTemplate,
+                                               ObjectMapper objectMapper) {
+        RedisTemplate<String, Object> template = redisTemplate.getIfAvailable();
+        if (template == null) {
+            log.info("未启用Redis，聊天消息只在本节点内投递");
+            return new LoopbackMessageBus();
+        }
+        return new RedisMessageBus(template.getConnectionFactory(), objectMapper);
+    }
+
+    @Bean
+    public PresenceDirectory presenceDirectory(ObjectProvider<RedisTemplate<String, Object>> redisTemplate,
+                                               @Value("${chat.cluster.presence-ttl-ms:30000}") long presenceTtlMs) {
+        RedisTemplate<String, Object> template = redisTemplate.getIfAvailable();
+        if (template == null) {
+            return new LocalPresenceDirectory(presenceTtlMs);
+        }
+        return new RedisPresenceDirectory(template.getConnectionFactory(), presenceTtlMs);
+    }
+}
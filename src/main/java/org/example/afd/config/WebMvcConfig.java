@@ -41,6 +41,7 @@ public class WebMvcConfig implements WebMvcConfigurer {
                         "/api/v1/posts/zones",   // 排除获取区域接口
                         "/api/v1/banners",       // 排除轮播图接口
                         "/api/v1/products",      // 排除商品列表接口（公开浏览）
+                        "/api/v1/products/suggest", // 排除搜索联想词接口（公开浏览）
                         "/api/v1/categories",    // 排除分类接口（公开浏览）
                         "/error"                 // 排除错误页面
                 );
@@ -61,6 +62,7 @@ public class WebMvcConfig implements WebMvcConfigurer {
                         "/api/v1/users/check-email", // 排除检查邮箱接口
                         "/api/v1/banners",       // 排除轮播图接口
                         "/api/v1/products",      // 排除商品列表接口（公开浏览）
+                        "/api/v1/products/suggest", // 排除搜索联想词接口（公开浏览）
                         "/api/v1/categories",    // 排除分类接口（公开浏览）
                         "/error"                 // 排除错误页面
                 );
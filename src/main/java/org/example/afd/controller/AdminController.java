@@ -2,10 +2,26 @@ package org.example.afd.controller;
 
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.example.afd.cluster.ChatClusterRouter;
 import org.example.afd.dto.BannerDTO;
 import org.example.afd.dto.CategoryDTO;
+import org.example.afd.handler.ChatEventDispatcher;
+import org.example.afd.handler.ChatSessionRegistry;
+import org.example.afd.handler.WebSocketOutbound;
 import org.example.afd.model.*;
 import org.example.afd.service.AdminService;
+import org.example.afd.service.FeedTimelineService;
+import org.example.afd.service.OrderExpiryService;
+import org.example.afd.service.ChatPersistPipeline;
+import org.example.afd.service.ChatReadStateService;
+import org.example.afd.service.ChatSearchIndex;
+import org.example.afd.service.CategoryTree;
+import org.example.afd.service.CounterBuffer;
+import org.example.afd.service.PostRankingService;
+import org.example.afd.service.ProductDetailCache;
+import org.example.afd.service.ProductSearchIndex;
+import org.example.afd.service.PresenceService;
+import org.example.afd.service.SuggestionIndex;
 import org.example.afd.service.impl.AdminServiceImpl;
 import org.example.afd.utils.UserIdHolder;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,6 +47,54 @@ public class AdminController {
     @Autowired
     private AdminServiceImpl adminServiceImpl;
     
+    @Autowired
+    private OrderExpiryService orderExpiryService;
+    
+    @Autowired
+    private FeedTimelineService feedTimelineService;
+    
+    @Autowired
+    private PostRankingService postRankingService;
+    
+    @Autowired
+    private CounterBuffer counterBuffer;
+    
+    @Autowired
+    private ProductDetailCache productDetailCache;
+    
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+    
+    @Autowired
+    private SuggestionIndex suggestionIndex;
+    
+    @Autowired
+    private CategoryTree categoryTree;
+    
+    @Autowired
+    private ChatClusterRouter chatClusterRouter;
+    
+    @Autowired
+    private ChatPersistPipeline chatPersistPipeline;
+    
+    @Autowired
+    private WebSocketOutbound webSocketOutbound;
+    
+    @Autowired
+    private ChatSessionRegistry chatSessionRegistry;
+    
+    @Autowired
+    private ChatEventDispatcher chatEventDispatcher;
+    
+    @Autowired
+    private PresenceService presenceService;
+    
+    @Autowired
+    private ChatSearchIndex chatSearchIndex;
+    
+    @Autowired
+    private ChatReadStateService chatReadStateService;
+    
     // ==================== 管理员认证相关接口 ====================
     
     /**
@@ -737,6 +801,374 @@ public class AdminController {
         }
     }
     
+    /**
+     * 获取订单超时取消运行指标
+     * @return 时间轮积压数量、已取消数量、取消延迟
+     */
+    @GetMapping("/statistics/order-expiry")
+    public Result<Map<String, Object>> getOrderExpiryStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(orderExpiryService.getStatistics());
+        } catch (Exception e) {
+            log.error("获取订单超时取消指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取订单超时取消指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取关注动态时间线运行指标
+     * @return 存储方式、推送数量、重建次数、推送积压
+     */
+    @GetMapping("/statistics/feed-timeline")
+    public Result<Map<String, Object>> getFeedTimelineStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(feedTimelineService.getStatistics());
+        } catch (Exception e) {
+            log.error("获取关注动态时间线指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取关注动态时间线指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取推荐动态排序运行指标
+     * @return 候选数量、快照大小、事件数量、刷新耗时
+     */
+    @GetMapping("/statistics/post-ranking")
+    public Result<Map<String, Object>> getPostRankingStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(postRankingService.getStatistics());
+        } catch (Exception e) {
+            log.error("获取推荐动态排序指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取推荐动态排序指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取计数写缓冲运行指标
+     * @return 回写延迟、缓冲行数、回写行数、失败次数
+     */
+    @GetMapping("/statistics/counter-buffer")
+    public Result<Map<String, Object>> getCounterBufferStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(counterBuffer.getStatistics());
+        } catch (Exception e) {
+            log.error("获取计数写缓冲指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取计数写缓冲指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取本节点商品详情缓存运行指标
+     * @return 缓存条数、本地与Redis命中数、未命中数、淘汰次数
+     */
+    @GetMapping("/statistics/product-detail-cache")
+    public Result<Map<String, Object>> getProductDetailCacheStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(productDetailCache.getStatistics());
+        } catch (Exception e) {
+            log.error("获取商品详情缓存指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取商品详情缓存指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取本节点聊天集群路由运行指标
+     * @return 节点ID、本地投递数、转发数、确认结果、超时数
+     */
+    @GetMapping("/statistics/chat-cluster")
+    public Result<Map<String, Object>> getChatClusterStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(chatClusterRouter.getStatistics());
+        } catch (Exception e) {
+            log.error("获取聊天集群路由指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取聊天集群路由指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取聊天消息异步持久化运行指标
+     * @return 队列长度、入库数、平均批大小、同步写入次数、重试次数
+     */
+    @GetMapping("/statistics/chat-persist")
+    public Result<Map<String, Object>> getChatPersistStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(chatPersistPipeline.getStatistics());
+        } catch (Exception e) {
+            log.error("获取聊天消息持久化指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取聊天消息持久化指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取本节点WebSocket出站队列运行指标
+     * @return 队列深度、发送数、丢弃/溢出/断开次数、发送延迟
+     */
+    @GetMapping("/statistics/ws-outbound")
+    public Result<Map<String, Object>> getWebSocketOutboundStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(webSocketOutbound.getStatistics());
+        } catch (Exception e) {
+            log.error("获取WebSocket出站队列指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取WebSocket出站队列指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取本节点聊天会话运行指标
+     * @return 在线用户数、连接数、上线/离线状态变化次数
+     */
+    @GetMapping("/statistics/chat-sessions")
+    public Result<Map<String, Object>> getChatSessionStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(chatSessionRegistry.getStatistics());
+        } catch (Exception e) {
+            log.error("获取聊天会话指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取聊天会话指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取本节点在线状态服务运行指标
+     * @return 在线人数、待落库数、过期与落库次数
+     */
+    @GetMapping("/statistics/presence")
+    public Result<Map<String, Object>> getPresenceStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(presenceService.getStatistics());
+        } catch (Exception e) {
+            log.error("获取在线状态指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取在线状态指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取本节点聊天临时事件运行指标
+     * @return 收到、限流丢弃、合并、转发的事件数
+     */
+    @GetMapping("/statistics/chat-events")
+    public Result<Map<String, Object>> getChatEventStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(chatEventDispatcher.getStatistics());
+        } catch (Exception e) {
+            log.error("获取聊天事件指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取聊天事件指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取本节点聊天已读水位服务运行指标
+     * @return 已加载用户数、待落库用户数、加载与落库次数、跳过的重复已读
+     */
+    @GetMapping("/statistics/chat-read-state")
+    public Result<Map<String, Object>> getChatReadStateStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(chatReadStateService.getStatistics());
+        } catch (Exception e) {
+            log.error("获取已读水位指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取已读水位指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取本节点聊天全文索引运行指标
+     * @return 索引规模、查询次数与耗时、回退次数
+     */
+    @GetMapping("/statistics/chat-search")
+    public Result<Map<String, Object>> getChatSearchStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(chatSearchIndex.getStatistics());
+        } catch (Exception e) {
+            log.error("获取聊天全文索引指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取聊天全文索引指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 从数据库重建本节点的聊天全文索引，重建在后台进行，期间继续使用旧索引
+     */
+    @PostMapping("/chat-search/rebuild")
+    public Result<Boolean> rebuildChatSearchIndex() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            boolean started = chatSearchIndex.rebuild();
+            return started ? Result.success(true) : Result.failure(ResultCode.BUSINESS_ERROR, "索引未启用或正在重建");
+        } catch (Exception e) {
+            log.error("重建聊天全文索引失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "重建聊天全文索引失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取本节点商品全文索引运行指标
+     * @return 商品数、词项数、搜索次数、回退次数、平均耗时
+     */
+    @GetMapping("/statistics/product-search")
+    public Result<Map<String, Object>> getProductSearchStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(productSearchIndex.getStatistics());
+        } catch (Exception e) {
+            log.error("获取商品全文索引指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取商品全文索引指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 从数据库重建本节点的商品全文索引，重建在后台进行，期间继续使用旧索引
+     */
+    @PostMapping("/product-search/rebuild")
+    public Result<Boolean> rebuildProductSearchIndex() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            boolean started = productSearchIndex.rebuild();
+            return started ? Result.success(true) : Result.failure(ResultCode.BUSINESS_ERROR, "索引未启用或正在重建");
+        } catch (Exception e) {
+            log.error("重建商品全文索引失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "重建商品全文索引失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取本节点搜索联想词索引运行指标
+     * @return 各类型条目数、键数、增量数、查询次数、平均与 P99 耗时
+     */
+    @GetMapping("/statistics/suggestion")
+    public Result<Map<String, Object>> getSuggestionStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(suggestionIndex.getStatistics());
+        } catch (Exception e) {
+            log.error("获取联想词索引指标失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取联想词索引指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 从数据库重建本节点的搜索联想词索引，重建在后台进行，期间继续使用旧索引
+     */
+    @PostMapping("/suggestion/rebuild")
+    public Result<Boolean> rebuildSuggestionIndex() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            boolean started = suggestionIndex.rebuild();
+            return started ? Result.success(true) : Result.failure(ResultCode.BUSINESS_ERROR, "索引未启用或正在重建");
+        } catch (Exception e) {
+            log.error("重建联想词索引失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "重建联想词索引失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取本节点分类树快照的状态
+     * @return 分类数、一级分类数、最近重建时间
+     */
+    @GetMapping("/statistics/category-tree")
+    public Result<Map<String, Object>> getCategoryTreeStatistics() {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(categoryTree.getStatistics());
+        } catch (Exception e) {
+            log.error("获取分类树快照状态失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取分类树快照状态失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 游标分页获取登录记录
+     * @param userId 用户ID筛选（可选）
+     * @param cursor 上一页返回的游标，第一页不传
+     * @param size 每页数量
+     * @return 登录记录列表及下一页游标
+     */
+    @GetMapping("/login-records/cursor")
+    public Result<CursorPage<Map<String, Object>>> getLoginRecordsByCursor(
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") Integer size) {
+        try {
+            if (!checkAdminPermission()) {
+                return Result.failure(ResultCode.UNAUTHORIZED, "权限不足，需要管理员权限");
+            }
+            
+            return Result.success(adminService.getLoginRecordsByCursor(userId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return Result.failure(ResultCode.PARAM_ERROR, e.getMessage());
+        } catch (Exception e) {
+            log.error("获取登录记录失败", e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取登录记录失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 获取系统统计数据
      * @return 系统统计数据
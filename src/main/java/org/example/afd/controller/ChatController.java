@@ -3,9 +3,11 @@ package org.example.afd.controller;
 import lombok.extern.slf4j.Slf4j;
 import org.example.afd.annotation.JwtAuth;
 import org.example.afd.dto.ChatMessageDTO;
+import org.example.afd.dto.ChatSyncDTO;
 import org.example.afd.dto.ConversationDTO;
 import org.example.afd.model.Result;
 import org.example.afd.service.ChatService;
+import org.example.afd.service.ChatSyncService;
 import org.example.afd.utils.JwtUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -31,6 +33,9 @@ public class ChatController {
     @Autowired
     private ChatService chatService;
     
+    @Autowired
+    private ChatSyncService chatSyncService;
+    
     @Autowired
     private JwtUtil jwtUtil;
 
@@ -195,6 +200,28 @@ public class ChatController {
         }
     }
 
+    /**
+     * 增量同步：返回指定序号之后的会话变化、未读数和新消息
+     * GET /api/chat/sync?since=0&limit=1000
+     */
+    @JwtAuth
+    @GetMapping("/sync")
+    public Result<ChatSyncDTO> sync(
+            @RequestParam(defaultValue = "0") Long since,
+            @RequestParam(required = false) Integer limit,
+            HttpServletRequest request) {
+        try {
+            Integer userId = jwtUtil.getUserIdFromRequest(request);
+            ChatSyncDTO result = chatSyncService.sync(userId, since, limit);
+            log.debug("增量同步: 用户={}, since={}, seq={}, 消息{}条", userId, since, result.getSeq(), result.getMessages().size());
+            return Result.success(result);
+            
+        } catch (Exception e) {
+            log.error("增量同步失败", e);
+            return Result.error("增量同步失败");
+        }
+    }
+
     /**
      * 搜索聊天记录
      * GET /api/chat/search?targetUserId=xxx&keyword=xxx&page=0&size=20
@@ -2,6 +2,7 @@ package org.example.afd.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.example.afd.dto.NotificationDTO;
+import org.example.afd.model.CursorPage;
 import org.example.afd.model.Result;
 import org.example.afd.service.NotificationService;
 import org.example.afd.utils.UserIdHolder;
@@ -43,6 +44,25 @@ public class NotificationController {
         return notificationService.getNotifications(userId, page, size);
     }
 
+    /**
+     * 游标分页获取当前用户的通知列表
+     *
+     * @param cursor 上一页返回的游标，第一页不传
+     * @param size   每页数量，默认为20
+     * @return 通知列表及下一页游标
+     */
+    @GetMapping("/cursor")
+    public Result<CursorPage<NotificationDTO>> getNotificationsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+
+        Integer userIdInt = UserIdHolder.getUserId();
+        if (userIdInt == null) {
+            return Result.error("用户未登录");
+        }
+        return notificationService.getNotificationsByCursor(userIdInt.longValue(), cursor, size);
+    }
+
     /**
      * 获取当前用户的未读通知数量
      *
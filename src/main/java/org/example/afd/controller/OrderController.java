@@ -6,6 +6,7 @@ import org.example.afd.entity.Order;
 import org.example.afd.entity.Payment;
 import org.example.afd.mapper.OrderMapper;
 import org.example.afd.mapper.PaymentMapper;
+import org.example.afd.model.CursorPage;
 import org.example.afd.model.Result;
 import org.example.afd.service.OrderService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -332,6 +333,26 @@ public class OrderController {
         }
     }
     
+    /**
+     * 游标分页获取用户订单列表
+     * 首次请求不传 cursor，之后传上一页返回的 nextCursor
+     */
+    @GetMapping("/api/v1/orders/cursor")
+    public Result<CursorPage<OrderDTO>> getUserOrdersByCursor(
+            @RequestParam(required = false) Integer orderType,
+            @RequestParam(required = false) Integer orderStatus,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") Integer size,
+            HttpServletRequest httpRequest) {
+        
+        Long userId = getUserIdFromRequest(httpRequest);
+        if (userId == null) {
+            return Result.error("用户未登录");
+        }
+        
+        return orderService.getUserOrdersByCursor(userId, orderType, orderStatus, cursor, size);
+    }
+    
     /**
      * 取消订单
      */
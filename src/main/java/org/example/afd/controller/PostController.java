@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.example.afd.mapper.UserMapper;
+import org.example.afd.model.CursorPage;
 import org.example.afd.model.Result;
 import org.example.afd.dto.CommentDTO;
 import org.example.afd.dto.PostDTO;
@@ -234,6 +235,17 @@ public class PostController {
         return postService.getFollowingPosts(userId, page, size);
     }
     
+    /**
+     * 游标分页获取关注用户的动态列表
+     */
+    @GetMapping("/posts/following/cursor")
+    public Result<CursorPage<PostDTO>> getFollowingPostsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") Integer size) {
+        Long userId = UserIdHolder.getUserId().longValue();
+        return postService.getFollowingPostsByCursor(userId, cursor, size);
+    }
+    
     /**
      * 获取推荐动态列表
      */
@@ -247,6 +259,17 @@ public class PostController {
         return postService.getRecommendPosts(userId, page, size);
     }
     
+    /**
+     * 游标分页获取推荐动态列表
+     */
+    @GetMapping("/posts/recommend/cursor")
+    public Result<CursorPage<PostDTO>> getRecommendPostsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") Integer size) {
+        Long userId = UserIdHolder.getUserId() != null ? UserIdHolder.getUserId().longValue() : null;
+        return postService.getRecommendPostsByCursor(userId, cursor, size);
+    }
+    
     /**
      * 动态点赞
      */
@@ -309,6 +332,18 @@ public class PostController {
         return postService.getComments(postId, userId, page, size);
     }
     
+    /**
+     * 游标分页获取动态评论列表
+     */
+    @GetMapping("/posts/{postId}/comments/cursor")
+    public Result<CursorPage<CommentDTO>> getCommentsByCursor(
+            @PathVariable Long postId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") Integer size) {
+        Long userId = UserIdHolder.getUserId() != null ? UserIdHolder.getUserId().longValue() : null;
+        return postService.getCommentsByCursor(postId, userId, cursor, size);
+    }
+    
     /**
      * 发表评论
      */
@@ -6,12 +6,14 @@ import org.example.afd.dto.ProductDetailDTO;
 import org.example.afd.dto.PromotionDTO;
 import org.example.afd.dto.ReviewDTO;
 import org.example.afd.dto.ProductSkuDTO;
+import org.example.afd.dto.SuggestionDTO;
 import org.example.afd.model.Result;
 import org.example.afd.service.BannerService;
 import org.example.afd.service.CategoryService;
 import org.example.afd.service.ProductService;
 import org.example.afd.service.PromotionService;
 import org.example.afd.service.ReviewService;
+import org.example.afd.service.SuggestionIndex;
 import org.example.afd.model.Result;
 import org.example.afd.model.ResultCode;
 import org.example.afd.utils.UserIdHolder;
@@ -49,6 +51,9 @@ public class ProductController {
     @Autowired
     private ReviewService reviewService;
 
+    @Autowired
+    private SuggestionIndex suggestionIndex;
+
     /**
      * 获取商品列表
      *
@@ -72,6 +77,27 @@ public class ProductController {
         }
     }
 
+    /**
+     * 搜索联想词，输入框每次按键调用，支持拼音首字母
+     *
+     * @param keyword 已输入的前缀
+     * @param type    只返回某一类型：product / tag / merchant，不传返回全部类型
+     * @param limit   每种类型返回的数量
+     * @return 按类型分组的联想词
+     */
+    @GetMapping("/products/suggest")
+    public Result<Map<String, List<SuggestionDTO>>> suggest(
+            @RequestParam String keyword,
+            @RequestParam(required = false) String type,
+            @RequestParam(defaultValue = "10") Integer limit) {
+        try {
+            return Result.success(suggestionIndex.suggest(keyword, type, limit));
+        } catch (Exception e) {
+            logger.error("获取搜索联想词失败, keyword: {}", keyword, e);
+            return Result.failure(ResultCode.SYSTEM_ERROR, "获取搜索联想词失败");
+        }
+    }
+
     /**
      * 根据分类获取商品列表
      *
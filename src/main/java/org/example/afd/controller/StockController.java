@@ -234,6 +234,15 @@ public class StockController {
         }
     }
     
+    /**
+     * 获取库存预留引擎运行状态
+     * @return 分片数、待处理请求数、已提交批次数等
+     */
+    @GetMapping("/engine/stats")
+    public Result<Map<String, Object>> getEngineStatistics() {
+        return Result.success(stockService.getReservationEngineStatistics());
+    }
+    
     // 工具方法
     private Long getLongValue(Map<String, Object> map, String key) {
         Object value = map.get(key);
@@ -5,6 +5,8 @@ import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 
 import java.time.LocalDateTime;
 
@@ -19,8 +21,9 @@ import java.time.LocalDateTime;
 public class ChatMessageDTO {
 
     /**
-     * 消息ID
+     * 消息ID（雪花ID超出 JavaScript 安全整数范围，序列化为字符串）
      */
+    @JsonSerialize(using = ToStringSerializer.class)
     private Long messageId;
 
     /**
@@ -59,7 +62,7 @@ public class ChatMessageDTO {
     private String receiverAvatar;
 
     /**
-     * 消息类型，1-文本，2-图片，3-视频，4-表情，5-系统消息
+     * 消息类型，1-文本，2-图片，3-视频，4-表情，5-系统消息，6-临时事件（不入库）
      */
     private Integer messageType;
 
@@ -159,6 +162,13 @@ public class ChatMessageDTO {
         return messageType != null && messageType == 5;
     }
 
+    /**
+     * 检查是否为临时事件（正在输入、心跳、已读位置）
+     */
+    public boolean isEventMessage() {
+        return messageType != null && messageType == 6;
+    }
+
     /**
      * 获取消息类型描述
      */
@@ -177,6 +187,8 @@ public class ChatMessageDTO {
                 return "表情";
             case 5:
                 return "系统消息";
+            case 6:
+                return "临时事件";
             default:
                 return "未知";
         }
@@ -0,0 +1,87 @@
+package org.example.afd.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 增量同步结果
+ * 客户端保存返回的 seq，下次同步时作为 since 传回；hasMore 为 true 时继续拉取，
+ * reset 为 true 表示 since 之后的日志已被清理，客户端应丢弃本地数据重新加载会话列表
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChatSyncDTO {
+
+    /**
+     * 本次同步到的最大序号
+     */
+    private Long seq;
+
+    /**
+     * 是否还有更多事件
+     */
+    private Boolean hasMore;
+
+    /**
+     * 是否需要全量重新加载
+     */
+    private Boolean reset;
+
+    /**
+     * 有变化的会话，每个会话一条，为会话当前状态
+     */
+    private List<ConversationDelta> conversations = new ArrayList<>();
+
+    /**
+     * 新消息，按序号排列
+     */
+    private List<ChatMessageDTO> messages = new ArrayList<>();
+
+    /**
+     * 已读、撤回、删除会话等事件，按序号排列
+     */
+    private List<Event> events = new ArrayList<>();
+
+    /**
+     * 会话变化
+     */
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class ConversationDelta {
+        private Long conversationId;
+        private Integer otherUserId;
+        private Integer unreadCount;
+        private Boolean deleted;
+        @JsonSerialize(using = ToStringSerializer.class)
+        private Long lastMessageId;
+        private String lastMessageContent;
+        private Integer lastMessageType;
+        @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+        private LocalDateTime lastMessageTime;
+    }
+
+    /**
+     * 非消息事件
+     */
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Event {
+        private Long seq;
+        /**
+         * 2-已读，3-撤回，4-删除会话
+         */
+        private Integer type;
+        private Long conversationId;
+        @JsonSerialize(using = ToStringSerializer.class)
+        private Long messageId;
+        @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+        private LocalDateTime time;
+    }
+}
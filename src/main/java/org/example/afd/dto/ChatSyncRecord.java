@@ -0,0 +1,43 @@
+package org.example.afd.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 同步日志查询行
+ * 同步日志左连接消息与会话，一次查询取回事件、消息内容和会话当前的未读数
+ */
+@Data
+public class ChatSyncRecord {
+
+    private Long seq;
+    private Integer eventType;
+    private Long conversationId;
+    private Long messageId;
+    private LocalDateTime eventTime;
+
+    // 消息字段，事件没有关联消息或消息不存在时为空
+    private Integer senderId;
+    private Integer receiverId;
+    private Integer messageType;
+    private String content;
+    private String mediaUrl;
+    private String thumbnailUrl;
+    private Integer messageStatus;
+    private Integer isRecalled;
+    private String extraData;
+    private LocalDateTime createTime;
+
+    // 会话字段
+    private Integer user1Id;
+    private Integer user2Id;
+    private Integer user1UnreadCount;
+    private Integer user2UnreadCount;
+    private Integer user1Deleted;
+    private Integer user2Deleted;
+    private Long lastMessageId;
+    private String lastMessageContent;
+    private LocalDateTime lastMessageTime;
+    private Integer lastMessageType;
+}
@@ -48,6 +48,7 @@ public class ConversationDTO {
     /**
      * 最后一条消息ID
      */
+    @JsonSerialize(using = ToStringSerializer.class)
     private Long lastMessageId;
 
     /**
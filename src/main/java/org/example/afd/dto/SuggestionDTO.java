@@ -0,0 +1,17 @@
+package org.example.afd.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 搜索联想词
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestionDTO {
+    private String type;   // 类型：product / tag / merchant
+    private Long id;       // 商品、标签或商家ID
+    private String text;   // 联想文本
+}
@@ -28,7 +28,7 @@ public class StockOperationLog {
     private Long skuId;
     
     /**
-     * 操作类型：1-锁定 2-扣减 3-释放 4-回滚
+     * 操作类型：1-锁定 2-扣减 3-释放 4-回滚 5-撤销释放 6-撤销扣减
      */
     private Integer operationType;
     
@@ -79,7 +79,10 @@ public class StockOperationLog {
         LOCK(1, "锁定"),
         DEDUCT(2, "扣减"),
         RELEASE(3, "释放"),
-        ROLLBACK(4, "回滚");
+        ROLLBACK(4, "回滚"),
+        // 补偿已提交但调用方事务回滚或超时放弃的操作，恢复锁定而不新增锁定记录
+        UNDO_RELEASE(5, "撤销释放"),
+        UNDO_DEDUCT(6, "撤销扣减");
         
         private final Integer code;
         private final String name;
@@ -0,0 +1,63 @@
+package org.example.afd.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 用户聊天已读水位实体类
+ * 对应数据库表：user_chat_read_state
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "user_chat_read_state")
+@IdClass(UserChatReadState.Key.class)
+public class UserChatReadState {
+
+    /**
+     * 会话ID
+     */
+    @Id
+    @Column(name = "conversation_id")
+    private Long conversationId;
+
+    /**
+     * 用户ID
+     */
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    /**
+     * 已读到的最大消息ID，消息ID不大于该值的视为已读
+     */
+    @Column(name = "last_read_message_id", nullable = false)
+    private Long lastReadMessageId;
+
+    /**
+     * 标记已读时用户的收件箱序号；之后才提交的消息即使ID不大于水位也仍为未读
+     */
+    @Column(name = "last_read_seq", nullable = false)
+    private Long lastReadSeq;
+
+    /**
+     * 更新时间
+     */
+    @Column(name = "update_time", nullable = false)
+    private LocalDateTime updateTime;
+
+    /**
+     * 联合主键
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements java.io.Serializable {
+        private Long conversationId;
+        private Integer userId;
+    }
+}
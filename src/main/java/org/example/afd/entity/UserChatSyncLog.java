@@ -0,0 +1,89 @@
+package org.example.afd.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 用户聊天同步日志实体类
+ * 对应数据库表：user_chat_sync_log
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "user_chat_sync_log")
+@IdClass(UserChatSyncLog.Key.class)
+public class UserChatSyncLog {
+
+    /**
+     * 事件类型：新消息
+     */
+    public static final int EVENT_MESSAGE = 1;
+
+    /**
+     * 事件类型：会话已读
+     */
+    public static final int EVENT_READ = 2;
+
+    /**
+     * 事件类型：消息撤回
+     */
+    public static final int EVENT_RECALL = 3;
+
+    /**
+     * 事件类型：删除会话
+     */
+    public static final int EVENT_DELETE = 4;
+
+    /**
+     * 用户ID
+     */
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    /**
+     * 用户内的同步序号，连续递增
+     */
+    @Id
+    @Column(name = "seq")
+    private Long seq;
+
+    /**
+     * 会话ID
+     */
+    @Column(name = "conversation_id", nullable = false)
+    private Long conversationId;
+
+    /**
+     * 相关消息ID
+     */
+    @Column(name = "message_id")
+    private Long messageId;
+
+    /**
+     * 事件类型，1-新消息，2-已读，3-撤回，4-删除会话
+     */
+    @Column(name = "event_type", nullable = false)
+    private Integer eventType;
+
+    /**
+     * 事件时间
+     */
+    @Column(name = "create_time", nullable = false)
+    private LocalDateTime createTime;
+
+    /**
+     * 联合主键
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements java.io.Serializable {
+        private Integer userId;
+        private Long seq;
+    }
+}
@@ -0,0 +1,322 @@
+package org.example.afd.handler;
+
+import org.example.afd.dto.ChatMessageDTO;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * 聊天消息二进制编解码
+ *
+ * 帧格式：版本号(1字节) + 字段位图(varint) + 按位图顺序排列的非空字段
+ * 1. 整数使用 zigzag varint，常见的ID、类型、状态只占 1~5 字节
+ * 2. 字符串为 varint 字节长度 + UTF-8 内容
+ * 3. 时间为本地时间的秒数（按 UTC 换算，不含时区），与 JSON 的 yyyy-MM-dd HH:mm:ss 精度一致
+ *
+ * 编码使用线程内复用的缓冲区，最后按实际长度复制一次；同一帧会进入多个出站队列，不能直接引用复用缓冲区。
+ */
+public final class ChatBinaryCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final int MESSAGE_ID = 0;
+    private static final int CONVERSATION_ID = 1;
+    private static final int SENDER_ID = 2;
+    private static final int SENDER_USERNAME = 3;
+    private static final int SENDER_AVATAR = 4;
+    private static final int RECEIVER_ID = 5;
+    private static final int RECEIVER_USERNAME = 6;
+    private static final int RECEIVER_AVATAR = 7;
+    private static final int MESSAGE_TYPE = 8;
+    private static final int CONTENT = 9;
+    private static final int MEDIA_URL = 10;
+    private static final int THUMBNAIL_URL = 11;
+    private static final int MESSAGE_STATUS = 12;
+    private static final int IS_RECALLED = 13;
+    private static final int EXTRA_DATA = 14;
+    private static final int CREATE_TIME = 15;
+    private static final int READ_TIME = 16;
+    private static final int TIMESTAMP = 17;
+
+    /**
+     * 复用缓冲区的上限，偶尔出现的大消息用完即丢弃，避免长期占用内存
+     */
+    private static final int MAX_POOLED_BYTES = 64 * 1024;
+
+    private static final ThreadLocal<Writer> WRITERS = ThreadLocal.withInitial(Writer::new);
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    private ChatBinaryCodec() {
+    }
+
+    public static byte[] encode(ChatMessageDTO message) {
+        Writer writer = WRITERS.get();
+        try {
+            writer.reset();
+            writer.writeByte(VERSION);
+            writer.writeVarLong(presentFields(message));
+            writeLong(writer, message.getMessageId());
+            writeLong(writer, message.getConversationId());
+            writeInt(writer, message.getSenderId());
+            writeString(writer, message.getSenderUsername());
+            writeString(writer, message.getSenderAvatar());
+            writeInt(writer, message.getReceiverId());
+            writeString(writer, message.getReceiverUsername());
+            writeString(writer, message.getReceiverAvatar());
+            writeInt(writer, message.getMessageType());
+            writeString(writer, message.getContent());
+            writeString(writer, message.getMediaUrl());
+            writeString(writer, message.getThumbnailUrl());
+            writeInt(writer, message.getMessageStatus());
+            writeInt(writer, message.getIsRecalled());
+            writeString(writer, message.getExtraData());
+            writeTime(writer, message.getCreateTime());
+            writeTime(writer, message.getReadTime());
+            writeLong(writer, message.getTimestamp());
+            return writer.toByteArray();
+        } finally {
+            writer.release();
+        }
+    }
+
+    /**
+     * 解码一帧，从缓冲区当前位置读取
+     *
+     * @throws IllegalArgumentException 版本不支持或帧不完整
+     */
+    public static ChatMessageDTO decode(ByteBuffer buffer) {
+        try {
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("不支持的消息帧版本: " + version);
+            }
+            long fields = readVarLong(buffer);
+            ChatMessageDTO message = new ChatMessageDTO();
+            if (has(fields, MESSAGE_ID)) message.setMessageId(readLong(buffer));
+            if (has(fields, CONVERSATION_ID)) message.setConversationId(readLong(buffer));
+            if (has(fields, SENDER_ID)) message.setSenderId(readInt(buffer));
+            if (has(fields, SENDER_USERNAME)) message.setSenderUsername(readString(buffer));
+            if (has(fields, SENDER_AVATAR)) message.setSenderAvatar(readString(buffer));
+            if (has(fields, RECEIVER_ID)) message.setReceiverId(readInt(buffer));
+            if (has(fields, RECEIVER_USERNAME)) message.setReceiverUsername(readString(buffer));
+            if (has(fields, RECEIVER_AVATAR)) message.setReceiverAvatar(readString(buffer));
+            if (has(fields, MESSAGE_TYPE)) message.setMessageType(readInt(buffer));
+            if (has(fields, CONTENT)) message.setContent(readString(buffer));
+            if (has(fields, MEDIA_URL)) message.setMediaUrl(readString(buffer));
+            if (has(fields, THUMBNAIL_URL)) message.setThumbnailUrl(readString(buffer));
+            if (has(fields, MESSAGE_STATUS)) message.setMessageStatus(readInt(buffer));
+            if (has(fields, IS_RECALLED)) message.setIsRecalled(readInt(buffer));
+            if (has(fields, EXTRA_DATA)) message.setExtraData(readString(buffer));
+            if (has(fields, CREATE_TIME)) message.setCreateTime(readTime(buffer));
+            if (has(fields, READ_TIME)) message.setReadTime(readTime(buffer));
+            if (has(fields, TIMESTAMP)) message.setTimestamp(readLong(buffer));
+            return message;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("消息帧不完整", e);
+        }
+    }
+
+    private static long presentFields(ChatMessageDTO message) {
+        long fields = 0;
+        fields |= bit(message.getMessageId(), MESSAGE_ID);
+        fields |= bit(message.getConversationId(), CONVERSATION_ID);
+        fields |= bit(message.getSenderId(), SENDER_ID);
+        fields |= bit(message.getSenderUsername(), SENDER_USERNAME);
+        fields |= bit(message.getSenderAvatar(), SENDER_AVATAR);
+        fields |= bit(message.getReceiverId(), RECEIVER_ID);
+        fields |= bit(message.getReceiverUsername(), RECEIVER_USERNAME);
+        fields |= bit(message.getReceiverAvatar(), RECEIVER_AVATAR);
+        fields |= bit(message.getMessageType(), MESSAGE_TYPE);
+        fields |= bit(message.getContent(), CONTENT);
+        fields |= bit(message.getMediaUrl(), MEDIA_URL);
+        fields |= bit(message.getThumbnailUrl(), THUMBNAIL_URL);
+        fields |= bit(message.getMessageStatus(), MESSAGE_STATUS);
+        fields |= bit(message.getIsRecalled(), IS_RECALLED);
+        fields |= bit(message.getExtraData(), EXTRA_DATA);
+        fields |= bit(message.getCreateTime(), CREATE_TIME);
+        fields |= bit(message.getReadTime(), READ_TIME);
+        fields |= bit(message.getTimestamp(), TIMESTAMP);
+        return fields;
+    }
+
+    private static long bit(Object value, int field) {
+        return value != null ? 1L << field : 0;
+    }
+
+    private static boolean has(long fields, int field) {
+        return (fields & (1L << field)) != 0;
+    }
+
+    private static void writeInt(Writer writer, Integer value) {
+        if (value != null) {
+            writer.writeVarLong(zigzag(value));
+        }
+    }
+
+    private static void writeLong(Writer writer, Long value) {
+        if (value != null) {
+            writer.writeVarLong(zigzag(value));
+        }
+    }
+
+    private static void writeTime(Writer writer, LocalDateTime value) {
+        if (value != null) {
+            writer.writeVarLong(zigzag(value.toEpochSecond(ZoneOffset.UTC)));
+        }
+    }
+
+    private static void writeString(Writer writer, String value) {
+        if (value != null) {
+            writer.writeUtf8(value);
+        }
+    }
+
+    private static int readInt(ByteBuffer buffer) {
+        return (int) unzigzag(readVarLong(buffer));
+    }
+
+    private static long readLong(ByteBuffer buffer) {
+        return unzigzag(readVarLong(buffer));
+    }
+
+    private static LocalDateTime readTime(ByteBuffer buffer) {
+        return LocalDateTime.ofEpochSecond(unzigzag(readVarLong(buffer)), 0, ZoneOffset.UTC);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        long length = readVarLong(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("字符串长度越界: " + length);
+        }
+        int len = (int) length;
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), len,
+                StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + len);
+            return value;
+        }
+        byte[] scratch = SCRATCH.get();
+        if (scratch.length < len) {
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+            if (scratch.length <= MAX_POOLED_BYTES) {
+                SCRATCH.set(scratch);
+            }
+        }
+        buffer.get(scratch, 0, len);
+        return new String(scratch, 0, len, StandardCharsets.UTF_8);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("varint 过长");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 可增长的写缓冲区，每个线程一个
+     */
+    private static final class Writer {
+        private byte[] buf = new byte[512];
+        private int pos;
+
+        void reset() {
+            pos = 0;
+        }
+
+        void release() {
+            if (buf.length > MAX_POOLED_BYTES) {
+                buf = new byte[512];
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        /**
+         * 直接把字符编码进缓冲区，省去 getBytes 的中间数组；孤立的代理字符按 '?' 输出，与 getBytes 一致
+         */
+        void writeUtf8(String value) {
+            int length = value.length();
+            int bytes = 0;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    bytes++;
+                } else if (c < 0x800) {
+                    bytes += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    bytes++;
+                } else {
+                    bytes += 3;
+                }
+            }
+            writeVarLong(bytes);
+            ensure(bytes);
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buf[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[pos++] = (byte) (0xC0 | (c >> 6));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    buf[pos++] = '?';
+                } else {
+                    buf[pos++] = (byte) (0xE0 | (c >> 12));
+                    buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+    }
+}
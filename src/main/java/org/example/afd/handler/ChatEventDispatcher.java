@@ -0,0 +1,183 @@
+package org.example.afd.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.cluster.ChatClusterRouter;
+import org.example.afd.dto.ChatMessageDTO;
+import org.example.afd.service.ChatService;
+import org.example.afd.utils.TokenBucket;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 聊天临时事件分发
+ *
+ * 正在输入、心跳、已读位置等事件（messageType=6，content 为事件名）不入库、不回执：
+ * 1. 每个连接一个令牌桶，超出速率的事件直接丢弃
+ * 2. 正在输入按（发送者, 接收者）在窗口内只转发第一次，客户端在窗口内保持提示
+ * 3. 已读位置在窗口内只保留最新的一个，窗口结束时统一推进已读水位并把回执推给对方
+ * 4. 任何事件都视为活跃，只更新内存中的在线状态，由在线状态服务批量落库
+ */
+@Component
+@Slf4j
+public class ChatEventDispatcher {
+
+    public static final String TYPING = "typing";
+    public static final String HEARTBEAT = "heartbeat";
+    public static final String READ = "read";
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private ChatClusterRouter clusterRouter;
+
+    @Value("${chat.events.rate-per-second:5}")
+    private double ratePerSecond;
+
+    @Value("${chat.events.burst:10}")
+    private int burst;
+
+    @Value("${chat.events.typing-window-ms:3000}")
+    private long typingWindowMs;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    // （发送者, 接收者） -> 上次转发正在输入的时间
+    private final Map<Long, Long> typingForwarded = new ConcurrentHashMap<>();
+
+    // （发送者, 接收者） -> 窗口内最新的已读位置
+    private final Map<Long, ChatMessageDTO> pendingReads = new ConcurrentHashMap<>();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+
+    /**
+     * 处理客户端发来的临时事件
+     */
+    public void handle(WebSocketSession session, Integer senderId, ChatMessageDTO event) {
+        received.incrementAndGet();
+        long now = System.currentTimeMillis();
+        TokenBucket bucket = buckets.computeIfAbsent(session.getId(), k -> new TokenBucket(burst, ratePerSecond, now));
+        if (!bucket.tryAcquire(now)) {
+            rateLimited.incrementAndGet();
+            return;
+        }
+
+        chatService.updateUserActiveTime(senderId);
+
+        String name = event.getContent();
+        if (HEARTBEAT.equals(name)) {
+            return;
+        }
+        Integer receiverId = event.getReceiverId();
+        if (receiverId == null || receiverId.equals(senderId) || !(TYPING.equals(name) || READ.equals(name))) {
+            invalid.incrementAndGet();
+            return;
+        }
+
+        long key = directedKey(senderId, receiverId);
+        if (TYPING.equals(name)) {
+            Long last = typingForwarded.get(key);
+            if (last != null && now - last < typingWindowMs) {
+                coalesced.incrementAndGet();
+                return;
+            }
+            typingForwarded.put(key, now);
+            forward(receiverId, newEvent(TYPING, senderId, receiverId, null));
+        } else {
+            ChatMessageDTO cursor = newEvent(READ, senderId, receiverId, event.getMessageId());
+            if (pendingReads.put(key, cursor) != null) {
+                coalesced.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 连接关闭时释放令牌桶
+     */
+    public void unregister(WebSocketSession session) {
+        buckets.remove(session.getId());
+    }
+
+    /**
+     * 合并窗口结束，推进已读水位并推送回执
+     */
+    @Scheduled(fixedDelayString = "${chat.events.read-window-ms:1000}")
+    public void flushReads() {
+        if (pendingReads.isEmpty()) {
+            return;
+        }
+        for (Long key : new ArrayList<>(pendingReads.keySet())) {
+            ChatMessageDTO cursor = pendingReads.remove(key);
+            if (cursor == null) {
+                continue;
+            }
+            try {
+                // 只推进到客户端上报的位置，窗口内新到的消息保持未读
+                Long watermark = chatService.markMessagesAsRead(cursor.getSenderId(), cursor.getReceiverId(), cursor.getMessageId());
+                if (watermark == null) {
+                    // 水位没有推进（重复上报或位置落后），对方已经收到过这次回执
+                    continue;
+                }
+                cursor.setMessageId(watermark);
+                forward(cursor.getReceiverId(), cursor);
+            } catch (Exception e) {
+                log.error("处理已读事件失败: userId={}, targetUserId={}", cursor.getSenderId(), cursor.getReceiverId(), e);
+            }
+        }
+    }
+
+    /**
+     * 清理过期的正在输入记录
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void cleanup() {
+        long expireBefore = System.currentTimeMillis() - typingWindowMs;
+        typingForwarded.values().removeIf(last -> last < expireBefore);
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sessions", buckets.size());
+        stats.put("received", received.get());
+        stats.put("rateLimited", rateLimited.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("forwarded", forwarded.get());
+        stats.put("invalid", invalid.get());
+        stats.put("pendingReads", pendingReads.size());
+        return stats;
+    }
+
+    private void forward(Integer receiverId, ChatMessageDTO event) {
+        forwarded.incrementAndGet();
+        clusterRouter.route(receiverId, event);
+    }
+
+    private static ChatMessageDTO newEvent(String name, Integer senderId, Integer receiverId, Long messageId) {
+        ChatMessageDTO event = new ChatMessageDTO();
+        event.setMessageType(6); // 临时事件
+        event.setContent(name);
+        event.setSenderId(senderId);
+        event.setReceiverId(receiverId);
+        event.setMessageId(messageId);
+        event.setCreateTime(LocalDateTime.now());
+        return event;
+    }
+
+    private static long directedKey(Integer senderId, Integer receiverId) {
+        return ((long) senderId << 32) | (receiverId & 0xffffffffL);
+    }
+}
@@ -0,0 +1,215 @@
+package org.example.afd.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 聊天会话注册表
+ *
+ * 一个用户可以同时有多个设备连接，按用户保存会话数组（写时复制，读取无锁）。
+ * 在线状态按连接数引用计数：只有第一个连接建立（0→1）和最后一个连接断开（1→0）
+ * 时回调上线/离线处理，重连风暴中同一用户的反复连接不会重复写库。
+ * 分段锁内只修改会话数组和期望的在线状态，上线/离线回调（写库、写 Redis）在释放锁之后执行；
+ * 同一用户同一时刻只有一个线程执行回调，执行完再按最新的期望状态补齐，保证写入顺序，
+ * 回调期间发生的上线又离线会合并掉。
+ */
+@Slf4j
+@Component
+public class ChatSessionRegistry {
+
+    private static final WebSocketSession[] EMPTY = new WebSocketSession[0];
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final Map<Integer, WebSocketSession[]> userSessions = new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> sessionUsers = new ConcurrentHashMap<>();
+
+    /**
+     * 有连接或回调尚未执行完的用户，字段由所属分段锁保护
+     */
+    private final Map<Integer, Presence> presence = new ConcurrentHashMap<>();
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong onlineTransitions = new AtomicLong();
+    private final AtomicLong offlineTransitions = new AtomicLong();
+
+    private static final class Presence {
+        /**
+         * 期望状态：本节点是否有该用户的连接
+         */
+        boolean online;
+        /**
+         * 已经通过回调生效的状态
+         */
+        boolean applied;
+        /**
+         * 是否有线程正在执行该用户的回调
+         */
+        boolean settling;
+        Runnable onOnline;
+        Runnable onOffline;
+    }
+
+    public ChatSessionRegistry() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 注册会话
+     *
+     * @param onFirst 用户在本节点的第一个连接建立时执行
+     */
+    public void register(Integer userId, WebSocketSession session, Runnable onFirst) {
+        synchronized (lockFor(userId)) {
+            sessionUsers.put(session.getId(), userId);
+            WebSocketSession[] current = userSessions.getOrDefault(userId, EMPTY);
+            WebSocketSession[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = session;
+            userSessions.put(userId, updated);
+            connects.incrementAndGet();
+            if (current.length > 0) {
+                return;
+            }
+            onlineTransitions.incrementAndGet();
+            Presence state = presence.computeIfAbsent(userId, id -> new Presence());
+            state.online = true;
+            state.onOnline = onFirst;
+        }
+        settle(userId);
+    }
+
+    /**
+     * 注销会话，重复注销同一会话无副作用
+     *
+     * @param onLast 用户在本节点的最后一个连接断开时执行
+     * @return 会话所属用户，未注册返回 null
+     */
+    public Integer unregister(WebSocketSession session, Consumer<Integer> onLast) {
+        Integer userId = sessionUsers.get(session.getId());
+        if (userId == null) {
+            return null;
+        }
+        synchronized (lockFor(userId)) {
+            if (sessionUsers.remove(session.getId()) == null) {
+                return userId;
+            }
+            WebSocketSession[] current = userSessions.getOrDefault(userId, EMPTY);
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == session) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return userId;
+            }
+            if (current.length > 1) {
+                WebSocketSession[] updated = new WebSocketSession[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, index);
+                System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+                userSessions.put(userId, updated);
+                return userId;
+            }
+            userSessions.remove(userId);
+            offlineTransitions.incrementAndGet();
+            Presence state = presence.computeIfAbsent(userId, id -> new Presence());
+            state.online = false;
+            state.onOffline = () -> onLast.accept(userId);
+        }
+        settle(userId);
+        return userId;
+    }
+
+    /**
+     * 用户在本节点的全部会话
+     */
+    public WebSocketSession[] sessionsOf(Integer userId) {
+        return userSessions.getOrDefault(userId, EMPTY);
+    }
+
+    /**
+     * 会话所属用户
+     */
+    public Integer userOf(String sessionId) {
+        return sessionUsers.get(sessionId);
+    }
+
+    public int getUserCount() {
+        return userSessions.size();
+    }
+
+    public int getSessionCount() {
+        return sessionUsers.size();
+    }
+
+    /**
+     * 运行指标：连接数与实际发生的上线/离线状态变化次数之差即为省去的写库次数
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("users", getUserCount());
+        stats.put("sessions", getSessionCount());
+        stats.put("connects", connects.get());
+        stats.put("onlineTransitions", onlineTransitions.get());
+        stats.put("offlineTransitions", offlineTransitions.get());
+        return stats;
+    }
+
+    /**
+     * 在锁外执行回调，直到已生效状态与期望状态一致
+     *
+     * 已有线程在执行时直接返回，由该线程在回调结束后看到最新的期望状态
+     */
+    private void settle(Integer userId) {
+        Object lock = lockFor(userId);
+        Presence state;
+        synchronized (lock) {
+            state = presence.get(userId);
+            if (state == null || state.settling) {
+                return;
+            }
+            state.settling = true;
+        }
+        while (true) {
+            boolean target;
+            Runnable action;
+            synchronized (lock) {
+                target = state.online;
+                if (target == state.applied) {
+                    state.settling = false;
+                    if (!state.online) {
+                        presence.remove(userId);
+                    }
+                    return;
+                }
+                action = target ? state.onOnline : state.onOffline;
+            }
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                log.error("处理用户{}状态变化失败: userId={}", target ? "上线" : "离线", userId, e);
+            }
+            synchronized (lock) {
+                state.applied = target;
+            }
+        }
+    }
+
+    private Object lockFor(Integer userId) {
+        return locks[(userId.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+}
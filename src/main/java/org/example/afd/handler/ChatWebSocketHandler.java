@@ -1,21 +1,28 @@
 package org.example.afd.handler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.example.afd.cluster.ChatClusterRouter;
 import org.example.afd.dto.ChatMessageDTO;
 import org.example.afd.entity.UserChatMessage;
+import org.example.afd.service.ChatPersistPipeline;
 import org.example.afd.service.ChatService;
+import org.example.afd.service.ChatSyncService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
 
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
  * 聊天WebSocket处理器
  * 处理实时聊天消息的发送和接收
+ * 接收者连接在其他节点时由 ChatClusterRouter 转发
+ * 握手时声明 codec=binary 的连接使用 ChatBinaryCodec 二进制帧，其余使用 JSON 文本帧
  * 
  * @author AFD Team
  * @version 1.0
@@ -30,11 +37,38 @@ public class ChatWebSocketHandler implements WebSocketHandler {
     @Autowired
     private ObjectMapper objectMapper;
     
-    // 存储用户ID和WebSocket会话的映射
-    private final Map<Integer, WebSocketSession> userSessions = new ConcurrentHashMap<>();
+    @Autowired
+    private ChatClusterRouter clusterRouter;
+    
+    @Autowired
+    private ChatPersistPipeline chatPersistPipeline;
+    
+    @Autowired
+    private WebSocketOutbound outbound;
+    
+    @Autowired
+    private ChatSyncService chatSyncService;
+    
+    @Autowired
+    private ChatEventDispatcher eventDispatcher;
+    
+    // 用户ID与会话的映射，一个用户可以有多个设备连接
+    @Autowired
+    private ChatSessionRegistry sessionRegistry;
     
-    // 存储会话ID和用户ID的映射
-    private final Map<String, Integer> sessionUsers = new ConcurrentHashMap<>();
+    @PostConstruct
+    public void init() {
+        clusterRouter.bindLocalDelivery(this::deliverLocal);
+        outbound.setPersistedCheck(chatPersistPipeline::isPersisted);
+        outbound.setFrameFactory(session -> {
+            ChatMessageDTO resyncMsg = new ChatMessageDTO();
+            resyncMsg.setMessageType(5); // 系统消息
+            resyncMsg.setContent("部分消息未能实时送达，请重新同步");
+            resyncMsg.setExtraData(WebSocketOutbound.RESYNC_HINT);
+            resyncMsg.setCreateTime(LocalDateTime.now());
+            return encode(resyncMsg, isBinary(session));
+        });
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
@@ -48,14 +82,15 @@ public class ChatWebSocketHandler implements WebSocketHandler {
                 return;
             }
             
-            // 存储会话
-            userSessions.put(userId, session);
-            sessionUsers.put(session.getId(), userId);
+            // 存储会话，用户在本节点的第一个连接建立时才更新在线状态
+            outbound.register(session);
+            sessionRegistry.register(userId, session, () -> {
+                clusterRouter.online(userId);
+                chatService.setUserOnline(userId, "WebSocket", 3, session.getId(), null, null);
+            });
             
-            log.info("用户{}({})建立WebSocket连接: sessionId={}", username, userId, session.getId());
-            
-            // 更新用户在线状态 - 使用新的方法
-            chatService.setUserOnline(userId, "WebSocket", 3, session.getId(), null, null);
+            log.info("用户{}({})建立WebSocket连接: sessionId={}, 本节点连接数={}",
+                    username, userId, session.getId(), sessionRegistry.sessionsOf(userId).length);
             
             // 发送连接成功消息
             ChatMessageDTO connectMsg = new ChatMessageDTO();
@@ -65,6 +100,12 @@ public class ChatWebSocketHandler implements WebSocketHandler {
             
             sendMessage(session, connectMsg);
             
+            // 握手时带了同步序号，随即推送离线期间的增量
+            Long syncSeq = (Long) session.getAttributes().get("syncSeq");
+            if (syncSeq != null && chatSyncService.isEnabled()) {
+                pushSync(session, userId, syncSeq);
+            }
+            
         } catch (Exception e) {
             log.error("建立WebSocket连接异常", e);
             session.close();
@@ -74,17 +115,34 @@ public class ChatWebSocketHandler implements WebSocketHandler {
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
         try {
-            Integer senderId = sessionUsers.get(session.getId());
+            Integer senderId = sessionRegistry.userOf(session.getId());
             if (senderId == null) {
                 log.warn("未找到发送者ID，忽略消息");
                 return;
             }
             
-            String payload = message.getPayload().toString();
-            log.info("收到来自用户{}的消息: {}", senderId, payload);
-            
             // 解析消息
-            ChatMessageDTO messageDTO = objectMapper.readValue(payload, ChatMessageDTO.class);
+            ChatMessageDTO messageDTO;
+            if (message instanceof BinaryMessage) {
+                ByteBuffer payload = ((BinaryMessage) message).getPayload();
+                int size = payload.remaining();
+                messageDTO = ChatBinaryCodec.decode(payload);
+                if (!messageDTO.isEventMessage()) {
+                    log.info("收到来自用户{}的二进制消息: {}字节", senderId, size);
+                }
+            } else {
+                String payload = message.getPayload().toString();
+                messageDTO = objectMapper.readValue(payload, ChatMessageDTO.class);
+                if (!messageDTO.isEventMessage()) {
+                    log.info("收到来自用户{}的消息: {}", senderId, payload);
+                }
+            }
+            
+            // 临时事件不入库、不回执，交给事件分发处理
+            if (messageDTO.isEventMessage()) {
+                eventDispatcher.handle(session, senderId, messageDTO);
+                return;
+            }
             messageDTO.setSenderId(senderId);
             messageDTO.setCreateTime(LocalDateTime.now());
             
@@ -104,18 +162,22 @@ public class ChatWebSocketHandler implements WebSocketHandler {
             // 注意：UserChatMessage没有isRead属性，使用messageStatus替代
             chatMessage.setMessageStatus(1); // 1-已发送
             
-            // 保存消息
-            Long messageId = chatService.sendMessage(chatMessage);
+            // 提交到持久化管道，预分配消息ID后立即返回，入库异步完成
+            Long messageId = chatPersistPipeline.submit(chatMessage);
+            if (messageId == null) {
+                throw new IllegalStateException("消息保存失败");
+            }
             messageDTO.setMessageId(messageId);
             
-            // 转发消息给接收者
-            WebSocketSession receiverSession = userSessions.get(messageDTO.getReceiverId());
-            if (receiverSession != null && receiverSession.isOpen()) {
-                sendMessage(receiverSession, messageDTO);
-                log.info("消息已转发给用户{}", messageDTO.getReceiverId());
-            } else {
-                log.info("用户{}不在线，消息已保存到数据库", messageDTO.getReceiverId());
-            }
+            // 转发消息给接收者，接收者可能连接在其他节点
+            Integer receiverId = messageDTO.getReceiverId();
+            clusterRouter.route(receiverId, messageDTO).thenAccept(delivered -> {
+                if (delivered) {
+                    log.info("消息已转发给用户{}", receiverId);
+                } else {
+                    log.info("用户{}不在线，消息已保存到数据库", receiverId);
+                }
+            });
             
             // 给发送者发送确认消息
             ChatMessageDTO ackMsg = new ChatMessageDTO();
@@ -141,32 +203,30 @@ public class ChatWebSocketHandler implements WebSocketHandler {
 
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
-        Integer userId = sessionUsers.get(session.getId());
-        log.error("WebSocket传输异常: userId={}, sessionId={}", userId, session.getId(), exception);
-        
-        // 清理会话
-        if (userId != null) {
-            userSessions.remove(userId);
-            chatService.setUserOffline(userId);
-        }
-        sessionUsers.remove(session.getId());
+        log.error("WebSocket传输异常: userId={}, sessionId={}",
+                sessionRegistry.userOf(session.getId()), session.getId(), exception);
+        removeSession(session);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
-        Integer userId = sessionUsers.get(session.getId());
-        
+        Integer userId = removeSession(session);
         if (userId != null) {
             log.info("用户{}断开WebSocket连接: sessionId={}, 状态={}", userId, session.getId(), closeStatus);
-            
-            // 清理会话
-            userSessions.remove(userId);
-            sessionUsers.remove(session.getId());
-            
-            // 更新用户离线状态
-            chatService.setUserOffline(userId);
         }
     }
+    
+    /**
+     * 清理会话，用户在本节点的最后一个连接断开时才更新离线状态
+     */
+    private Integer removeSession(WebSocketSession session) {
+        outbound.unregister(session);
+        eventDispatcher.unregister(session);
+        return sessionRegistry.unregister(session, userId -> {
+            clusterRouter.offline(userId);
+            chatService.setUserOffline(userId);
+        });
+    }
 
     @Override
     public boolean supportsPartialMessages() {
@@ -174,14 +234,12 @@ public class ChatWebSocketHandler implements WebSocketHandler {
     }
     
     /**
-     * 发送消息到指定会话
+     * 发送消息到指定会话，放入会话的出站队列后立即返回
      */
     private void sendMessage(WebSocketSession session, ChatMessageDTO message) {
         try {
             if (session.isOpen()) {
-                String jsonMessage = objectMapper.writeValueAsString(message);
-                session.sendMessage(new TextMessage(jsonMessage));
-                log.debug("消息已发送: {}", jsonMessage);
+                outbound.send(session, encode(message, isBinary(session)), message);
             }
         } catch (Exception e) {
             log.error("发送WebSocket消息失败", e);
@@ -189,27 +247,89 @@ public class ChatWebSocketHandler implements WebSocketHandler {
     }
     
     /**
-     * 获取在线用户数量
+     * 推送增量同步结果，以系统消息发送，extraData 为 {"type":"sync","data":同步结果}
+     */
+    private void pushSync(WebSocketSession session, Integer userId, long since) {
+        try {
+            Map<String, Object> payload = new HashMap<>();
+            payload.put("type", "sync");
+            payload.put("data", chatSyncService.sync(userId, since, null));
+            
+            ChatMessageDTO syncMsg = new ChatMessageDTO();
+            syncMsg.setMessageType(5); // 系统消息
+            syncMsg.setContent("同步");
+            syncMsg.setExtraData(objectMapper.writeValueAsString(payload));
+            syncMsg.setCreateTime(LocalDateTime.now());
+            sendMessage(session, syncMsg);
+        } catch (Exception e) {
+            // 推送失败时客户端仍可通过同步接口拉取
+            log.error("推送增量同步失败: userId={}, since={}", userId, since, e);
+        }
+    }
+    
+    /**
+     * 编码为WebSocket帧
+     */
+    private WebSocketMessage<?> encode(ChatMessageDTO message, boolean binary) {
+        if (binary) {
+            return new BinaryMessage(ChatBinaryCodec.encode(message));
+        }
+        try {
+            return new TextMessage(objectMapper.writeValueAsString(message));
+        } catch (Exception e) {
+            throw new IllegalStateException("消息序列化失败", e);
+        }
+    }
+    
+    private static boolean isBinary(WebSocketSession session) {
+        return "binary".equals(session.getAttributes().get("codec"));
+    }
+    
+    /**
+     * 投递到用户在本节点上的全部连接，各连接的出站队列并行发送
+     */
+    private boolean deliverLocal(Integer userId, ChatMessageDTO message) {
+        WebSocketSession[] sessions = sessionRegistry.sessionsOf(userId);
+        if (sessions.length == 0) {
+            return false;
+        }
+        // 同一用户的多个连接可能使用不同编码，每种编码最多序列化一次
+        WebSocketMessage<?> textFrame = null;
+        WebSocketMessage<?> binaryFrame = null;
+        boolean delivered = false;
+        for (WebSocketSession session : sessions) {
+            if (session.isOpen()) {
+                WebSocketMessage<?> frame;
+                if (isBinary(session)) {
+                    frame = binaryFrame != null ? binaryFrame : (binaryFrame = encode(message, true));
+                } else {
+                    frame = textFrame != null ? textFrame : (textFrame = encode(message, false));
+                }
+                outbound.send(session, frame, message);
+                delivered = true;
+            }
+        }
+        return delivered;
+    }
+    
+    /**
+     * 获取本节点在线用户数量
      */
     public int getOnlineUserCount() {
-        return userSessions.size();
+        return sessionRegistry.getUserCount();
     }
     
     /**
-     * 检查用户是否在线
+     * 检查用户是否连接在集群中的某个节点
      */
     public boolean isUserOnline(Integer userId) {
-        WebSocketSession session = userSessions.get(userId);
-        return session != null && session.isOpen();
+        return sessionRegistry.sessionsOf(userId).length > 0 || clusterRouter.isOnline(userId);
     }
     
     /**
-     * 向指定用户发送消息
+     * 向指定用户发送消息，用户连接在其他节点时转发
      */
     public void sendMessageToUser(Integer userId, ChatMessageDTO message) {
-        WebSocketSession session = userSessions.get(userId);
-        if (session != null && session.isOpen()) {
-            sendMessage(session, message);
-        }
+        clusterRouter.route(userId, message);
     }
 } 
\ No newline at end of file
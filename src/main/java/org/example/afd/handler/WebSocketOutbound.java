@@ -0,0 +1,366 @@
+package org.example.afd.handler;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.dto.ChatMessageDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.NativeWebSocketSession;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+
+/**
+ * WebSocket 出站发送队列
+ *
+ * 1. 每个会话一个有界的有序队列，调用方只负责入队，不在自己的线程上写套接字，
+ *    慢连接不会阻塞发送者的处理线程
+ * 2. 队列由小线程池排空，同一会话同一时刻只有一个线程在发送，保证顺序与线程安全；
+ *    每次最多连续发送固定条数后让出线程，避免单个会话占满线程池；
+ *    写套接字设有超时，卡住的连接超时后被关闭，不会长期占住发送线程；正常连接写入只是拷贝到套接字缓冲区，
+ *    只有客户端不再读取、缓冲区写满时才会阻塞，超时取较短的值，尽快腾出线程
+ * 3. 队列满时按配置的策略处理：
+ *    drop-oldest 丢弃最早的消息，丢弃过聊天消息时队列空出后补发一条同步提示；
+ *    disconnect 断开连接，由客户端重连后拉取；
+ *    spill 放弃推送已确认入库的聊天消息（接收者可从数据库拉取），队列空出后补发一条同步提示，
+ *    队列中没有可放弃的消息时断开连接
+ */
+@Component
+@Slf4j
+public class WebSocketOutbound {
+
+    /**
+     * 队列满时的处理策略
+     */
+    public enum OverflowPolicy {
+        DROP_OLDEST, DISCONNECT, SPILL
+    }
+
+    /**
+     * 单个会话每次最多连续发送的条数
+     */
+    private static final int DRAIN_QUOTA = 64;
+
+    /**
+     * 溢出后补发的同步提示内容，客户端收到后重新拉取消息
+     */
+    public static final String RESYNC_HINT = "{\"type\":\"resync\"}";
+
+    /**
+     * Tomcat 阻塞发送的超时时间属性，单位毫秒
+     */
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    @Value("${chat.outbound.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Value("${chat.outbound.overflow-policy:spill}")
+    private String overflowPolicyName;
+
+    @Value("${chat.outbound.threads:0}")
+    private int threads;
+
+    @Value("${chat.outbound.send-timeout-ms:1000}")
+    private long sendTimeoutMs;
+
+    private OverflowPolicy overflowPolicy;
+    private ExecutorService executor;
+
+    private final Map<String, SessionQueue> queues = new ConcurrentHashMap<>();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong sendFailures = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong disconnected = new AtomicLong();
+    private final AtomicLong latencyTotalMicros = new AtomicLong();
+    private final AtomicLong latencyMaxMicros = new AtomicLong();
+    private final AtomicLong latencySamples = new AtomicLong();
+
+    /**
+     * 生成同步提示帧，由处理器按会话的编码方式提供
+     */
+    public interface FrameFactory {
+        WebSocketMessage<?> resyncFrame(WebSocketSession session);
+    }
+
+    private volatile FrameFactory frameFactory;
+
+    /**
+     * 判断聊天消息是否已经入库，未设置时视为均未入库
+     */
+    private volatile LongPredicate persistedCheck = messageId -> false;
+
+    private static final class Outgoing {
+        final WebSocketMessage<?> frame;
+        /**
+         * 聊天消息ID，系统消息等为 null
+         */
+        final Long messageId;
+        final long enqueuedAt;
+
+        Outgoing(WebSocketMessage<?> frame, Long messageId) {
+            this.frame = frame;
+            this.messageId = messageId;
+            this.enqueuedAt = System.nanoTime();
+        }
+    }
+
+    private final class SessionQueue implements Runnable {
+        final WebSocketSession session;
+        final ArrayDeque<Outgoing> frames = new ArrayDeque<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final AtomicInteger depth = new AtomicInteger();
+        boolean spilledSinceDrain;
+
+        SessionQueue(WebSocketSession session) {
+            this.session = session;
+            applySendTimeout(session);
+        }
+
+        void offer(Outgoing outgoing) {
+            synchronized (frames) {
+                if (frames.size() >= queueCapacity && !overflow(outgoing)) {
+                    return;
+                }
+                frames.addLast(outgoing);
+                depth.set(frames.size());
+            }
+            schedule();
+        }
+
+        /**
+         * @return 是否仍需把新消息入队
+         */
+        private boolean overflow(Outgoing outgoing) {
+            switch (overflowPolicy) {
+                case DROP_OLDEST:
+                    Outgoing oldest = frames.pollFirst();
+                    dropped.incrementAndGet();
+                    if (oldest != null && oldest.messageId != null) {
+                        // 客户端收到的消息出现缺口，补发同步提示让其重新拉取
+                        spilledSinceDrain = true;
+                    }
+                    return true;
+                case DISCONNECT:
+                    frames.clear();
+                    depth.set(0);
+                    disconnected.incrementAndGet();
+                    log.warn("会话发送队列已满，断开连接: sessionId={}", session.getId());
+                    executor.execute(() -> close(CloseStatus.SESSION_NOT_RELIABLE));
+                    return false;
+                case SPILL:
+                default:
+                    // 只放弃已确认入库的聊天消息，其次丢弃系统消息；
+                    // 仍在写库队列中的聊天消息不能丢，只能断开连接由客户端重连后拉取
+                    if (isPersisted(outgoing)) {
+                        spilledSinceDrain = true;
+                        spilled.incrementAndGet();
+                        return false;
+                    }
+                    if (removeFirst(true) || removeFirst(false)) {
+                        spilledSinceDrain = true;
+                        return true;
+                    }
+                    frames.clear();
+                    depth.set(0);
+                    disconnected.incrementAndGet();
+                    log.warn("会话发送队列已满且消息均未入库，断开连接: sessionId={}", session.getId());
+                    executor.execute(() -> close(CloseStatus.SESSION_NOT_RELIABLE));
+                    return false;
+            }
+        }
+
+        /**
+         * 移除队列中第一条已入库的聊天消息，或第一条非聊天消息
+         */
+        private boolean removeFirst(boolean persisted) {
+            for (var iterator = frames.iterator(); iterator.hasNext(); ) {
+                Outgoing queued = iterator.next();
+                if (persisted ? isPersisted(queued) : queued.messageId == null) {
+                    iterator.remove();
+                    (persisted ? spilled : dropped).incrementAndGet();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < DRAIN_QUOTA; i++) {
+                Outgoing outgoing;
+                synchronized (frames) {
+                    outgoing = frames.pollFirst();
+                    if (outgoing == null && spilledSinceDrain && frameFactory != null) {
+                        spilledSinceDrain = false;
+                        outgoing = new Outgoing(frameFactory.resyncFrame(session), null);
+                    }
+                    depth.set(frames.size());
+                }
+                if (outgoing == null) {
+                    break;
+                }
+                send(outgoing);
+            }
+            scheduled.set(false);
+            // 释放标记后再检查一次，避免与并发入队错过调度
+            boolean pending;
+            synchronized (frames) {
+                pending = !frames.isEmpty() || (spilledSinceDrain && frameFactory != null);
+            }
+            if (pending && session.isOpen()) {
+                schedule();
+            }
+        }
+
+        private void send(Outgoing outgoing) {
+            if (!session.isOpen()) {
+                return;
+            }
+            try {
+                session.sendMessage(outgoing.frame);
+                sent.incrementAndGet();
+                long micros = (System.nanoTime() - outgoing.enqueuedAt) / 1000;
+                latencyTotalMicros.addAndGet(micros);
+                latencySamples.incrementAndGet();
+                latencyMaxMicros.accumulateAndGet(micros, Math::max);
+            } catch (Exception e) {
+                sendFailures.incrementAndGet();
+                log.warn("发送WebSocket消息失败，关闭会话: sessionId={}", session.getId(), e);
+                synchronized (frames) {
+                    frames.clear();
+                    depth.set(0);
+                }
+                close(CloseStatus.SERVER_ERROR);
+            }
+        }
+
+        private void close(CloseStatus status) {
+            try {
+                if (session.isOpen()) {
+                    session.close(status);
+                }
+            } catch (Exception e) {
+                log.debug("关闭会话失败: sessionId={}", session.getId(), e);
+            }
+        }
+    }
+
+    private boolean isPersisted(Outgoing outgoing) {
+        return outgoing.messageId != null && persistedCheck.test(outgoing.messageId);
+    }
+
+    /**
+     * 为会话设置阻塞发送超时，超时后 sendMessage 抛出异常，会话随即被关闭
+     */
+    private void applySendTimeout(WebSocketSession session) {
+        if (session instanceof NativeWebSocketSession nativeSession
+                && nativeSession.getNativeSession() instanceof jakarta.websocket.Session wsSession) {
+            wsSession.getUserProperties().put(BLOCKING_SEND_TIMEOUT, sendTimeoutMs);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        overflowPolicy = OverflowPolicy.valueOf(overflowPolicyName.trim().toUpperCase().replace('-', '_'));
+        int poolSize = threads > 0 ? threads : Math.max(2, Runtime.getRuntime().availableProcessors());
+        AtomicInteger index = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread thread = new Thread(r, "ws-send-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("WebSocket出站队列: capacity={}, overflow={}, threads={}, sendTimeoutMs={}",
+            queueCapacity, overflowPolicy, poolSize, sendTimeoutMs);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    public void setFrameFactory(FrameFactory frameFactory) {
+        this.frameFactory = frameFactory;
+    }
+
+    public void setPersistedCheck(LongPredicate persistedCheck) {
+        this.persistedCheck = persistedCheck;
+    }
+
+    /**
+     * 会话建立时注册
+     */
+    public void register(WebSocketSession session) {
+        queues.put(session.getId(), new SessionQueue(session));
+    }
+
+    /**
+     * 会话关闭时移除，未发送的消息丢弃
+     */
+    public void unregister(WebSocketSession session) {
+        queues.remove(session.getId());
+    }
+
+    /**
+     * 把一帧放入会话的发送队列
+     *
+     * @param message 对应的聊天消息，确认入库的聊天消息在队列满时可以放弃推送；系统消息传 null
+     */
+    public void send(WebSocketSession session, WebSocketMessage<?> frame, ChatMessageDTO message) {
+        SessionQueue queue = queues.get(session.getId());
+        if (queue == null) {
+            return;
+        }
+        boolean chat = message != null && message.getMessageId() != null
+            && !message.isSystemMessage() && !message.isEventMessage();
+        queue.offer(new Outgoing(frame, chat ? message.getMessageId() : null));
+    }
+
+    /**
+     * 本节点运行指标：队列深度与发送延迟（入队到写出，微秒）
+     */
+    public Map<String, Object> getStatistics() {
+        int totalDepth = 0;
+        int maxDepth = 0;
+        for (SessionQueue queue : queues.values()) {
+            int depth = queue.depth.get();
+            totalDepth += depth;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        long samples = latencySamples.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sessions", queues.size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("overflowPolicy", overflowPolicy.name());
+        stats.put("sendTimeoutMs", sendTimeoutMs);
+        stats.put("queuedFrames", totalDepth);
+        stats.put("maxQueueDepth", maxDepth);
+        stats.put("sent", sent.get());
+        stats.put("sendFailures", sendFailures.get());
+        stats.put("dropped", dropped.get());
+        stats.put("spilled", spilled.get());
+        stats.put("disconnected", disconnected.get());
+        stats.put("avgLatencyMicros", samples == 0 ? 0 : latencyTotalMicros.get() / samples);
+        stats.put("maxLatencyMicros", latencyMaxMicros.get());
+        return stats;
+    }
+}
@@ -1,6 +1,7 @@
 package org.example.afd.interceptor;
 
 import lombok.extern.slf4j.Slf4j;
+import org.example.afd.model.AuthPrincipal;
 import org.example.afd.utils.JwtUtils;
 import org.example.afd.utils.UserIdHolder;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -67,48 +68,17 @@ public class JwtAuthInterceptor implements HandlerInterceptor {
                 token.length() > 20 ? token.substring(0, 20) + "..." : token);
 
         try {
-            // 验证token
-            if (!jwtUtils.validateToken(token)) {
+            // 验证token，同一令牌只在第一次出现时验签，之后直接使用缓存的身份
+            AuthPrincipal principal = jwtUtils.authenticate(token);
+            if (principal == null) {
                 log.warn("令牌无效或已过期: {}，令牌验证失败详情将由JwtUtils输出", request.getRequestURI());
-                
-                // 添加令牌过期检查的详细日志
-                try {
-                    boolean isExpired = jwtUtils.isTokenExpired(token);
-                    log.warn("令牌过期状态: {}", isExpired ? "已过期" : "未过期但无效");
-                    
-                    if (!isExpired) {
-                        // 如果未过期但验证失败，可能是格式或签名问题
-                        log.warn("令牌未过期但验证失败，可能是格式或签名问题");
-                    }
-                } catch (Exception e) {
-                    log.warn("检查令牌过期状态时出错", e);
-                }
-                
                 handleAuthError(response, "认证令牌已过期或无效", HttpStatus.UNAUTHORIZED.value());
                 return false;
             }
 
-            // 优先从请求头获取用户ID
-            Integer userId = null;
-            String userIdHeader = request.getHeader("X-User-ID");
-            if (userIdHeader != null && !userIdHeader.isEmpty()) {
-                try {
-                    userId = Integer.parseInt(userIdHeader);
-                    log.debug("从请求头获取到用户ID: {}", userId);
-                } catch (NumberFormatException e) {
-                    log.warn("请求头中的用户ID格式不正确: {}", userIdHeader);
-                }
-            }
-            
-            // 如果请求头中没有有效的用户ID，则从token中获取
-            if (userId == null) {
-                userId = jwtUtils.getUserIdFromToken(token);
-                log.debug("从JWT令牌获取到用户ID: {}", userId);
-            }
-            
-            // 从token获取用户名和角色
-            String username = jwtUtils.getUsernameFromToken(token);
-            String role = jwtUtils.getRoleFromToken(token);
+            Integer userId = principal.getUserId();
+            String username = principal.getUsername();
+            String role = principal.getRole();
 
             if (userId == null || username == null) {
                 log.warn("令牌中缺少必要信息: {}，用户ID: {}, 用户名: {}", 
@@ -117,21 +87,24 @@ public class JwtAuthInterceptor implements HandlerInterceptor {
                 return false;
             }
 
+            // 用户ID以令牌为准，请求头中的X-User-ID不能冒充其他用户
+            String userIdHeader = request.getHeader("X-User-ID");
+            if (userIdHeader != null && !userIdHeader.isEmpty() && !userIdHeader.equals(String.valueOf(userId))) {
+                log.warn("请求头中的用户ID与令牌不一致，已忽略: header={}, token={}, uri={}",
+                        userIdHeader, userId, request.getRequestURI());
+            }
+
             // 设置到request属性中
+            request.setAttribute(AuthPrincipal.REQUEST_ATTRIBUTE, principal);
             request.setAttribute("userId", userId);
             request.setAttribute("username", username);
             request.setAttribute("role", role);
             
             // 直接调用UserIdHolder设置用户ID
-            try {
-                UserIdHolder.setUserId(userId);
-                log.debug("已通过JwtAuthInterceptor直接设置UserIdHolder: {}", userId);
-            } catch (Exception e) {
-                log.error("直接设置UserIdHolder失败", e);
-            }
+            UserIdHolder.setUserId(userId);
 
             // 记录访问日志
-            log.info("用户 {} (ID: {}, 角色: {}) 访问 {}", username, userId, role, request.getRequestURI());
+            log.debug("用户 {} (ID: {}, 角色: {}) 访问 {}", username, userId, role, request.getRequestURI());
 
             return true;
         } catch (Exception e) {
@@ -1,6 +1,7 @@
 package org.example.afd.interceptor;
 
 import lombok.extern.slf4j.Slf4j;
+import org.example.afd.model.AuthPrincipal;
 import org.example.afd.utils.UserIdHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
@@ -23,8 +24,14 @@ public class UserIdInterceptor implements HandlerInterceptor {
         // 尝试从不同来源获取用户ID
         Integer userId = null;
         
-        // 1. 尝试从请求属性中获取
-        Object userIdObj = request.getAttribute("userId");
+        // 1. JwtAuthInterceptor已验证的身份
+        Object principal = request.getAttribute(AuthPrincipal.REQUEST_ATTRIBUTE);
+        if (principal instanceof AuthPrincipal) {
+            userId = ((AuthPrincipal) principal).getUserId();
+        }
+
+        // 2. 尝试从请求属性中获取
+        Object userIdObj = userId == null ? request.getAttribute("userId") : null;
         log.debug("从请求属性获取用户ID: {}", userIdObj);
         
         if (userIdObj != null) {
@@ -40,7 +47,7 @@ public class UserIdInterceptor implements HandlerInterceptor {
             }
         }
         
-        // 2. 如果请求属性中没有，尝试从请求头获取
+        // 3. 如果请求属性中没有，尝试从请求头获取
         if (userId == null) {
             String userIdHeader = request.getHeader("X-User-ID");
             log.debug("从请求头获取用户ID: {}", userIdHeader);
@@ -58,7 +65,7 @@ public class UserIdInterceptor implements HandlerInterceptor {
         // 如果获取到有效的用户ID，设置到UserIdHolder中
         if (userId != null && userId > 0) {
             UserIdHolder.setUserId(userId);
-            log.info("已设置用户ID到UserIdHolder: {}", userId);
+            log.debug("已设置用户ID到UserIdHolder: {}", userId);
             return true;
         }
         
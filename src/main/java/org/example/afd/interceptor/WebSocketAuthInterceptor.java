@@ -1,6 +1,7 @@
 package org.example.afd.interceptor;
 
 import lombok.extern.slf4j.Slf4j;
+import org.example.afd.model.AuthPrincipal;
 import org.example.afd.utils.JwtUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.server.ServerHttpRequest;
@@ -89,13 +90,13 @@ public class WebSocketAuthInterceptor implements HandshakeInterceptor {
             String username = null;
             
             try {
-                // 先验证token有效性
-                isValid = jwtUtils.validateToken(token);
+                // 验证token并取出用户信息，只解析一次
+                AuthPrincipal principal = jwtUtils.authenticate(token);
+                isValid = principal != null;
                 
                 if (isValid) {
-                    // 如果token有效，获取用户信息
-                    userId = jwtUtils.getUserIdFromToken(token);
-                    username = jwtUtils.getUsernameFromToken(token);
+                    userId = principal.getUserId();
+                    username = principal.getUsername();
                 }
                 
                 log.debug("Token验证结果: isValid={}, userId={}, username={}", isValid, userId, username);
@@ -121,6 +122,17 @@ public class WebSocketAuthInterceptor implements HandshakeInterceptor {
             attributes.put("username", username);
             attributes.put("token", token);
             
+            // 客户端带上已同步到的序号时，连接建立后推送增量同步结果
+            Long syncSeq = parseSyncSeq(query);
+            if (syncSeq != null) {
+                attributes.put("syncSeq", syncSeq);
+            }
+            
+            // 客户端声明 codec=binary 时该连接收发二进制帧，否则使用 JSON 文本帧
+            if ("binary".equals(parseParam(query, "codec"))) {
+                attributes.put("codec", "binary");
+            }
+            
             log.info("WebSocket握手成功: userId={}, username={}", userId, username);
             return true;
             
@@ -130,6 +142,32 @@ public class WebSocketAuthInterceptor implements HandshakeInterceptor {
         }
     }
 
+    private Long parseSyncSeq(String query) {
+        String value = parseParam(query, "syncSeq");
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            log.debug("忽略无效的同步序号: {}", value);
+            return null;
+        }
+    }
+
+    private String parseParam(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        String prefix = name + "=";
+        for (String param : query.split("&")) {
+            if (param.startsWith(prefix)) {
+                return param.substring(prefix.length());
+            }
+        }
+        return null;
+    }
+
     @Override
     public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
                              WebSocketHandler wsHandler, Exception exception) {
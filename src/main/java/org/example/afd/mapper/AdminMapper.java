@@ -1,6 +1,7 @@
 package org.example.afd.mapper;
 
 import org.apache.ibatis.annotations.*;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -508,6 +509,30 @@ public interface AdminMapper {
     @Select("SELECT COUNT(*) FROM user_login_history")
     int getLoginRecordsCount();
     
+    /**
+     * 游标分页获取登录记录列表，按 (login_time, id) 倒序
+     * @param cursorTime 上一页最后一条的登录时间，第一页为 null
+     * @param cursorId 上一页最后一条的记录ID
+     * @param limit 查询数量
+     * @return 登录记录列表
+     */
+    @Select("<script>" +
+            "SELECT lr.id as record_id, lr.user_id, u.username, u.role, lr.login_ip, " +
+            "lr.login_device, lr.login_time, lr.login_status, lr.login_message " +
+            "FROM user_login_history lr LEFT JOIN users u ON lr.user_id = u.user_id " +
+            "<where>" +
+            "<if test='userId != null'>lr.user_id = #{userId}</if>" +
+            "<if test='cursorTime != null'>" +
+            "AND (lr.login_time &lt; #{cursorTime} OR (lr.login_time = #{cursorTime} AND lr.id &lt; #{cursorId}))" +
+            "</if>" +
+            "</where>" +
+            "ORDER BY lr.login_time DESC, lr.id DESC LIMIT #{limit}" +
+            "</script>")
+    List<Map<String, Object>> getLoginRecordsByCursor(@Param("userId") Long userId,
+                                                      @Param("cursorTime") LocalDateTime cursorTime,
+                                                      @Param("cursorId") Long cursorId,
+                                                      @Param("limit") int limit);
+    
     /**
      * 根据用户ID获取登录记录
      * @param userId 用户ID
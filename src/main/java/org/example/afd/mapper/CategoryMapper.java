@@ -29,6 +29,13 @@ public interface CategoryMapper {
     @Select("SELECT * FROM shop_category WHERE category_id = #{categoryId}")
     Map<String, Object> selectCategoryById(@Param("categoryId") Long categoryId);
     
+    /**
+     * 查询全部分类（含停用），用于构造分类树快照
+     * @return 全部分类，按排序值升序、创建时间降序
+     */
+    @Select("SELECT * FROM shop_category ORDER BY sort_order ASC, create_time DESC")
+    List<Map<String, Object>> selectAllCategories();
+    
     /**
      * 查询分类及其子分类
      * @param categoryId 分类ID
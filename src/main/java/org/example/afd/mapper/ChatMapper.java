@@ -20,15 +20,36 @@ public interface ChatMapper {
     // ==================== 消息相关操作 ====================
     
     /**
-     * 插入聊天消息
+     * 插入已分配ID的聊天消息，消息ID统一由雪花算法生成，保证随时间递增
      */
-    @Insert("INSERT INTO user_chat_message (conversation_id, sender_id, receiver_id, message_type, content, " +
+    @Insert("INSERT INTO user_chat_message (message_id, conversation_id, sender_id, receiver_id, message_type, content, " +
             "media_url, thumbnail_url, message_status, is_recalled, extra_data, create_time) " +
-            "VALUES (#{conversationId}, #{senderId}, #{receiverId}, #{messageType}, #{content}, " +
+            "VALUES (#{messageId}, #{conversationId}, #{senderId}, #{receiverId}, #{messageType}, #{content}, " +
             "#{mediaUrl}, #{thumbnailUrl}, #{messageStatus}, #{isRecalled}, #{extraData}, #{createTime})")
-    @Options(useGeneratedKeys = true, keyProperty = "messageId")
     int insertMessage(UserChatMessage message);
 
+    /**
+     * 批量插入已分配ID的聊天消息，主键重复的行忽略，重放时保证幂等
+     */
+    @Insert("<script>" +
+            "INSERT IGNORE INTO user_chat_message (message_id, conversation_id, sender_id, receiver_id, message_type, content, " +
+            "media_url, thumbnail_url, message_status, is_recalled, extra_data, create_time) VALUES " +
+            "<foreach collection='messages' item='m' separator=','>" +
+            "(#{m.messageId}, #{m.conversationId}, #{m.senderId}, #{m.receiverId}, #{m.messageType}, #{m.content}, " +
+            "#{m.mediaUrl}, #{m.thumbnailUrl}, #{m.messageStatus}, #{m.isRecalled}, #{m.extraData}, #{m.createTime})" +
+            "</foreach>" +
+            "</script>")
+    int batchInsertMessages(@Param("messages") List<UserChatMessage> messages);
+
+    /**
+     * 查询给定消息ID中已经入库的部分，重放或重试前用于区分本次真正新插入的消息
+     */
+    @Select("<script>" +
+            "SELECT message_id FROM user_chat_message WHERE message_id IN " +
+            "<foreach collection='messageIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    List<Long> selectExistingMessageIds(@Param("messageIds") List<Long> messageIds);
+
     /**
      * 根据消息ID查询消息
      */
@@ -48,35 +69,19 @@ public interface ChatMapper {
             "   OR (m.sender_id = #{targetUserId} AND m.receiver_id = #{currentUserId})) " +
             "AND m.is_recalled = 0 " +
             "AND (#{lastMessageId} IS NULL OR m.message_id < #{lastMessageId}) " +
-            "ORDER BY m.create_time DESC " +
+            "ORDER BY m.message_id DESC " +
             "LIMIT #{pageSize}")
     List<ChatMessageDTO> selectMessagesBetweenUsers(@Param("currentUserId") Integer currentUserId, 
                                                    @Param("targetUserId") Integer targetUserId,
                                                    @Param("lastMessageId") Long lastMessageId,
                                                    @Param("pageSize") Integer pageSize);
 
-    /**
-     * 标记消息为已读
-     */
-    @Update("UPDATE user_chat_message SET message_status = 3, read_time = #{readTime} " +
-            "WHERE receiver_id = #{currentUserId} AND sender_id = #{targetUserId} AND message_status < 3")
-    int markMessagesAsRead(@Param("currentUserId") Integer currentUserId, 
-                          @Param("targetUserId") Integer targetUserId,
-                          @Param("readTime") LocalDateTime readTime);
-
     /**
      * 撤回消息
      */
     @Update("UPDATE user_chat_message SET is_recalled = 1 WHERE message_id = #{messageId} AND sender_id = #{senderId}")
     int recallMessage(@Param("messageId") Long messageId, @Param("senderId") Integer senderId);
 
-    /**
-     * 获取用户未读消息总数
-     */
-    @Select("SELECT COUNT(*) FROM user_chat_message " +
-            "WHERE receiver_id = #{userId} AND message_status < 3 AND is_recalled = 0")
-    int selectUnreadCount(@Param("userId") Integer userId);
-
     /**
      * 搜索聊天消息
      */
@@ -98,6 +103,39 @@ public interface ChatMapper {
                                        @Param("offset") Integer offset,
                                        @Param("size") Integer size);
 
+    /**
+     * 按ID批量查询消息（全文检索命中后回表），已撤回的消息不返回
+     */
+    @Select("<script>" +
+            "SELECT m.*, " +
+            "us.username as sender_username, us.avatar as sender_avatar, " +
+            "ur.username as receiver_username, ur.avatar as receiver_avatar " +
+            "FROM user_chat_message m " +
+            "LEFT JOIN users us ON m.sender_id = us.user_id " +
+            "LEFT JOIN users ur ON m.receiver_id = ur.user_id " +
+            "WHERE m.is_recalled = 0 AND m.message_id IN " +
+            "<foreach collection='messageIds' item='id' open='(' separator=',' close=')'>" +
+            "#{id}" +
+            "</foreach>" +
+            "</script>")
+    List<ChatMessageDTO> selectMessagesByIds(@Param("messageIds") List<Long> messageIds);
+
+    /**
+     * 按消息ID顺序分批读取文本消息，用于重建全文索引
+     * @param afterId 上一批最后的消息ID
+     * @param since 只读取该时间之后的消息，为 null 时读取全部
+     */
+    @Select("<script>" +
+            "SELECT message_id, conversation_id, sender_id, receiver_id, message_type, content, create_time " +
+            "FROM user_chat_message " +
+            "WHERE message_type = 1 AND is_recalled = 0 AND message_id &gt; #{afterId} " +
+            "<if test='since != null'>AND create_time &gt;= #{since} </if>" +
+            "ORDER BY message_id LIMIT #{limit}" +
+            "</script>")
+    List<UserChatMessage> selectTextMessagesForIndex(@Param("afterId") Long afterId,
+                                                    @Param("since") LocalDateTime since,
+                                                    @Param("limit") Integer limit);
+
     // ==================== 会话相关操作 ====================
 
     /**
@@ -126,19 +164,16 @@ public interface ChatMapper {
                                                        @Param("user2Id") Integer user2Id);
 
     /**
-     * 获取用户的会话列表
+     * 获取用户的会话列表，对方在线状态由在线状态服务补充
      */
     @Select("SELECT c.*, " +
             "CASE WHEN c.user1_id = #{userId} THEN u2.user_id ELSE u1.user_id END as other_user_id, " +
             "CASE WHEN c.user1_id = #{userId} THEN u2.username ELSE u1.username END as other_username, " +
             "CASE WHEN c.user1_id = #{userId} THEN u2.avatar ELSE u1.avatar END as other_user_avatar, " +
-            "CASE WHEN c.user1_id = #{userId} THEN c.user1_unread_count ELSE c.user2_unread_count END as unread_count, " +
-            "uo.is_online " +
+            "CASE WHEN c.user1_id = #{userId} THEN c.user1_unread_count ELSE c.user2_unread_count END as unread_count " +
             "FROM user_chat_conversation c " +
             "LEFT JOIN users u1 ON c.user1_id = u1.user_id " +
             "LEFT JOIN users u2 ON c.user2_id = u2.user_id " +
-            "LEFT JOIN user_online_status uo ON " +
-            "   (CASE WHEN c.user1_id = #{userId} THEN u2.user_id ELSE u1.user_id END) = uo.user_id " +
             "WHERE (c.user1_id = #{userId} OR c.user2_id = #{userId}) " +
             "AND NOT ((c.user1_id = #{userId} AND COALESCE(c.user1_deleted, 0) = 1) " +
             "     OR (c.user2_id = #{userId} AND COALESCE(c.user2_deleted, 0) = 1)) " +
@@ -159,6 +194,7 @@ public interface ChatMapper {
 
     /**
      * 更新会话的最后一条消息信息
+     * 只在新消息ID更大时更新：重放、重试或同步写库与批量写入交错时，较早的消息不会覆盖较新的
      */
     @Update("UPDATE user_chat_conversation SET " +
             "last_message_id = #{messageId}, " +
@@ -166,7 +202,8 @@ public interface ChatMapper {
             "last_message_time = #{messageTime}, " +
             "last_message_type = #{messageType}, " +
             "update_time = #{updateTime} " +
-            "WHERE conversation_id = #{conversationId}")
+            "WHERE conversation_id = #{conversationId} " +
+            "AND (last_message_id IS NULL OR last_message_id < #{messageId})")
     int updateConversationLastMessage(@Param("conversationId") Long conversationId,
                                     @Param("messageId") Long messageId,
                                     @Param("content") String content,
@@ -174,24 +211,6 @@ public interface ChatMapper {
                                     @Param("messageTime") LocalDateTime messageTime,
                                     @Param("updateTime") LocalDateTime updateTime);
 
-    /**
-     * 增加用户的未读消息数
-     */
-    @Update("UPDATE user_chat_conversation SET " +
-            "user1_unread_count = CASE WHEN user1_id = #{userId} THEN user1_unread_count + 1 ELSE user1_unread_count END, " +
-            "user2_unread_count = CASE WHEN user2_id = #{userId} THEN user2_unread_count + 1 ELSE user2_unread_count END " +
-            "WHERE conversation_id = #{conversationId}")
-    int incrementUnreadCount(@Param("conversationId") Long conversationId, @Param("userId") Integer userId);
-
-    /**
-     * 清空用户的未读消息数
-     */
-    @Update("UPDATE user_chat_conversation SET " +
-            "user1_unread_count = CASE WHEN user1_id = #{userId} THEN 0 ELSE user1_unread_count END, " +
-            "user2_unread_count = CASE WHEN user2_id = #{userId} THEN 0 ELSE user2_unread_count END " +
-            "WHERE conversation_id = #{conversationId}")
-    int clearUnreadCount(@Param("conversationId") Long conversationId, @Param("userId") Integer userId);
-
     /**
      * 删除会话（标记为已删除）
      */
@@ -0,0 +1,91 @@
+package org.example.afd.mapper;
+
+import org.apache.ibatis.annotations.*;
+import org.example.afd.entity.UserChatReadState;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 聊天已读水位数据访问层
+ */
+@Mapper
+public interface ChatReadStateMapper {
+
+    /**
+     * 批量写入已读水位，水位和收件箱序号只前进不后退
+     * @param states 水位列表
+     * @return 影响的行数
+     */
+    @Insert("<script>" +
+            "INSERT INTO user_chat_read_state (conversation_id, user_id, last_read_message_id, last_read_seq, update_time) VALUES " +
+            "<foreach collection='states' item='s' separator=','>" +
+            "(#{s.conversationId}, #{s.userId}, #{s.lastReadMessageId}, #{s.lastReadSeq}, #{s.updateTime})" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE " +
+            "last_read_message_id = GREATEST(last_read_message_id, VALUES(last_read_message_id)), " +
+            "last_read_seq = GREATEST(last_read_seq, VALUES(last_read_seq)), " +
+            "update_time = VALUES(update_time)" +
+            "</script>")
+    int batchUpsert(@Param("states") List<UserChatReadState> states);
+
+    /**
+     * 查询用户的全部会话及各会话的已读水位、最新消息ID和未读数
+     * 未读数包括水位之后收到的未撤回消息，以及ID不大于水位、但在标记已读之后才提交的消息：
+     * 后者在同步日志中的序号大于已读时的收件箱序号，未启用同步日志时不统计
+     * @param userId 用户ID
+     * @param lateCommits 是否统计晚提交的消息
+     * @return 每项包含 conversation_id、other_user_id、last_read_message_id、last_read_seq、head_message_id、unread_count
+     */
+    @Select("<script>" +
+            "SELECT c.conversation_id, " +
+            "CASE WHEN c.user1_id = #{userId} THEN c.user2_id ELSE c.user1_id END AS other_user_id, " +
+            "COALESCE(r.last_read_message_id, 0) AS last_read_message_id, " +
+            "COALESCE(r.last_read_seq, 0) AS last_read_seq, " +
+            "(SELECT COALESCE(MAX(h.message_id), 0) FROM user_chat_message h " +
+            " WHERE h.conversation_id = c.conversation_id) AS head_message_id, " +
+            "(SELECT COUNT(*) FROM user_chat_message m " +
+            " WHERE m.conversation_id = c.conversation_id AND m.receiver_id = #{userId} AND m.is_recalled = 0 " +
+            " AND m.message_id &gt; COALESCE(r.last_read_message_id, 0)) " +
+            "<if test='lateCommits'>" +
+            "+ (SELECT COUNT(*) FROM user_chat_sync_log l " +
+            " JOIN user_chat_message lm ON lm.message_id = l.message_id " +
+            " WHERE l.user_id = #{userId} AND l.seq &gt; COALESCE(r.last_read_seq, 0) AND l.event_type = 1 " +
+            " AND l.conversation_id = c.conversation_id AND lm.receiver_id = #{userId} AND lm.is_recalled = 0 " +
+            " AND lm.message_id &lt;= COALESCE(r.last_read_message_id, 0)) " +
+            "</if>" +
+            "AS unread_count " +
+            "FROM user_chat_conversation c " +
+            "LEFT JOIN user_chat_read_state r ON r.conversation_id = c.conversation_id AND r.user_id = #{userId} " +
+            "WHERE c.user1_id = #{userId} OR c.user2_id = #{userId}" +
+            "</script>")
+    List<Map<String, Object>> selectUserReadStates(@Param("userId") Integer userId,
+                                                   @Param("lateCommits") boolean lateCommits);
+
+    /**
+     * 统计会话中消息ID在 (afterMessageId, upToMessageId] 之间、用户收到的未撤回消息数
+     * 已读位置落在会话最新消息之前时，用来计算位置之后剩余的未读数
+     */
+    @Select("SELECT COUNT(*) FROM user_chat_message " +
+            "WHERE conversation_id = #{conversationId} AND receiver_id = #{userId} AND is_recalled = 0 " +
+            "AND message_id > #{afterMessageId} AND message_id <= #{upToMessageId}")
+    int countUnreadBetween(@Param("conversationId") Long conversationId,
+                           @Param("userId") Integer userId,
+                           @Param("afterMessageId") Long afterMessageId,
+                           @Param("upToMessageId") Long upToMessageId);
+
+    /**
+     * 查询用户收件箱当前的同步序号，标记已读时记录，用于识别之后才提交的消息
+     * @return 序号，用户还没有同步日志返回 null
+     */
+    @Select("SELECT seq FROM user_chat_inbox WHERE user_id = #{userId}")
+    Long selectInboxSeq(@Param("userId") Integer userId);
+
+    /**
+     * 查询单个会话中用户的已读水位
+     * @return 水位，没有记录返回 null
+     */
+    @Select("SELECT last_read_message_id FROM user_chat_read_state " +
+            "WHERE conversation_id = #{conversationId} AND user_id = #{userId}")
+    Long selectWatermark(@Param("conversationId") Long conversationId, @Param("userId") Integer userId);
+}
@@ -0,0 +1,96 @@
+package org.example.afd.mapper;
+
+import org.apache.ibatis.annotations.*;
+import org.example.afd.dto.ChatSyncRecord;
+import org.example.afd.entity.UserChatSyncLog;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 聊天增量同步数据访问层
+ */
+@Mapper
+public interface ChatSyncMapper {
+
+    /**
+     * 批量推进用户的收件箱序号，必须在事务中调用，行锁保证同一用户的序号按提交顺序连续分配
+     * @param counts 每项包含 userId 与 count，按 userId 升序传入以避免死锁
+     * @return 影响的行数
+     */
+    @Insert("<script>" +
+            "INSERT INTO user_chat_inbox (user_id, seq, update_time) VALUES " +
+            "<foreach collection='counts' item='c' separator=','>" +
+            "(#{c.userId}, #{c.count}, NOW())" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE seq = seq + VALUES(seq), update_time = NOW()" +
+            "</script>")
+    int advanceSequences(@Param("counts") List<Map<String, Object>> counts);
+
+    /**
+     * 查询用户当前的收件箱序号，在同一事务中推进后读取即为本次分配的上界
+     * @param userIds 用户ID列表
+     * @return 每项包含 user_id 与 seq
+     */
+    @Select("<script>" +
+            "SELECT user_id, seq FROM user_chat_inbox WHERE user_id IN " +
+            "<foreach collection='userIds' item='userId' open='(' separator=',' close=')'>" +
+            "#{userId}" +
+            "</foreach>" +
+            "</script>")
+    List<Map<String, Object>> selectSequences(@Param("userIds") List<Integer> userIds);
+
+    /**
+     * 查询用户当前的收件箱序号
+     * @param userId 用户ID
+     * @return 序号，没有记录返回 null
+     */
+    @Select("SELECT seq FROM user_chat_inbox WHERE user_id = #{userId}")
+    Long selectSequence(@Param("userId") Integer userId);
+
+    /**
+     * 批量写入同步日志
+     * @param logs 日志列表
+     * @return 影响的行数
+     */
+    @Insert("<script>" +
+            "INSERT INTO user_chat_sync_log (user_id, seq, conversation_id, message_id, event_type, create_time) VALUES " +
+            "<foreach collection='logs' item='l' separator=','>" +
+            "(#{l.userId}, #{l.seq}, #{l.conversationId}, #{l.messageId}, #{l.eventType}, #{l.createTime})" +
+            "</foreach>" +
+            "</script>")
+    int batchInsertLogs(@Param("logs") List<UserChatSyncLog> logs);
+
+    /**
+     * 读取用户在指定序号之后的同步日志，连带消息内容和会话当前状态
+     * @param userId 用户ID
+     * @param since 客户端已同步到的序号
+     * @param limit 最大条数
+     * @return 按序号升序的记录
+     */
+    @Select("SELECT l.seq, l.event_type, l.conversation_id, l.message_id, l.create_time AS event_time, " +
+            "m.sender_id, m.receiver_id, m.message_type, m.content, m.media_url, m.thumbnail_url, " +
+            "m.message_status, m.is_recalled, m.extra_data, m.create_time, " +
+            "c.user1_id, c.user2_id, c.user1_unread_count, c.user2_unread_count, " +
+            "c.user1_deleted, c.user2_deleted, c.last_message_id, c.last_message_content, " +
+            "c.last_message_time, c.last_message_type " +
+            "FROM user_chat_sync_log l " +
+            "LEFT JOIN user_chat_message m ON m.message_id = l.message_id " +
+            "LEFT JOIN user_chat_conversation c ON c.conversation_id = l.conversation_id " +
+            "WHERE l.user_id = #{userId} AND l.seq > #{since} " +
+            "ORDER BY l.seq " +
+            "LIMIT #{limit}")
+    List<ChatSyncRecord> selectSince(@Param("userId") Integer userId,
+                                     @Param("since") Long since,
+                                     @Param("limit") Integer limit);
+
+    /**
+     * 清理过期的同步日志
+     * @param before 清理该时间之前的日志
+     * @param limit 单次最多删除的行数
+     * @return 删除的行数
+     */
+    @Delete("DELETE FROM user_chat_sync_log WHERE create_time < #{before} LIMIT #{limit}")
+    int deleteBefore(@Param("before") LocalDateTime before, @Param("limit") Integer limit);
+}
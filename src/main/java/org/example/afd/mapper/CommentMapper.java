@@ -5,6 +5,7 @@ import org.example.afd.pojo.Comment;
 import org.example.afd.pojo.CommentLike;
 import org.example.afd.dto.CommentDTO;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
@@ -99,7 +100,7 @@ public interface CommentMapper {
             "WHERE c.post_id = #{postId} AND c.parent_id IS NULL AND c.status = 1 " +
             "ORDER BY c.create_time DESC " +
             "LIMIT #{offset}, #{size}")
-    @Results({
+    @Results(id = "commentListResult", value = {
         @Result(property = "commentId", column = "comment_id"),
         @Result(property = "postId", column = "post_id"),
         @Result(property = "userId", column = "user_id"),
@@ -116,6 +117,28 @@ public interface CommentMapper {
     })
     List<CommentDTO> getCommentsWithLikeStatus(@Param("postId") Long postId, @Param("userId") Integer userId, @Param("offset") Integer offset, @Param("size") Integer size);
 
+    /**
+     * 游标分页获取动态的评论列表，按 (create_time, comment_id) 倒序
+     */
+    @Select("<script>" +
+            "SELECT c.*, u.username, u.avatar, " +
+            "IF(cl.id IS NULL, 0, 1) AS is_liked " +
+            "FROM post_comment c " +
+            "JOIN users u ON c.user_id = u.user_id " +
+            "LEFT JOIN post_comment_like cl ON c.comment_id = cl.comment_id AND cl.user_id = #{userId} AND cl.status = 1 " +
+            "WHERE c.post_id = #{postId} AND c.parent_id IS NULL AND c.status = 1 " +
+            "<if test='cursorTime != null'>" +
+            "AND (c.create_time &lt; #{cursorTime} OR (c.create_time = #{cursorTime} AND c.comment_id &lt; #{cursorId})) " +
+            "</if>" +
+            "ORDER BY c.create_time DESC, c.comment_id DESC " +
+            "LIMIT #{limit}" +
+            "</script>")
+    @ResultMap("commentListResult")
+    List<CommentDTO> getCommentsWithLikeStatusByCursor(@Param("postId") Long postId, @Param("userId") Integer userId,
+                                                       @Param("cursorTime") LocalDateTime cursorTime,
+                                                       @Param("cursorId") Long cursorId,
+                                                       @Param("limit") Integer limit);
+
     /**
      * 删除评论
      */
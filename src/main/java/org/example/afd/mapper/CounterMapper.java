@@ -0,0 +1,48 @@
+package org.example.afd.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 计数批量回写数据访问接口
+ *
+ * 表名、列名来自 CounterBuffer.Counter 枚举常量，不接受外部输入。
+ */
+@Mapper
+public interface CounterMapper {
+
+    /**
+     * 批量累加计数
+     * @param table 表名
+     * @param column 计数列
+     * @param idColumn 主键列
+     * @param deltas 每行包含 id 和 delta
+     * @return 影响行数
+     */
+    @Update("<script>" +
+            "UPDATE ${table} SET ${column} = ${column} + CASE ${idColumn} " +
+            "<foreach collection='deltas' item='item'>WHEN #{item.id} THEN #{item.delta} </foreach>" +
+            "ELSE 0 END " +
+            "WHERE ${idColumn} IN " +
+            "<foreach collection='deltas' item='item' open='(' separator=',' close=')'>#{item.id}</foreach>" +
+            "</script>")
+    int batchAddCount(@Param("table") String table,
+                      @Param("column") String column,
+                      @Param("idColumn") String idColumn,
+                      @Param("deltas") List<Map<String, Long>> deltas);
+
+    /**
+     * 批量刷新商品更新时间（商品表没有浏览量列，浏览只记录为一次更新）
+     * @param productIds 商品ID
+     * @return 影响行数
+     */
+    @Update("<script>" +
+            "UPDATE shop_product SET update_time = NOW() WHERE product_id IN " +
+            "<foreach collection='productIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    int touchProducts(@Param("productIds") List<Long> productIds);
+}
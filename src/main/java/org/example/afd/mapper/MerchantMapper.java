@@ -90,6 +90,30 @@ public interface MerchantMapper {
                                     @Param("offset") int offset, 
                                     @Param("limit") int limit);
     
+    /**
+     * 按商家ID顺序分批读取营业中的商家名称，权重为在售商品销量合计，用于建立联想词索引
+     * @param afterId 上一批最后的商家ID
+     * @param limit 每批数量
+     * @return 商家列表
+     */
+    @Select("SELECT m.merchant_id, m.merchant_name, " +
+            "(SELECT COALESCE(SUM(p.sales), 0) FROM shop_product p " +
+            "WHERE p.merchant_id = m.merchant_id AND p.status = 1 AND p.is_deleted = 0) AS weight " +
+            "FROM shop_merchant m WHERE m.merchant_id > #{afterId} AND m.status = 1 " +
+            "ORDER BY m.merchant_id LIMIT #{limit}")
+    List<Map<String, Object>> selectMerchantsForSuggest(@Param("afterId") Long afterId, @Param("limit") int limit);
+    
+    /**
+     * 查询单个商家的联想词字段，包含未营业的商家
+     * @param merchantId 商家ID
+     * @return 商家字段
+     */
+    @Select("SELECT m.merchant_id, m.merchant_name, m.status, " +
+            "(SELECT COALESCE(SUM(p.sales), 0) FROM shop_product p " +
+            "WHERE p.merchant_id = m.merchant_id AND p.status = 1 AND p.is_deleted = 0) AS weight " +
+            "FROM shop_merchant m WHERE m.merchant_id = #{merchantId}")
+    Map<String, Object> selectMerchantForSuggest(@Param("merchantId") Long merchantId);
+    
     /**
      * 更新商家信息
      * @param merchantDTO 商家信息
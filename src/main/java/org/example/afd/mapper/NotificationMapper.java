@@ -4,6 +4,7 @@ import org.apache.ibatis.annotations.*;
 import org.example.afd.dto.NotificationDTO;
 import org.example.afd.pojo.Notification;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -43,7 +44,7 @@ public interface NotificationMapper {
             "ORDER BY " +
             "   n.create_time DESC " +
             "LIMIT #{offset}, #{limit}")
-    @Results({
+    @Results(id = "notificationResult", value = {
             @Result(property = "id", column = "id", id = true),
             @Result(property = "type", column = "type"),
             @Result(property = "targetId", column = "target_id"),
@@ -59,6 +60,38 @@ public interface NotificationMapper {
                                                        @Param("offset") int offset,
                                                        @Param("limit") int limit);
 
+    /**
+     * 根据接收者ID游标分页获取通知列表，按 (create_time, id) 倒序
+     *
+     * @param receiverId 接收者用户ID
+     * @param cursorTime 上一页最后一条的创建时间，第一页为 null
+     * @param cursorId   上一页最后一条的ID
+     * @param limit      查询数量
+     * @return 通知DTO列表
+     */
+    @Select("<script>" +
+            "SELECT " +
+            "   n.id, n.type, n.target_id, n.secondary_target_id, n.content, n.is_read, n.create_time, " +
+            "   u.user_id as trigger_user_id, u.username as trigger_username, u.avatar as trigger_avatar " +
+            "FROM " +
+            "   notifications n " +
+            "JOIN " +
+            "   users u ON n.trigger_user_id = u.user_id " +
+            "WHERE " +
+            "   n.receiver_id = #{receiverId} " +
+            "<if test='cursorTime != null'>" +
+            "   AND (n.create_time &lt; #{cursorTime} OR (n.create_time = #{cursorTime} AND n.id &lt; #{cursorId})) " +
+            "</if>" +
+            "ORDER BY " +
+            "   n.create_time DESC, n.id DESC " +
+            "LIMIT #{limit}" +
+            "</script>")
+    @ResultMap("notificationResult")
+    List<NotificationDTO> getNotificationsByReceiverIdCursor(@Param("receiverId") Long receiverId,
+                                                             @Param("cursorTime") LocalDateTime cursorTime,
+                                                             @Param("cursorId") Long cursorId,
+                                                             @Param("limit") int limit);
+
     /**
      * 获取指定用户的未读通知数量
      *
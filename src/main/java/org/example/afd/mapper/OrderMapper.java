@@ -3,6 +3,7 @@ package org.example.afd.mapper;
 import org.apache.ibatis.annotations.*;
 import org.example.afd.entity.Order;
 import org.example.afd.dto.OrderDTO;
+import org.example.afd.dto.OrderItemDTO;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -112,11 +113,57 @@ public interface OrderMapper {
             "ORDER BY o.create_time DESC " +
             "LIMIT #{offset}, #{size}" +
             "</script>")
-    List<Map<String, Object>> selectUserOrders(@Param("userId") Long userId,
+    @Results(id = "orderListResult", value = {
+        @Result(column = "order_id", property = "orderId", id = true),
+        @Result(column = "order_status", property = "orderStatus"),
+        @Result(column = "order_status", property = "status"),
+        @Result(column = "total_amount", property = "totalAmount"),
+        @Result(column = "total_amount", property = "payAmount", javaType = Double.class),
+        @Result(column = "shipping_fee", property = "freightAmount", javaType = Double.class),
+        @Result(column = "order_note", property = "orderNote"),
+        @Result(column = "order_note", property = "note"),
+        @Result(column = "related_id", property = "merchantId"),
+        @Result(column = "prefecture", property = "receiverProvince"),
+        @Result(column = "city", property = "receiverCity"),
+        @Result(column = "town", property = "receiverDistrict"),
+        @Result(column = "shipping_address", property = "receiverAddress"),
+        @Result(column = "postal_code", property = "receiverZip")
+    })
+    List<OrderDTO> selectUserOrders(@Param("userId") Long userId,
                                                 @Param("orderType") Integer orderType, 
                                                 @Param("orderStatus") Integer orderStatus,
                                                 @Param("offset") int offset, 
                                                 @Param("size") int size);
+
+    /**
+     * 游标分页查询用户订单列表，按 (create_time, order_id) 倒序
+     */
+    @Select("<script>" +
+            "SELECT o.*, " +
+            "CASE WHEN o.order_type = 2 THEN p.title ELSE NULL END as plan_title, " +
+            "CASE WHEN o.order_type = 2 THEN p.cover_url ELSE NULL END as plan_cover_url, " +
+            "CASE WHEN o.order_type = 1 THEN m.merchant_name ELSE NULL END as merchant_name, " +
+            "CASE WHEN o.order_type = 1 THEN m.logo ELSE NULL END as merchant_logo " +
+            "FROM afd.orders o " +
+            "LEFT JOIN afd.post_subscription_plan p ON o.order_type = 2 AND o.related_id = p.plan_id " +
+            "LEFT JOIN afd.shop_merchant m ON o.order_type = 1 AND o.related_id = m.merchant_id " +
+            "WHERE o.user_id = #{userId} " +
+            "AND o.order_status != 0 " +
+            "<if test='orderType != null'>AND o.order_type = #{orderType}</if> " +
+            "<if test='orderStatus != null'>AND o.order_status = #{orderStatus}</if> " +
+            "<if test='cursorTime != null'>" +
+            "AND (o.create_time &lt; #{cursorTime} OR (o.create_time = #{cursorTime} AND o.order_id &lt; #{cursorId})) " +
+            "</if>" +
+            "ORDER BY o.create_time DESC, o.order_id DESC " +
+            "LIMIT #{limit}" +
+            "</script>")
+    @ResultMap("orderListResult")
+    List<OrderDTO> selectUserOrdersByCursor(@Param("userId") Long userId,
+                                            @Param("orderType") Integer orderType,
+                                            @Param("orderStatus") Integer orderStatus,
+                                            @Param("cursorTime") LocalDateTime cursorTime,
+                                            @Param("cursorId") Long cursorId,
+                                            @Param("limit") int limit);
     
     /**
      * 获取订单统计信息
@@ -221,6 +268,27 @@ public interface OrderMapper {
             "WHERE oi.order_id = #{orderId}")
     List<Map<String, Object>> selectOrderItemsByOrderId(@Param("orderId") Long orderId);
     
+    /**
+     * 批量查询一页订单的订单项（列表页使用，避免逐单查询）
+     */
+    @Select("<script>" +
+            "SELECT oi.*, " +
+            "p.product_name, " +
+            "s.sku_name, s.sku_image " +
+            "FROM afd.order_items oi " +
+            "LEFT JOIN afd.shop_product p ON oi.product_id = p.product_id " +
+            "LEFT JOIN afd.shop_product_sku s ON oi.sku_id = s.sku_id " +
+            "WHERE oi.order_id IN " +
+            "<foreach collection='orderIds' item='orderId' open='(' separator=',' close=')'>#{orderId}</foreach> " +
+            "ORDER BY oi.order_id, oi.item_id" +
+            "</script>")
+    @Results(id = "orderItemResult", value = {
+        @Result(column = "item_id", property = "orderItemId", id = true),
+        @Result(column = "unit_price", property = "price", javaType = Double.class),
+        @Result(column = "item_amount", property = "totalPrice", javaType = Double.class)
+    })
+    List<OrderItemDTO> selectOrderItemsByOrderIds(@Param("orderIds") List<Long> orderIds);
+    
     /**
      * 更新订单项
      */
@@ -310,7 +378,8 @@ public interface OrderMapper {
             "ORDER BY o.create_time DESC " +
             "LIMIT #{offset}, #{size}" +
             "</script>")
-    List<Map<String, Object>> selectMerchantOrdersWithFilter(@Param("merchantId") Long merchantId,
+    @ResultMap("orderListResult")
+    List<OrderDTO> selectMerchantOrdersWithFilter(@Param("merchantId") Long merchantId,
                                                              @Param("status") Integer status,
                                                              @Param("keyword") String keyword,
                                                              @Param("timeFilter") String timeFilter,
@@ -326,6 +395,43 @@ public interface OrderMapper {
     @Select("SELECT * FROM afd.orders WHERE order_no = #{orderNo} FOR UPDATE")
     Order selectByOrderNoForUpdate(@Param("orderNo") String orderNo);
     
+    // ================ 订单超时取消相关方法 ================
+    
+    /**
+     * 按 (expire_time, order_id) 分页查询待支付且设置了过期时间的订单（启动时分批加载到时间轮）
+     * afterTime 为空时从第一页开始，走 order_status + expire_time 索引范围扫描
+     */
+    @Select("<script>" +
+            "SELECT order_id, order_no, expire_time FROM afd.orders " +
+            "WHERE order_status = 1 AND expire_time IS NOT NULL " +
+            "<if test='afterTime != null'>" +
+            "AND (expire_time &gt; #{afterTime} OR (expire_time = #{afterTime} AND order_id &gt; #{afterOrderId})) " +
+            "</if>" +
+            "ORDER BY expire_time, order_id LIMIT #{limit}" +
+            "</script>")
+    List<Map<String, Object>> selectPendingExpireOrders(@Param("afterTime") LocalDateTime afterTime,
+                                                        @Param("afterOrderId") Long afterOrderId,
+                                                        @Param("limit") Integer limit);
+    
+    /**
+     * 查询已过期仍未支付的订单（兜底对账，走 order_status + expire_time 索引范围扫描）
+     */
+    @Select("SELECT order_no, expire_time FROM afd.orders " +
+            "WHERE order_status = 1 AND expire_time <= #{before} " +
+            "ORDER BY expire_time LIMIT #{limit}")
+    List<Map<String, Object>> selectOverduePendingOrders(@Param("before") LocalDateTime before,
+                                                         @Param("limit") Integer limit);
+    
+    /**
+     * 从给定订单号中筛选出已过期且仍待支付的订单
+     */
+    @Select("<script>" +
+            "SELECT order_no, expire_time FROM afd.orders " +
+            "WHERE order_status = 1 AND expire_time &lt;= NOW() AND order_no IN " +
+            "<foreach collection='orderNos' item='orderNo' open='(' separator=',' close=')'>#{orderNo}</foreach>" +
+            "</script>")
+    List<Map<String, Object>> selectExpiredPendingOrders(@Param("orderNos") List<String> orderNos);
+    
     // ================ 新增的统计分析方法 ================
     
     /**
@@ -415,7 +521,8 @@ public interface OrderMapper {
             "AND o.update_time < DATE_SUB(NOW(), INTERVAL 24 HOUR) " +
             "ORDER BY o.update_time ASC " +
             "LIMIT #{offset}, #{size}")
-    List<Map<String, Object>> getOvertimeOrders(@Param("merchantId") Long merchantId, 
+    @ResultMap("orderListResult")
+    List<OrderDTO> getOvertimeOrders(@Param("merchantId") Long merchantId, 
                                                 @Param("offset") int offset, 
                                                 @Param("size") int size);
     
@@ -429,7 +536,8 @@ public interface OrderMapper {
             "AND o.order_status = 7 " +
             "ORDER BY o.create_time DESC " +
             "LIMIT #{offset}, #{size}")
-    List<Map<String, Object>> getPendingRefundOrders(@Param("merchantId") Long merchantId, 
+    @ResultMap("orderListResult")
+    List<OrderDTO> getPendingRefundOrders(@Param("merchantId") Long merchantId, 
                                                      @Param("offset") int offset, 
                                                      @Param("size") int size);
     
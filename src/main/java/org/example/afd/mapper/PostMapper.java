@@ -122,7 +122,7 @@ public interface PostMapper {
             "AND p.status = 1 " +
             "ORDER BY p.create_time DESC " +
             "LIMIT #{offset}, #{size}")
-    @Results({
+    @Results(id = "postListResult", value = {
         @Result(property = "postId", column = "post_id"),
         @Result(property = "userId", column = "user_id"),
         @Result(property = "content", column = "content"),
@@ -137,6 +137,60 @@ public interface PostMapper {
         @Result(property = "createTime", column = "create_time")
     })
     List<Post> getFollowingPosts(@Param("userId") Long userId, @Param("offset") Integer offset, @Param("size") Integer size);
+
+    /**
+     * 游标分页获取关注用户的动态列表，按 (create_time, post_id) 倒序
+     */
+    @Select("<script>" +
+            "SELECT p.*, u.username, u.avatar as user_avatar_url " +
+            "FROM afd.post_content p " +
+            "JOIN afd.users u ON p.user_id = u.user_id " +
+            "JOIN afd.user_relation ur ON p.user_id = ur.target_id " +
+            "WHERE ur.user_id = #{userId} AND ur.relation_type = 1 AND ur.status = 1 " +
+            "AND p.status = 1 " +
+            "<if test='cursorTime != null'>" +
+            "AND (p.create_time &lt; #{cursorTime} OR (p.create_time = #{cursorTime} AND p.post_id &lt; #{cursorId})) " +
+            "</if>" +
+            "ORDER BY p.create_time DESC, p.post_id DESC " +
+            "LIMIT #{limit}" +
+            "</script>")
+    @ResultMap("postListResult")
+    List<Post> getFollowingPostsByCursor(@Param("userId") Long userId,
+                                         @Param("cursorTime") Date cursorTime,
+                                         @Param("cursorId") Long cursorId,
+                                         @Param("limit") Integer limit);
+
+    /**
+     * 按指定作者游标分页获取动态ID和发布时间（大V动态在读取时拉取）
+     */
+    @Select("<script>" +
+            "SELECT p.post_id, p.create_time FROM afd.post_content p " +
+            "WHERE p.status = 1 AND p.user_id IN " +
+            "<foreach collection='userIds' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "<if test='cursorTime != null'>" +
+            "AND (p.create_time &lt; #{cursorTime} OR (p.create_time = #{cursorTime} AND p.post_id &lt; #{cursorId})) " +
+            "</if>" +
+            "ORDER BY p.create_time DESC, p.post_id DESC " +
+            "LIMIT #{limit}" +
+            "</script>")
+    @ResultMap("postListResult")
+    List<Post> getPostTimesByUserIds(@Param("userIds") List<Long> userIds,
+                                     @Param("cursorTime") Date cursorTime,
+                                     @Param("cursorId") Long cursorId,
+                                     @Param("limit") Integer limit);
+
+    /**
+     * 根据ID批量获取动态，不保证顺序
+     */
+    @Select("<script>" +
+            "SELECT p.*, u.username, u.avatar as user_avatar_url " +
+            "FROM afd.post_content p " +
+            "JOIN afd.users u ON p.user_id = u.user_id " +
+            "WHERE p.status = 1 AND p.post_id IN " +
+            "<foreach collection='postIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    @ResultMap("postListResult")
+    List<Post> getPostsByIds(@Param("postIds") List<Long> postIds);
     
     /**
      * 获取推荐动态列表（简单实现，按照点赞数和时间排序）
@@ -162,6 +216,45 @@ public interface PostMapper {
         @Result(property = "createTime", column = "create_time")
     })
     List<Post> getRecommendPosts(@Param("offset") Integer offset, @Param("size") Integer size);
+
+    /**
+     * 游标分页获取推荐动态列表，按 (like_count, create_time, post_id) 倒序
+     * like_count 随点赞变化，翻页期间排序键会移动：点赞数跨过游标的动态可能在后续页重复出现或被跳过，
+     * 分页结果是尽力而为的，客户端按 post_id 去重
+     */
+    @Select("<script>" +
+            "SELECT p.*, u.username, u.avatar as user_avatar_url " +
+            "FROM afd.post_content p " +
+            "JOIN afd.users u ON p.user_id = u.user_id " +
+            "WHERE p.status = 1 " +
+            "<if test='cursorTime != null'>" +
+            "AND (p.like_count &lt; #{cursorLikes} " +
+            "OR (p.like_count = #{cursorLikes} AND p.create_time &lt; #{cursorTime}) " +
+            "OR (p.like_count = #{cursorLikes} AND p.create_time = #{cursorTime} AND p.post_id &lt; #{cursorId})) " +
+            "</if>" +
+            "ORDER BY p.like_count DESC, p.create_time DESC, p.post_id DESC " +
+            "LIMIT #{limit}" +
+            "</script>")
+    @ResultMap("postListResult")
+    List<Post> getRecommendPostsByCursor(@Param("cursorLikes") Integer cursorLikes,
+                                         @Param("cursorTime") Date cursorTime,
+                                         @Param("cursorId") Long cursorId,
+                                         @Param("limit") Integer limit);
+
+    /**
+     * 获取推荐排序的候选动态及其互动计数
+     * @param since 只取该时间之后发布的动态，为 null 时取最近发布的动态
+     */
+    @Select("<script>" +
+            "SELECT p.post_id, p.like_count, p.comment_count, p.collect_count, p.forward_count, p.view_count, p.create_time " +
+            "FROM afd.post_content p " +
+            "WHERE p.status = 1 " +
+            "<if test='since != null'>AND p.create_time &gt;= #{since} </if>" +
+            "ORDER BY p.create_time DESC " +
+            "LIMIT #{limit}" +
+            "</script>")
+    @ResultMap("postListResult")
+    List<Post> getRankingCandidates(@Param("since") Date since, @Param("limit") Integer limit);
     
     /**
      * 获取用户收藏的动态列表
@@ -534,6 +627,14 @@ public interface PostMapper {
     })
     List<TagDTO> getAllTags(Integer limit);
 
+    /**
+     * 按标签ID顺序分批读取启用的标签，用于建立联想词索引
+     */
+    @Select("SELECT tag_id, tag_name, use_count FROM afd.post_tag " +
+            "WHERE tag_id > #{afterId} AND status = 1 " +
+            "ORDER BY tag_id LIMIT #{limit}")
+    List<Map<String, Object>> selectTagsForSuggest(@Param("afterId") Long afterId, @Param("limit") int limit);
+
     /**
      * 插入内容可见性设置
      */
@@ -585,6 +686,40 @@ public interface PostMapper {
      */
     @Select("SELECT media_type FROM afd.post_media WHERE post_id = #{postId} LIMIT 1")
     Integer getPostMediaType(Long postId);
+
+    /**
+     * 批量获取动态媒体，按动态ID和排序号排列
+     */
+    @Select("<script>" +
+            "SELECT post_id, media_url, media_type FROM afd.post_media WHERE post_id IN " +
+            "<foreach collection='postIds' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "ORDER BY post_id, sort_order" +
+            "</script>")
+    List<Map<String, Object>> getPostMediaByPostIds(@Param("postIds") List<Long> postIds);
+
+    /**
+     * 批量获取动态标签
+     */
+    @Select("<script>" +
+            "SELECT ct.post_id, t.tag_id, t.tag_name, t.use_count FROM afd.post_tag t " +
+            "JOIN afd.post_content_tag ct ON t.tag_id = ct.tag_id " +
+            "WHERE ct.post_id IN " +
+            "<foreach collection='postIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    List<Map<String, Object>> getPostTagsByPostIds(@Param("postIds") List<Long> postIds);
+
+    /**
+     * 批量查询用户有效互动过的动态ID
+     * @param interactionType 1-点赞，2-收藏
+     */
+    @Select("<script>" +
+            "SELECT post_id FROM afd.post_interaction " +
+            "WHERE user_id = #{userId} AND interaction_type = #{interactionType} AND status = 1 AND post_id IN " +
+            "<foreach collection='postIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    List<Long> getInteractedPostIds(@Param("userId") Long userId,
+                                    @Param("interactionType") Integer interactionType,
+                                    @Param("postIds") List<Long> postIds);
     
     /**
      * 更新订单支付状态
@@ -7,7 +7,9 @@ import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 import org.apache.ibatis.annotations.Options;
 import org.example.afd.dto.ProductDTO;
+import org.example.afd.dto.StockLockItem;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -16,7 +18,7 @@ public interface ProductMapper {
     
     /**
      * 根据条件查询商品列表
-     * @param params 查询条件
+     * @param params 查询条件，categoryIds（分类及其子孙分类）优先于 categoryId
      * @param offset 偏移量
      * @param limit 数量限制
      * @return 商品列表
@@ -25,7 +27,12 @@ public interface ProductMapper {
             "SELECT p.*, c.category_name FROM shop_product p " +
             "LEFT JOIN shop_category c ON p.category_id = c.category_id " +
             "WHERE p.status = 1 AND p.is_deleted = 0 " +
-            "<if test='params.categoryId != null'> AND p.category_id = #{params.categoryId} </if>" +
+            "<choose>" +
+            "<when test='params.categoryIds != null'> AND p.category_id IN " +
+            "<foreach collection='params.categoryIds' item='cid' open='(' separator=',' close=')'>#{cid}</foreach> " +
+            "</when>" +
+            "<when test='params.categoryId != null'> AND p.category_id = #{params.categoryId} </when>" +
+            "</choose>" +
             "<if test='params.merchantId != null'> AND p.merchant_id = #{params.merchantId} </if>" +
             "<if test='params.keyword != null and params.keyword != \"\"'> " +
             "AND (p.product_name LIKE CONCAT('%', #{params.keyword}, '%') OR p.keywords LIKE CONCAT('%', #{params.keyword}, '%')) " +
@@ -50,7 +57,12 @@ public interface ProductMapper {
     @Select("<script>" +
             "SELECT COUNT(*) FROM shop_product p " +
             "WHERE p.status = 1 AND p.is_deleted = 0 " +
-            "<if test='params.categoryId != null'> AND p.category_id = #{params.categoryId} </if>" +
+            "<choose>" +
+            "<when test='params.categoryIds != null'> AND p.category_id IN " +
+            "<foreach collection='params.categoryIds' item='cid' open='(' separator=',' close=')'>#{cid}</foreach> " +
+            "</when>" +
+            "<when test='params.categoryId != null'> AND p.category_id = #{params.categoryId} </when>" +
+            "</choose>" +
             "<if test='params.merchantId != null'> AND p.merchant_id = #{params.merchantId} </if>" +
             "<if test='params.keyword != null and params.keyword != \"\"'> " +
             "AND (p.product_name LIKE CONCAT('%', #{params.keyword}, '%') OR p.keywords LIKE CONCAT('%', #{params.keyword}, '%')) " +
@@ -81,6 +93,70 @@ public interface ProductMapper {
     @Select("SELECT * FROM shop_product_sku WHERE product_id = #{productId}")
     List<Map<String, Object>> selectSkusByProductId(@Param("productId") Long productId);
     
+    /**
+     * 查询商品及其SKU的实时库存，商品行的 sku_id 为空
+     * @param productId 商品ID
+     * @return 库存快照
+     */
+    @Select("SELECT NULL AS sku_id, stock, sales FROM shop_product WHERE product_id = #{productId} " +
+            "UNION ALL " +
+            "SELECT sku_id, stock, NULL AS sales FROM shop_product_sku WHERE product_id = #{productId}")
+    List<Map<String, Object>> selectStockSnapshot(@Param("productId") Long productId);
+    
+    /**
+     * 按商品ID批量查询商品，结果顺序不保证与参数一致
+     * @param productIds 商品ID列表
+     * @return 商品列表
+     */
+    @Select("<script>" +
+            "SELECT p.*, c.category_name FROM shop_product p " +
+            "LEFT JOIN shop_category c ON p.category_id = c.category_id " +
+            "WHERE p.is_deleted = 0 AND p.product_id IN " +
+            "<foreach collection='productIds' item='id' open='(' separator=',' close=')'>" +
+            "#{id}" +
+            "</foreach>" +
+            "</script>")
+    List<Map<String, Object>> selectProductsByIds(@Param("productIds") List<Long> productIds);
+    
+    /**
+     * 按商品ID顺序分批读取建立搜索索引所需的字段，包含已删除的商品
+     * @param afterId 上一批最后的商品ID
+     * @param since 只读取该时间之后更新的商品，为 null 时读取全部
+     * @param limit 每批数量
+     * @return 商品列表
+     */
+    @Select("<script>" +
+            "SELECT product_id, category_id, merchant_id, product_name, product_brief, keywords, " +
+            "price, sales, status, is_deleted, is_hot, is_recommend, is_new, create_time, update_time " +
+            "FROM shop_product WHERE product_id &gt; #{afterId} " +
+            "<if test='since != null'>AND update_time &gt;= #{since} </if>" +
+            "ORDER BY product_id LIMIT #{limit}" +
+            "</script>")
+    List<Map<String, Object>> selectProductsForIndex(@Param("afterId") Long afterId,
+                                                     @Param("since") LocalDateTime since,
+                                                     @Param("limit") int limit);
+    
+    /**
+     * 查询单个商品建立搜索索引所需的字段，包含已删除的商品
+     * @param productId 商品ID
+     * @return 商品字段
+     */
+    @Select("SELECT product_id, category_id, merchant_id, product_name, product_brief, keywords, " +
+            "price, sales, status, is_deleted, is_hot, is_recommend, is_new, create_time, update_time " +
+            "FROM shop_product WHERE product_id = #{productId}")
+    Map<String, Object> selectProductForIndex(@Param("productId") Long productId);
+    
+    /**
+     * 按商品ID顺序分批读取在售商品的名称、关键词和销量，用于建立联想词索引
+     * @param afterId 上一批最后的商品ID
+     * @param limit 每批数量
+     * @return 商品列表
+     */
+    @Select("SELECT product_id, product_name, keywords, sales FROM shop_product " +
+            "WHERE product_id > #{afterId} AND status = 1 AND is_deleted = 0 " +
+            "ORDER BY product_id LIMIT #{limit}")
+    List<Map<String, Object>> selectProductsForSuggest(@Param("afterId") Long afterId, @Param("limit") int limit);
+    
     /**
      * 查询商品的评论列表
      * @param productId 商品ID
@@ -480,6 +556,36 @@ public interface ProductMapper {
     @Select("SELECT * FROM shop_product_sku WHERE sku_id = #{skuId} FOR UPDATE")
     Map<String, Object> selectSkuForUpdate(@Param("skuId") Long skuId);
     
+    /**
+     * 批量悲观锁查询SKU（FOR UPDATE）
+     * skuIds 需由调用方排序，按主键顺序加锁避免多订单交叉加锁导致死锁
+     */
+    @Select("<script>" +
+            "SELECT * FROM shop_product_sku WHERE sku_id IN " +
+            "<foreach collection='skuIds' item='skuId' open='(' separator=',' close=')'>#{skuId}</foreach> " +
+            "ORDER BY sku_id FOR UPDATE" +
+            "</script>")
+    List<Map<String, Object>> selectSkusForUpdate(@Param("skuIds") List<Long> skuIds);
+    
+    /**
+     * 批量锁定库存（单条多行条件更新）
+     * 每个SKU只有可用库存充足时才会被更新，返回值小于条目数说明有SKU库存不足
+     */
+    @Update("<script>" +
+            "UPDATE shop_product_sku SET " +
+            "lock_stock = lock_stock + CASE sku_id " +
+            "<foreach collection='items' item='item'>WHEN #{item.skuId} THEN #{item.quantity} </foreach>" +
+            "END, " +
+            "version = version + 1, " +
+            "update_time = NOW() " +
+            "WHERE sku_id IN " +
+            "<foreach collection='items' item='item' open='(' separator=',' close=')'>#{item.skuId}</foreach> " +
+            "AND (stock - lock_stock) >= CASE sku_id " +
+            "<foreach collection='items' item='item'>WHEN #{item.skuId} THEN #{item.quantity} </foreach>" +
+            "END" +
+            "</script>")
+    int batchLockStock(@Param("items") List<StockLockItem> items);
+    
     /**
      * 乐观锁锁定库存
      */
@@ -517,6 +623,22 @@ public interface ProductMapper {
     int releaseStockLock(@Param("skuId") Long skuId, 
                        @Param("quantity") Integer quantity);
     
+    /**
+     * 按增量更新SKU库存与锁定库存（库存预留引擎组提交使用）
+     * 条件保证更新后锁定库存不为负且不超过总库存，多节点并发时不会超卖
+     */
+    @Update("UPDATE shop_product_sku SET " +
+            "stock = stock + #{stockDelta}, " +
+            "lock_stock = lock_stock + #{lockDelta}, " +
+            "version = version + 1, " +
+            "update_time = NOW() " +
+            "WHERE sku_id = #{skuId} " +
+            "AND lock_stock + #{lockDelta} >= 0 " +
+            "AND (stock + #{stockDelta}) - (lock_stock + #{lockDelta}) >= 0")
+    int applyStockDelta(@Param("skuId") Long skuId,
+                        @Param("stockDelta") Integer stockDelta,
+                        @Param("lockDelta") Integer lockDelta);
+    
     /**
      * 更新库存（测试用）
      */
@@ -4,6 +4,7 @@ import org.apache.ibatis.annotations.*;
 import org.example.afd.entity.StockOperationLog;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 库存操作日志Mapper
@@ -22,6 +23,33 @@ public interface StockOperationLogMapper {
     @Options(useGeneratedKeys = true, keyProperty = "logId")
     int insertLog(StockOperationLog log);
     
+    /**
+     * 批量插入库存操作日志（组提交使用）
+     */
+    @Insert("<script>" +
+            "INSERT INTO afd.stock_operation_log (sku_id, operation_type, quantity, " +
+            "before_stock, after_stock, before_lock_stock, after_lock_stock, " +
+            "order_no, operator_id, create_time) VALUES " +
+            "<foreach collection='logs' item='log' separator=','>" +
+            "(#{log.skuId}, #{log.operationType}, #{log.quantity}, #{log.beforeStock}, #{log.afterStock}, " +
+            "#{log.beforeLockStock}, #{log.afterLockStock}, #{log.orderNo}, #{log.operatorId}, NOW())" +
+            "</foreach>" +
+            "</script>")
+    int batchInsertLogs(@Param("logs") List<StockOperationLog> logs);
+    
+    /**
+     * 按SKU汇总最近若干天内订单的未结锁定数量（锁定 + 撤销释放 + 撤销扣减 - 扣减 - 释放 - 回滚），
+     * 与SKU当前库存在同一条语句中读出，保证是一致的快照（库存预留引擎重启恢复使用）
+     */
+    @Select("SELECT s.sku_id, s.stock, s.lock_stock, " +
+            "SUM(CASE WHEN l.operation_type IN (1, 5, 6) THEN l.quantity ELSE -l.quantity END) AS outstanding " +
+            "FROM afd.stock_operation_log l " +
+            "JOIN afd.shop_product_sku s ON s.sku_id = l.sku_id " +
+            "WHERE l.order_no IN (SELECT DISTINCT order_no FROM afd.stock_operation_log " +
+            "WHERE operation_type = 1 AND create_time >= DATE_SUB(NOW(), INTERVAL #{days} DAY)) " +
+            "GROUP BY s.sku_id, s.stock, s.lock_stock")
+    List<Map<String, Object>> selectOutstandingLockSummary(@Param("days") Integer days);
+    
     /**
      * 根据订单号和操作类型查询日志
      */
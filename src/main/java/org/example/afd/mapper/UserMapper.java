@@ -176,6 +176,29 @@ public interface UserMapper {
             "WHERE user_id = #{userId} AND relation_type = 1 AND status = 1")
     int getUserFollowingCount(@Param("userId") Integer userId);
     
+    /**
+     * 按用户ID顺序分批获取粉丝ID（动态推送使用）
+     */
+    @Select("SELECT user_id FROM user_relation " +
+            "WHERE target_id = #{userId} AND relation_type = 1 AND status = 1 AND user_id > #{afterUserId} " +
+            "ORDER BY user_id LIMIT #{limit}")
+    List<Long> getFollowerIdsAfter(@Param("userId") Long userId, @Param("afterUserId") Long afterUserId, @Param("limit") int limit);
+    
+    /**
+     * 获取用户关注的用户ID列表
+     */
+    @Select("SELECT target_id FROM user_relation " +
+            "WHERE user_id = #{userId} AND relation_type = 1 AND status = 1")
+    List<Long> getFollowingIds(@Param("userId") Long userId);
+    
+    /**
+     * 获取粉丝数超过阈值的用户ID
+     */
+    @Select("SELECT target_id FROM user_relation " +
+            "WHERE relation_type = 1 AND status = 1 " +
+            "GROUP BY target_id HAVING COUNT(*) > #{threshold}")
+    List<Long> getPopularUserIds(@Param("threshold") int threshold);
+    
     /**
      * 获取用户订阅数量
      */
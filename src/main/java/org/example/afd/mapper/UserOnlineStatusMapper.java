@@ -140,6 +140,38 @@ public interface UserOnlineStatusMapper {
             "</script>")
     List<Map<String, Object>> batchGetOnlineStatus(@Param("userIds") List<Integer> userIds);
 
+    /**
+     * 批量写入在线快照（内存在线状态定期落库）
+     * 已有记录只在离线时改为在线，保留隐身、忙碌等状态；活跃时间只前进不后退
+     * @param statuses 在线用户及最后活跃时间
+     * @return 影响的行数
+     */
+    @Insert("<script>" +
+            "INSERT INTO user_online_status (user_id, status, last_active_time, update_time) VALUES " +
+            "<foreach collection='statuses' item='s' separator=','>" +
+            "(#{s.userId}, 1, #{s.lastActiveTime}, NOW())" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE " +
+            "status = IF(status = 0, 1, status), " +
+            "last_active_time = GREATEST(last_active_time, VALUES(last_active_time)), " +
+            "update_time = NOW()" +
+            "</script>")
+    int batchUpsertOnline(@Param("statuses") List<UserOnlineStatus> statuses);
+
+    /**
+     * 批量设置用户离线
+     * @param userIds 用户ID列表
+     * @return 影响的行数
+     */
+    @Update("<script>" +
+            "UPDATE user_online_status SET status = 0, update_time = NOW() " +
+            "WHERE status != 0 AND user_id IN " +
+            "<foreach collection='userIds' item='userId' open='(' separator=',' close=')'>" +
+            "#{userId}" +
+            "</foreach>" +
+            "</script>")
+    int batchSetOffline(@Param("userIds") List<Integer> userIds);
+
     /**
      * 获取所有在线用户
      * @return 在线用户列表
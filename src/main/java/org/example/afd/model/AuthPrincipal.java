@@ -0,0 +1,35 @@
+package org.example.afd.model;
+
+import lombok.Getter;
+
+/**
+ * 已验证的登录身份
+ *
+ * 由 JwtAuthInterceptor 验证令牌后放入请求属性 {@link #REQUEST_ATTRIBUTE}，
+ * 同一请求内的拦截器和控制器直接读取，不再重复解析令牌。不可变，可在多个请求间共享。
+ */
+@Getter
+public final class AuthPrincipal {
+
+    public static final String REQUEST_ATTRIBUTE = AuthPrincipal.class.getName();
+
+    private final Integer userId;      // 用户ID
+    private final String username;     // 用户名
+    private final String role;         // 角色，刷新令牌中没有
+    private final long expiresAt;      // 令牌过期时间（毫秒时间戳）
+
+    public AuthPrincipal(Integer userId, String username, String role, long expiresAt) {
+        this.userId = userId;
+        this.username = username;
+        this.role = role;
+        this.expiresAt = expiresAt;
+    }
+
+    public boolean isAdmin() {
+        return "ADMIN".equals(role);
+    }
+
+    public boolean isExpired(long now) {
+        return expiresAt <= now;
+    }
+}
@@ -0,0 +1,52 @@
+package org.example.afd.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 游标分页结果封装类
+ *
+ * 客户端首次请求不传 cursor，之后把上一页返回的 nextCursor 原样传回；
+ * hasMore 为 false 时 nextCursor 为 null。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> list;          // 当前页数据
+    private String nextCursor;     // 下一页游标
+    private boolean hasMore;       // 是否还有下一页
+
+    /**
+     * 每页最大数量
+     */
+    public static final int MAX_SIZE = 100;
+
+    /**
+     * 把请求的每页数量限制在 [1, MAX_SIZE]，未传或不是正数时使用默认值
+     */
+    public static int clampSize(Integer size, int defaultSize) {
+        if (size == null || size < 1) {
+            return defaultSize;
+        }
+        return Math.min(size, MAX_SIZE);
+    }
+
+    /**
+     * 由多查一条的结果构造分页：查询 size + 1 条，多出的一条只用来判断是否还有下一页
+     *
+     * @param rows 查询结果（最多 size + 1 条）
+     * @param size 每页数量，至少为 1（见 {@link #clampSize}）
+     * @param cursorOf 根据当前页最后一条记录生成游标
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int size, Function<T, String> cursorOf) {
+        boolean hasMore = rows.size() > size;
+        List<T> page = hasMore ? rows.subList(0, size) : rows;
+        String nextCursor = hasMore ? cursorOf.apply(page.get(page.size() - 1)) : null;
+        return new CursorPage<>(page, nextCursor, hasMore);
+    }
+}
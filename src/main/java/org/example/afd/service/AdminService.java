@@ -1,5 +1,7 @@
 package org.example.afd.service;
 
+import org.example.afd.model.CursorPage;
+
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -337,6 +339,15 @@ public interface AdminService {
      */
     Map<String, Object> getLoginRecords(int page, int size, Long userId, Date startDate, Date endDate, Integer loginType);
     
+    /**
+     * 游标分页获取登录记录列表
+     * @param userId 用户ID筛选（可选）
+     * @param cursor 上一页返回的游标，第一页为空
+     * @param size 每页数量
+     * @return 登录记录列表及下一页游标
+     */
+    CursorPage<Map<String, Object>> getLoginRecordsByCursor(Long userId, String cursor, int size);
+    
     /**
      * 根据ID获取登录记录详情
      * @param recordId 记录ID
@@ -0,0 +1,339 @@
+package org.example.afd.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.mapper.CategoryMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 商品分类树快照
+ *
+ * 1. 分类表很小且很少修改，整表读入内存构造成不可变的快照，读取分类、子分类、路径都不再查库
+ * 2. 按先序遍历给每个分类编号，子树恰好是一段连续区间 [enter, exit)，
+ *    "某分类下的全部商品"只需取区间内的分类ID，判断祖先关系只比较区间端点
+ * 3. 每个分类到根的路径在构造时算好，面包屑导航直接返回
+ * 4. 后台修改分类后整体重建并替换快照，读取方始终看到一份完整的树；
+ *    其他节点的修改由定时刷新同步
+ */
+@Component
+@Slf4j
+public class CategoryTree {
+
+    @Autowired
+    private CategoryMapper categoryMapper;
+
+    private volatile Snapshot snapshot;
+
+    private volatile long lastReloadTime;
+
+    /**
+     * 不可变的分类树，数组下标为分类的先序编号
+     */
+    private static final class Snapshot {
+        final Map<Long, Integer> positions;
+        final long[] ids;
+        final int[] exits;
+        final Map<String, Object>[] rows;
+        final int[][] children;
+        final List<Map<String, Object>>[] paths;
+
+        /**
+         * 全部分类，保持数据库返回的排序
+         */
+        final List<Map<String, Object>> all;
+        final List<Map<String, Object>> roots;
+
+        @SuppressWarnings("unchecked")
+        Snapshot(List<Map<String, Object>> source) {
+            int size = source.size();
+            Map<Long, Integer> sourceIndex = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                sourceIndex.put(toLong(source.get(i).get("category_id")), i);
+            }
+            // 父分类不存在的当作一级分类，子分类保持数据库排序
+            List<List<Integer>> sourceChildren = new ArrayList<>(size);
+            List<Integer> sourceRoots = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                sourceChildren.add(new ArrayList<>());
+            }
+            for (int i = 0; i < size; i++) {
+                Integer parent = sourceIndex.get(toLong(source.get(i).get("parent_id")));
+                if (parent == null || parent == i) {
+                    sourceRoots.add(i);
+                } else {
+                    sourceChildren.get(parent).add(i);
+                }
+            }
+
+            positions = new HashMap<>(size * 2);
+            ids = new long[size];
+            exits = new int[size];
+            rows = new Map[size];
+            children = new int[size][];
+            paths = new List[size];
+            int[] parents = new int[size];
+            int[] sourceOf = new int[size];
+            boolean[] visited = new boolean[size];
+            int next = 0;
+            // 先从一级分类出发遍历，父子关系成环的分类最后单独作为根遍历
+            List<Integer> starts = new ArrayList<>(sourceRoots);
+            for (int i = 0; i < size; i++) {
+                starts.add(i);
+            }
+            int[] stack = new int[size];
+            int[] stackParent = new int[size];
+            for (int start : starts) {
+                if (visited[start]) {
+                    continue;
+                }
+                int depth = 0;
+                stack[depth] = start;
+                stackParent[depth++] = -1;
+                visited[start] = true;
+                while (depth > 0) {
+                    int current = stack[--depth];
+                    int position = next++;
+                    sourceOf[position] = current;
+                    parents[position] = stackParent[depth];
+                    List<Integer> kids = sourceChildren.get(current);
+                    // 逆序入栈，出栈时保持原有顺序
+                    for (int k = kids.size() - 1; k >= 0; k--) {
+                        int child = kids.get(k);
+                        if (!visited[child]) {
+                            visited[child] = true;
+                            stack[depth] = child;
+                            stackParent[depth++] = position;
+                        }
+                    }
+                }
+            }
+
+            for (int position = 0; position < size; position++) {
+                Map<String, Object> row = Collections.unmodifiableMap(source.get(sourceOf[position]));
+                ids[position] = toLong(row.get("category_id"));
+                rows[position] = row;
+                positions.put(ids[position], position);
+                exits[position] = position + 1;
+            }
+            // 子树区间：逆序把每个节点的右端点传给父节点
+            for (int position = size - 1; position >= 0; position--) {
+                int parent = parents[position];
+                if (parent >= 0 && exits[position] > exits[parent]) {
+                    exits[parent] = exits[position];
+                }
+            }
+            int[] childCounts = new int[size];
+            for (int position = 0; position < size; position++) {
+                if (parents[position] >= 0) {
+                    childCounts[parents[position]]++;
+                }
+            }
+            for (int position = 0; position < size; position++) {
+                children[position] = new int[childCounts[position]];
+                childCounts[position] = 0;
+            }
+            List<Map<String, Object>> rootRows = new ArrayList<>();
+            for (int position = 0; position < size; position++) {
+                int parent = parents[position];
+                List<Map<String, Object>> path;
+                if (parent >= 0) {
+                    children[parent][childCounts[parent]++] = position;
+                    path = new ArrayList<>(paths[parent].size() + 1);
+                    path.addAll(paths[parent]);
+                } else {
+                    rootRows.add(rows[position]);
+                    path = new ArrayList<>(1);
+                }
+                path.add(rows[position]);
+                paths[position] = Collections.unmodifiableList(path);
+            }
+
+            List<Map<String, Object>> allRows = new ArrayList<>(size);
+            for (Map<String, Object> row : source) {
+                allRows.add(rows[positions.get(toLong(row.get("category_id")))]);
+            }
+            all = Collections.unmodifiableList(allRows);
+            roots = Collections.unmodifiableList(rootRows);
+        }
+
+        Integer position(Long categoryId) {
+            return categoryId == null ? null : positions.get(categoryId);
+        }
+    }
+
+    /**
+     * 查询分类
+     *
+     * @return 分类不存在时返回 null；返回的 Map 不可修改
+     */
+    public Map<String, Object> get(Long categoryId) {
+        Snapshot current = current();
+        Integer position = current.position(categoryId);
+        return position != null ? current.rows[position] : null;
+    }
+
+    /**
+     * 全部分类，按 sort_order 排序
+     *
+     * @param enabledOnly 是否只返回启用的分类
+     */
+    public List<Map<String, Object>> list(boolean enabledOnly) {
+        List<Map<String, Object>> all = current().all;
+        return enabledOnly ? filterEnabled(all) : all;
+    }
+
+    /**
+     * 直接子分类，parentId 为 null 或 0 时返回一级分类
+     */
+    public List<Map<String, Object>> children(Long parentId) {
+        Snapshot current = current();
+        if (parentId == null || parentId == 0) {
+            return current.roots;
+        }
+        Integer position = current.position(parentId);
+        if (position == null) {
+            return Collections.emptyList();
+        }
+        List<Map<String, Object>> result = new ArrayList<>(current.children[position].length);
+        for (int child : current.children[position]) {
+            result.add(current.rows[child]);
+        }
+        return result;
+    }
+
+    /**
+     * 从一级分类到该分类的路径
+     */
+    public List<Map<String, Object>> path(Long categoryId) {
+        Snapshot current = current();
+        Integer position = current.position(categoryId);
+        return position != null ? current.paths[position] : Collections.emptyList();
+    }
+
+    /**
+     * 分类自身及全部子孙分类的ID；分类不在快照中时只返回它自己，查询退化为按单个分类过滤
+     */
+    public List<Long> subtreeIds(Long categoryId) {
+        Snapshot current = current();
+        Integer position = current.position(categoryId);
+        if (position == null) {
+            return Collections.singletonList(categoryId);
+        }
+        int exit = current.exits[position];
+        List<Long> result = new ArrayList<>(exit - position);
+        for (int i = position; i < exit; i++) {
+            result.add(current.ids[i]);
+        }
+        return result;
+    }
+
+    /**
+     * categoryId 是否为 ancestorId 本身或其子孙分类
+     */
+    public boolean contains(Long ancestorId, Long categoryId) {
+        Snapshot current = current();
+        Integer ancestor = current.position(ancestorId);
+        Integer position = current.position(categoryId);
+        return ancestor != null && position != null
+            && position >= ancestor && position < current.exits[ancestor];
+    }
+
+    /**
+     * 在当前事务提交后重建快照，没有事务时立即重建
+     */
+    public void reloadAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reloadQuietly();
+                }
+            });
+        } else {
+            reloadQuietly();
+        }
+    }
+
+    /**
+     * 定时刷新，同步其他节点对分类的修改
+     */
+    @Scheduled(fixedDelayString = "${category.tree.refresh-interval-ms:300000}",
+               initialDelayString = "${category.tree.refresh-interval-ms:300000}")
+    public void refresh() {
+        reloadQuietly();
+    }
+
+    /**
+     * 从数据库读取全部分类并替换快照
+     */
+    public void reload() {
+        load();
+    }
+
+    /**
+     * 运行指标
+     */
+    public Map<String, Object> getStatistics() {
+        Snapshot current = snapshot;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("loaded", current != null);
+        stats.put("categories", current != null ? current.ids.length : 0);
+        stats.put("roots", current != null ? current.roots.size() : 0);
+        stats.put("lastReloadTime", lastReloadTime);
+        return stats;
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (Exception e) {
+            // 保留旧快照，下次刷新时重试
+            log.error("重建分类树快照失败", e);
+        }
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            return snapshot != null ? snapshot : load();
+        }
+    }
+
+    private synchronized Snapshot load() {
+        long start = System.currentTimeMillis();
+        Snapshot next = new Snapshot(categoryMapper.selectAllCategories());
+        snapshot = next;
+        lastReloadTime = System.currentTimeMillis();
+        log.debug("分类树快照已重建: categories={}, cost={}ms", next.ids.length, lastReloadTime - start);
+        return next;
+    }
+
+    private static List<Map<String, Object>> filterEnabled(List<Map<String, Object>> rows) {
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Object status = row.get("status");
+            boolean enabled = status instanceof Boolean ? (Boolean) status
+                : status instanceof Number && ((Number) status).intValue() == 1;
+            if (enabled) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+}
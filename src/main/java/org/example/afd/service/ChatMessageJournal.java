@@ -0,0 +1,266 @@
+package org.example.afd.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.entity.UserChatMessage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 聊天消息预写日志
+ *
+ * 消息进入持久化队列前先追加到本地分段文件（每行一条 JSON），写入操作系统缓冲即返回，
+ * 进程崩溃不丢消息；分段写满后封存，其中消息全部入库后删除。
+ * 启动时未删除的分段即为未确认入库的消息，由调用方重放。
+ * 发送方已收到失败的消息在原分段中追加一条作废记录，重放时跳过。
+ * 反复写库失败、确定无法入库的消息追加到死信文件，由人工处理。
+ */
+@Slf4j
+public class ChatMessageJournal {
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+    private static final String ABANDONED = "abandonedMessageId";
+    private static final String DEAD_LETTER = "dead-letter.log";
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+        .addModule(new JavaTimeModule())
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+        .build();
+
+    private final Path dir;
+    private final int segmentSize;
+
+    private final Map<Long, Segment> segments = new HashMap<>();
+    private Segment current;
+    private long nextIndex;
+
+    private static final class Segment {
+        final long index;
+        final Path path;
+        BufferedWriter writer;
+        int written;
+        int pending;
+
+        Segment(long index, Path path) {
+            this.index = index;
+            this.path = path;
+        }
+    }
+
+    public ChatMessageJournal(Path dir, int segmentSize) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(dir);
+        for (long index : existingSegments().keySet()) {
+            nextIndex = Math.max(nextIndex, index + 1);
+        }
+    }
+
+    /**
+     * 读取上次运行遗留的分段中的消息，按写入顺序返回
+     */
+    public synchronized List<UserChatMessage> recover() throws IOException {
+        List<UserChatMessage> messages = new ArrayList<>();
+        Set<Long> abandoned = new HashSet<>();
+        for (Path path : existingSegments().values()) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        JsonNode node = MAPPER.readTree(line);
+                        if (node.has(ABANDONED)) {
+                            abandoned.add(node.get(ABANDONED).asLong());
+                        } else {
+                            messages.add(MAPPER.treeToValue(node, UserChatMessage.class));
+                        }
+                    } catch (IOException e) {
+                        // 崩溃时最后一行可能只写了一半
+                        log.warn("跳过无法解析的预写日志记录: file={}", path.getFileName());
+                    }
+                }
+            }
+        }
+        if (!abandoned.isEmpty()) {
+            messages.removeIf(message -> abandoned.contains(message.getMessageId()));
+        }
+        return messages;
+    }
+
+    /**
+     * 重放成功后删除遗留分段
+     */
+    public synchronized void discardRecovered() throws IOException {
+        for (Path path : existingSegments().values()) {
+            if (current == null || !path.equals(current.path)) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * 追加一条消息
+     *
+     * @return 所在分段编号，入库后传给 {@link #committed(Map)}
+     */
+    public synchronized long append(UserChatMessage message) throws IOException {
+        if (current == null) {
+            long index = nextIndex++;
+            current = new Segment(index, dir.resolve(PREFIX + index + SUFFIX));
+            current.writer = Files.newBufferedWriter(current.path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            segments.put(index, current);
+        }
+        Segment segment = current;
+        segment.writer.write(MAPPER.writeValueAsString(message));
+        segment.writer.newLine();
+        segment.writer.flush();
+        segment.written++;
+        segment.pending++;
+        if (segment.written >= segmentSize) {
+            seal(segment);
+        }
+        return segment.index;
+    }
+
+    /**
+     * 标记消息已入库
+     *
+     * @param counts 分段编号 -> 本批入库的消息数
+     */
+    public synchronized void committed(Map<Long, Integer> counts) {
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            Segment segment = segments.get(entry.getKey());
+            if (segment == null) {
+                continue;
+            }
+            segment.pending -= entry.getValue();
+            if (segment.pending <= 0 && segment != current) {
+                delete(segment);
+            }
+        }
+    }
+
+    /**
+     * 作废一条未能入库的消息：在它所在的分段追加作废记录，并按已处理计数
+     * 作废记录与消息在同一个文件里，分段只要还在，重放时就能看到
+     */
+    public synchronized void abandon(long index, long messageId) throws IOException {
+        Segment segment = segments.get(index);
+        if (segment == null) {
+            return;
+        }
+        String record = "{\"" + ABANDONED + "\":" + messageId + "}";
+        if (segment.writer != null) {
+            segment.writer.write(record);
+            segment.writer.newLine();
+            segment.writer.flush();
+        } else {
+            // 分段已封存，重新以追加方式打开写入一行
+            Files.write(segment.path, Collections.singletonList(record), StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+        }
+        committed(Collections.singletonMap(index, 1));
+    }
+
+    /**
+     * 把无法入库的消息追加到死信文件，每行一条 JSON：原因和消息本身
+     */
+    public synchronized void deadLetter(UserChatMessage message, String reason) throws IOException {
+        Map<String, Object> record = new HashMap<>();
+        record.put("reason", reason);
+        record.put("message", message);
+        Files.write(dir.resolve(DEAD_LETTER), Collections.singletonList(MAPPER.writeValueAsString(record)),
+            StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * 封存当前分段，队列清空时调用，使已入库的分段可以尽快删除
+     */
+    public synchronized void roll() {
+        if (current != null) {
+            seal(current);
+        }
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized void close() {
+        if (current != null) {
+            closeWriter(current);
+            current = null;
+        }
+    }
+
+    private void seal(Segment segment) {
+        closeWriter(segment);
+        if (segment == current) {
+            current = null;
+        }
+        if (segment.pending <= 0) {
+            delete(segment);
+        }
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment.index);
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            log.warn("删除预写日志分段失败: {}", segment.path, e);
+        }
+    }
+
+    private void closeWriter(Segment segment) {
+        if (segment.writer == null) {
+            return;
+        }
+        try {
+            segment.writer.close();
+        } catch (IOException e) {
+            log.warn("关闭预写日志分段失败: {}", segment.path, e);
+        }
+        segment.writer = null;
+    }
+
+    private Map<Long, Path> existingSegments() throws IOException {
+        Map<Long, Path> found = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    found.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    log.warn("忽略无法识别的预写日志文件: {}", name);
+                }
+            }
+        }
+        return found;
+    }
+}
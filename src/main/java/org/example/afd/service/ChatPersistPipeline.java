@@ -0,0 +1,491 @@
+package org.example.afd.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.entity.UserChatMessage;
+import org.example.afd.mapper.ChatMapper;
+import org.example.afd.service.impl.ChatServiceImpl;
+import org.example.afd.utils.SnowflakeIdGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 聊天消息异步持久化管道
+ *
+ * 1. 发送时用雪花算法预分配消息ID，写入预写日志后放入有界环形队列即返回，
+ *    调用方随即把消息推送给接收者，推送延迟与数据库无关
+ * 2. 单个写线程批量取出消息，在一个事务里多行插入消息（组提交），
+ *    同一会话的最后一条消息合并为一次更新，未读数在提交后由已读水位服务在内存中累加
+ * 3. 队列满时调用方在自己的线程里同步写入，发送速度被限制在数据库吞吐以内（背压）
+ * 4. 写入失败时整批退避重试；预写日志中的消息入库后才删除，
+ *    重启时重放遗留消息，插入按主键幂等，保证至少一次落库
+ * 5. 重试次数用完或遇到数据完整性错误（超长、违反约束）时把批次二分，逐步定位到无法写入的单条消息，
+ *    转入死信文件，不再阻塞后续消息；单条消息重试用完时先探测数据库是否可读，不可用则继续退避重试
+ */
+@Component
+@Slf4j
+public class ChatPersistPipeline {
+
+    private static final long MAX_BACKOFF_MS = 5000;
+
+    @Autowired
+    private ChatMapper chatMapper;
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ChatSearchIndex searchIndex;
+
+    @Autowired
+    private ChatReadStateService readStateService;
+
+    @Autowired
+    private ChatSyncService chatSyncService;
+
+    @Value("${chat.persist.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.persist.queue-capacity:65536}")
+    private int queueCapacity;
+
+    @Value("${chat.persist.batch-size:500}")
+    private int batchSize;
+
+    @Value("${chat.persist.offer-timeout-ms:50}")
+    private long offerTimeoutMs;
+
+    @Value("${chat.persist.journal-dir:data/chat-journal}")
+    private String journalDir;
+
+    @Value("${chat.persist.journal-segment-size:10000}")
+    private int journalSegmentSize;
+
+    @Value("${chat.persist.conversation-cache-size:50000}")
+    private int conversationCacheSize;
+
+    @Value("${chat.persist.max-retries:5}")
+    private int maxRetries;
+
+    private BlockingQueue<Pending> queue;
+    private ChatMessageJournal journal;
+    private Thread writer;
+    private volatile boolean running;
+
+    /**
+     * 用户对 -> 会话ID，会话删除只是标记，ID 不会变化
+     */
+    private Map<Long, Long> conversations;
+
+    /**
+     * 本节点已提交、尚未确认入库的消息ID
+     */
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong persisted = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong bisections = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private volatile long lastBatchCostMs;
+
+    private static final class Pending {
+        final UserChatMessage message;
+        final long segment;
+
+        Pending(UserChatMessage message, long segment) {
+            this.message = message;
+            this.segment = segment;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("聊天消息异步持久化未启用，发送时同步写库");
+            return;
+        }
+        int cacheSize = conversationCacheSize;
+        conversations = Collections.synchronizedMap(new LinkedHashMap<Long, Long>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        running = true;
+        try {
+            journal = new ChatMessageJournal(Paths.get(journalDir), journalSegmentSize);
+            replay();
+        } catch (Exception e) {
+            log.error("聊天预写日志初始化失败，异步持久化不可用，发送时同步写库", e);
+            running = false;
+            journal = null;
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        writer = new Thread(this::run, "chat-persist");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("聊天消息异步持久化已启动: queueCapacity={}, batchSize={}", queueCapacity, batchSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+        log.info("聊天消息异步持久化已停止，未入库消息: {}", queue.size());
+    }
+
+    public boolean isEnabled() {
+        return writer != null && running;
+    }
+
+    /**
+     * 提交一条消息，返回预分配的消息ID；未启用时同步写库
+     *
+     * @return 消息ID，写入失败返回 null
+     */
+    public Long submit(UserChatMessage message) {
+        if (!isEnabled()) {
+            return chatService.sendMessage(message);
+        }
+        if (message.getMessageStatus() == null) {
+            message.setMessageStatus(1); // 1-已发送
+        }
+        if (message.getIsRecalled() == null) {
+            message.setIsRecalled(0); // 0-未撤回
+        }
+        if (message.getCreateTime() == null) {
+            message.setCreateTime(LocalDateTime.now());
+        }
+        message.setMessageId(idGenerator.nextId());
+        if (message.getConversationId() == null) {
+            message.setConversationId(conversations.get(pairKey(message.getSenderId(), message.getReceiverId())));
+        }
+
+        Pending pending;
+        try {
+            pending = new Pending(message, journal.append(message));
+        } catch (Exception e) {
+            log.error("写入聊天预写日志失败，改为同步写库: messageId={}", message.getMessageId(), e);
+            return chatService.sendMessage(message);
+        }
+        submitted.incrementAndGet();
+        inFlight.add(message.getMessageId());
+
+        try {
+            if (queue.offer(pending, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return message.getMessageId();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 队列已满，由调用方线程同步写入；写入失败时发送方收到失败，
+        // 同时在预写日志中作废这条消息，重启后不会再补写
+        callerRuns.incrementAndGet();
+        if (persist(Collections.singletonList(pending), false) == null) {
+            return message.getMessageId();
+        }
+        inFlight.remove(message.getMessageId());
+        try {
+            journal.abandon(pending.segment, message.getMessageId());
+        } catch (Exception e) {
+            log.error("作废预写日志记录失败，重启时该消息仍会补写: messageId={}", message.getMessageId(), e);
+        }
+        return null;
+    }
+
+    /**
+     * 消息是否已确认入库；其他节点生成的消息无法确认，一律视为未入库
+     */
+    public boolean isPersisted(long messageId) {
+        if (!isEnabled()) {
+            return true;
+        }
+        return SnowflakeIdGenerator.workerIdOf(messageId) == idGenerator.getWorkerId()
+            && !inFlight.contains(messageId);
+    }
+
+    /**
+     * 运行指标
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        long batchCount = batches.get();
+        stats.put("enabled", isEnabled());
+        stats.put("queued", queue != null ? queue.size() : 0);
+        stats.put("inFlight", inFlight.size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("submitted", submitted.get());
+        stats.put("persisted", persisted.get());
+        stats.put("batches", batchCount);
+        stats.put("avgBatchSize", batchCount == 0 ? 0 : persisted.get() / (double) batchCount);
+        stats.put("callerRuns", callerRuns.get());
+        stats.put("retries", retries.get());
+        stats.put("bisections", bisections.get());
+        stats.put("deadLettered", deadLettered.get());
+        stats.put("lastBatchCostMs", lastBatchCostMs);
+        stats.put("journalSegments", journal != null ? journal.getSegmentCount() : 0);
+        return stats;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // 空闲时封存当前分段，已入库的分段随即删除
+                    journal.roll();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                if (!persistWithRetry(batch, false)) {
+                    // 停止时放弃重试，消息保留在预写日志中，下次启动重放
+                    break;
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * 写入一批消息，失败时退避重试；重试次数用完或遇到数据完整性错误时二分批次，
+     * 定位到单条无法写入的消息后转入死信
+     *
+     * @return 停止运行时放弃重试返回 false，未写入的消息保留在预写日志中
+     */
+    private boolean persistWithRetry(List<Pending> batch, boolean maybePersisted) throws InterruptedException {
+        Deque<List<Pending>> parts = new ArrayDeque<>();
+        parts.push(batch);
+        while (!parts.isEmpty()) {
+            List<Pending> part = parts.pop();
+            int failures = 0;
+            long backoff = 0;
+            while (true) {
+                // 上一次失败时事务可能已经提交，只是没有收到确认
+                Exception failure = persist(part, maybePersisted || failures > 0 || part != batch);
+                if (failure == null) {
+                    break;
+                }
+                if (!running) {
+                    return false;
+                }
+                failures++;
+                boolean badData = failure instanceof DataIntegrityViolationException;
+                if (badData || failures >= maxRetries) {
+                    if (part.size() > 1) {
+                        // 保持原有顺序：前一半先写
+                        int middle = part.size() / 2;
+                        parts.push(new ArrayList<>(part.subList(middle, part.size())));
+                        parts.push(new ArrayList<>(part.subList(0, middle)));
+                        bisections.incrementAndGet();
+                        break;
+                    }
+                    // 数据库可读说明问题在这条消息本身；数据库不可用时继续退避重试
+                    if (badData || databaseAvailable(part.get(0))) {
+                        deadLetter(part.get(0), failure);
+                        break;
+                    }
+                }
+                retries.incrementAndGet();
+                backoff = backoff == 0 ? 100 : Math.min(backoff * 2, MAX_BACKOFF_MS);
+                Thread.sleep(backoff);
+            }
+        }
+        return true;
+    }
+
+    private boolean databaseAvailable(Pending pending) {
+        try {
+            chatMapper.selectExistingMessageIds(Collections.singletonList(pending.message.getMessageId()));
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 放弃一条无法入库的消息：写入死信文件，并在预写日志中作废，重启时不再重放
+     */
+    private void deadLetter(Pending pending, Exception failure) {
+        UserChatMessage message = pending.message;
+        deadLettered.incrementAndGet();
+        log.error("聊天消息无法入库，转入死信: messageId={}, senderId={}, receiverId={}, error={}",
+            message.getMessageId(), message.getSenderId(), message.getReceiverId(), failure.getMessage());
+        try {
+            journal.deadLetter(message, String.valueOf(failure.getMessage()));
+            if (pending.segment >= 0) {
+                journal.abandon(pending.segment, message.getMessageId());
+            }
+        } catch (Exception e) {
+            log.error("写入聊天消息死信失败: messageId={}", message.getMessageId(), e);
+        }
+        inFlight.remove(message.getMessageId());
+    }
+
+    /**
+     * 在一个事务里写入一批消息及合并后的会话更新
+     *
+     * @param maybePersisted 这批消息可能已经入库（重放预写日志或重试），此时先查出已入库的消息，
+     *                       同步日志、搜索索引和已读状态只处理本次新插入的消息
+     * @return 成功返回 null，失败返回异常
+     */
+    private Exception persist(List<Pending> batch, boolean maybePersisted) {
+        long start = System.currentTimeMillis();
+        List<UserChatMessage> messages = new ArrayList<>(batch.size());
+        List<UserChatMessage> inserted = new ArrayList<>(batch.size());
+        try {
+            // 按会话ID顺序更新，并发的批次以相同顺序锁会话行
+            Map<Long, UserChatMessage> lastMessages = new TreeMap<>();
+            for (Pending pending : batch) {
+                UserChatMessage message = pending.message;
+                if (message.getConversationId() == null) {
+                    message.setConversationId(resolveConversation(message.getSenderId(), message.getReceiverId()));
+                }
+                messages.add(message);
+                lastMessages.merge(message.getConversationId(), message,
+                    (a, b) -> a.getMessageId() > b.getMessageId() ? a : b);
+            }
+
+            transactionTemplate.executeWithoutResult(status -> {
+                inserted.clear();
+                inserted.addAll(maybePersisted ? excludeExisting(messages) : messages);
+                if (!inserted.isEmpty()) {
+                    chatMapper.batchInsertMessages(inserted);
+                }
+                LocalDateTime now = LocalDateTime.now();
+                for (Map.Entry<Long, UserChatMessage> entry : lastMessages.entrySet()) {
+                    UserChatMessage last = entry.getValue();
+                    chatMapper.updateConversationLastMessage(entry.getKey(), last.getMessageId(),
+                        ChatServiceImpl.getMessageContentSummary(last.getContent(), last.getMessageType()),
+                        last.getMessageType(), last.getCreateTime(), now);
+                }
+                // 同步日志最后写入：收件箱行锁总在会话、消息行之后获取，与删除会话、撤回的顺序一致
+                chatSyncService.appendMessages(inserted);
+            });
+        } catch (Exception e) {
+            log.error("聊天消息批量入库失败: size={}", batch.size(), e);
+            return e;
+        }
+
+        Map<Long, Integer> segments = new HashMap<>();
+        for (Pending pending : batch) {
+            if (pending.segment >= 0) {
+                segments.merge(pending.segment, 1, Integer::sum);
+            }
+        }
+        journal.committed(segments);
+        for (UserChatMessage message : messages) {
+            inFlight.remove(message.getMessageId());
+        }
+        searchIndex.add(inserted);
+        readStateService.onMessages(inserted);
+        persisted.addAndGet(batch.size());
+        batches.incrementAndGet();
+        lastBatchCostMs = System.currentTimeMillis() - start;
+        return null;
+    }
+
+    /**
+     * 重放上次运行未确认入库的消息
+     */
+    private void replay() throws Exception {
+        List<UserChatMessage> recovered = journal.recover();
+        if (recovered.isEmpty()) {
+            return;
+        }
+        log.info("重放聊天预写日志: {}条消息", recovered.size());
+        for (int from = 0; from < recovered.size(); from += batchSize) {
+            List<Pending> batch = new ArrayList<>();
+            for (UserChatMessage message : recovered.subList(from, Math.min(from + batchSize, recovered.size()))) {
+                batch.add(new Pending(message, -1));
+            }
+            if (!persistWithRetry(batch, true)) {
+                throw new IllegalStateException("重放聊天预写日志中断");
+            }
+        }
+        journal.discardRecovered();
+    }
+
+    private List<UserChatMessage> excludeExisting(List<UserChatMessage> messages) {
+        List<Long> ids = new ArrayList<>(messages.size());
+        for (UserChatMessage message : messages) {
+            ids.add(message.getMessageId());
+        }
+        Set<Long> existing = new HashSet<>(chatMapper.selectExistingMessageIds(ids));
+        if (existing.isEmpty()) {
+            return messages;
+        }
+        log.info("跳过已入库的聊天消息: {}条", existing.size());
+        List<UserChatMessage> fresh = new ArrayList<>(messages.size() - existing.size());
+        for (UserChatMessage message : messages) {
+            if (!existing.contains(message.getMessageId())) {
+                fresh.add(message);
+            }
+        }
+        return fresh;
+    }
+
+    private Long resolveConversation(Integer senderId, Integer receiverId) {
+        long key = pairKey(senderId, receiverId);
+        Long conversationId = conversations.get(key);
+        if (conversationId == null) {
+            conversationId = chatService.createOrGetConversation(senderId, receiverId);
+            if (conversationId == null) {
+                throw new IllegalStateException("创建或获取会话失败: " + senderId + "-" + receiverId);
+            }
+            conversations.put(key, conversationId);
+        }
+        return conversationId;
+    }
+
+    private static long pairKey(Integer a, Integer b) {
+        long low = Math.min(a, b);
+        long high = Math.max(a, b);
+        return (low << 32) | (high & 0xffffffffL);
+    }
+}
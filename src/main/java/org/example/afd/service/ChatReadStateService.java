@@ -0,0 +1,557 @@
+package org.example.afd.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.entity.UserChatMessage;
+import org.example.afd.entity.UserChatReadState;
+import org.example.afd.mapper.ChatReadStateMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 聊天已读水位与未读数服务
+ *
+ * 1. 每个用户在每个会话中只记录“已读到的最大消息ID”，标记已读只推进水位，不再逐条更新消息状态
+ * 2. 用户首次访问时用一条查询加载全部会话的水位、会话最新消息ID和水位之后的未读数，
+ *    之后的新消息、已读、撤回只在内存中增减，未读总数直接从内存返回
+ * 3. 水位变化合并后定时批量落库；已加载的状态超过有效期且已落库后淘汰，下次访问重新加载，
+ *    以此修正其他节点上发生的变化
+ * 4. 消息ID在发送时生成，提交顺序可能与ID顺序不同：标记已读时同时记录用户的收件箱序号，
+ *    之后才提交的消息即使ID不大于水位也计为未读；内存中遇到这类消息时淘汰状态，从数据库重新统计
+ */
+@Service
+@Slf4j
+public class ChatReadStateService {
+
+    @Autowired
+    private ChatReadStateMapper readStateMapper;
+
+    @Value("${chat.read-state.ttl-ms:60000}")
+    private long ttlMs;
+
+    @Value("${chat.read-state.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    @Value("${chat.sync.enabled:true}")
+    private boolean syncEnabled;
+
+    private final Map<Integer, UserState> users = new ConcurrentHashMap<>();
+    private final Set<Integer> dirtyUsers = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong skippedReads = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private volatile long lastFlushCostMs;
+
+    /**
+     * 单个会话的已读状态
+     */
+    private static final class Entry {
+        final long conversationId;
+        final int otherUserId;
+        long watermark;
+        // 标记已读时的收件箱序号，与水位一起落库
+        long readSeq;
+        long head;
+        int unread;
+        long pending;
+        // 新消息或撤回改变未读数时递增，用于检测锁外计数期间的并发修改
+        int revision;
+
+        Entry(long conversationId, int otherUserId) {
+            this.conversationId = conversationId;
+            this.otherUserId = otherUserId;
+        }
+    }
+
+    /**
+     * 单个用户的全部会话状态，所有字段在对象锁内访问
+     */
+    private static final class UserState {
+        final long loadedAt = System.currentTimeMillis();
+        final Map<Long, Entry> byConversation = new HashMap<>();
+        final Map<Integer, Entry> byOtherUser = new HashMap<>();
+        // 加载期间提交的消息先暂存，加载完成后补记
+        List<UserChatMessage> buffered = new ArrayList<>();
+        int total;
+        int pendingCount;
+        boolean ready;
+        boolean evicted;
+        boolean stale;
+
+        Entry entry(long conversationId, int otherUserId) {
+            Entry entry = byConversation.get(conversationId);
+            if (entry == null) {
+                entry = new Entry(conversationId, otherUserId);
+                byConversation.put(conversationId, entry);
+                byOtherUser.put(otherUserId, entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * 获取用户的未读消息总数
+     */
+    public int getUnreadCount(Integer userId) {
+        return withState(userId, state -> state.total);
+    }
+
+    /**
+     * 获取用户各会话的未读数
+     */
+    public Map<Long, Integer> getUnreadCounts(Integer userId) {
+        return withState(userId, state -> {
+            Map<Long, Integer> counts = new HashMap<>();
+            for (Entry entry : state.byConversation.values()) {
+                counts.put(entry.conversationId, entry.unread);
+            }
+            return counts;
+        });
+    }
+
+    /**
+     * 把用户与对方会话的已读水位推进到会话最新消息
+     *
+     * @return 水位有推进时返回会话ID；会话不存在或已经全部已读返回 null
+     */
+    public Long markRead(Integer userId, Integer otherUserId) {
+        return markRead(userId, otherUserId, null);
+    }
+
+    /**
+     * 把用户与对方会话的已读水位推进到客户端上报的已读位置
+     * 位置之后到达的消息仍为未读；位置超过会话最新消息时按最新消息处理
+     *
+     * @param upToMessageId 客户端已读到的消息ID，为空时推进到会话最新消息
+     * @return 水位有推进时返回会话ID；会话不存在或水位没有变化返回 null
+     */
+    public Long markRead(Integer userId, Integer otherUserId, Long upToMessageId) {
+        if (upToMessageId != null) {
+            for (int attempt = 0; attempt < 3; attempt++) {
+                Long result = markReadUpTo(userId, otherUserId, upToMessageId, attempt == 0);
+                if (result == null || result >= 0) {
+                    return result;
+                }
+            }
+            // 会话持续有新消息，计数期间一直被修改，本次放弃，客户端下次上报时再推进
+            log.debug("已读位置推进冲突，放弃本次推进: userId={}, otherUserId={}", userId, otherUserId);
+            return null;
+        }
+        reads.incrementAndGet();
+        // 先取序号再读会话最新消息：此后提交的消息序号一定更大，不会被这次已读覆盖
+        long seq = inboxSeq(userId);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Long conversationId = withState(userId, state -> {
+                Entry entry = state.byOtherUser.get(otherUserId);
+                if (entry == null) {
+                    // 加载之后在其他节点新建的会话，淘汰后重新加载一次
+                    state.stale = true;
+                    return -1L;
+                }
+                if (entry.unread == 0 && entry.watermark >= entry.head) {
+                    skippedReads.incrementAndGet();
+                    return null;
+                }
+                state.total -= entry.unread;
+                entry.unread = 0;
+                entry.watermark = entry.head;
+                entry.readSeq = Math.max(entry.readSeq, seq);
+                if (entry.pending == 0) {
+                    state.pendingCount++;
+                }
+                entry.pending = entry.watermark;
+                dirtyUsers.add(userId);
+                return entry.conversationId;
+            });
+            if (conversationId == null || conversationId >= 0) {
+                return conversationId;
+            }
+            evict(userId);
+        }
+        return null;
+    }
+
+    /**
+     * 推进到会话最新消息之前的位置：锁外统计位置之后剩余的未读数，回到锁内确认期间没有新消息或撤回后生效
+     *
+     * @param reloadMissing 会话不在已加载状态中时是否淘汰重新加载
+     * @return 会话ID；无需推进返回 null；需要重试（并发修改或已重新加载）返回 -1
+     */
+    private Long markReadUpTo(Integer userId, Integer otherUserId, long upToMessageId, boolean reloadMissing) {
+        long seq = inboxSeq(userId);
+        long[] snapshot = withState(userId, state -> {
+            Entry entry = state.byOtherUser.get(otherUserId);
+            if (entry == null) {
+                state.stale = true;
+                return null;
+            }
+            return new long[]{entry.conversationId, entry.watermark, entry.head, entry.revision};
+        });
+        if (snapshot == null) {
+            // 加载之后在其他节点新建的会话，淘汰后重新加载一次
+            if (!reloadMissing) {
+                return null;
+            }
+            evict(userId);
+            return -1L;
+        }
+        long conversationId = snapshot[0];
+        long head = snapshot[2];
+        long target = Math.min(upToMessageId, head);
+        if (target >= head) {
+            return markRead(userId, otherUserId, null);
+        }
+        reads.incrementAndGet();
+        if (target <= snapshot[1]) {
+            skippedReads.incrementAndGet();
+            return null;
+        }
+        int remaining = readStateMapper.countUnreadBetween(conversationId, userId, target, head);
+        return withState(userId, state -> {
+            Entry entry = state.byConversation.get(conversationId);
+            if (entry == null || entry.head != head || entry.revision != snapshot[3]) {
+                return -1L;
+            }
+            if (target <= entry.watermark) {
+                skippedReads.incrementAndGet();
+                return null;
+            }
+            state.total += remaining - entry.unread;
+            entry.unread = remaining;
+            entry.watermark = target;
+            entry.readSeq = Math.max(entry.readSeq, seq);
+            if (entry.pending == 0) {
+                state.pendingCount++;
+            }
+            entry.pending = target;
+            dirtyUsers.add(userId);
+            return conversationId;
+        });
+    }
+
+    /**
+     * 查询用户在会话中的已读水位，消息ID不大于该值的视为已读
+     */
+    public long getWatermark(Long conversationId, Integer userId) {
+        UserState state = users.get(userId);
+        if (state != null) {
+            synchronized (state) {
+                if (state.ready && !state.evicted) {
+                    Entry entry = state.byConversation.get(conversationId);
+                    return entry != null ? entry.watermark : 0;
+                }
+            }
+        }
+        Long watermark = readStateMapper.selectWatermark(conversationId, userId);
+        return watermark != null ? watermark : 0;
+    }
+
+    /**
+     * 消息入库后更新会话最新消息ID与接收者的未读数，只影响已加载的用户
+     */
+    public void onMessages(List<UserChatMessage> messages) {
+        for (UserChatMessage message : messages) {
+            apply(message.getReceiverId(), message);
+            if (!message.getSenderId().equals(message.getReceiverId())) {
+                apply(message.getSenderId(), message);
+            }
+        }
+    }
+
+    /**
+     * 当前事务提交后再更新，事务回滚时不计入未读
+     */
+    public void onMessageAfterCommit(UserChatMessage message) {
+        afterCommit(() -> onMessages(Collections.singletonList(message)));
+    }
+
+    /**
+     * 消息撤回后，未读的撤回消息不再计入接收者的未读数
+     */
+    public void onRecallAfterCommit(UserChatMessage message) {
+        afterCommit(() -> {
+            UserState state = users.get(message.getReceiverId());
+            if (state == null) {
+                return;
+            }
+            synchronized (state) {
+                if (!state.ready) {
+                    // 加载查询可能尚未看到撤回，加载完成后由有效期淘汰修正
+                    state.stale = true;
+                    return;
+                }
+                Entry entry = state.byConversation.get(message.getConversationId());
+                long messageId = message.getMessageId();
+                if (entry != null && messageId <= entry.watermark) {
+                    // 水位之下也可能有晚提交的未读消息，重新统计
+                    state.stale = true;
+                    return;
+                }
+                if (entry != null && messageId > entry.watermark && messageId <= entry.head && entry.unread > 0) {
+                    entry.unread--;
+                    state.total--;
+                    entry.revision++;
+                }
+            }
+        });
+    }
+
+    /**
+     * 标记用户的状态需要重新加载，在下一次落库后淘汰
+     */
+    public void invalidate(Integer userId) {
+        UserState state = users.get(userId);
+        if (state != null) {
+            synchronized (state) {
+                state.stale = true;
+            }
+        }
+    }
+
+    /**
+     * 定时落库合并后的水位，随后淘汰过期的状态
+     */
+    @Scheduled(fixedDelayString = "${chat.read-state.flush-ms:1000}")
+    public synchronized void flush() {
+        long start = System.currentTimeMillis();
+        List<UserChatReadState> rows = new ArrayList<>();
+        Map<UserChatReadState, UserState> owners = new LinkedHashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (Integer userId : new ArrayList<>(dirtyUsers)) {
+            dirtyUsers.remove(userId);
+            UserState state = users.get(userId);
+            if (state == null) {
+                continue;
+            }
+            synchronized (state) {
+                for (Entry entry : state.byConversation.values()) {
+                    if (entry.pending > 0) {
+                        UserChatReadState row = new UserChatReadState(entry.conversationId, userId,
+                            entry.pending, entry.readSeq, now);
+                        rows.add(row);
+                        owners.put(row, state);
+                    }
+                }
+            }
+        }
+
+        for (int from = 0; from < rows.size(); from += flushBatchSize) {
+            List<UserChatReadState> chunk = rows.subList(from, Math.min(from + flushBatchSize, rows.size()));
+            try {
+                readStateMapper.batchUpsert(chunk);
+                flushedRows.addAndGet(chunk.size());
+                for (UserChatReadState row : chunk) {
+                    UserState state = owners.get(row);
+                    synchronized (state) {
+                        Entry entry = state.byConversation.get(row.getConversationId());
+                        // 落库期间水位又推进过的保留待写
+                        if (entry.pending == row.getLastReadMessageId()) {
+                            entry.pending = 0;
+                            state.pendingCount--;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                flushFailures.incrementAndGet();
+                log.error("已读水位落库失败: rows={}", chunk.size(), e);
+                for (UserChatReadState row : chunk) {
+                    dirtyUsers.add(row.getUserId());
+                }
+            }
+        }
+
+        long nowMs = System.currentTimeMillis();
+        for (Map.Entry<Integer, UserState> entry : users.entrySet()) {
+            UserState state = entry.getValue();
+            if (state.stale || nowMs - state.loadedAt > ttlMs) {
+                evict(entry.getKey());
+            }
+        }
+        lastFlushCostMs = System.currentTimeMillis() - start;
+        if (!rows.isEmpty()) {
+            log.debug("已读水位落库: rows={}, cost={}ms", rows.size(), lastFlushCostMs);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("loadedUsers", users.size());
+        stats.put("dirtyUsers", dirtyUsers.size());
+        stats.put("loads", loads.get());
+        stats.put("reads", reads.get());
+        stats.put("skippedReads", skippedReads.get());
+        stats.put("flushedRows", flushedRows.get());
+        stats.put("flushFailures", flushFailures.get());
+        stats.put("lastFlushCostMs", lastFlushCostMs);
+        return stats;
+    }
+
+    private void apply(Integer userId, UserChatMessage message) {
+        UserState state = users.get(userId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            if (state.evicted) {
+                return;
+            }
+            if (!state.ready) {
+                state.buffered.add(message);
+                return;
+            }
+            applyLocked(state, userId, message);
+        }
+    }
+
+    private static void applyLocked(UserState state, Integer userId, UserChatMessage message) {
+        boolean received = userId.equals(message.getReceiverId());
+        Entry entry = state.entry(message.getConversationId(),
+            received ? message.getSenderId() : message.getReceiverId());
+        long messageId = message.getMessageId();
+        if (messageId <= entry.head) {
+            // 比已知最新消息更早生成却更晚提交，是否已在加载时计入无法判断，淘汰后从数据库重新统计
+            if (received) {
+                state.stale = true;
+            }
+            return;
+        }
+        entry.head = messageId;
+        entry.revision++;
+        if (received && messageId > entry.watermark) {
+            entry.unread++;
+            state.total++;
+        }
+    }
+
+    /**
+     * 在用户状态上执行操作，状态未加载时先加载，正被其他线程加载时等待
+     */
+    private <T> T withState(Integer userId, Function<UserState, T> action) {
+        while (true) {
+            UserState state = users.get(userId);
+            if (state == null) {
+                UserState created = new UserState();
+                state = users.putIfAbsent(userId, created);
+                if (state == null) {
+                    load(userId, created);
+                    state = created;
+                }
+            }
+            synchronized (state) {
+                while (!state.ready && !state.evicted) {
+                    try {
+                        state.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("等待已读状态加载被中断", e);
+                    }
+                }
+                if (!state.evicted) {
+                    return action.apply(state);
+                }
+            }
+        }
+    }
+
+    private void load(Integer userId, UserState state) {
+        List<Map<String, Object>> rows;
+        try {
+            rows = readStateMapper.selectUserReadStates(userId, syncEnabled);
+        } catch (RuntimeException e) {
+            synchronized (state) {
+                state.evicted = true;
+                users.remove(userId, state);
+                state.notifyAll();
+            }
+            throw e;
+        }
+        loads.incrementAndGet();
+        synchronized (state) {
+            for (Map<String, Object> row : rows) {
+                Entry entry = state.entry(((Number) row.get("conversation_id")).longValue(),
+                    ((Number) row.get("other_user_id")).intValue());
+                entry.watermark = ((Number) row.get("last_read_message_id")).longValue();
+                entry.readSeq = ((Number) row.get("last_read_seq")).longValue();
+                entry.head = ((Number) row.get("head_message_id")).longValue();
+                entry.unread = ((Number) row.get("unread_count")).intValue();
+                state.total += entry.unread;
+            }
+            for (UserChatMessage message : state.buffered) {
+                applyLocked(state, userId, message);
+            }
+            state.buffered = null;
+            state.ready = true;
+            state.notifyAll();
+        }
+    }
+
+    /**
+     * 淘汰用户状态，有未落库的水位时保留
+     */
+    private void evict(Integer userId) {
+        UserState state = users.get(userId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            if (!state.ready) {
+                return;
+            }
+            if (state.pendingCount > 0) {
+                // 仍有未落库的水位，等下一次落库后再淘汰
+                state.stale = true;
+                return;
+            }
+            state.evicted = true;
+            users.remove(userId, state);
+        }
+    }
+
+    /**
+     * 用户收件箱当前的同步序号，未启用同步日志时为 0
+     */
+    private long inboxSeq(Integer userId) {
+        if (!syncEnabled) {
+            return 0;
+        }
+        Long seq = readStateMapper.selectInboxSeq(userId);
+        return seq != null ? seq : 0;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,732 @@
+package org.example.afd.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.entity.UserChatMessage;
+import org.example.afd.mapper.ChatMapper;
+import org.example.afd.utils.LongLongHashMap;
+import org.example.afd.utils.SnowflakeIdGenerator;
+import org.example.afd.utils.TextTokenizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 聊天消息全文索引
+ *
+ * 1. 按会话双方建立倒排索引，文本消息入库后增量加入，撤回时移除
+ * 2. 中文按二元组、字母数字按三元组切分（见 {@link TextTokenizer}），查询要求全部词项命中，按 BM25 相关度排序
+ * 3. 定期把索引快照写入本地磁盘；启动时加载快照并从数据库追赶快照之后的消息，
+ *    没有快照或快照损坏时从数据库全量重建，重建期间查询回退到数据库
+ * 4. 其他节点入库的消息不经过本节点，定期按消息ID从数据库追赶
+ */
+@Component
+@Slf4j
+public class ChatSearchIndex {
+
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private static final String SNAPSHOT_FILE = "chat-index.snapshot";
+
+    /**
+     * 追赶时向前多读的时间窗口，覆盖异步入库的提交延迟
+     */
+    private static final long CATCH_UP_OVERLAP_MS = 10 * 60 * 1000L;
+
+    /**
+     * 定期追赶时向前多读的时间窗口，覆盖其他节点异步入库的提交延迟
+     */
+    private static final long PERIODIC_CATCH_UP_OVERLAP_MS = 60 * 1000L;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    @Autowired
+    private ChatMapper chatMapper;
+
+    @Value("${chat.search.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.search.index-dir:data/chat-index}")
+    private String indexDir;
+
+    @Value("${chat.search.rebuild-batch-size:2000}")
+    private int rebuildBatchSize;
+
+    private volatile IndexState live = new IndexState();
+
+    /**
+     * 重建中的新索引，期间的增量同时写入新旧两份
+     */
+    private volatile IndexState building;
+
+    private volatile boolean ready;
+    private volatile boolean dirty;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong searchTotalMicros = new AtomicLong();
+    private final AtomicLong caughtUp = new AtomicLong();
+    private volatile long lastRebuildMs;
+    private volatile long lastSnapshotTime;
+
+    /**
+     * 一份完整的索引：会话双方 -> 会话索引，用户 -> 参与的会话双方
+     */
+    private static final class IndexState {
+        final Map<Long, ConversationIndex> conversations = new ConcurrentHashMap<>();
+        final Map<Integer, Set<Long>> userPairs = new ConcurrentHashMap<>();
+        final AtomicLong maxIndexedTime = new AtomicLong();
+        final AtomicLong maxIndexedId = new AtomicLong();
+
+        ConversationIndex conversation(long pairKey) {
+            return conversations.computeIfAbsent(pairKey, key -> {
+                userPairs.computeIfAbsent((int) (pairKey >>> 32), k -> ConcurrentHashMap.newKeySet()).add(pairKey);
+                userPairs.computeIfAbsent((int) pairKey, k -> ConcurrentHashMap.newKeySet()).add(pairKey);
+                return new ConversationIndex();
+            });
+        }
+    }
+
+    /**
+     * 倒排表，消息ID升序，与词频并列存放
+     */
+    private static final class Postings {
+        long[] ids = new long[4];
+        int[] tfs = new int[4];
+        int size;
+
+        void add(long id, int tf) {
+            int pos = size;
+            if (size > 0 && ids[size - 1] >= id) {
+                // 重建与增量并发或异步入库乱序时才会走到这里
+                pos = Arrays.binarySearch(ids, 0, size, id);
+                if (pos >= 0) {
+                    return;
+                }
+                pos = -pos - 1;
+            }
+            if (size == ids.length) {
+                int capacity = size + (size >> 1) + 1;
+                ids = Arrays.copyOf(ids, capacity);
+                tfs = Arrays.copyOf(tfs, capacity);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            System.arraycopy(tfs, pos, tfs, pos + 1, size - pos);
+            ids[pos] = id;
+            tfs[pos] = tf;
+            size++;
+        }
+
+        /**
+         * 从 from 开始查找第一个不小于 id 的位置
+         */
+        int seek(long id, int from) {
+            if (from >= size || ids[from] >= id) {
+                return from;
+            }
+            // 倍增确定范围后二分
+            int step = 1;
+            int low = from;
+            int high = from + 1;
+            while (high < size && ids[high] < id) {
+                low = high;
+                step <<= 1;
+                high = from + step;
+            }
+            int pos = Arrays.binarySearch(ids, low, Math.min(high + 1, size), id);
+            return pos >= 0 ? pos : -pos - 1;
+        }
+    }
+
+    /**
+     * 单个会话的索引，方法同步保证读写一致
+     */
+    private static final class ConversationIndex {
+        /**
+         * 消息ID -> 词项数；撤回的消息只从这里删除，倒排表中的残留在查询时过滤、写快照时清理
+         */
+        final LongLongHashMap docs = new LongLongHashMap(16);
+        final Map<String, Postings> terms = new HashMap<>();
+        long totalLength;
+
+        synchronized boolean add(long messageId, List<String> tokens) {
+            if (tokens.isEmpty() || docs.containsKey(messageId)) {
+                return false;
+            }
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String token : tokens) {
+                frequencies.merge(token, 1, Integer::sum);
+            }
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                terms.computeIfAbsent(entry.getKey(), k -> new Postings()).add(messageId, entry.getValue());
+            }
+            docs.put(messageId, tokens.size());
+            totalLength += tokens.size();
+            return true;
+        }
+
+        synchronized boolean remove(long messageId) {
+            long length = docs.get(messageId, -1);
+            if (length < 0) {
+                return false;
+            }
+            docs.remove(messageId);
+            totalLength -= length;
+            return true;
+        }
+
+        synchronized void search(List<String> queryTerms, TopHits hits) {
+            if (docs.isEmpty()) {
+                return;
+            }
+            Postings[] lists = new Postings[queryTerms.size()];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = terms.get(queryTerms.get(i));
+                if (lists[i] == null) {
+                    return;
+                }
+            }
+            // 从最短的倒排表出发求交集
+            Arrays.sort(lists, Comparator.comparingInt(p -> p.size));
+            double docCount = docs.size();
+            double avgLength = Math.max(1.0, totalLength / docCount);
+            double[] idf = new double[lists.length];
+            for (int i = 0; i < lists.length; i++) {
+                idf[i] = Math.log(1 + (docCount - lists[i].size + 0.5) / (lists[i].size + 0.5));
+            }
+            int[] cursors = new int[lists.length];
+            Postings first = lists[0];
+            outer:
+            for (int i = 0; i < first.size; i++) {
+                long id = first.ids[i];
+                long length = docs.get(id, -1);
+                if (length < 0) {
+                    continue;
+                }
+                double norm = K1 * (1 - B + B * length / avgLength);
+                double score = idf[0] * first.tfs[i] * (K1 + 1) / (first.tfs[i] + norm);
+                for (int j = 1; j < lists.length; j++) {
+                    Postings list = lists[j];
+                    int pos = list.seek(id, cursors[j]);
+                    cursors[j] = pos;
+                    if (pos >= list.size || list.ids[pos] != id) {
+                        continue outer;
+                    }
+                    score += idf[j] * list.tfs[pos] * (K1 + 1) / (list.tfs[pos] + norm);
+                }
+                hits.offer(id, score);
+            }
+        }
+
+        synchronized int documentCount() {
+            return docs.size();
+        }
+
+        synchronized int termCount() {
+            return terms.size();
+        }
+
+        synchronized void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(docs.size());
+            IOException[] failure = new IOException[1];
+            docs.forEach((id, length) -> {
+                try {
+                    out.writeLong(id);
+                    out.writeInt((int) length);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            // 只写仍存在的消息，顺带清理撤回残留
+            List<String> keys = new ArrayList<>();
+            List<Postings> compacted = new ArrayList<>();
+            for (Map.Entry<String, Postings> entry : terms.entrySet()) {
+                Postings source = entry.getValue();
+                Postings kept = new Postings();
+                for (int i = 0; i < source.size; i++) {
+                    if (docs.containsKey(source.ids[i])) {
+                        kept.add(source.ids[i], source.tfs[i]);
+                    }
+                }
+                if (kept.size > 0) {
+                    keys.add(entry.getKey());
+                    compacted.add(kept);
+                }
+            }
+            out.writeInt(keys.size());
+            for (int t = 0; t < keys.size(); t++) {
+                Postings postings = compacted.get(t);
+                out.writeUTF(keys.get(t));
+                out.writeInt(postings.size);
+                for (int i = 0; i < postings.size; i++) {
+                    out.writeLong(postings.ids[i]);
+                    out.writeInt(postings.tfs[i]);
+                }
+            }
+        }
+
+        synchronized void readFrom(DataInputStream in) throws IOException {
+            int docCount = in.readInt();
+            for (int i = 0; i < docCount; i++) {
+                long id = in.readLong();
+                int length = in.readInt();
+                docs.put(id, length);
+                totalLength += length;
+            }
+            int termCount = in.readInt();
+            for (int t = 0; t < termCount; t++) {
+                String term = in.readUTF();
+                int size = in.readInt();
+                Postings postings = new Postings();
+                postings.ids = new long[Math.max(size, 1)];
+                postings.tfs = new int[Math.max(size, 1)];
+                for (int i = 0; i < size; i++) {
+                    postings.ids[i] = in.readLong();
+                    postings.tfs[i] = in.readInt();
+                }
+                postings.size = size;
+                terms.put(term, postings);
+            }
+        }
+    }
+
+    /**
+     * 按相关度保留前 N 条，同分时新消息优先
+     */
+    private static final class TopHits {
+        private static final Comparator<Hit> WORST_FIRST =
+            Comparator.<Hit>comparingDouble(h -> h.score).thenComparingLong(h -> h.messageId);
+
+        final int capacity;
+        final PriorityQueue<Hit> heap;
+
+        TopHits(int capacity) {
+            this.capacity = capacity;
+            this.heap = new PriorityQueue<>(Math.max(1, capacity), WORST_FIRST);
+        }
+
+        void offer(long messageId, double score) {
+            Hit hit = new Hit(messageId, score);
+            if (heap.size() < capacity) {
+                heap.add(hit);
+            } else if (WORST_FIRST.compare(hit, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(hit);
+            }
+        }
+
+        List<Long> ranked() {
+            List<Hit> sorted = new ArrayList<>(heap);
+            sorted.sort(WORST_FIRST.reversed());
+            List<Long> result = new ArrayList<>(sorted.size());
+            for (Hit hit : sorted) {
+                result.add(hit.messageId);
+            }
+            return result;
+        }
+    }
+
+    private static final class Hit {
+        final long messageId;
+        final double score;
+
+        Hit(long messageId, double score) {
+            this.messageId = messageId;
+            this.score = score;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("聊天全文索引未启用，搜索使用数据库查询");
+            return;
+        }
+        Thread loader = new Thread(this::load, "chat-index-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        snapshot();
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * 加入已入库的消息，只索引未撤回的文本消息
+     */
+    public void add(List<UserChatMessage> messages) {
+        if (!enabled) {
+            return;
+        }
+        for (UserChatMessage message : messages) {
+            IndexState target = live;
+            if (index(target, message)) {
+                indexed.incrementAndGet();
+                dirty = true;
+            }
+            IndexState next = building;
+            if (next != null && next != target) {
+                index(next, message);
+            }
+        }
+    }
+
+    /**
+     * 在当前事务提交后加入消息，没有事务时立即加入
+     */
+    public void addAfterCommit(UserChatMessage message) {
+        if (!enabled || message == null) {
+            return;
+        }
+        List<UserChatMessage> messages = Collections.singletonList(message);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(messages);
+                }
+            });
+        } else {
+            add(messages);
+        }
+    }
+
+    /**
+     * 移除撤回的消息
+     */
+    public void remove(UserChatMessage message) {
+        if (!enabled || message == null || message.getMessageId() == null) {
+            return;
+        }
+        long key = pairKey(message.getSenderId(), message.getReceiverId());
+        for (IndexState state : new IndexState[]{live, building}) {
+            if (state == null) {
+                continue;
+            }
+            ConversationIndex conversation = state.conversations.get(key);
+            if (conversation != null && conversation.remove(message.getMessageId())) {
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * 搜索消息
+     *
+     * @param targetUserId 对方用户，为 null 时搜索当前用户的全部会话
+     * @return 按相关度排序的消息ID；索引未就绪或关键词无法用索引检索（如单个汉字、一两个字母数字）时返回 null，
+     *         由调用方回退到数据库查询
+     */
+    public List<Long> search(Integer currentUserId, Integer targetUserId, String keyword, int offset, int limit) {
+        if (!isReady()) {
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(TextTokenizer.tokenize(keyword)));
+        if (terms.isEmpty() || terms.stream().anyMatch(TextTokenizer::isShort)) {
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        long start = System.nanoTime();
+        IndexState state = live;
+        TopHits hits = new TopHits(offset + limit);
+        if (targetUserId != null) {
+            ConversationIndex conversation = state.conversations.get(pairKey(currentUserId, targetUserId));
+            if (conversation != null) {
+                conversation.search(terms, hits);
+            }
+        } else {
+            for (Long key : state.userPairs.getOrDefault(currentUserId, Collections.emptySet())) {
+                ConversationIndex conversation = state.conversations.get(key);
+                if (conversation != null) {
+                    conversation.search(terms, hits);
+                }
+            }
+        }
+        List<Long> ranked = hits.ranked();
+        searches.incrementAndGet();
+        searchTotalMicros.addAndGet((System.nanoTime() - start) / 1000);
+        if (offset >= ranked.size()) {
+            return Collections.emptyList();
+        }
+        return ranked.subList(offset, Math.min(offset + limit, ranked.size()));
+    }
+
+    /**
+     * 从数据库全量重建，重建期间继续使用旧索引
+     *
+     * @return 已有重建任务在运行时返回 false
+     */
+    public boolean rebuild() {
+        if (!enabled || !rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                doRebuild();
+            } catch (Exception e) {
+                log.error("重建聊天全文索引失败", e);
+            } finally {
+                rebuilding.set(false);
+            }
+        }, "chat-index-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * 追赶其他节点入库的消息：从上次已索引的最大消息ID往前留出提交延迟的窗口，按消息ID增量读取
+     */
+    @Scheduled(fixedDelayString = "${chat.search.catch-up-interval-ms:30000}")
+    public void catchUp() {
+        if (!enabled || !ready || rebuilding.get()) {
+            return;
+        }
+        IndexState state = live;
+        long maxId = state.maxIndexedId.get();
+        long windowStart = SnowflakeIdGenerator.timeOf(maxId) - PERIODIC_CATCH_UP_OVERLAP_MS;
+        // 旧的自增ID不含时间，直接从最大ID之后读取
+        long afterId = windowStart > SnowflakeIdGenerator.timeOf(0)
+            ? SnowflakeIdGenerator.firstIdAt(windowStart)
+            : maxId;
+        try {
+            int count = scan(state, afterId, null);
+            if (count > 0) {
+                caughtUp.addAndGet(count);
+                dirty = true;
+                log.debug("聊天全文索引追赶: afterId={}, 新增{}条", afterId, count);
+            }
+        } catch (Exception e) {
+            log.warn("聊天全文索引追赶失败", e);
+        }
+    }
+
+    /**
+     * 定期写入快照，没有变化时跳过
+     */
+    @Scheduled(fixedDelayString = "${chat.search.snapshot-interval-ms:600000}")
+    public synchronized void snapshot() {
+        if (!enabled || !ready || !dirty) {
+            return;
+        }
+        dirty = false;
+        IndexState state = live;
+        Path dir = Paths.get(indexDir);
+        Path file = dir.resolve(SNAPSHOT_FILE);
+        Path temp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        long start = System.currentTimeMillis();
+        try {
+            Files.createDirectories(dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(temp)), 1 << 16))) {
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(state.maxIndexedTime.get());
+                out.writeLong(state.maxIndexedId.get());
+                List<Map.Entry<Long, ConversationIndex>> entries = new ArrayList<>(state.conversations.entrySet());
+                out.writeInt(entries.size());
+                for (Map.Entry<Long, ConversationIndex> entry : entries) {
+                    out.writeLong(entry.getKey());
+                    entry.getValue().writeTo(out);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastSnapshotTime = System.currentTimeMillis();
+            log.info("聊天全文索引快照已写入: conversations={}, cost={}ms",
+                state.conversations.size(), lastSnapshotTime - start);
+        } catch (Exception e) {
+            dirty = true;
+            log.error("写入聊天全文索引快照失败", e);
+        }
+    }
+
+    /**
+     * 运行指标
+     */
+    public Map<String, Object> getStatistics() {
+        IndexState state = live;
+        long documents = 0;
+        long terms = 0;
+        for (ConversationIndex conversation : state.conversations.values()) {
+            documents += conversation.documentCount();
+            terms += conversation.termCount();
+        }
+        long searchCount = searches.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        stats.put("rebuilding", rebuilding.get());
+        stats.put("conversations", state.conversations.size());
+        stats.put("documents", documents);
+        stats.put("terms", terms);
+        stats.put("indexed", indexed.get());
+        stats.put("caughtUp", caughtUp.get());
+        stats.put("searches", searchCount);
+        stats.put("fallbacks", fallbacks.get());
+        stats.put("avgSearchMicros", searchCount == 0 ? 0 : searchTotalMicros.get() / searchCount);
+        stats.put("lastRebuildMs", lastRebuildMs);
+        stats.put("lastSnapshotTime", lastSnapshotTime);
+        return stats;
+    }
+
+    private void load() {
+        Path file = Paths.get(indexDir).resolve(SNAPSHOT_FILE);
+        if (Files.exists(file)) {
+            try {
+                long start = System.currentTimeMillis();
+                IndexState state = readSnapshot(file);
+                live = state;
+                long since = state.maxIndexedTime.get() - CATCH_UP_OVERLAP_MS;
+                int count = scan(state, 0, since > 0 ? toLocalDateTime(since) : null);
+                ready = true;
+                log.info("聊天全文索引已从快照加载: conversations={}, 追赶{}条, cost={}ms",
+                    state.conversations.size(), count, System.currentTimeMillis() - start);
+                return;
+            } catch (Exception e) {
+                log.warn("加载聊天全文索引快照失败，从数据库重建", e);
+                live = new IndexState();
+            }
+        }
+        if (rebuilding.compareAndSet(false, true)) {
+            try {
+                doRebuild();
+            } catch (Exception e) {
+                log.error("重建聊天全文索引失败，搜索使用数据库查询", e);
+            } finally {
+                rebuilding.set(false);
+            }
+        }
+    }
+
+    private void doRebuild() {
+        long start = System.currentTimeMillis();
+        IndexState fresh = new IndexState();
+        building = fresh;
+        int count;
+        try {
+            count = scan(fresh, 0, null);
+        } finally {
+            building = null;
+        }
+        live = fresh;
+        ready = true;
+        dirty = true;
+        lastRebuildMs = System.currentTimeMillis() - start;
+        log.info("聊天全文索引重建完成: messages={}, conversations={}, cost={}ms",
+            count, fresh.conversations.size(), lastRebuildMs);
+        snapshot();
+    }
+
+    /**
+     * 按消息ID顺序分批读取数据库中的文本消息加入索引
+     */
+    private int scan(IndexState state, long afterId, LocalDateTime since) {
+        int count = 0;
+        while (true) {
+            List<UserChatMessage> batch = chatMapper.selectTextMessagesForIndex(afterId, since, rebuildBatchSize);
+            if (batch == null || batch.isEmpty()) {
+                return count;
+            }
+            for (UserChatMessage message : batch) {
+                if (index(state, message)) {
+                    count++;
+                }
+            }
+            afterId = batch.get(batch.size() - 1).getMessageId();
+            if (batch.size() < rebuildBatchSize) {
+                return count;
+            }
+        }
+    }
+
+    private boolean index(IndexState state, UserChatMessage message) {
+        if (message.getMessageId() == null || message.getSenderId() == null || message.getReceiverId() == null
+                || message.getMessageType() == null || message.getMessageType() != 1
+                || (message.getIsRecalled() != null && message.getIsRecalled() == 1)) {
+            return false;
+        }
+        List<String> tokens = TextTokenizer.tokenize(message.getContent());
+        boolean added = state.conversation(pairKey(message.getSenderId(), message.getReceiverId()))
+            .add(message.getMessageId(), tokens);
+        if (added && message.getCreateTime() != null) {
+            long time = message.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            state.maxIndexedTime.accumulateAndGet(time, Math::max);
+        }
+        if (added) {
+            state.maxIndexedId.accumulateAndGet(message.getMessageId(), Math::max);
+        }
+        return added;
+    }
+
+    private static IndexState readSnapshot(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file)), 1 << 16))) {
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("不支持的快照版本: " + version);
+            }
+            IndexState state = new IndexState();
+            state.maxIndexedTime.set(in.readLong());
+            state.maxIndexedId.set(in.readLong());
+            int conversationCount = in.readInt();
+            for (int i = 0; i < conversationCount; i++) {
+                long key = in.readLong();
+                state.conversation(key).readFrom(in);
+            }
+            return state;
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private static long pairKey(Integer a, Integer b) {
+        long low = Math.min(a, b);
+        long high = Math.max(a, b);
+        return (low << 32) | (high & 0xffffffffL);
+    }
+}
@@ -103,6 +103,15 @@ public interface ChatService {
      */
     boolean markMessagesAsRead(Integer currentUserId, Integer targetUserId);
 
+    /**
+     * 标记消息为已读，只推进到客户端已读到的消息
+     * @param currentUserId 当前用户ID
+     * @param targetUserId 目标用户ID
+     * @param upToMessageId 已读到的消息ID，为空时全部标记为已读
+     * @return 水位有推进时返回推进后的已读水位，没有变化返回 null
+     */
+    Long markMessagesAsRead(Integer currentUserId, Integer targetUserId, Long upToMessageId);
+
     /**
      * 删除会话
      * @param currentUserId 当前用户ID
@@ -155,11 +164,11 @@ public interface ChatService {
     void updateConversationLastMessage(Long conversationId, Long messageId, String content, Integer messageType);
 
     /**
-     * 增加未读消息数
+     * 丢弃用户缓存的已读状态，下次读取时从数据库重新加载
      * @param conversationId 会话ID
      * @param userId 用户ID
      */
-    void incrementUnreadCount(Long conversationId, Integer userId);
+    void invalidateReadState(Long conversationId, Integer userId);
 
     /**
      * 调试用户会话数据
@@ -0,0 +1,257 @@
+package org.example.afd.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.dto.ChatMessageDTO;
+import org.example.afd.dto.ChatSyncDTO;
+import org.example.afd.dto.ChatSyncRecord;
+import org.example.afd.entity.UserChatMessage;
+import org.example.afd.entity.UserChatSyncLog;
+import org.example.afd.mapper.ChatSyncMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 聊天增量同步服务
+ *
+ * 1. 每个影响用户聊天视图的事件（收发消息、已读、撤回、删除会话）按用户分配连续递增的序号，
+ *    与业务数据在同一事务中写入同步日志；收件箱行锁保证同一用户的序号按提交顺序分配，
+ *    读到序号 n 时 n 之前的事件一定已经可见；
+ *    收件箱行锁必须是事务中最后获取的锁，调用方先完成消息、会话的写入再追加日志，避免交叉加锁死锁
+ * 2. 客户端重连时带上已同步到的序号，一次查询取回之后的全部会话变化、未读数和新消息，
+ *    不必再逐个会话分页拉取
+ * 3. 日志按保留天数清理，序号出现断档说明客户端落后太多，返回 reset 由客户端全量加载
+ */
+@Service
+@Slf4j
+public class ChatSyncService {
+
+    private static final int PURGE_BATCH = 5000;
+
+    @Autowired
+    private ChatSyncMapper chatSyncMapper;
+
+    @Autowired
+    private ChatReadStateService readStateService;
+
+    @Value("${chat.sync.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.sync.max-events:1000}")
+    private int maxEvents;
+
+    @Value("${chat.sync.retention-days:30}")
+    private int retentionDays;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录新消息，发送者与接收者各一条，必须在消息入库的事务中、会话更新之后调用；
+     * 只能传入本次实际插入的消息，重复追加会给客户端推送重复的消息事件
+     */
+    public void appendMessages(List<UserChatMessage> messages) {
+        if (!enabled || messages.isEmpty()) {
+            return;
+        }
+        List<UserChatSyncLog> logs = new ArrayList<>(messages.size() * 2);
+        for (UserChatMessage message : messages) {
+            logs.add(newLog(message.getSenderId(), message.getConversationId(), message.getMessageId(),
+                UserChatSyncLog.EVENT_MESSAGE, message.getCreateTime()));
+            if (!message.getReceiverId().equals(message.getSenderId())) {
+                logs.add(newLog(message.getReceiverId(), message.getConversationId(), message.getMessageId(),
+                    UserChatSyncLog.EVENT_MESSAGE, message.getCreateTime()));
+            }
+        }
+        append(logs);
+    }
+
+    /**
+     * 记录会话事件，必须在对应的业务事务中、其他写入之后调用
+     *
+     * @param eventType 见 {@link UserChatSyncLog} 中的事件类型
+     * @param userIds   需要感知该事件的用户
+     */
+    public void appendEvent(int eventType, Long conversationId, Long messageId, Integer... userIds) {
+        if (!enabled || conversationId == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<UserChatSyncLog> logs = new ArrayList<>(userIds.length);
+        for (Integer userId : userIds) {
+            if (userId != null) {
+                logs.add(newLog(userId, conversationId, messageId, eventType, now));
+            }
+        }
+        append(logs);
+    }
+
+    /**
+     * 增量同步
+     *
+     * @param since 客户端已同步到的序号，首次同步传 0
+     */
+    public ChatSyncDTO sync(Integer userId, long since, Integer limit) {
+        int size = limit == null || limit <= 0 ? maxEvents : Math.min(limit, maxEvents);
+        ChatSyncDTO result = new ChatSyncDTO();
+        List<ChatSyncRecord> records = chatSyncMapper.selectSince(userId, since, size);
+        if (records.isEmpty()) {
+            Long current = chatSyncMapper.selectSequence(userId);
+            long latest = current != null ? current : 0;
+            result.setSeq(Math.max(since, latest));
+            result.setHasMore(false);
+            // 客户端的序号比服务端还大，说明本地数据来自别的环境或已被清空
+            if (since > latest) {
+                result.setReset(true);
+                result.setSeq(latest);
+            }
+            return result;
+        }
+        if (records.get(0).getSeq() != since + 1) {
+            result.setReset(true);
+        }
+
+        // 未读数以已读水位服务为准
+        Map<Long, Integer> unreadCounts = readStateService.getUnreadCounts(userId);
+        Map<Long, ChatSyncDTO.ConversationDelta> conversations = new LinkedHashMap<>();
+        for (ChatSyncRecord record : records) {
+            ChatSyncDTO.ConversationDelta delta = toDelta(userId, record);
+            if (delta.getOtherUserId() != null) {
+                delta.setUnreadCount(unreadCounts.getOrDefault(record.getConversationId(), 0));
+            }
+            conversations.put(record.getConversationId(), delta);
+            if (record.getEventType() == UserChatSyncLog.EVENT_MESSAGE) {
+                if (record.getSenderId() != null) {
+                    result.getMessages().add(toMessage(record));
+                }
+            } else {
+                ChatSyncDTO.Event event = new ChatSyncDTO.Event();
+                event.setSeq(record.getSeq());
+                event.setType(record.getEventType());
+                event.setConversationId(record.getConversationId());
+                event.setMessageId(record.getMessageId());
+                event.setTime(record.getEventTime());
+                result.getEvents().add(event);
+            }
+        }
+        result.getConversations().addAll(conversations.values());
+        result.setSeq(records.get(records.size() - 1).getSeq());
+        result.setHasMore(records.size() >= size);
+        return result;
+    }
+
+    /**
+     * 每天清理过期的同步日志
+     */
+    @Scheduled(cron = "${chat.sync.purge-cron:0 30 4 * * ?}")
+    public void purge() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime before = LocalDateTime.now().minusDays(retentionDays);
+        int total = 0;
+        try {
+            int deleted;
+            do {
+                deleted = chatSyncMapper.deleteBefore(before, PURGE_BATCH);
+                total += deleted;
+            } while (deleted >= PURGE_BATCH);
+            log.info("同步日志清理完成: 删除{}条, before={}", total, before);
+        } catch (Exception e) {
+            log.error("同步日志清理失败: 已删除{}条", total, e);
+        }
+    }
+
+    /**
+     * 为日志分配序号并写入：按用户合并计数一次推进，再读回上界倒推每条日志的序号
+     */
+    private void append(List<UserChatSyncLog> logs) {
+        if (logs.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> counts = new TreeMap<>();
+        for (UserChatSyncLog syncLog : logs) {
+            counts.merge(syncLog.getUserId(), 1, Integer::sum);
+        }
+        List<Map<String, Object>> params = new ArrayList<>(counts.size());
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            Map<String, Object> param = new HashMap<>();
+            param.put("userId", entry.getKey());
+            param.put("count", entry.getValue());
+            params.add(param);
+        }
+        chatSyncMapper.advanceSequences(params);
+
+        Map<Integer, Long> next = new HashMap<>();
+        for (Map<String, Object> row : chatSyncMapper.selectSequences(new ArrayList<>(counts.keySet()))) {
+            Integer userId = ((Number) row.get("user_id")).intValue();
+            long upper = ((Number) row.get("seq")).longValue();
+            next.put(userId, upper - counts.get(userId) + 1);
+        }
+        for (UserChatSyncLog syncLog : logs) {
+            Long seq = next.get(syncLog.getUserId());
+            if (seq == null) {
+                throw new IllegalStateException("收件箱序号分配失败: userId=" + syncLog.getUserId());
+            }
+            syncLog.setSeq(seq);
+            next.put(syncLog.getUserId(), seq + 1);
+        }
+        chatSyncMapper.batchInsertLogs(logs);
+    }
+
+    private static UserChatSyncLog newLog(Integer userId, Long conversationId, Long messageId,
+                                          int eventType, LocalDateTime time) {
+        UserChatSyncLog syncLog = new UserChatSyncLog();
+        syncLog.setUserId(userId);
+        syncLog.setConversationId(conversationId);
+        syncLog.setMessageId(messageId);
+        syncLog.setEventType(eventType);
+        syncLog.setCreateTime(time != null ? time : LocalDateTime.now());
+        return syncLog;
+    }
+
+    private static ChatSyncDTO.ConversationDelta toDelta(Integer userId, ChatSyncRecord record) {
+        ChatSyncDTO.ConversationDelta delta = new ChatSyncDTO.ConversationDelta();
+        delta.setConversationId(record.getConversationId());
+        if (record.getUser1Id() == null) {
+            return delta;
+        }
+        boolean first = userId.equals(record.getUser1Id());
+        delta.setOtherUserId(first ? record.getUser2Id() : record.getUser1Id());
+        delta.setUnreadCount(first ? record.getUser1UnreadCount() : record.getUser2UnreadCount());
+        Integer deleted = first ? record.getUser1Deleted() : record.getUser2Deleted();
+        delta.setDeleted(deleted != null && deleted == 1);
+        delta.setLastMessageId(record.getLastMessageId());
+        delta.setLastMessageContent(record.getLastMessageContent());
+        delta.setLastMessageType(record.getLastMessageType());
+        delta.setLastMessageTime(record.getLastMessageTime());
+        return delta;
+    }
+
+    private static ChatMessageDTO toMessage(ChatSyncRecord record) {
+        ChatMessageDTO message = new ChatMessageDTO();
+        message.setMessageId(record.getMessageId());
+        message.setConversationId(record.getConversationId());
+        message.setSenderId(record.getSenderId());
+        message.setReceiverId(record.getReceiverId());
+        message.setMessageType(record.getMessageType());
+        message.setContent(record.getContent());
+        message.setMediaUrl(record.getMediaUrl());
+        message.setThumbnailUrl(record.getThumbnailUrl());
+        message.setMessageStatus(record.getMessageStatus());
+        message.setIsRecalled(record.getIsRecalled());
+        message.setExtraData(record.getExtraData());
+        message.setCreateTime(record.getCreateTime());
+        return message;
+    }
+}
@@ -0,0 +1,283 @@
+package org.example.afd.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.mapper.CounterMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 计数写缓冲（write-behind）
+ *
+ * 1. 点赞、收藏、评论、浏览等计数先累加到内存中的 LongAdder（按行分条，热点行也不争用），
+ *    在调用方事务提交后生效
+ * 2. 定时把每行累计的增量合并成一条 UPDATE ... CASE 批量回写，同一行在一个周期内只写一次
+ * 3. 读取计数时叠加尚未回写的增量
+ * 4. 回写失败的增量放回缓冲等待下次重试；应用关闭时做最后一次回写
+ *
+ * 空闲的行会被移出缓冲，移出后的计数器再保留两个周期用于接住并发写入的增量。
+ */
+@Component
+@Slf4j
+public class CounterBuffer {
+
+    /**
+     * 缓冲的计数类型
+     */
+    public enum Counter {
+        POST_VIEW("post_content", "view_count", "post_id"),
+        POST_LIKE("post_content", "like_count", "post_id"),
+        POST_COLLECT("post_content", "collect_count", "post_id"),
+        POST_COMMENT("post_content", "comment_count", "post_id"),
+        // 评论与回复都存放在 post_comment 表
+        COMMENT_LIKE("post_comment", "like_count", "comment_id"),
+        COMMENT_REPLY("post_comment", "reply_count", "comment_id"),
+        PRODUCT_VIEW("shop_product", null, "product_id");
+
+        private final String table;
+        private final String column;
+        private final String idColumn;
+
+        Counter(String table, String column, String idColumn) {
+            this.table = table;
+            this.column = column;
+            this.idColumn = idColumn;
+        }
+    }
+
+    /**
+     * 连续多少个周期没有增量后移出缓冲
+     */
+    private static final int IDLE_ROUNDS = 10;
+
+    /**
+     * 移出后继续回收增量的周期数
+     */
+    private static final int RETIRE_ROUNDS = 2;
+
+    @Autowired
+    private CounterMapper counterMapper;
+
+    @Value("${counter.buffer.enabled:true}")
+    private boolean enabled;
+
+    @Value("${counter.buffer.batch-size:500}")
+    private int batchSize;
+
+    private final Map<Counter, ConcurrentHashMap<Long, Cell>> cells = new EnumMap<>(Counter.class);
+
+    private final List<Retired> retired = new ArrayList<>();
+
+    private final AtomicLong flushedDeltas = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private volatile long lastFlushAt = System.currentTimeMillis();
+    private volatile long lastFlushCostMs;
+    private volatile long oldestPendingAt;
+
+    private static final class Cell {
+        final LongAdder adder = new LongAdder();
+        int idleRounds;
+    }
+
+    private static final class Retired {
+        final Counter counter;
+        final long id;
+        final Cell cell;
+        int rounds = RETIRE_ROUNDS;
+
+        Retired(Counter counter, long id, Cell cell) {
+            this.counter = counter;
+            this.id = id;
+            this.cell = cell;
+        }
+    }
+
+    public CounterBuffer() {
+        for (Counter counter : Counter.values()) {
+            cells.put(counter, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * 累加计数；存在事务时在提交后生效
+     */
+    public void increment(Counter counter, Long id, long delta) {
+        if (id == null || delta == 0) {
+            return;
+        }
+        if (!enabled) {
+            write(counter, List.of(Map.of("id", id, "delta", delta)));
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(counter, id, delta);
+                }
+            });
+        } else {
+            add(counter, id, delta);
+        }
+    }
+
+    /**
+     * 尚未回写的增量，读取计数时叠加
+     */
+    public long pending(Counter counter, Long id) {
+        if (id == null) {
+            return 0;
+        }
+        Cell cell = cells.get(counter).get(id);
+        return cell == null ? 0 : cell.adder.sum();
+    }
+
+    /**
+     * 叠加未回写增量后的计数
+     */
+    public Integer overlay(Counter counter, Long id, Integer persisted) {
+        long pending = pending(counter, id);
+        if (pending == 0) {
+            return persisted;
+        }
+        return (int) ((persisted == null ? 0 : persisted) + pending);
+    }
+
+    /**
+     * 定时回写，默认每300毫秒一次
+     */
+    @Scheduled(fixedDelayString = "${counter.buffer.flush-ms:300}")
+    public synchronized void flush() {
+        long start = System.currentTimeMillis();
+        long pendingSince = oldestPendingAt;
+        oldestPendingAt = 0;
+        Map<Counter, Map<Long, Long>> drained = new EnumMap<>(Counter.class);
+
+        // 先回收已移出计数器上的迟到增量
+        for (int i = retired.size() - 1; i >= 0; i--) {
+            Retired r = retired.get(i);
+            long delta = r.cell.adder.sumThenReset();
+            if (delta != 0) {
+                drained.computeIfAbsent(r.counter, k -> new HashMap<>()).merge(r.id, delta, Long::sum);
+            }
+            if (--r.rounds <= 0) {
+                retired.remove(i);
+            }
+        }
+
+        for (Map.Entry<Counter, ConcurrentHashMap<Long, Cell>> entry : cells.entrySet()) {
+            Counter counter = entry.getKey();
+            for (Map.Entry<Long, Cell> cellEntry : entry.getValue().entrySet()) {
+                Cell cell = cellEntry.getValue();
+                long delta = cell.adder.sumThenReset();
+                if (delta != 0) {
+                    cell.idleRounds = 0;
+                    drained.computeIfAbsent(counter, k -> new HashMap<>()).merge(cellEntry.getKey(), delta, Long::sum);
+                } else if (++cell.idleRounds >= IDLE_ROUNDS
+                        && entry.getValue().remove(cellEntry.getKey(), cell)) {
+                    retired.add(new Retired(counter, cellEntry.getKey(), cell));
+                }
+            }
+        }
+
+        boolean failed = false;
+        for (Map.Entry<Counter, Map<Long, Long>> entry : drained.entrySet()) {
+            Counter counter = entry.getKey();
+            List<Map<String, Long>> rows = new ArrayList<>(entry.getValue().size());
+            for (Map.Entry<Long, Long> delta : entry.getValue().entrySet()) {
+                Map<String, Long> row = new HashMap<>(4);
+                row.put("id", delta.getKey());
+                row.put("delta", delta.getValue());
+                rows.add(row);
+            }
+            for (int from = 0; from < rows.size(); from += batchSize) {
+                List<Map<String, Long>> batch = rows.subList(from, Math.min(from + batchSize, rows.size()));
+                try {
+                    write(counter, batch);
+                    flushedRows.addAndGet(batch.size());
+                    for (Map<String, Long> row : batch) {
+                        flushedDeltas.addAndGet(Math.abs(row.get("delta")));
+                    }
+                } catch (Exception e) {
+                    failed = true;
+                    failedFlushes.incrementAndGet();
+                    log.error("计数回写失败，增量放回缓冲: counter={}, rows={}", counter, batch.size(), e);
+                    for (Map<String, Long> row : batch) {
+                        add(counter, row.get("id"), row.get("delta"));
+                    }
+                }
+            }
+        }
+
+        if (failed) {
+            if (pendingSince != 0) {
+                oldestPendingAt = pendingSince;
+            }
+        } else {
+            lastFlushAt = start;
+        }
+        lastFlushCostMs = System.currentTimeMillis() - start;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("应用关闭，回写剩余计数");
+        flush();
+        // 第二次回写收尾已移出计数器上的迟到增量
+        flush();
+    }
+
+    /**
+     * 运行指标：回写延迟为最早一笔未回写增量的等待时间
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        int pendingRows = 0;
+        for (ConcurrentHashMap<Long, Cell> map : cells.values()) {
+            pendingRows += map.size();
+        }
+        long oldest = oldestPendingAt;
+        stats.put("enabled", enabled);
+        stats.put("bufferedRows", pendingRows);
+        stats.put("lagMs", oldest == 0 ? 0 : System.currentTimeMillis() - oldest);
+        stats.put("lastFlushAt", lastFlushAt);
+        stats.put("lastFlushCostMs", lastFlushCostMs);
+        stats.put("flushedRows", flushedRows.get());
+        stats.put("flushedDeltas", flushedDeltas.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        return stats;
+    }
+
+    private void add(Counter counter, Long id, long delta) {
+        cells.get(counter).computeIfAbsent(id, k -> new Cell()).adder.add(delta);
+        if (oldestPendingAt == 0) {
+            oldestPendingAt = System.currentTimeMillis();
+        }
+    }
+
+    private void write(Counter counter, List<Map<String, Long>> rows) {
+        if (counter == Counter.PRODUCT_VIEW) {
+            List<Long> productIds = new ArrayList<>(rows.size());
+            for (Map<String, Long> row : rows) {
+                productIds.add(row.get("id"));
+            }
+            counterMapper.touchProducts(productIds);
+        } else {
+            counterMapper.batchAddCount(counter.table, counter.column, counter.idColumn, rows);
+        }
+    }
+}
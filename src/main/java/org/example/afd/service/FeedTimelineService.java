@@ -0,0 +1,523 @@
+package org.example.afd.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.mapper.PostMapper;
+import org.example.afd.mapper.UserMapper;
+import org.example.afd.pojo.Post;
+import org.example.afd.utils.CursorUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 关注动态时间线服务（推拉结合）
+ *
+ * 1. 发布动态时，在事务提交后异步把动态ID推送到每个粉丝的时间线（写扩散），
+ *    时间线按发布时间排序并限制长度，启用 Redis 时使用有序集合，否则保存在本进程内
+ * 2. 粉丝数超过阈值的作者不推送，读取时按关注列表拉取其最新动态再与时间线合并
+ * 3. 时间线在首次读取时从数据库构建，关注/取消关注时失效重建
+ * 4. 读取只做一次范围查询，返回动态ID，由调用方批量加载动态内容；
+ *    超出时间线长度的深翻页返回 null，由调用方回退到数据库查询
+ */
+@Service
+@Slf4j
+public class FeedTimelineService {
+
+    private static final String KEY_PREFIX = "feed:timeline:";
+
+    /**
+     * 时间线已初始化标记，分数为正无穷，裁剪时不会被移除
+     */
+    private static final long INIT_MARKER = 0L;
+
+    /**
+     * Redis 按分数范围读取时多取的条数，用于过滤与游标同一时间的记录
+     */
+    private static final int TIE_PADDING = 20;
+
+    private static final Comparator<Entry> NEWEST_FIRST =
+        Comparator.comparingLong(Entry::getTime).thenComparingLong(Entry::getPostId).reversed();
+
+    @Autowired
+    private PostMapper postMapper;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired(required = false)
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Value("${feed.timeline.enabled:true}")
+    private boolean enabled;
+
+    @Value("${feed.timeline.max-size:500}")
+    private int maxSize;
+
+    @Value("${feed.timeline.pull-threshold:5000}")
+    private int pullThreshold;
+
+    @Value("${feed.timeline.fanout-batch-size:1000}")
+    private int fanoutBatchSize;
+
+    @Value("${feed.timeline.local-max-users:10000}")
+    private int localMaxUsers;
+
+    @Value("${feed.timeline.ttl-days:7}")
+    private int ttlDays;
+
+    /**
+     * 读取时拉取的作者，只增不减：作者粉丝数回落后继续拉取，避免遗漏未推送的动态
+     */
+    private final Set<Long> pullCreators = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 进程内时间线，按访问顺序淘汰
+     */
+    private Map<Long, LocalTimeline> localTimelines;
+
+    private ThreadPoolExecutor fanoutExecutor;
+
+    private final AtomicLong pushedCount = new AtomicLong();
+    private final AtomicLong rebuildCount = new AtomicLong();
+    private final AtomicLong fanoutFailedCount = new AtomicLong();
+
+    /**
+     * 时间线中的一条记录
+     */
+    public static final class Entry {
+        private final long time;
+        private final long postId;
+
+        public Entry(long time, long postId) {
+            this.time = time;
+            this.postId = postId;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public long getPostId() {
+            return postId;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("关注动态时间线未启用，关注动态直接查询数据库");
+            return;
+        }
+        localTimelines = Collections.synchronizedMap(new LinkedHashMap<Long, LocalTimeline>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, LocalTimeline> eldest) {
+                return size() > localMaxUsers;
+            }
+        });
+        fanoutExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(10000),
+            r -> {
+                Thread thread = new Thread(r, "feed-fanout");
+                thread.setDaemon(true);
+                return thread;
+            },
+            // 队列满时由发布线程自己推送，形成背压
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        refreshPullCreators();
+        log.info("关注动态时间线已启动: store={}, maxSize={}, pullThreshold={}",
+            redisTemplate != null ? "redis" : "local", maxSize, pullThreshold);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (fanoutExecutor == null) {
+            return;
+        }
+        fanoutExecutor.shutdown();
+        try {
+            fanoutExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && fanoutExecutor != null;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 每10分钟刷新一次需要拉取的大V作者
+     */
+    @Scheduled(fixedDelay = 600000, initialDelay = 600000)
+    public void refreshPullCreators() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            pullCreators.addAll(userMapper.getPopularUserIds(pullThreshold));
+        } catch (Exception e) {
+            log.error("刷新大V作者列表失败", e);
+        }
+    }
+
+    /**
+     * 发布动态，在当前事务提交后异步推送给粉丝
+     */
+    public void publish(Long authorId, Long postId, Date createTime) {
+        if (!isEnabled() || authorId == null || postId == null) {
+            return;
+        }
+        long time = createTime != null ? createTime.getTime() : System.currentTimeMillis();
+        Runnable task = () -> fanout(authorId, postId, time);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    fanoutExecutor.execute(task);
+                }
+            });
+        } else {
+            fanoutExecutor.execute(task);
+        }
+    }
+
+    /**
+     * 关注关系变化后使时间线失效，下次读取时重建
+     */
+    public void invalidate(Long userId) {
+        if (!isEnabled() || userId == null) {
+            return;
+        }
+        if (redisTemplate != null) {
+            try {
+                redisTemplate.delete(key(userId));
+            } catch (DataAccessException e) {
+                log.warn("删除时间线失败: userId={}", userId, e);
+            }
+        } else {
+            localTimelines.remove(userId);
+        }
+    }
+
+    /**
+     * 读取关注时间线
+     *
+     * @param userId 当前用户ID
+     * @param beforeTime 游标发布时间（毫秒），第一页为 null
+     * @param beforeId 游标动态ID
+     * @param limit 读取条数
+     * @return 按 (发布时间, 动态ID) 倒序的记录；时间线已被裁剪且游标越过保留范围或剩余不足时返回 null
+     */
+    public List<Entry> read(Long userId, Long beforeTime, Long beforeId, int limit) {
+        List<Entry> entries = new ArrayList<>(limit * 2);
+        // 时间线被裁剪后保留的最旧一条，比它更旧的推送记录已丢弃
+        Entry floor = redisTemplate != null
+            ? readRedis(userId, beforeTime, beforeId, limit, entries)
+            : readLocal(userId, beforeTime, beforeId, limit, entries);
+        if (floor != null && beforeTime != null
+                && NEWEST_FIRST.compare(new Entry(beforeTime, beforeId), floor) >= 0) {
+            return null;
+        }
+
+        List<Long> pulled = new ArrayList<>();
+        if (!pullCreators.isEmpty()) {
+            for (Long targetId : userMapper.getFollowingIds(userId)) {
+                if (pullCreators.contains(targetId)) {
+                    pulled.add(targetId);
+                }
+            }
+        }
+        if (!pulled.isEmpty()) {
+            List<Post> posts = postMapper.getPostTimesByUserIds(
+                pulled, beforeTime == null ? null : new Date(beforeTime), beforeId, limit);
+            for (Post post : posts) {
+                Entry entry = new Entry(CursorUtils.toMillis(post.getCreateTime()), post.getPostId());
+                // 拉取的动态不能比保留范围更旧，否则会跳过其间普通关注者的动态
+                if (floor == null || NEWEST_FIRST.compare(entry, floor) <= 0) {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        entries.sort(NEWEST_FIRST);
+        List<Entry> result = new ArrayList<>(limit);
+        Set<Long> seen = new HashSet<>();
+        for (Entry entry : entries) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (seen.add(entry.getPostId())) {
+                result.add(entry);
+            }
+        }
+        if (result.size() < limit && floor != null) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * 提取记录中的动态ID
+     */
+    public static List<Long> postIds(List<Entry> entries) {
+        List<Long> postIds = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            postIds.add(entry.getPostId());
+        }
+        return postIds;
+    }
+
+    /**
+     * 运行指标
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("store", redisTemplate != null ? "redis" : "local");
+        stats.put("localTimelines", localTimelines == null ? 0 : localTimelines.size());
+        stats.put("pullCreators", pullCreators.size());
+        stats.put("fanoutBacklog", fanoutExecutor == null ? 0 : fanoutExecutor.getQueue().size());
+        stats.put("pushedCount", pushedCount.get());
+        stats.put("rebuildCount", rebuildCount.get());
+        stats.put("fanoutFailedCount", fanoutFailedCount.get());
+        return stats;
+    }
+
+    // ==================== 推送 ====================
+
+    private void fanout(Long authorId, Long postId, long time) {
+        try {
+            if (pullCreators.contains(authorId)) {
+                return;
+            }
+            if (userMapper.getUserFollowerCount(authorId.intValue()) > pullThreshold) {
+                pullCreators.add(authorId);
+                log.info("作者粉丝数超过阈值，改为读取时拉取: authorId={}", authorId);
+                return;
+            }
+            long afterUserId = 0;
+            int pushed = 0;
+            while (true) {
+                List<Long> followers = userMapper.getFollowerIdsAfter(authorId, afterUserId, fanoutBatchSize);
+                if (followers.isEmpty()) {
+                    break;
+                }
+                pushed += redisTemplate != null
+                    ? pushRedis(followers, postId, time)
+                    : pushLocal(followers, postId, time);
+                afterUserId = followers.get(followers.size() - 1);
+                if (followers.size() < fanoutBatchSize) {
+                    break;
+                }
+            }
+            pushedCount.addAndGet(pushed);
+            log.debug("动态推送完成: authorId={}, postId={}, timelines={}", authorId, postId, pushed);
+        } catch (Exception e) {
+            fanoutFailedCount.incrementAndGet();
+            log.error("动态推送失败，粉丝时间线将在重建后补齐: authorId={}, postId={}", authorId, postId, e);
+        }
+    }
+
+    private int pushLocal(List<Long> followers, long postId, long time) {
+        int pushed = 0;
+        for (Long followerId : followers) {
+            // 只推送给已构建的时间线，未构建的在首次读取时从数据库加载
+            LocalTimeline timeline = localTimelines.get(followerId);
+            if (timeline != null) {
+                timeline.add(new Entry(time, postId), maxSize);
+                pushed++;
+            }
+        }
+        return pushed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int pushRedis(List<Long> followers, long postId, long time) {
+        // 第一轮查询哪些粉丝的时间线已构建，第二轮只向这些时间线写入，避免为不活跃用户创建键
+        List<Object> markers = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                for (Long followerId : followers) {
+                    ops.opsForZSet().score(key(followerId), INIT_MARKER);
+                }
+                return null;
+            }
+        });
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < followers.size(); i++) {
+            if (markers.get(i) != null) {
+                keys.add(key(followers.get(i)));
+            }
+        }
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                for (String key : keys) {
+                    ops.opsForZSet().add(key, postId, time);
+                    // 保留标记 + 最新 maxSize 条
+                    ops.opsForZSet().removeRange(key, 0, -(maxSize + 2));
+                }
+                return null;
+            }
+        });
+        return keys.size();
+    }
+
+    // ==================== 读取 ====================
+
+    /**
+     * @return 时间线已被裁剪时返回保留的最旧记录，否则返回 null
+     */
+    private Entry readLocal(Long userId, Long beforeTime, Long beforeId, int limit, List<Entry> out) {
+        LocalTimeline timeline = localTimelines.get(userId);
+        if (timeline == null) {
+            timeline = new LocalTimeline();
+            for (Entry entry : loadFromDatabase(userId)) {
+                timeline.add(entry, maxSize);
+            }
+            timeline.truncated = timeline.entries.size() >= maxSize;
+            localTimelines.put(userId, timeline);
+        }
+        return timeline.read(beforeTime, beforeId, limit, out);
+    }
+
+    /**
+     * @return 时间线已被裁剪时返回保留的最旧记录，否则返回 null
+     */
+    private Entry readRedis(Long userId, Long beforeTime, Long beforeId, int limit, List<Entry> out) {
+        String key = key(userId);
+        ZSetOperations<String, Object> zSet = redisTemplate.opsForZSet();
+        if (zSet.score(key, INIT_MARKER) == null) {
+            rebuildRedis(key, loadFromDatabase(userId));
+        }
+        double max = beforeTime == null ? Double.MAX_VALUE : beforeTime;
+        Set<ZSetOperations.TypedTuple<Object>> tuples =
+            zSet.reverseRangeByScoreWithScores(key, 0, max, 0, limit + TIE_PADDING);
+        if (tuples != null) {
+            for (ZSetOperations.TypedTuple<Object> tuple : tuples) {
+                long postId = ((Number) tuple.getValue()).longValue();
+                long time = tuple.getScore().longValue();
+                if (postId == INIT_MARKER) {
+                    continue;
+                }
+                if (beforeTime != null && time == beforeTime && postId >= beforeId) {
+                    continue;
+                }
+                out.add(new Entry(time, postId));
+            }
+        }
+        Long size = zSet.zCard(key);
+        if (size == null || size - 1 < maxSize) {
+            return null;
+        }
+        // 标记的分数为 +inf，分数最小的一条即保留的最旧记录
+        Set<ZSetOperations.TypedTuple<Object>> oldest = zSet.rangeWithScores(key, 0, 0);
+        if (oldest == null || oldest.isEmpty()) {
+            return null;
+        }
+        ZSetOperations.TypedTuple<Object> tuple = oldest.iterator().next();
+        return new Entry(tuple.getScore().longValue(), ((Number) tuple.getValue()).longValue());
+    }
+
+    /**
+     * 删除与重新写入放在同一个 MULTI 中执行，避免并发扇出写入被删除或在中途看到半成品
+     */
+    @SuppressWarnings("unchecked")
+    private void rebuildRedis(String key, List<Entry> entries) {
+        redisTemplate.execute(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                ops.multi();
+                ops.delete(key);
+                for (Entry entry : entries) {
+                    ops.opsForZSet().add(key, entry.getPostId(), entry.getTime());
+                }
+                ops.opsForZSet().add(key, INIT_MARKER, Double.POSITIVE_INFINITY);
+                ops.expire(key, ttlDays, TimeUnit.DAYS);
+                return ops.exec();
+            }
+        });
+    }
+
+    private List<Entry> loadFromDatabase(Long userId) {
+        rebuildCount.incrementAndGet();
+        List<Post> posts = postMapper.getFollowingPostsByCursor(userId, null, null, maxSize);
+        List<Entry> entries = new ArrayList<>(posts.size());
+        for (Post post : posts) {
+            entries.add(new Entry(CursorUtils.toMillis(post.getCreateTime()), post.getPostId()));
+        }
+        return entries;
+    }
+
+    private static String key(Long userId) {
+        return KEY_PREFIX + userId;
+    }
+
+    /**
+     * 进程内时间线
+     */
+    private static final class LocalTimeline {
+        final NavigableSet<Entry> entries = new TreeSet<>(NEWEST_FIRST);
+        boolean truncated;
+
+        synchronized void add(Entry entry, int maxSize) {
+            entries.add(entry);
+            if (entries.size() > maxSize) {
+                entries.pollLast();
+                truncated = true;
+            }
+        }
+
+        synchronized Entry read(Long beforeTime, Long beforeId, int limit, List<Entry> out) {
+            Set<Entry> older = beforeTime == null
+                ? entries
+                : entries.tailSet(new Entry(beforeTime, beforeId), false);
+            int count = 0;
+            for (Entry entry : older) {
+                if (count++ >= limit) {
+                    break;
+                }
+                out.add(entry);
+            }
+            return truncated && !entries.isEmpty() ? entries.last() : null;
+        }
+    }
+}
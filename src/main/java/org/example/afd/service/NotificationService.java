@@ -1,6 +1,7 @@
 package org.example.afd.service;
 
 import org.example.afd.dto.NotificationDTO;
+import org.example.afd.model.CursorPage;
 import org.example.afd.model.Result;
 import org.example.afd.pojo.Notification;
 
@@ -28,6 +29,16 @@ public interface NotificationService {
      */
     Result<List<NotificationDTO>> getNotifications(Long userId, int page, int size);
 
+    /**
+     * 游标分页获取用户的通知列表
+     *
+     * @param userId 用户ID
+     * @param cursor 上一页返回的游标，第一页为空
+     * @param size   每页数量
+     * @return 封装了通知列表及下一页游标的结果对象
+     */
+    Result<CursorPage<NotificationDTO>> getNotificationsByCursor(Long userId, String cursor, int size);
+
     /**
      * 获取用户的未读通知数量
      *
@@ -22,9 +22,10 @@ public class OnlineStatusCleanupService {
 
     /**
      * 定时清理过期的在线状态
-     * 每5分钟执行一次，将超过30分钟未活跃的用户设为离线
+     * 在线状态由内存服务维护并定期落库，这里只兜底处理节点崩溃后遗留的在线记录，
+     * 每30分钟执行一次，将超过30分钟未活跃的用户设为离线
      */
-    @Scheduled(fixedRate = 300000) // 5分钟 = 300,000毫秒
+    @Scheduled(fixedRate = 1800000) // 30分钟 = 1,800,000毫秒
     public void cleanupExpiredOnlineStatus() {
         try {
             log.debug("开始执行在线状态清理任务");
@@ -0,0 +1,211 @@
+package org.example.afd.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.mapper.OrderMapper;
+import org.example.afd.model.Result;
+import org.example.afd.utils.TimingWheel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单超时取消服务
+ *
+ * 1. 待支付订单按 expire_time 放入分层时间轮（秒级 * 60 格 * 4 层），不轮询订单表
+ * 2. 启动时按 expire_time 分页从 orders 加载，新订单创建时注册
+ * 3. 到期后批量筛选仍待支付的订单，通过 OrderStatusService 取消并释放库存锁定
+ * 4. 多节点部署时各节点可能重复触发同一订单，状态变更在行锁内校验，重复取消不会产生副作用；
+ *    低频对账任务兜底处理其他节点宕机后遗留的订单
+ */
+@Service
+@Slf4j
+public class OrderExpiryService {
+
+    private static final String CANCEL_REASON = "订单超时未支付，系统自动取消";
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Autowired
+    private OrderStatusService orderStatusService;
+
+    @Value("${order.expiry.batch-size:100}")
+    private int batchSize;
+
+    @Value("${order.expiry.reconcile-limit:500}")
+    private int reconcileLimit;
+
+    @Value("${order.expiry.load-page-size:1000}")
+    private int loadPageSize;
+
+    private TimingWheel<String> timingWheel;
+
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong lastLagMs = new AtomicLong();
+    private final AtomicLong maxLagMs = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        timingWheel = new TimingWheel<>(1000, 60, 4, System.currentTimeMillis());
+        int loaded = 0;
+        int overdueCount = 0;
+        try {
+            LocalDateTime afterTime = null;
+            Long afterOrderId = null;
+            while (true) {
+                List<Map<String, Object>> page = orderMapper.selectPendingExpireOrders(
+                    afterTime, afterOrderId, loadPageSize);
+                List<String> overdue = new ArrayList<>();
+                for (Map<String, Object> order : page) {
+                    String orderNo = (String) order.get("order_no");
+                    if (!timingWheel.schedule(orderNo, toEpochMilli(order.get("expire_time")))) {
+                        overdue.add(orderNo);
+                    }
+                }
+                loaded += page.size();
+                overdueCount += overdue.size();
+                // 已过期的随页取消，取消后的订单都在游标之前，不影响后续分页
+                cancelExpired(overdue);
+                if (page.size() < loadPageSize) {
+                    break;
+                }
+                Map<String, Object> last = page.get(page.size() - 1);
+                afterTime = toLocalDateTime(last.get("expire_time"));
+                afterOrderId = ((Number) last.get("order_id")).longValue();
+            }
+            log.info("订单超时时间轮加载完成: 待支付订单={}, 已过期待取消={}", loaded, overdueCount);
+        } catch (Exception e) {
+            log.error("加载待支付订单失败，依赖对账任务补偿", e);
+        }
+    }
+
+    /**
+     * 注册订单过期时间（订单创建时调用）
+     */
+    public void schedule(String orderNo, LocalDateTime expireTime) {
+        if (orderNo == null || expireTime == null) {
+            return;
+        }
+        long deadline = expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (!timingWheel.schedule(orderNo, deadline)) {
+            cancelExpired(List.of(orderNo));
+        }
+    }
+
+    /**
+     * 每秒推进时间轮，取消到期订单
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void tick() {
+        List<String> expired = timingWheel.advance(System.currentTimeMillis());
+        if (!expired.isEmpty()) {
+            cancelExpired(expired);
+        }
+    }
+
+    /**
+     * 每5分钟对账一次：处理其他节点创建且未被本节点加载的过期订单
+     */
+    @Scheduled(fixedDelay = 300000, initialDelay = 300000)
+    public void reconcile() {
+        try {
+            List<Map<String, Object>> overdue = orderMapper.selectOverduePendingOrders(
+                LocalDateTime.now().minusMinutes(1), reconcileLimit);
+            if (overdue.isEmpty()) {
+                return;
+            }
+            List<String> orderNos = new ArrayList<>(overdue.size());
+            for (Map<String, Object> order : overdue) {
+                orderNos.add((String) order.get("order_no"));
+            }
+            log.info("对账发现过期未取消订单: {}", orderNos.size());
+            cancelExpired(orderNos);
+        } catch (Exception e) {
+            log.error("订单超时对账失败", e);
+        }
+    }
+
+    /**
+     * 分批取消过期订单
+     */
+    private void cancelExpired(List<String> orderNos) {
+        for (int from = 0; from < orderNos.size(); from += batchSize) {
+            List<String> batch = orderNos.subList(from, Math.min(from + batchSize, orderNos.size()));
+            List<Map<String, Object>> pending;
+            try {
+                // 一次查询过滤掉已支付或已取消的订单
+                pending = orderMapper.selectExpiredPendingOrders(batch);
+            } catch (Exception e) {
+                log.error("查询过期订单失败: batch={}", batch.size(), e);
+                failedCount.addAndGet(batch.size());
+                continue;
+            }
+
+            for (Map<String, Object> order : pending) {
+                String orderNo = (String) order.get("order_no");
+                try {
+                    Result<Boolean> result = orderStatusService.cancelExpiredOrder(orderNo, CANCEL_REASON);
+                    if (result.isSuccess()) {
+                        long lag = System.currentTimeMillis() - toEpochMilli(order.get("expire_time"));
+                        cancelledCount.incrementAndGet();
+                        lastLagMs.set(lag);
+                        maxLagMs.accumulateAndGet(lag, Math::max);
+                    } else {
+                        failedCount.incrementAndGet();
+                        log.warn("超时订单取消失败: orderNo={}, reason={}", orderNo, result.getMessage());
+                    }
+                } catch (Exception e) {
+                    failedCount.incrementAndGet();
+                    log.error("超时订单取消异常: orderNo={}", orderNo, e);
+                }
+            }
+            log.info("超时订单批量取消完成: 到期={}, 待取消={}", batch.size(), pending.size());
+        }
+    }
+
+    /**
+     * 运行指标：积压数量与取消延迟
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("backlog", timingWheel.size());
+        stats.put("cancelledCount", cancelledCount.get());
+        stats.put("failedCount", failedCount.get());
+        stats.put("lastLagMs", lastLagMs.get());
+        stats.put("maxLagMs", maxLagMs.get());
+        return stats;
+    }
+
+    private LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(toEpochMilli(value)), ZoneId.systemDefault());
+    }
+
+    private long toEpochMilli(Object value) {
+        if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).getTime();
+        }
+        if (value instanceof java.util.Date) {
+            return ((java.util.Date) value).getTime();
+        }
+        return System.currentTimeMillis();
+    }
+}
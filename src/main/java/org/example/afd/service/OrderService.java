@@ -2,6 +2,7 @@ package org.example.afd.service;
 
 import org.example.afd.dto.OrderDTO;
 import org.example.afd.entity.Order;
+import org.example.afd.model.CursorPage;
 import org.example.afd.model.PageResult;
 import org.example.afd.model.Result;
 
@@ -94,6 +95,18 @@ public interface OrderService {
      */
     Result<List<OrderDTO>> getUserOrders(Long userId, Integer orderType, Integer orderStatus, Integer page, Integer size);
     
+    /**
+     * 游标分页获取用户订单列表
+     * 
+     * @param userId 用户ID
+     * @param orderType 订单类型：1-购物订单，2-订阅订单，null-全部
+     * @param orderStatus 订单状态
+     * @param cursor 上一页返回的游标，第一页为空
+     * @param size 每页大小
+     * @return 订单列表及下一页游标
+     */
+    Result<CursorPage<OrderDTO>> getUserOrdersByCursor(Long userId, Integer orderType, Integer orderStatus, String cursor, Integer size);
+    
     /**
      * 取消订单
      * 
@@ -34,6 +34,24 @@ public class OrderStatusService {
     @Autowired
     private StockService stockService;
     
+    /**
+     * 超时自动取消
+     * 多个节点可能同时取消同一订单，行锁内发现已取消时直接返回成功，不重复释放库存和记录日志；
+     * 其他状态按正常流程校验转换
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public Result<Boolean> cancelExpiredOrder(String orderNo, String reason) {
+        Order order = orderMapper.selectByOrderNoForUpdate(orderNo);
+        if (order == null) {
+            return Result.error("订单不存在");
+        }
+        if (OrderStatus.fromCode(order.getOrderStatus()) == OrderStatus.CANCELLED) {
+            log.info("订单已被取消，跳过超时取消: orderNo={}", orderNo);
+            return Result.success(true);
+        }
+        return changeOrderStatus(orderNo, OrderStatus.CANCELLED, reason, null);
+    }
+    
     /**
      * 安全的状态转换
      */
@@ -0,0 +1,141 @@
+package org.example.afd.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.dto.PostDTO;
+import org.example.afd.dto.TagDTO;
+import org.example.afd.mapper.PostMapper;
+import org.example.afd.pojo.Post;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 动态列表批量组装
+ *
+ * 一页动态的媒体、标签、当前用户点赞/收藏状态各用一次 IN 查询取回，
+ * 在内存中组装 PostDTO，查询次数与页大小无关（最多 4 次）。计数叠加 CounterBuffer 中尚未回写的增量。
+ */
+@Component
+@Slf4j
+public class PostHydrator {
+
+    private static final int INTERACTION_LIKE = 1;
+    private static final int INTERACTION_COLLECT = 2;
+
+    @Autowired
+    private PostMapper postMapper;
+
+    @Autowired
+    private CounterBuffer counterBuffer;
+
+    /**
+     * 按给定顺序批量加载并组装动态，已删除的动态会被跳过
+     *
+     * @param postIds 动态ID
+     * @param viewerId 当前用户ID，未登录为 null
+     */
+    public List<PostDTO> hydrateByIds(List<Long> postIds, Long viewerId) {
+        if (postIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Post> postMap = new HashMap<>();
+        for (Post post : postMapper.getPostsByIds(postIds)) {
+            postMap.put(post.getPostId(), post);
+        }
+        List<Post> posts = new ArrayList<>(postIds.size());
+        for (Long postId : postIds) {
+            Post post = postMap.get(postId);
+            if (post != null) {
+                posts.add(post);
+            }
+        }
+        return hydrate(posts, viewerId);
+    }
+
+    /**
+     * 组装已查询出的动态
+     *
+     * @param posts 动态列表
+     * @param viewerId 当前用户ID，未登录为 null
+     */
+    public List<PostDTO> hydrate(List<Post> posts, Long viewerId) {
+        if (posts.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> postIds = new ArrayList<>(posts.size());
+        for (Post post : posts) {
+            postIds.add(post.getPostId());
+        }
+
+        Map<Long, List<String>> mediaUrls = new HashMap<>();
+        Map<Long, Integer> mediaTypes = new HashMap<>();
+        for (Map<String, Object> row : postMapper.getPostMediaByPostIds(postIds)) {
+            Long postId = ((Number) row.get("post_id")).longValue();
+            mediaUrls.computeIfAbsent(postId, k -> new ArrayList<>()).add((String) row.get("media_url"));
+            Object mediaType = row.get("media_type");
+            if (mediaType != null) {
+                mediaTypes.putIfAbsent(postId, ((Number) mediaType).intValue());
+            }
+        }
+
+        Map<Long, List<TagDTO>> tags = new HashMap<>();
+        for (Map<String, Object> row : postMapper.getPostTagsByPostIds(postIds)) {
+            TagDTO tag = new TagDTO();
+            tag.setTagId(((Number) row.get("tag_id")).longValue());
+            tag.setTagName((String) row.get("tag_name"));
+            Object useCount = row.get("use_count");
+            tag.setCount(useCount == null ? 0 : ((Number) useCount).intValue());
+            tag.setIsHot(false);
+            tags.computeIfAbsent(((Number) row.get("post_id")).longValue(), k -> new ArrayList<>()).add(tag);
+        }
+
+        Set<Long> liked = Collections.emptySet();
+        Set<Long> collected = Collections.emptySet();
+        if (viewerId != null) {
+            liked = new HashSet<>(postMapper.getInteractedPostIds(viewerId, INTERACTION_LIKE, postIds));
+            collected = new HashSet<>(postMapper.getInteractedPostIds(viewerId, INTERACTION_COLLECT, postIds));
+        }
+
+        List<PostDTO> dtoList = new ArrayList<>(posts.size());
+        for (Post post : posts) {
+            Long postId = post.getPostId();
+            PostDTO dto = new PostDTO();
+            dto.setPostId(postId);
+            dto.setUserId(post.getUserId().longValue());
+            dto.setContent(post.getContent());
+            dto.setVisibilityType(post.getVisibilityType());
+            dto.setLikeCount(counterBuffer.overlay(CounterBuffer.Counter.POST_LIKE, postId, post.getLikeCount()));
+            dto.setCommentCount(counterBuffer.overlay(CounterBuffer.Counter.POST_COMMENT, postId, post.getCommentCount()));
+            dto.setCollectCount(counterBuffer.overlay(CounterBuffer.Counter.POST_COLLECT, postId, post.getCollectCount()));
+            dto.setViewCount(counterBuffer.overlay(CounterBuffer.Counter.POST_VIEW, postId, post.getViewCount()));
+            dto.setCreateTime(post.getCreateTime());
+            dto.setUsername(post.getUsername());
+            // 会同时设置userAvatarUrl和avatar两个字段
+            dto.setUserAvatarUrl(post.getUserAvatarUrl());
+
+            List<String> urls = mediaUrls.getOrDefault(postId, new ArrayList<>());
+            dto.setMediaUrls(urls);
+            if (urls.isEmpty()) {
+                dto.setMediaType(0); // 0-无媒体
+            } else {
+                // 有URL但没有类型时默认为图片
+                dto.setMediaType(mediaTypes.getOrDefault(postId, 1));
+            }
+            dto.setTags(tags.getOrDefault(postId, new ArrayList<>()));
+
+            if (viewerId != null) {
+                dto.setIsLiked(liked.contains(postId));
+                dto.setIsCollected(collected.contains(postId));
+            }
+            dtoList.add(dto);
+        }
+        return dtoList;
+    }
+}
@@ -0,0 +1,361 @@
+package org.example.afd.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.mapper.PostMapper;
+import org.example.afd.pojo.Post;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 推荐动态排序服务
+ *
+ * 1. 定时从数据库加载最近 N 天发布的动态作为候选，按时间衰减公式打分：
+ *    score = (点赞*1 + 评论*2 + 收藏*3 + 转发*4 + 浏览*0.05) / (发布小时数 + 2)^gravity；
+ *    窗口内不足 K 条时（访问量小的站点）补充窗口之外最近发布的动态，推荐列表不会为空
+ * 2. 取前 K 名生成排序快照（动态ID与分数数组），推荐列表按下标直接截取，每页 O(页大小)
+ * 3. 点赞、收藏事件在事务提交后更新候选计数并记录变化的动态，每秒只对这些动态重新打分，
+ *    与快照归并得到新快照，不重新扫描全部候选；两次全量刷新之间以刷新时刻为基准计算衰减，保证排序稳定。
+ *    分数下降的动态留在快照中按新分数排位，快照外是否有更高分的动态要等下次全量刷新才能确定
+ * 4. 每个节点各自计算：全量刷新从数据库读取相同的计数，刷新后各节点结果一致；
+ *    两次刷新之间只计入本节点收到的互动，各节点的排序会有差异，下次全量刷新时收敛
+ */
+@Service
+@Slf4j
+public class PostRankingService {
+
+    private static final double LIKE_WEIGHT = 1.0;
+    private static final double COMMENT_WEIGHT = 2.0;
+    private static final double COLLECT_WEIGHT = 3.0;
+    private static final double FORWARD_WEIGHT = 4.0;
+    private static final double VIEW_WEIGHT = 0.05;
+
+    private static final long HOUR_MS = 3600_000L;
+
+    @Autowired
+    private PostMapper postMapper;
+
+    @Value("${feed.ranking.enabled:true}")
+    private boolean enabled;
+
+    @Value("${feed.ranking.top-k:1000}")
+    private int topK;
+
+    @Value("${feed.ranking.window-days:7}")
+    private int windowDays;
+
+    @Value("${feed.ranking.candidate-limit:20000}")
+    private int candidateLimit;
+
+    @Value("${feed.ranking.gravity:1.8}")
+    private double gravity;
+
+    private volatile Map<Long, Candidate> candidates = new ConcurrentHashMap<>();
+
+    /**
+     * 当前排序快照，下标即名次
+     */
+    private volatile Snapshot ranking = new Snapshot(new long[0], new double[0]);
+
+    /**
+     * 上次重排后互动计数有变化的动态
+     */
+    private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 计算衰减的基准时间
+     */
+    private volatile long rankTime;
+
+    private final AtomicLong eventCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong deltaCount = new AtomicLong();
+    private volatile long lastRefreshCostMs;
+
+    /**
+     * 排序快照，分数倒序，与动态ID一一对应
+     */
+    private static final class Snapshot {
+        final long[] postIds;
+        final double[] scores;
+
+        Snapshot(long[] postIds, double[] scores) {
+            this.postIds = postIds;
+            this.scores = scores;
+        }
+    }
+
+    /**
+     * 候选动态的计数
+     */
+    private static final class Candidate {
+        final long postId;
+        final long createTime;
+        final AtomicInteger likes;
+        final AtomicInteger collects;
+        final int comments;
+        final int forwards;
+        final int views;
+
+        Candidate(Post post) {
+            this.postId = post.getPostId();
+            this.createTime = post.getCreateTime() != null ? post.getCreateTime().getTime() : System.currentTimeMillis();
+            this.likes = new AtomicInteger(valueOf(post.getLikeCount()));
+            this.collects = new AtomicInteger(valueOf(post.getCollectCount()));
+            this.comments = valueOf(post.getCommentCount());
+            this.forwards = valueOf(post.getForwardCount());
+            this.views = valueOf(post.getViewCount());
+        }
+
+        private static int valueOf(Integer count) {
+            return count == null ? 0 : count;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("推荐动态排序未启用，推荐列表直接查询数据库");
+            return;
+        }
+        refresh();
+    }
+
+    /**
+     * 全量刷新候选并重排，默认每5分钟一次
+     */
+    @Scheduled(fixedDelayString = "${feed.ranking.refresh-ms:300000}",
+               initialDelayString = "${feed.ranking.refresh-ms:300000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            Date since = new Date(start - windowDays * 24L * HOUR_MS);
+            List<Post> posts = postMapper.getRankingCandidates(since, candidateLimit);
+            if (posts.size() < topK) {
+                // 窗口内动态不足，按发布时间补充更早的动态
+                posts = postMapper.getRankingCandidates(null, topK);
+            }
+            Map<Long, Candidate> loaded = new ConcurrentHashMap<>(posts.size() * 2);
+            for (Post post : posts) {
+                loaded.put(post.getPostId(), new Candidate(post));
+            }
+            candidates = loaded;
+            rankTime = start;
+            changed.clear();
+            rebuild();
+            refreshCount.incrementAndGet();
+            lastRefreshCostMs = System.currentTimeMillis() - start;
+            log.info("推荐排序刷新完成: 候选={}, 快照={}, 耗时={}ms", loaded.size(), ranking.postIds.length, lastRefreshCostMs);
+        } catch (Exception e) {
+            log.error("推荐排序刷新失败，继续使用上一次快照", e);
+        }
+    }
+
+    /**
+     * 有互动事件时每秒把变化的动态归并进快照
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void applyEvents() {
+        if (!enabled || changed.isEmpty()) {
+            return;
+        }
+        List<Long> postIds = new ArrayList<>(changed);
+        changed.removeAll(postIds);
+        merge(postIds);
+    }
+
+    /**
+     * 记录点赞/收藏变化，在当前事务提交后生效
+     *
+     * @param post 变化前的动态
+     * @param likeDelta 点赞数变化
+     * @param collectDelta 收藏数变化
+     */
+    public void onInteraction(Post post, int likeDelta, int collectDelta) {
+        if (!enabled || post == null || post.getPostId() == null) {
+            return;
+        }
+        Runnable task = () -> apply(post, likeDelta, collectDelta);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * 按名次截取推荐动态ID
+     *
+     * @return 快照为空时返回 null，由调用方回退到数据库查询；超出快照范围返回空列表
+     */
+    public List<Long> page(int offset, int size) {
+        long[] snapshot = ranking.postIds;
+        if (!enabled || snapshot.length == 0) {
+            return null;
+        }
+        int from = Math.min(Math.max(offset, 0), snapshot.length);
+        int to = Math.min(from + size, snapshot.length);
+        List<Long> postIds = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            postIds.add(snapshot[i]);
+        }
+        return postIds;
+    }
+
+    /**
+     * 运行指标
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("candidates", candidates.size());
+        stats.put("ranked", ranking.postIds.length);
+        stats.put("rankTime", rankTime);
+        stats.put("eventCount", eventCount.get());
+        stats.put("pendingChanges", changed.size());
+        stats.put("deltaCount", deltaCount.get());
+        stats.put("refreshCount", refreshCount.get());
+        stats.put("lastRefreshCostMs", lastRefreshCostMs);
+        return stats;
+    }
+
+    private void apply(Post post, int likeDelta, int collectDelta) {
+        Candidate candidate = candidates.get(post.getPostId());
+        if (candidate == null) {
+            // 刷新后新发布的动态首次产生互动时加入候选，窗口之外的旧动态不参与排序
+            if (post.getCreateTime() == null
+                    || post.getCreateTime().getTime() < System.currentTimeMillis() - windowDays * 24L * HOUR_MS) {
+                return;
+            }
+            Candidate created = new Candidate(post);
+            candidate = candidates.putIfAbsent(post.getPostId(), created);
+            if (candidate == null) {
+                candidate = created;
+            }
+        }
+        candidate.likes.addAndGet(likeDelta);
+        candidate.collects.addAndGet(collectDelta);
+        eventCount.incrementAndGet();
+        changed.add(candidate.postId);
+    }
+
+    /**
+     * 用大小为 K 的最小堆选出前 K 名，再按分数倒序写入快照
+     */
+    private synchronized void rebuild() {
+        long now = rankTime;
+        PriorityQueue<double[]> heap = new PriorityQueue<>(topK + 1, (a, b) -> Double.compare(a[0], b[0]));
+        for (Candidate candidate : candidates.values()) {
+            double score = score(candidate, now);
+            if (heap.size() < topK) {
+                heap.offer(new double[]{score, candidate.postId});
+            } else if (score > heap.peek()[0]) {
+                heap.poll();
+                heap.offer(new double[]{score, candidate.postId});
+            }
+        }
+        long[] postIds = new long[heap.size()];
+        double[] scores = new double[heap.size()];
+        for (int i = postIds.length - 1; i >= 0; i--) {
+            double[] entry = heap.poll();
+            scores[i] = entry[0];
+            postIds[i] = (long) entry[1];
+        }
+        ranking = new Snapshot(postIds, scores);
+    }
+
+    /**
+     * 对变化的动态重新打分，与快照中其余动态归并，O(K + m log m)，m 为变化的动态数
+     */
+    private synchronized void merge(List<Long> postIds) {
+        long now = rankTime;
+        Map<Long, Candidate> current = candidates;
+        Snapshot snapshot = ranking;
+        Set<Long> changedIds = new HashSet<>(postIds);
+        boolean full = snapshot.postIds.length >= topK;
+        double floor = snapshot.postIds.length == 0 ? 0 : snapshot.scores[snapshot.postIds.length - 1];
+
+        Set<Long> inSnapshot = new HashSet<>();
+        for (long postId : snapshot.postIds) {
+            if (changedIds.contains(postId)) {
+                inSnapshot.add(postId);
+            }
+        }
+        List<double[]> updates = new ArrayList<>(postIds.size());
+        for (Long postId : postIds) {
+            Candidate candidate = current.get(postId);
+            if (candidate == null) {
+                continue;
+            }
+            double score = score(candidate, now);
+            // 快照外的动态只有超过当前末位才能进入
+            if (inSnapshot.contains(postId) || !full || score > floor) {
+                updates.add(new double[]{score, postId});
+            }
+        }
+        updates.sort((a, b) -> Double.compare(b[0], a[0]));
+
+        int capacity = Math.min(topK, snapshot.postIds.length + updates.size());
+        long[] mergedIds = new long[capacity];
+        double[] mergedScores = new double[capacity];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (n < capacity && (i < snapshot.postIds.length || j < updates.size())) {
+            if (i < snapshot.postIds.length && changedIds.contains(snapshot.postIds[i])) {
+                i++;
+                continue;
+            }
+            boolean takeUpdate = j < updates.size()
+                && (i >= snapshot.postIds.length || updates.get(j)[0] > snapshot.scores[i]);
+            if (takeUpdate) {
+                mergedScores[n] = updates.get(j)[0];
+                mergedIds[n++] = (long) updates.get(j++)[1];
+            } else {
+                mergedScores[n] = snapshot.scores[i];
+                mergedIds[n++] = snapshot.postIds[i++];
+            }
+        }
+        if (n < capacity) {
+            mergedIds = Arrays.copyOf(mergedIds, n);
+            mergedScores = Arrays.copyOf(mergedScores, n);
+        }
+        ranking = new Snapshot(mergedIds, mergedScores);
+        deltaCount.incrementAndGet();
+    }
+
+    private double score(Candidate candidate, long now) {
+        double points = candidate.likes.get() * LIKE_WEIGHT
+            + candidate.comments * COMMENT_WEIGHT
+            + candidate.collects.get() * COLLECT_WEIGHT
+            + candidate.forwards * FORWARD_WEIGHT
+            + candidate.views * VIEW_WEIGHT;
+        double ageHours = Math.max(0, now - candidate.createTime) / (double) HOUR_MS;
+        return points / Math.pow(ageHours + 2, gravity);
+    }
+}
@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.example.afd.dto.*;
+import org.example.afd.model.CursorPage;
 import org.example.afd.model.Result;
 
 public interface PostService {
@@ -44,6 +45,15 @@ public interface PostService {
      */
     Result<List<PostDTO>> getFollowingPosts(Long userId, Integer page, Integer size);
     
+    /**
+     * 游标分页获取关注的用户发布的动态列表
+     * @param userId 当前用户ID
+     * @param cursor 上一页返回的游标，第一页为空
+     * @param size 每页数量
+     * @return 动态列表及下一页游标
+     */
+    Result<CursorPage<PostDTO>> getFollowingPostsByCursor(Long userId, String cursor, Integer size);
+    
     /**
      * 获取推荐动态列表
      * @param userId 当前用户ID
@@ -53,6 +63,16 @@ public interface PostService {
      */
     Result<List<PostDTO>> getRecommendPosts(Long userId, Integer page, Integer size);
     
+    /**
+     * 游标分页获取推荐动态列表
+     * 按点赞数排序，点赞数在翻页期间会变化，分页结果可能重复或遗漏个别动态，客户端按动态ID去重
+     * @param userId 当前用户ID
+     * @param cursor 上一页返回的游标，第一页为空
+     * @param size 每页数量
+     * @return 动态列表及下一页游标
+     */
+    Result<CursorPage<PostDTO>> getRecommendPostsByCursor(Long userId, String cursor, Integer size);
+    
     /**
      * 点赞/取消点赞动态
      * @param postId 动态ID
@@ -175,6 +195,16 @@ public interface PostService {
      */
     Result<List<CommentDTO>> getComments(Long postId, Long userId, Integer page, Integer size);
     
+    /**
+     * 游标分页获取帖子评论列表
+     * @param postId 帖子ID
+     * @param userId 当前用户ID，用于查询点赞状态
+     * @param cursor 上一页返回的游标，第一页为空
+     * @param size 每页大小
+     * @return 评论列表及下一页游标
+     */
+    Result<CursorPage<CommentDTO>> getCommentsByCursor(Long postId, Long userId, String cursor, Integer size);
+    
     /**
      * 添加评论
      * @param postId 帖子ID
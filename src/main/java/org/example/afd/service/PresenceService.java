@@ -0,0 +1,418 @@
+package org.example.afd.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.cluster.ChatClusterRouter;
+import org.example.afd.entity.UserOnlineStatus;
+import org.example.afd.mapper.UserOnlineStatusMapper;
+import org.example.afd.utils.LongLongHashMap;
+import org.example.afd.utils.TimingWheel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存在线状态服务
+ *
+ * 1. 在线状态保存在分段的 long -> long 哈希表中，值为最后活跃时间（毫秒），
+ *    有 WebSocket 连接的用户额外带固定标记，连接期间不会过期
+ * 2. 只靠心跳在线的用户由时间轮驱动过期，超过 ttl 未心跳即移除
+ * 3. 状态变化只记录脏标记，定期把合并后的快照批量写入 user_online_status，
+ *    同一用户两次落库之间的多次心跳、上下线只写一次；表仅用于持久化和统计
+ * 4. 本节点查不到的用户再批量查集群目录，覆盖连接在其他节点或在其他节点心跳的用户；
+ *    只靠心跳在线的用户同时发布到集群目录，任意节点查询结果一致
+ * 5. 本节点判定离线的用户落库前先查集群目录，仍在其他节点在线的不写离线
+ */
+@Service
+@Slf4j
+public class PresenceService {
+
+    private static final int STRIPES = 16;
+
+    private static final long TICK_MS = 1000;
+
+    /**
+     * 有 WebSocket 连接的标记位，低位为最后活跃时间
+     */
+    private static final long PINNED = 1L << 62;
+
+    private static final long TIME_MASK = PINNED - 1;
+
+    private static final long ABSENT = -1L;
+
+    @Autowired
+    private UserOnlineStatusMapper userOnlineStatusMapper;
+
+    @Autowired
+    private ChatClusterRouter clusterRouter;
+
+    @Value("${chat.presence.ttl-ms:300000}")
+    private long ttlMs;
+
+    @Value("${chat.presence.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private TimingWheel<Long> expiryWheel;
+
+    private final AtomicLong heartbeats = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong directoryLookups = new AtomicLong();
+    private volatile long lastFlushCostMs;
+
+    private static final class Stripe {
+        LongLongHashMap users = new LongLongHashMap(1024);
+        /**
+         * 待落库的用户，值无意义
+         */
+        LongLongHashMap dirty = new LongLongHashMap(256);
+    }
+
+    public PresenceService() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        long now = System.currentTimeMillis();
+        // 1秒一格，3层可覆盖约 72 小时
+        expiryWheel = new TimingWheel<>(TICK_MS, 64, 3, now);
+        try {
+            int loaded = 0;
+            for (UserOnlineStatus status : userOnlineStatusMapper.getAllOnlineUsers()) {
+                long lastSeen = status.getLastActiveTime() != null
+                    ? status.getLastActiveTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                    : now;
+                Stripe stripe = stripeOf(status.getUserId());
+                synchronized (stripe) {
+                    stripe.users.put(status.getUserId(), lastSeen);
+                }
+                scheduleExpiry(status.getUserId(), lastSeen);
+                loaded++;
+            }
+            log.info("在线状态已加载: {}个在线用户, ttl={}ms", loaded, ttlMs);
+        } catch (Exception e) {
+            log.error("加载在线状态失败，从空状态开始", e);
+        }
+    }
+
+    /**
+     * 用户在本节点建立了第一个 WebSocket 连接
+     */
+    public void online(Integer userId) {
+        long now = System.currentTimeMillis();
+        Stripe stripe = stripeOf(userId);
+        synchronized (stripe) {
+            stripe.users.put(userId, now | PINNED);
+            stripe.dirty.put(userId, 1);
+        }
+        expiryWheel.cancel((long) userId);
+    }
+
+    /**
+     * 用户主动离线或本节点的连接全部断开
+     */
+    public void offline(Integer userId) {
+        Stripe stripe = stripeOf(userId);
+        synchronized (stripe) {
+            if (stripe.users.remove(userId)) {
+                stripe.dirty.put(userId, 1);
+            }
+        }
+        expiryWheel.cancel((long) userId);
+        try {
+            clusterRouter.clearHeartbeat(userId);
+        } catch (Exception e) {
+            log.warn("撤销心跳在线记录失败，记录会自然过期: userId={}", userId);
+        }
+    }
+
+    /**
+     * 心跳，刷新最后活跃时间；没有连接的用户从此刻起 ttl 内视为在线
+     */
+    public void heartbeat(Integer userId) {
+        long now = System.currentTimeMillis();
+        boolean pinned;
+        Stripe stripe = stripeOf(userId);
+        synchronized (stripe) {
+            long value = stripe.users.get(userId, ABSENT);
+            pinned = value != ABSENT && (value & PINNED) != 0;
+            stripe.users.put(userId, pinned ? now | PINNED : now);
+            stripe.dirty.put(userId, 1);
+        }
+        if (!pinned) {
+            scheduleExpiry(userId, now);
+            // 有连接的用户已由连接租约发布，只需发布只靠心跳在线的用户
+            try {
+                clusterRouter.heartbeat(userId, ttlMs);
+            } catch (Exception e) {
+                log.warn("发布心跳在线记录失败: userId={}", userId);
+            }
+        }
+        heartbeats.incrementAndGet();
+    }
+
+    /**
+     * 用户是否在线
+     */
+    public boolean isOnline(Integer userId) {
+        if (userId == null) {
+            return false;
+        }
+        if (isLocallyOnline(userId, System.currentTimeMillis())) {
+            return true;
+        }
+        directoryLookups.incrementAndGet();
+        return clusterRouter.onlineAmong(Collections.singletonList(userId)).contains(userId);
+    }
+
+    /**
+     * 批量查询在线状态，本节点未命中的用户合并为一次集群目录查询
+     */
+    public Map<Integer, Boolean> batchCheck(Collection<Integer> userIds) {
+        Map<Integer, Boolean> result = new HashMap<>();
+        List<Integer> misses = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Integer userId : userIds) {
+            if (userId == null || result.containsKey(userId)) {
+                continue;
+            }
+            boolean online = isLocallyOnline(userId, now);
+            result.put(userId, online);
+            if (!online) {
+                misses.add(userId);
+            }
+        }
+        if (!misses.isEmpty()) {
+            directoryLookups.incrementAndGet();
+            for (Integer userId : clusterRouter.onlineAmong(misses)) {
+                result.put(userId, true);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 推进时间轮，移除心跳超时的用户
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void expire() {
+        long now = System.currentTimeMillis();
+        for (Long userId : expiryWheel.advance(now)) {
+            Stripe stripe = stripeOf(userId);
+            synchronized (stripe) {
+                long value = stripe.users.get(userId, ABSENT);
+                // 到期前可能又有心跳或建立了连接，按当前值重新判断
+                if (value == ABSENT || (value & PINNED) != 0) {
+                    continue;
+                }
+                if (value + ttlMs > now) {
+                    scheduleExpiry(userId, value);
+                    continue;
+                }
+                stripe.users.remove(userId);
+                stripe.dirty.put(userId, 1);
+            }
+            expirations.incrementAndGet();
+        }
+    }
+
+    /**
+     * 把变化过的用户快照批量写入数据库
+     *
+     * 有连接的用户不发心跳，最后活跃时间超过 ttl 一半时在这里顺带刷新，
+     * 使表中的活跃时间满足按时间判断在线的统计查询
+     */
+    @Scheduled(fixedDelayString = "${chat.presence.flush-ms:30000}")
+    public void flush() {
+        long start = System.currentTimeMillis();
+        long staleBefore = start - ttlMs / 2;
+        List<UserOnlineStatus> onlineRows = new ArrayList<>();
+        List<Integer> offlineIds = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                LongLongHashMap users = stripe.users;
+                LongLongHashMap dirty = stripe.dirty;
+                users.forEach((userId, value) -> {
+                    if ((value & PINNED) != 0 && (value & TIME_MASK) < staleBefore) {
+                        users.put(userId, start | PINNED);
+                        dirty.put(userId, 1);
+                    }
+                });
+                dirty.forEach((userId, ignored) -> {
+                    long value = users.get(userId, ABSENT);
+                    if (value == ABSENT) {
+                        offlineIds.add((int) userId);
+                    } else {
+                        onlineRows.add(snapshot((int) userId, value & TIME_MASK));
+                    }
+                });
+                stripe.dirty = new LongLongHashMap(256);
+            }
+        }
+        List<Integer> offlineRows = offlineIds.isEmpty() ? offlineIds : excludeOnlineElsewhere(offlineIds);
+        if (onlineRows.isEmpty() && offlineRows.isEmpty()) {
+            return;
+        }
+
+        int written = 0;
+        for (int from = 0; from < onlineRows.size(); from += flushBatchSize) {
+            List<UserOnlineStatus> chunk = onlineRows.subList(from, Math.min(from + flushBatchSize, onlineRows.size()));
+            try {
+                userOnlineStatusMapper.batchUpsertOnline(chunk);
+                written += chunk.size();
+            } catch (Exception e) {
+                log.error("在线状态落库失败: size={}", chunk.size(), e);
+                for (UserOnlineStatus row : chunk) {
+                    markDirty(row.getUserId());
+                }
+            }
+        }
+        for (int from = 0; from < offlineRows.size(); from += flushBatchSize) {
+            List<Integer> chunk = offlineRows.subList(from, Math.min(from + flushBatchSize, offlineRows.size()));
+            try {
+                userOnlineStatusMapper.batchSetOffline(chunk);
+                written += chunk.size();
+            } catch (Exception e) {
+                log.error("离线状态落库失败: size={}", chunk.size(), e);
+                chunk.forEach(this::markDirty);
+            }
+        }
+        flushedRows.addAndGet(written);
+        flushes.incrementAndGet();
+        lastFlushCostMs = System.currentTimeMillis() - start;
+        log.debug("在线状态落库完成: online={}, offline={}, cost={}ms",
+            onlineRows.size(), offlineRows.size(), lastFlushCostMs);
+    }
+
+    /**
+     * 本节点在线用户数
+     */
+    public int getOnlineCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.users.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 运行指标
+     */
+    public Map<String, Object> getStatistics() {
+        int pinned = 0;
+        int pendingFlush = 0;
+        int online = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                online += stripe.users.size();
+                pendingFlush += stripe.dirty.size();
+                int[] count = new int[1];
+                stripe.users.forEach((userId, value) -> {
+                    if ((value & PINNED) != 0) {
+                        count[0]++;
+                    }
+                });
+                pinned += count[0];
+            }
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("online", online);
+        stats.put("connected", pinned);
+        stats.put("heartbeatOnly", online - pinned);
+        stats.put("scheduledExpirations", expiryWheel.size());
+        stats.put("pendingFlush", pendingFlush);
+        stats.put("heartbeats", heartbeats.get());
+        stats.put("expirations", expirations.get());
+        stats.put("directoryLookups", directoryLookups.get());
+        stats.put("flushes", flushes.get());
+        stats.put("flushedRows", flushedRows.get());
+        stats.put("lastFlushCostMs", lastFlushCostMs);
+        stats.put("ttlMs", ttlMs);
+        return stats;
+    }
+
+    /**
+     * 去掉仍连接在其他节点或在其他节点心跳的用户，避免覆盖其他节点写入的在线状态；
+     * 目录不可用时按本节点的判断写入
+     */
+    private List<Integer> excludeOnlineElsewhere(List<Integer> offlineIds) {
+        Set<Integer> online;
+        try {
+            directoryLookups.incrementAndGet();
+            online = clusterRouter.onlineAmong(offlineIds);
+        } catch (Exception e) {
+            log.warn("查询集群在线状态失败，按本节点状态落库: size={}", offlineIds.size(), e);
+            return offlineIds;
+        }
+        if (online.isEmpty()) {
+            return offlineIds;
+        }
+        List<Integer> remaining = new ArrayList<>(offlineIds.size());
+        for (Integer userId : offlineIds) {
+            if (!online.contains(userId)) {
+                remaining.add(userId);
+            }
+        }
+        return remaining;
+    }
+
+    private boolean isLocallyOnline(long userId, long now) {
+        Stripe stripe = stripeOf(userId);
+        long value;
+        synchronized (stripe) {
+            value = stripe.users.get(userId, ABSENT);
+        }
+        if (value == ABSENT) {
+            return false;
+        }
+        // 时间轮按格推进，到期与移除之间可能有一格的延迟
+        return (value & PINNED) != 0 || value + ttlMs > now;
+    }
+
+    private void scheduleExpiry(long userId, long lastSeen) {
+        if (!expiryWheel.schedule(userId, lastSeen + ttlMs)) {
+            // 已经过期，放到下一格由推进时处理
+            expiryWheel.schedule(userId, System.currentTimeMillis() + TICK_MS);
+        }
+    }
+
+    private void markDirty(long userId) {
+        Stripe stripe = stripeOf(userId);
+        synchronized (stripe) {
+            stripe.dirty.put(userId, 1);
+        }
+    }
+
+    private static UserOnlineStatus snapshot(int userId, long lastSeen) {
+        UserOnlineStatus status = new UserOnlineStatus();
+        status.setUserId(userId);
+        status.setStatus(1);
+        status.setLastActiveTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(lastSeen), ZoneId.systemDefault()));
+        return status;
+    }
+
+    private Stripe stripeOf(long userId) {
+        return stripes[(int) ((userId ^ (userId >>> 16)) & (STRIPES - 1))];
+    }
+}
@@ -0,0 +1,542 @@
+package org.example.afd.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.dto.MerchantDTO;
+import org.example.afd.dto.ProductDetailDTO;
+import org.example.afd.dto.ProductSkuDTO;
+import org.example.afd.mapper.MerchantMapper;
+import org.example.afd.mapper.ProductMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 商品详情缓存
+ *
+ * 1. 缓存组装好的商品详情（基本信息、图片、商家、SKU、评价统计），命中时不再执行十余条查询；
+ *    一级缓存在本进程内按访问顺序和有效期淘汰，启用 Redis 时二级缓存供各节点共享
+ * 2. 每个商品有一个版本号，商品或评价变更提交后递增，二级缓存的键带版本号，
+ *    旧版本的数据不会再被读到；加载期间版本变化时结果不写入缓存，避免用旧数据覆盖
+ * 3. 库存和销量变化频繁，单独按商品缓存一份很短有效期的快照，读取时覆盖到详情副本上，
+ *    库存变化只淘汰快照，不影响组装好的详情
+ * 4. 商家信息不随商品版本变化，不放进详情缓存，按商家单独缓存一份快照，读取时覆盖到详情副本上，
+ *    商家变更只淘汰本节点的快照，其他节点在一级缓存有效期内收敛；分类信息不在详情中，分类变更不影响缓存
+ * 5. 其他节点的变更只通过版本号作用于二级缓存，一级缓存依靠有效期收敛，有效期应配置得较短
+ */
+@Component
+@Slf4j
+public class ProductDetailCache {
+
+    private static final String KEY_PREFIX = "product:detail:";
+    private static final String VERSION_PREFIX = "product:detail:ver:";
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private MerchantMapper merchantMapper;
+
+    @Autowired(required = false)
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Value("${product.detail-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${product.detail-cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${product.detail-cache.ttl-ms:30000}")
+    private long ttlMs;
+
+    @Value("${product.detail-cache.redis-ttl-seconds:600}")
+    private long redisTtlSeconds;
+
+    @Value("${product.detail-cache.stock-ttl-ms:2000}")
+    private long stockTtlMs;
+
+    private final JdkSerializationRedisSerializer serializer = new JdkSerializationRedisSerializer();
+
+    /**
+     * 一级缓存：商品ID -> 组装好的详情，按访问顺序淘汰
+     */
+    private Map<Long, Cached> details;
+
+    /**
+     * 库存快照：商品ID -> 商品及各SKU的库存、销量
+     */
+    private Map<Long, StockSnapshot> stocks;
+
+    /**
+     * 商家快照：商家ID -> 商家信息，有效期与一级缓存相同
+     */
+    private Map<Long, MerchantSnapshot> merchants;
+
+    /**
+     * SKU ID -> 商品ID，加载库存快照时记录，用于按SKU淘汰快照
+     */
+    private Map<Long, Long> skuOwners;
+
+    /**
+     * 本节点的版本号，一级缓存条目记录加载时的值；未启用 Redis 时也用作二级缓存的版本号
+     */
+    private final Map<Long, Long> localVersions = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong redisHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stalePuts = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong stockLoads = new AtomicLong();
+    private final AtomicLong merchantLoads = new AtomicLong();
+    private final AtomicLong redisErrors = new AtomicLong();
+
+    private static final class Cached {
+        final ProductDetailDTO detail;
+        final long version;
+        final long expireAt;
+
+        Cached(ProductDetailDTO detail, long version, long expireAt) {
+            this.detail = detail;
+            this.version = version;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static final class StockSnapshot {
+        final Integer stock;
+        final Integer sales;
+        final Map<Long, Integer> skuStocks;
+        final long expireAt;
+
+        StockSnapshot(Integer stock, Integer sales, Map<Long, Integer> skuStocks, long expireAt) {
+            this.stock = stock;
+            this.sales = sales;
+            this.skuStocks = skuStocks;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static final class MerchantSnapshot {
+        final MerchantDTO merchant;
+        final long expireAt;
+
+        MerchantSnapshot(MerchantDTO merchant, long expireAt) {
+            this.merchant = merchant;
+            this.expireAt = expireAt;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        int capacity = maxSize;
+        details = Collections.synchronizedMap(new LinkedHashMap<Long, Cached>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Cached> eldest) {
+                return size() > capacity;
+            }
+        });
+        stocks = Collections.synchronizedMap(new LinkedHashMap<Long, StockSnapshot>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, StockSnapshot> eldest) {
+                return size() > capacity;
+            }
+        });
+        merchants = Collections.synchronizedMap(new LinkedHashMap<Long, MerchantSnapshot>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MerchantSnapshot> eldest) {
+                return size() > capacity;
+            }
+        });
+        int ownerCapacity = capacity * 8;
+        skuOwners = Collections.synchronizedMap(new LinkedHashMap<Long, Long>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > ownerCapacity;
+            }
+        });
+        log.info("商品详情缓存: enabled={}, store={}, maxSize={}, ttlMs={}, stockTtlMs={}",
+            enabled, redisTemplate != null ? "local+redis" : "local", maxSize, ttlMs, stockTtlMs);
+    }
+
+    /**
+     * 读取商品详情，未命中时调用 loader 组装；返回的是覆盖了实时库存的副本，调用方可以修改
+     *
+     * @return 商品不存在时返回 null
+     */
+    public ProductDetailDTO get(Long productId, Function<Long, ProductDetailDTO> loader) {
+        if (!enabled || productId == null) {
+            return loader.apply(productId);
+        }
+        long now = System.currentTimeMillis();
+        long local = localVersion(productId);
+        Cached cached = details.get(productId);
+        if (cached != null && cached.expireAt > now && cached.version == local) {
+            hits.incrementAndGet();
+            return assemble(productId, cached.detail, now);
+        }
+
+        long shared = sharedVersion(productId);
+        ProductDetailDTO detail = readRedis(productId, shared);
+        if (detail != null) {
+            redisHits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            detail = loader.apply(productId);
+            if (detail == null) {
+                return null;
+            }
+            if (localVersion(productId) != local || sharedVersion(productId) != shared) {
+                // 加载期间商品被修改，本次结果可能是旧数据，只返回不缓存
+                stalePuts.incrementAndGet();
+                return assemble(productId, detail, now);
+            }
+            detail = withoutMerchant(detail, now);
+            writeRedis(productId, shared, detail);
+        }
+        rememberSkus(productId, detail);
+        details.put(productId, new Cached(detail, local, now + ttlMs));
+        return assemble(productId, detail, now);
+    }
+
+    /**
+     * 商品信息或评价变更，在当前事务提交后递增版本号并淘汰缓存
+     */
+    public void invalidateAfterCommit(Long productId) {
+        if (!enabled || productId == null) {
+            return;
+        }
+        afterCommit(() -> invalidate(productId));
+    }
+
+    /**
+     * 立即递增版本号并淘汰本节点缓存
+     */
+    public void invalidate(Long productId) {
+        if (!enabled || productId == null) {
+            return;
+        }
+        invalidations.incrementAndGet();
+        localVersions.merge(productId, 1L, Long::sum);
+        if (redisTemplate != null) {
+            try {
+                redisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.stringCommands().incr(raw(VERSION_PREFIX + productId)));
+            } catch (Exception e) {
+                redisErrors.incrementAndGet();
+                log.warn("递增商品详情版本号失败: productId={}, error={}", productId, e.getMessage());
+            }
+        }
+        details.remove(productId);
+        stocks.remove(productId);
+    }
+
+    /**
+     * 商品库存或销量变更，在当前事务提交后淘汰库存快照
+     */
+    public void stockChangedAfterCommit(Long productId) {
+        if (!enabled || productId == null) {
+            return;
+        }
+        afterCommit(() -> stocks.remove(productId));
+    }
+
+    /**
+     * 商家信息变更，在当前事务提交后淘汰本节点的商家快照
+     */
+    public void merchantChangedAfterCommit(Long merchantId) {
+        if (!enabled || merchantId == null) {
+            return;
+        }
+        afterCommit(() -> merchants.remove(merchantId));
+    }
+
+    /**
+     * SKU库存变更，在当前事务提交后淘汰所属商品的库存快照；
+     * 不知道所属商品时说明该商品近期没有被读取，快照也已不在缓存中
+     */
+    public void skuStockChangedAfterCommit(Collection<Long> skuIds) {
+        if (!enabled || skuIds == null || skuIds.isEmpty()) {
+            return;
+        }
+        List<Long> copy = new ArrayList<>(skuIds);
+        afterCommit(() -> {
+            for (Long skuId : copy) {
+                Long productId = skuOwners.get(skuId);
+                if (productId != null) {
+                    stocks.remove(productId);
+                }
+            }
+        });
+    }
+
+    /**
+     * 运行指标
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        long localHits = hits.get();
+        long sharedHits = redisHits.get();
+        long missCount = misses.get();
+        long total = localHits + sharedHits + missCount;
+        stats.put("enabled", enabled);
+        stats.put("store", redisTemplate != null ? "local+redis" : "local");
+        stats.put("size", details != null ? details.size() : 0);
+        stats.put("stockSnapshots", stocks != null ? stocks.size() : 0);
+        stats.put("merchantSnapshots", merchants != null ? merchants.size() : 0);
+        stats.put("hits", localHits);
+        stats.put("redisHits", sharedHits);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total == 0 ? 0 : (localHits + sharedHits) / (double) total);
+        stats.put("stalePuts", stalePuts.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("stockLoads", stockLoads.get());
+        stats.put("merchantLoads", merchantLoads.get());
+        stats.put("redisErrors", redisErrors.get());
+        return stats;
+    }
+
+    /**
+     * 复制缓存的详情并覆盖商家信息和实时库存
+     */
+    private ProductDetailDTO assemble(Long productId, ProductDetailDTO cached, long now) {
+        ProductDetailDTO detail = copy(cached);
+        if (detail.getMerchantId() != null) {
+            MerchantSnapshot merchant = merchants.get(detail.getMerchantId());
+            if (merchant == null || merchant.expireAt <= now) {
+                merchant = loadMerchant(detail.getMerchantId(), now);
+            }
+            if (merchant != null) {
+                detail.setMerchant(merchant.merchant);
+            }
+        }
+
+        StockSnapshot snapshot = stocks.get(productId);
+        if (snapshot == null || snapshot.expireAt <= now) {
+            snapshot = loadStock(productId, now);
+        }
+        if (snapshot == null) {
+            return detail;
+        }
+        detail.setStock(snapshot.stock);
+        detail.setSales(snapshot.sales);
+        if (detail.getSkus() != null) {
+            for (ProductSkuDTO sku : detail.getSkus()) {
+                Integer stock = snapshot.skuStocks.get(sku.getSkuId());
+                if (stock != null) {
+                    sku.setStock(stock);
+                }
+            }
+        }
+        return detail;
+    }
+
+    private StockSnapshot loadStock(Long productId, long now) {
+        try {
+            stockLoads.incrementAndGet();
+            Integer stock = null;
+            Integer sales = null;
+            Map<Long, Integer> skuStocks = new HashMap<>();
+            for (Map<String, Object> row : productMapper.selectStockSnapshot(productId)) {
+                Object skuId = row.get("sku_id");
+                if (skuId == null) {
+                    stock = toInteger(row.get("stock"));
+                    sales = toInteger(row.get("sales"));
+                } else {
+                    skuStocks.put(((Number) skuId).longValue(), toInteger(row.get("stock")));
+                }
+            }
+            StockSnapshot snapshot = new StockSnapshot(stock, sales, skuStocks, now + stockTtlMs);
+            stocks.put(productId, snapshot);
+            return snapshot;
+        } catch (Exception e) {
+            // 读取失败时沿用详情中的库存
+            log.warn("加载商品库存快照失败: productId={}, error={}", productId, e.getMessage());
+            return null;
+        }
+    }
+
+    private MerchantSnapshot loadMerchant(Long merchantId, long now) {
+        try {
+            merchantLoads.incrementAndGet();
+            MerchantSnapshot snapshot = new MerchantSnapshot(merchantMapper.selectMerchantWithUserInfoById(merchantId), now + ttlMs);
+            merchants.put(merchantId, snapshot);
+            return snapshot;
+        } catch (Exception e) {
+            // 读取失败时沿用详情中的商家信息
+            log.warn("加载商家快照失败: merchantId={}, error={}", merchantId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 去掉详情中的商家信息再缓存，加载时已查到的商家信息直接作为快照
+     */
+    private ProductDetailDTO withoutMerchant(ProductDetailDTO detail, long now) {
+        if (detail.getMerchantId() != null && detail.getMerchant() != null) {
+            merchants.put(detail.getMerchantId(), new MerchantSnapshot(detail.getMerchant(), now + ttlMs));
+        }
+        ProductDetailDTO stripped = copy(detail);
+        stripped.setMerchant(null);
+        return stripped;
+    }
+
+    private void rememberSkus(Long productId, ProductDetailDTO detail) {
+        if (detail.getSkus() == null) {
+            return;
+        }
+        for (ProductSkuDTO sku : detail.getSkus()) {
+            if (sku.getSkuId() != null) {
+                skuOwners.put(sku.getSkuId(), productId);
+            }
+        }
+    }
+
+    private long localVersion(Long productId) {
+        return localVersions.getOrDefault(productId, 0L);
+    }
+
+    /**
+     * 二级缓存键使用的版本号：启用 Redis 时以 Redis 为准，各节点一致
+     */
+    private long sharedVersion(Long productId) {
+        if (redisTemplate == null) {
+            return localVersion(productId);
+        }
+        try {
+            byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(raw(VERSION_PREFIX + productId)));
+            return value == null ? 0 : Long.parseLong(new String(value, StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            // 读不到版本号时本次不使用二级缓存
+            redisErrors.incrementAndGet();
+            return -1;
+        }
+    }
+
+    private ProductDetailDTO readRedis(Long productId, long version) {
+        if (redisTemplate == null || version < 0) {
+            return null;
+        }
+        try {
+            byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(raw(detailKey(productId, version))));
+            return value == null ? null : (ProductDetailDTO) serializer.deserialize(value);
+        } catch (Exception e) {
+            redisErrors.incrementAndGet();
+            log.warn("读取商品详情二级缓存失败: productId={}, error={}", productId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRedis(Long productId, long version, ProductDetailDTO detail) {
+        if (redisTemplate == null || version < 0) {
+            return;
+        }
+        try {
+            byte[] value = serializer.serialize(detail);
+            redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.stringCommands().set(raw(detailKey(productId, version)), value,
+                    Expiration.from(redisTtlSeconds, TimeUnit.SECONDS), RedisStringCommands.SetOption.UPSERT));
+        } catch (Exception e) {
+            redisErrors.incrementAndGet();
+            log.warn("写入商品详情二级缓存失败: productId={}, error={}", productId, e.getMessage());
+        }
+    }
+
+    private static String detailKey(Long productId, long version) {
+        return KEY_PREFIX + productId + ":v" + version;
+    }
+
+    private static byte[] raw(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static Integer toInteger(Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : null;
+    }
+
+    /**
+     * 复制详情，SKU逐个复制以便覆盖库存；图片、商家等列表和对象只读共享
+     */
+    private static ProductDetailDTO copy(ProductDetailDTO source) {
+        ProductDetailDTO target = new ProductDetailDTO();
+        target.setProductId(source.getProductId());
+        target.setMerchantId(source.getMerchantId());
+        target.setCategoryId(source.getCategoryId());
+        target.setProductName(source.getProductName());
+        target.setProductBrief(source.getProductBrief());
+        target.setMainImage(source.getMainImage());
+        target.setDetail(source.getDetail());
+        target.setProductExplain(source.getProductExplain());
+        target.setPrice(source.getPrice());
+        target.setStock(source.getStock());
+        target.setSales(source.getSales());
+        target.setUnit(source.getUnit());
+        target.setKeywords(source.getKeywords());
+        target.setImages(source.getImages());
+        target.setDetailImages(source.getDetailImages());
+        target.setSpecs(source.getSpecs());
+        target.setMerchant(source.getMerchant());
+        target.setPromotionPrice(source.getPromotionPrice());
+        target.setHasPromotion(source.getHasPromotion());
+        target.setPromotionStartTime(source.getPromotionStartTime());
+        target.setPromotionEndTime(source.getPromotionEndTime());
+        target.setReviewCount(source.getReviewCount());
+        target.setReviewScore(source.getReviewScore());
+        target.setReviews(source.getReviews());
+        if (source.getSkus() != null) {
+            List<ProductSkuDTO> skus = new ArrayList<>(source.getSkus().size());
+            for (ProductSkuDTO sku : source.getSkus()) {
+                ProductSkuDTO skuCopy = new ProductSkuDTO();
+                skuCopy.setSkuId(sku.getSkuId());
+                skuCopy.setProductId(sku.getProductId());
+                skuCopy.setSkuCode(sku.getSkuCode());
+                skuCopy.setSkuName(sku.getSkuName());
+                skuCopy.setSkuImage(sku.getSkuImage());
+                skuCopy.setPrice(sku.getPriceBigDecimal());
+                skuCopy.setStock(sku.getStock());
+                skuCopy.setSpecs(sku.getSpecs());
+                skuCopy.setStatus(sku.getStatus());
+                skuCopy.setPromotionPrice(sku.getPromotionPriceBigDecimal());
+                skuCopy.setHasPromotion(sku.getHasPromotion());
+                skus.add(skuCopy);
+            }
+            target.setSkus(skus);
+        }
+        return target;
+    }
+}
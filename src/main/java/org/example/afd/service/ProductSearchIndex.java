@@ -0,0 +1,941 @@
+package org.example.afd.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.mapper.ProductMapper;
+import org.example.afd.utils.TextTokenizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 商品全文索引
+ *
+ * 1. 对商品名称、关键词、简介建立倒排索引，名称权重加倍；中文按二元组、字母数字按三元组切分
+ *    （见 {@link TextTokenizer}），"p40"、"iphone" 能命中 "华为P40Pro"、"iPhone15"；
+ *    另外为每个汉字建立单字词项，单字查询也能走索引，一两个字母数字的查询回退到数据库
+ * 2. 查询要求全部词项命中，按 BM25 相关度、销量、价格或上架时间排序，
+ *    分类、商家、价格、状态等条件在求交集时过滤，同时统计分类和商家分面
+ * 3. 商品新增、修改、上下架、删除提交后重新读取该商品更新索引；销量变化只修改文档字段
+ * 4. 定期把索引快照写入本地磁盘；启动时加载快照并从数据库追赶快照之后更新的商品，
+ *    没有快照或快照损坏时从数据库全量重建，重建期间查询回退到数据库
+ */
+@Component
+@Slf4j
+public class ProductSearchIndex {
+
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private static final String SNAPSHOT_FILE = "product-index.snapshot";
+
+    /**
+     * 追赶时向前多读的时间窗口，覆盖事务提交延迟
+     */
+    private static final long CATCH_UP_OVERLAP_MS = 10 * 60 * 1000L;
+
+    /**
+     * 名称中的词项按该倍数计入词频
+     */
+    private static final int NAME_BOOST = 2;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final int FLAG_HOT = 1;
+    private static final int FLAG_RECOMMEND = 2;
+    private static final int FLAG_NEW = 4;
+
+    public static final String SORT_RELEVANCE = "relevance";
+    public static final String SORT_SALES = "sales";
+    public static final String SORT_PRICE_ASC = "price_asc";
+    public static final String SORT_PRICE_DESC = "price_desc";
+    public static final String SORT_NEW = "new";
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Value("${product.search.enabled:true}")
+    private boolean enabled;
+
+    @Value("${product.search.index-dir:data/product-index}")
+    private String indexDir;
+
+    @Value("${product.search.rebuild-batch-size:2000}")
+    private int rebuildBatchSize;
+
+    @Value("${product.search.facet-limit:20}")
+    private int facetLimit;
+
+    private volatile IndexState live = new IndexState();
+
+    /**
+     * 重建中的新索引，期间的增量同时写入新旧两份
+     */
+    private volatile IndexState building;
+
+    private volatile boolean ready;
+    private volatile boolean dirty;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong searchTotalMicros = new AtomicLong();
+    private volatile long lastRebuildMs;
+    private volatile long lastSnapshotTime;
+
+    /**
+     * 查询条件，为 null 的条件不过滤
+     */
+    public static final class Query {
+        private String keyword;
+        private Long categoryId;
+        private Set<Long> categoryIds;
+        private Long merchantId;
+        private Integer status = 1;
+        private Double minPrice;
+        private Double maxPrice;
+        private Boolean hot;
+        private Boolean recommend;
+        private Boolean fresh;
+        private String sort = SORT_RELEVANCE;
+        private int offset;
+        private int limit = 10;
+
+        public Query keyword(String keyword) {
+            this.keyword = keyword;
+            return this;
+        }
+
+        public Query categoryId(Long categoryId) {
+            this.categoryId = categoryId;
+            return this;
+        }
+
+        /**
+         * 按一组分类过滤（通常是某分类及其全部子孙分类），设置后代替 categoryId
+         */
+        public Query categoryIds(Collection<Long> categoryIds) {
+            this.categoryIds = categoryIds != null ? new HashSet<>(categoryIds) : null;
+            return this;
+        }
+
+        public Query merchantId(Long merchantId) {
+            this.merchantId = merchantId;
+            return this;
+        }
+
+        public Query status(Integer status) {
+            this.status = status;
+            return this;
+        }
+
+        public Query priceRange(Double minPrice, Double maxPrice) {
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+            return this;
+        }
+
+        public Query flags(Boolean hot, Boolean recommend, Boolean fresh) {
+            this.hot = hot;
+            this.recommend = recommend;
+            this.fresh = fresh;
+            return this;
+        }
+
+        public Query sort(String sort) {
+            if (sort != null && !sort.isEmpty()) {
+                this.sort = sort;
+            }
+            return this;
+        }
+
+        public Query page(int offset, int limit) {
+            this.offset = Math.max(0, offset);
+            this.limit = Math.max(1, limit);
+            return this;
+        }
+    }
+
+    /**
+     * 查询结果：当前页的商品ID、命中总数，以及按分类、商家统计的命中数
+     */
+    public static final class Result {
+        private final List<Long> productIds;
+        private final int total;
+        private final Map<Long, Integer> categoryFacets;
+        private final Map<Long, Integer> merchantFacets;
+
+        Result(List<Long> productIds, int total, Map<Long, Integer> categoryFacets, Map<Long, Integer> merchantFacets) {
+            this.productIds = productIds;
+            this.total = total;
+            this.categoryFacets = categoryFacets;
+            this.merchantFacets = merchantFacets;
+        }
+
+        public List<Long> getProductIds() {
+            return productIds;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public Map<Long, Integer> getCategoryFacets() {
+            return categoryFacets;
+        }
+
+        public Map<Long, Integer> getMerchantFacets() {
+            return merchantFacets;
+        }
+    }
+
+    /**
+     * 一个商品文档：过滤、排序用的字段和去重后的词项及词频
+     */
+    private static final class Doc {
+        long productId;
+        long categoryId;
+        long merchantId;
+        int status;
+        int flags;
+        double price;
+        int sales;
+        long createTime;
+        String[] terms;
+        int[] tfs;
+        int length;
+    }
+
+    /**
+     * 倒排表，商品ID升序，与词频并列存放
+     */
+    private static final class Postings {
+        long[] ids = new long[4];
+        int[] tfs = new int[4];
+        int size;
+
+        void add(long id, int tf) {
+            int pos = size;
+            if (size > 0 && ids[size - 1] >= id) {
+                pos = Arrays.binarySearch(ids, 0, size, id);
+                if (pos >= 0) {
+                    tfs[pos] = tf;
+                    return;
+                }
+                pos = -pos - 1;
+            }
+            if (size == ids.length) {
+                int capacity = size + (size >> 1) + 1;
+                ids = Arrays.copyOf(ids, capacity);
+                tfs = Arrays.copyOf(tfs, capacity);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            System.arraycopy(tfs, pos, tfs, pos + 1, size - pos);
+            ids[pos] = id;
+            tfs[pos] = tf;
+            size++;
+        }
+
+        void remove(long id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) {
+                return;
+            }
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            System.arraycopy(tfs, pos + 1, tfs, pos, size - pos - 1);
+            size--;
+        }
+
+        /**
+         * 从 from 开始查找第一个不小于 id 的位置
+         */
+        int seek(long id, int from) {
+            if (from >= size || ids[from] >= id) {
+                return from;
+            }
+            int step = 1;
+            int low = from;
+            int high = from + 1;
+            while (high < size && ids[high] < id) {
+                low = high;
+                step <<= 1;
+                high = from + step;
+            }
+            int pos = Arrays.binarySearch(ids, low, Math.min(high + 1, size), id);
+            return pos >= 0 ? pos : -pos - 1;
+        }
+    }
+
+    /**
+     * 一份完整的索引，读写锁保证查询看到一致的文档和倒排表；商品数量有限，单把锁即可
+     */
+    private static final class IndexState {
+        final Map<Long, Doc> docs = new HashMap<>();
+        final Map<String, Postings> terms = new HashMap<>();
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+        long totalLength;
+        long maxUpdateTime;
+
+        void put(Doc doc, long updateTime) {
+            lock.writeLock().lock();
+            try {
+                removeLocked(doc.productId);
+                for (int i = 0; i < doc.terms.length; i++) {
+                    terms.computeIfAbsent(doc.terms[i], k -> new Postings()).add(doc.productId, doc.tfs[i]);
+                }
+                docs.put(doc.productId, doc);
+                totalLength += doc.length;
+                maxUpdateTime = Math.max(maxUpdateTime, updateTime);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        boolean remove(long productId, long updateTime) {
+            lock.writeLock().lock();
+            try {
+                maxUpdateTime = Math.max(maxUpdateTime, updateTime);
+                return removeLocked(productId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        boolean addSales(long productId, int delta) {
+            lock.writeLock().lock();
+            try {
+                Doc doc = docs.get(productId);
+                if (doc == null) {
+                    return false;
+                }
+                doc.sales += delta;
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private boolean removeLocked(long productId) {
+            Doc old = docs.remove(productId);
+            if (old == null) {
+                return false;
+            }
+            for (String term : old.terms) {
+                Postings postings = terms.get(term);
+                if (postings != null) {
+                    postings.remove(productId);
+                    if (postings.size == 0) {
+                        terms.remove(term);
+                    }
+                }
+            }
+            totalLength -= old.length;
+            return true;
+        }
+    }
+
+    /**
+     * 一条命中
+     */
+    private static final class Hit {
+        final Doc doc;
+        final double score;
+
+        Hit(Doc doc, double score) {
+            this.doc = doc;
+            this.score = score;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("商品全文索引未启用，搜索使用数据库查询");
+            return;
+        }
+        Thread loader = new Thread(this::load, "product-index-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        snapshot();
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * 在当前事务提交后从数据库重新读取商品并更新索引，没有事务时立即更新
+     */
+    public void reindexAfterCommit(Long productId) {
+        if (!enabled || productId == null) {
+            return;
+        }
+        afterCommit(() -> reindex(productId));
+    }
+
+    /**
+     * 在当前事务提交后调整商品销量，没有事务时立即调整
+     */
+    public void addSalesAfterCommit(Long productId, int delta) {
+        if (!enabled || productId == null || delta == 0) {
+            return;
+        }
+        afterCommit(() -> {
+            for (IndexState state : new IndexState[]{live, building}) {
+                if (state != null && state.addSales(productId, delta)) {
+                    dirty = true;
+                }
+            }
+        });
+    }
+
+    /**
+     * 从数据库重新读取商品并更新索引，商品已删除时移除
+     */
+    public void reindex(Long productId) {
+        if (!enabled || productId == null) {
+            return;
+        }
+        try {
+            Map<String, Object> row = productMapper.selectProductForIndex(productId);
+            IndexState target = live;
+            apply(target, productId, row);
+            IndexState next = building;
+            if (next != null && next != target) {
+                apply(next, productId, row);
+            }
+            updates.incrementAndGet();
+            dirty = true;
+        } catch (Exception e) {
+            // 索引与数据库短暂不一致，下次重建或追赶时修正
+            log.warn("更新商品全文索引失败: productId={}, error={}", productId, e.getMessage());
+        }
+    }
+
+    /**
+     * 搜索商品
+     *
+     * @return 索引未就绪、没有可检索的关键词或关键词含一两个字母数字的片段时返回 null，由调用方回退到数据库查询
+     */
+    public Result search(Query query) {
+        if (!isReady()) {
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(TextTokenizer.tokenize(query.keyword)));
+        if (queryTerms.isEmpty() || queryTerms.stream().anyMatch(ProductSearchIndex::isShortWord)) {
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        long start = System.nanoTime();
+        Comparator<Hit> order = comparator(query.sort);
+        int capacity = query.offset + query.limit;
+        PriorityQueue<Hit> top = new PriorityQueue<>(Math.min(capacity, 1024), order.reversed());
+        Map<Long, Integer> categoryFacets = new HashMap<>();
+        Map<Long, Integer> merchantFacets = new HashMap<>();
+        int total = 0;
+
+        IndexState state = live;
+        state.lock.readLock().lock();
+        try {
+            Postings[] lists = new Postings[queryTerms.size()];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = state.terms.get(queryTerms.get(i));
+                if (lists[i] == null) {
+                    lists = null;
+                    break;
+                }
+            }
+            if (lists != null && !state.docs.isEmpty()) {
+                // 从最短的倒排表出发求交集
+                Arrays.sort(lists, Comparator.comparingInt(p -> p.size));
+                double docCount = state.docs.size();
+                double avgLength = Math.max(1.0, state.totalLength / docCount);
+                double[] idf = new double[lists.length];
+                for (int i = 0; i < lists.length; i++) {
+                    idf[i] = Math.log(1 + (docCount - lists[i].size + 0.5) / (lists[i].size + 0.5));
+                }
+                int[] cursors = new int[lists.length];
+                Postings first = lists[0];
+                outer:
+                for (int i = 0; i < first.size; i++) {
+                    long id = first.ids[i];
+                    Doc doc = state.docs.get(id);
+                    if (doc == null || !matchesCommon(doc, query)) {
+                        continue;
+                    }
+                    double norm = K1 * (1 - B + B * doc.length / avgLength);
+                    double score = idf[0] * first.tfs[i] * (K1 + 1) / (first.tfs[i] + norm);
+                    for (int j = 1; j < lists.length; j++) {
+                        Postings list = lists[j];
+                        int pos = list.seek(id, cursors[j]);
+                        cursors[j] = pos;
+                        if (pos >= list.size || list.ids[pos] != id) {
+                            continue outer;
+                        }
+                        score += idf[j] * list.tfs[pos] * (K1 + 1) / (list.tfs[pos] + norm);
+                    }
+                    // 分面统计不受自身维度的条件限制，便于切换分类或商家
+                    boolean categoryMatched = query.categoryIds != null ? query.categoryIds.contains(doc.categoryId)
+                        : query.categoryId == null || query.categoryId == doc.categoryId;
+                    boolean merchantMatched = query.merchantId == null || query.merchantId == doc.merchantId;
+                    if (merchantMatched) {
+                        categoryFacets.merge(doc.categoryId, 1, Integer::sum);
+                    }
+                    if (categoryMatched) {
+                        merchantFacets.merge(doc.merchantId, 1, Integer::sum);
+                    }
+                    if (!categoryMatched || !merchantMatched) {
+                        continue;
+                    }
+                    total++;
+                    top.add(new Hit(doc, score));
+                    if (top.size() > capacity) {
+                        top.poll();
+                    }
+                }
+            }
+        } finally {
+            state.lock.readLock().unlock();
+        }
+
+        List<Hit> ranked = new ArrayList<>(top);
+        ranked.sort(order);
+        List<Long> productIds = new ArrayList<>();
+        for (int i = query.offset; i < ranked.size(); i++) {
+            productIds.add(ranked.get(i).doc.productId);
+        }
+        searches.incrementAndGet();
+        searchTotalMicros.addAndGet((System.nanoTime() - start) / 1000);
+        return new Result(productIds, total, topFacets(categoryFacets), topFacets(merchantFacets));
+    }
+
+    /**
+     * 从数据库全量重建，重建期间继续使用旧索引
+     *
+     * @return 已有重建任务在运行时返回 false
+     */
+    public boolean rebuild() {
+        if (!enabled || !rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                doRebuild();
+            } catch (Exception e) {
+                log.error("重建商品全文索引失败", e);
+            } finally {
+                rebuilding.set(false);
+            }
+        }, "product-index-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * 定期写入快照，没有变化时跳过
+     */
+    @Scheduled(fixedDelayString = "${product.search.snapshot-interval-ms:600000}")
+    public synchronized void snapshot() {
+        if (!enabled || !ready || !dirty) {
+            return;
+        }
+        dirty = false;
+        IndexState state = live;
+        Path dir = Paths.get(indexDir);
+        Path file = dir.resolve(SNAPSHOT_FILE);
+        Path temp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        long start = System.currentTimeMillis();
+        int count;
+        try {
+            Files.createDirectories(dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(temp)), 1 << 16))) {
+                state.lock.readLock().lock();
+                try {
+                    count = state.docs.size();
+                    out.writeInt(SNAPSHOT_VERSION);
+                    out.writeLong(state.maxUpdateTime);
+                    out.writeInt(count);
+                    for (Doc doc : state.docs.values()) {
+                        writeDoc(out, doc);
+                    }
+                } finally {
+                    state.lock.readLock().unlock();
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastSnapshotTime = System.currentTimeMillis();
+            log.info("商品全文索引快照已写入: products={}, cost={}ms", count, lastSnapshotTime - start);
+        } catch (Exception e) {
+            dirty = true;
+            log.error("写入商品全文索引快照失败", e);
+        }
+    }
+
+    /**
+     * 运行指标
+     */
+    public Map<String, Object> getStatistics() {
+        IndexState state = live;
+        int documents;
+        int terms;
+        state.lock.readLock().lock();
+        try {
+            documents = state.docs.size();
+            terms = state.terms.size();
+        } finally {
+            state.lock.readLock().unlock();
+        }
+        long searchCount = searches.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        stats.put("rebuilding", rebuilding.get());
+        stats.put("documents", documents);
+        stats.put("terms", terms);
+        stats.put("updates", updates.get());
+        stats.put("searches", searchCount);
+        stats.put("fallbacks", fallbacks.get());
+        stats.put("avgSearchMicros", searchCount == 0 ? 0 : searchTotalMicros.get() / searchCount);
+        stats.put("lastRebuildMs", lastRebuildMs);
+        stats.put("lastSnapshotTime", lastSnapshotTime);
+        return stats;
+    }
+
+    private void load() {
+        Path file = Paths.get(indexDir).resolve(SNAPSHOT_FILE);
+        if (Files.exists(file)) {
+            try {
+                long start = System.currentTimeMillis();
+                IndexState state = readSnapshot(file);
+                live = state;
+                long since = state.maxUpdateTime - CATCH_UP_OVERLAP_MS;
+                int caughtUp = scan(state, since > 0 ? toLocalDateTime(since) : null);
+                ready = true;
+                log.info("商品全文索引已从快照加载: products={}, 追赶{}条, cost={}ms",
+                    state.docs.size(), caughtUp, System.currentTimeMillis() - start);
+                return;
+            } catch (Exception e) {
+                log.warn("加载商品全文索引快照失败，从数据库重建", e);
+                live = new IndexState();
+            }
+        }
+        if (rebuilding.compareAndSet(false, true)) {
+            try {
+                doRebuild();
+            } catch (Exception e) {
+                log.error("重建商品全文索引失败，搜索使用数据库查询", e);
+            } finally {
+                rebuilding.set(false);
+            }
+        }
+    }
+
+    private void doRebuild() {
+        long start = System.currentTimeMillis();
+        IndexState fresh = new IndexState();
+        building = fresh;
+        int count;
+        try {
+            count = scan(fresh, null);
+        } finally {
+            building = null;
+        }
+        live = fresh;
+        ready = true;
+        dirty = true;
+        lastRebuildMs = System.currentTimeMillis() - start;
+        log.info("商品全文索引重建完成: products={}, cost={}ms", count, lastRebuildMs);
+        snapshot();
+    }
+
+    /**
+     * 按商品ID顺序分批读取数据库中的商品更新索引
+     */
+    private int scan(IndexState state, LocalDateTime since) {
+        long afterId = 0;
+        int count = 0;
+        while (true) {
+            List<Map<String, Object>> batch = productMapper.selectProductsForIndex(afterId, since, rebuildBatchSize);
+            if (batch == null || batch.isEmpty()) {
+                return count;
+            }
+            for (Map<String, Object> row : batch) {
+                long productId = ((Number) row.get("product_id")).longValue();
+                if (apply(state, productId, row)) {
+                    count++;
+                }
+                afterId = productId;
+            }
+            if (batch.size() < rebuildBatchSize) {
+                return count;
+            }
+        }
+    }
+
+    /**
+     * 按数据库中的一行更新索引
+     *
+     * @return 是否加入了索引
+     */
+    private static boolean apply(IndexState state, long productId, Map<String, Object> row) {
+        long updateTime = row == null ? 0 : toMillis(row.get("update_time"));
+        if (row == null || intValue(row.get("is_deleted")) == 1) {
+            state.remove(productId, updateTime);
+            return false;
+        }
+        Doc doc = new Doc();
+        doc.productId = productId;
+        doc.categoryId = longValue(row.get("category_id"));
+        doc.merchantId = longValue(row.get("merchant_id"));
+        doc.status = intValue(row.get("status"));
+        doc.flags = (intValue(row.get("is_hot")) == 1 ? FLAG_HOT : 0)
+            | (intValue(row.get("is_recommend")) == 1 ? FLAG_RECOMMEND : 0)
+            | (intValue(row.get("is_new")) == 1 ? FLAG_NEW : 0);
+        Object price = row.get("price");
+        doc.price = price instanceof Number ? ((Number) price).doubleValue() : 0;
+        doc.sales = intValue(row.get("sales"));
+        doc.createTime = toMillis(row.get("create_time"));
+
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        analyze((String) row.get("product_name"), NAME_BOOST, frequencies);
+        analyze((String) row.get("keywords"), 1, frequencies);
+        analyze((String) row.get("product_brief"), 1, frequencies);
+        doc.terms = new String[frequencies.size()];
+        doc.tfs = new int[frequencies.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            doc.terms[i] = entry.getKey();
+            doc.tfs[i] = entry.getValue();
+            doc.length += entry.getValue();
+            i++;
+        }
+        state.put(doc, updateTime);
+        return true;
+    }
+
+    /**
+     * 切分文本并累加词频：在 {@link TextTokenizer} 的二元组之外，连续中文里的每个字再作为单字词项
+     */
+    private static void analyze(String text, int weight, Map<String, Integer> frequencies) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        for (String token : TextTokenizer.tokenize(text)) {
+            frequencies.merge(token, weight, Integer::sum);
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int start = i;
+            int count = 0;
+            while (i < length && TextTokenizer.isCjk(text.codePointAt(i))) {
+                i += Character.charCount(text.codePointAt(i));
+                count++;
+            }
+            if (count > 1) {
+                // 单个汉字已由分词器按单字输出
+                for (int j = start; j < i; j += Character.charCount(text.codePointAt(j))) {
+                    frequencies.merge(text.substring(j, j + Character.charCount(text.codePointAt(j))), weight, Integer::sum);
+                }
+            }
+            if (count == 0) {
+                i += Character.charCount(text.codePointAt(i));
+            }
+        }
+    }
+
+    /**
+     * 短于三元组的字母数字词项只能命中同样短的整词，不能用于子串检索；单个汉字另有单字词项
+     */
+    private static boolean isShortWord(String term) {
+        return TextTokenizer.isShort(term) && !TextTokenizer.isCjk(term.codePointAt(0));
+    }
+
+    /**
+     * 分类、商家之外的条件
+     */
+    private static boolean matchesCommon(Doc doc, Query query) {
+        if (query.status != null && doc.status != query.status) {
+            return false;
+        }
+        if (query.minPrice != null && doc.price < query.minPrice) {
+            return false;
+        }
+        if (query.maxPrice != null && doc.price > query.maxPrice) {
+            return false;
+        }
+        return matchesFlag(doc, FLAG_HOT, query.hot)
+            && matchesFlag(doc, FLAG_RECOMMEND, query.recommend)
+            && matchesFlag(doc, FLAG_NEW, query.fresh);
+    }
+
+    private static boolean matchesFlag(Doc doc, int flag, Boolean expected) {
+        return expected == null || ((doc.flags & flag) != 0) == expected;
+    }
+
+    /**
+     * 排在前面的命中更小；同分时销量高、ID大（较新）的优先
+     */
+    private static Comparator<Hit> comparator(String sort) {
+        Comparator<Hit> tieBreak = Comparator.<Hit>comparingInt(h -> h.doc.sales).reversed()
+            .thenComparing(Comparator.<Hit>comparingLong(h -> h.doc.productId).reversed());
+        Comparator<Hit> byScore = Comparator.<Hit>comparingDouble(h -> h.score).reversed();
+        switch (sort) {
+            case SORT_SALES:
+                return Comparator.<Hit>comparingInt(h -> h.doc.sales).reversed().thenComparing(byScore).thenComparing(tieBreak);
+            case SORT_PRICE_ASC:
+                return Comparator.<Hit>comparingDouble(h -> h.doc.price).thenComparing(byScore).thenComparing(tieBreak);
+            case SORT_PRICE_DESC:
+                return Comparator.<Hit>comparingDouble(h -> h.doc.price).reversed().thenComparing(byScore).thenComparing(tieBreak);
+            case SORT_NEW:
+                return Comparator.<Hit>comparingLong(h -> h.doc.createTime).reversed().thenComparing(tieBreak);
+            default:
+                return byScore.thenComparing(tieBreak);
+        }
+    }
+
+    /**
+     * 按命中数降序保留前若干项
+     */
+    private Map<Long, Integer> topFacets(Map<Long, Integer> counts) {
+        List<Map.Entry<Long, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<Long, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        Map<Long, Integer> result = new LinkedHashMap<>();
+        for (Map.Entry<Long, Integer> entry : entries.subList(0, Math.min(facetLimit, entries.size()))) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    private static void writeDoc(DataOutputStream out, Doc doc) throws IOException {
+        out.writeLong(doc.productId);
+        out.writeLong(doc.categoryId);
+        out.writeLong(doc.merchantId);
+        out.writeInt(doc.status);
+        out.writeInt(doc.flags);
+        out.writeDouble(doc.price);
+        out.writeInt(doc.sales);
+        out.writeLong(doc.createTime);
+        out.writeInt(doc.terms.length);
+        for (int i = 0; i < doc.terms.length; i++) {
+            out.writeUTF(doc.terms[i]);
+            out.writeInt(doc.tfs[i]);
+        }
+    }
+
+    private static IndexState readSnapshot(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file)), 1 << 16))) {
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("不支持的快照版本: " + version);
+            }
+            IndexState state = new IndexState();
+            long maxUpdateTime = in.readLong();
+            int count = in.readInt();
+            for (int d = 0; d < count; d++) {
+                Doc doc = new Doc();
+                doc.productId = in.readLong();
+                doc.categoryId = in.readLong();
+                doc.merchantId = in.readLong();
+                doc.status = in.readInt();
+                doc.flags = in.readInt();
+                doc.price = in.readDouble();
+                doc.sales = in.readInt();
+                doc.createTime = in.readLong();
+                int termCount = in.readInt();
+                doc.terms = new String[termCount];
+                doc.tfs = new int[termCount];
+                for (int i = 0; i < termCount; i++) {
+                    doc.terms[i] = in.readUTF();
+                    doc.tfs[i] = in.readInt();
+                    doc.length += doc.tfs[i];
+                }
+                state.put(doc, 0);
+            }
+            state.maxUpdateTime = maxUpdateTime;
+            return state;
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static long toMillis(Object value) {
+        if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        if (value instanceof java.util.Date) {
+            return ((java.util.Date) value).getTime();
+        }
+        return 0;
+    }
+
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private static long longValue(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static int intValue(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+}
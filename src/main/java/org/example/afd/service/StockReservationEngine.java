@@ -0,0 +1,654 @@
+package org.example.afd.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.dto.StockLockItem;
+import org.example.afd.dto.StockLockResult;
+import org.example.afd.entity.StockOperationLog;
+import org.example.afd.exception.StockException;
+import org.example.afd.mapper.ProductMapper;
+import org.example.afd.mapper.StockOperationLogMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 内存分片库存预留引擎
+ *
+ * 设计要点：
+ * 1. 按 skuId 取模分片，每个分片由单个写线程独占，分片内无锁
+ * 2. 内存中维护每个SKU的总库存与锁定库存，预留请求先在内存中判定
+ * 3. 写线程把一批请求合并成按SKU聚合的增量，在一个事务里写 shop_product_sku
+ *    并批量写入 stock_operation_log（组提交），提交成功后才回应调用方
+ * 4. 数据库更新带条件保护，多节点或外部改库存导致冲突时整批回滚、重新加载后重试一次
+ * 5. 内存状态只是 shop_product_sku 行的缓存，数据库行始终是权威数据：
+ *    状态超过 state-ttl-ms 未刷新时重新读库；判定库存不足前也会重新读库再判定一次，
+ *    其他节点或外部释放的库存不会因为内存状态偏低而被拒绝
+ * 6. 启动时预热最近有锁定记录的SKU，操作日志只用于核对，不据此重建锁定
+ * 7. 一批请求来自不同的调用方，引擎在自己的事务中提交，不参与调用方事务；
+ *    调用方事务回滚时，在 afterCompletion 中提交反向操作补偿已生效的锁定、扣减和释放
+ * 8. 调用方等待超时后先尝试撤销仍在队列中的请求；请求已经在提交中时，等它生效后再补偿，
+ *    调用方得到失败结果时库存不会仍被占用
+ */
+@Component
+@Slf4j
+public class StockReservationEngine {
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private StockOperationLogMapper stockLogMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ProductDetailCache productDetailCache;
+
+    @Value("${stock.engine.enabled:true}")
+    private boolean enabled;
+
+    @Value("${stock.engine.shard-count:8}")
+    private int shardCount;
+
+    @Value("${stock.engine.batch-size:256}")
+    private int batchSize;
+
+    @Value("${stock.engine.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${stock.engine.timeout-ms:3000}")
+    private long timeoutMs;
+
+    @Value("${stock.engine.recover-days:7}")
+    private int recoverDays;
+
+    @Value("${stock.engine.state-ttl-ms:5000}")
+    private long stateTtlMs;
+
+    private Shard[] shards;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("库存预留引擎未启用，使用数据库锁路径");
+            return;
+        }
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+        recover();
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+        log.info("库存预留引擎已启动: shards={}, batchSize={}", shardCount, batchSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (shards == null) {
+            return;
+        }
+        for (Shard shard : shards) {
+            shard.running = false;
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join(timeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("库存预留引擎已停止");
+    }
+
+    public boolean isEnabled() {
+        return enabled && shards != null;
+    }
+
+    /**
+     * 锁定库存：全部成功或全部回滚，与 StockService.lockStock 语义一致
+     */
+    public StockLockResult lock(List<StockLockItem> lockItems, String orderNo) {
+        List<Command> commands = new ArrayList<>(lockItems.size());
+        for (StockLockItem item : lockItems) {
+            commands.add(submit(StockOperationLog.OperationType.LOCK, item.getSkuId(), item.getQuantity(), orderNo));
+        }
+
+        List<StockLockItem> successItems = new ArrayList<>();
+        List<Command> locked = new ArrayList<>();
+        List<StockLockItem> failedItems = new ArrayList<>();
+        for (int i = 0; i < lockItems.size(); i++) {
+            StockLockItem item = lockItems.get(i);
+            if (await(commands.get(i))) {
+                successItems.add(item);
+                locked.add(commands.get(i));
+            } else {
+                log.warn("库存锁定失败: skuId={}, quantity={}", item.getSkuId(), item.getQuantity());
+                failedItems.add(item);
+            }
+        }
+
+        if (!failedItems.isEmpty()) {
+            log.warn("部分库存锁定失败，回滚所有锁定: 成功={}, 失败={}",
+                successItems.size(), failedItems.size());
+            List<Command> rollbacks = new ArrayList<>(locked.size());
+            for (Command command : locked) {
+                rollbacks.add(submit(StockOperationLog.OperationType.ROLLBACK, command.skuId, command.quantity, orderNo));
+            }
+            for (Command rollback : rollbacks) {
+                if (!await(rollback)) {
+                    log.error("库存锁定回滚失败: skuId={}, quantity={}", rollback.skuId, rollback.quantity);
+                }
+            }
+            return StockLockResult.failure(failedItems);
+        }
+
+        compensateOnRollback(locked);
+        return StockLockResult.success(successItems);
+    }
+
+    /**
+     * 确认扣减：任一SKU扣减失败抛出 StockException
+     */
+    public void confirm(List<StockOperationLog> lockLogs, String orderNo) {
+        List<Command> commands = new ArrayList<>(lockLogs.size());
+        for (StockOperationLog lockLog : lockLogs) {
+            commands.add(submit(StockOperationLog.OperationType.DEDUCT, lockLog.getSkuId(), lockLog.getQuantity(), orderNo));
+        }
+        List<Command> deducted = new ArrayList<>(commands.size());
+        Command failed = null;
+        for (Command command : commands) {
+            if (await(command)) {
+                deducted.add(command);
+            } else if (failed == null) {
+                failed = command;
+            }
+        }
+        if (failed == null) {
+            compensateOnRollback(deducted);
+            return;
+        }
+        log.error("库存扣减失败: skuId={}, quantity={}", failed.skuId, failed.quantity);
+        // 已生效的扣减随调用方事务回滚补偿，没有事务时立即补偿
+        if (!compensateOnRollback(deducted)) {
+            for (Command command : deducted) {
+                compensate(command, "部分扣减失败");
+            }
+        }
+        throw new StockException("库存扣减失败: " + failed.skuId);
+    }
+
+    /**
+     * 释放锁定：失败只记录日志，与原有行为一致
+     */
+    public void release(List<StockOperationLog> lockLogs, String orderNo) {
+        List<Command> commands = new ArrayList<>(lockLogs.size());
+        for (StockOperationLog lockLog : lockLogs) {
+            commands.add(submit(StockOperationLog.OperationType.RELEASE, lockLog.getSkuId(), lockLog.getQuantity(), orderNo));
+        }
+        List<Command> released = new ArrayList<>(commands.size());
+        for (Command command : commands) {
+            if (await(command)) {
+                released.add(command);
+            } else {
+                log.error("库存锁定释放失败: skuId={}, quantity={}", command.skuId, command.quantity);
+            }
+        }
+        compensateOnRollback(released);
+    }
+
+    /**
+     * 各分片待处理请求数
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        if (isEnabled()) {
+            int pending = 0;
+            long committedBatches = 0;
+            int cachedSkus = 0;
+            for (Shard shard : shards) {
+                pending += shard.queue.size();
+                committedBatches += shard.committedBatches;
+                cachedSkus += shard.states.size();
+            }
+            stats.put("shards", shards.length);
+            stats.put("pending", pending);
+            stats.put("committedBatches", committedBatches);
+            stats.put("cachedSkus", cachedSkus);
+        }
+        return stats;
+    }
+
+    private Command submit(StockOperationLog.OperationType type, Long skuId, Integer quantity, String orderNo) {
+        return submit(type, skuId, quantity, orderNo, System.currentTimeMillis() + timeoutMs);
+    }
+
+    private Command submit(StockOperationLog.OperationType type, Long skuId, Integer quantity,
+                           String orderNo, long deadline) {
+        Command command = new Command(type, skuId, quantity == null ? 0 : quantity, orderNo, deadline);
+        if (skuId == null || quantity == null || quantity <= 0) {
+            command.future.complete(false);
+            return command;
+        }
+        if (!shardOf(skuId).queue.offer(command)) {
+            log.warn("库存预留队列已满: skuId={}", skuId);
+            command.future.complete(false);
+        }
+        return command;
+    }
+
+    private boolean await(Command command) {
+        try {
+            // 请求在截止时间后不会再被执行，这里多等一个周期用于提交中的批次
+            return command.future.get(timeoutMs * 2, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.error("库存预留请求超时: skuId={}, type={}", command.skuId, command.type);
+            if (!command.cancel() && (command.type == StockOperationLog.OperationType.LOCK
+                    || command.type == StockOperationLog.OperationType.DEDUCT)) {
+                // 请求已在提交中，调用方按失败处理，生效后撤销，避免库存被永久占用或多扣；
+                // 释放本就是调用方想要的结果，晚到生效不需要撤销
+                command.future.thenAccept(applied -> {
+                    if (applied) {
+                        compensate(command, "请求超时");
+                    }
+                });
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.error("库存预留请求异常: skuId={}", command.skuId, e);
+            return false;
+        }
+    }
+
+    /**
+     * 调用方事务回滚时补偿已生效的操作
+     *
+     * @return 没有活动事务时返回 false，由调用方自行决定是否补偿
+     */
+    private boolean compensateOnRollback(List<Command> applied) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        if (applied.isEmpty()) {
+            return true;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    for (Command command : applied) {
+                        compensate(command, "调用方事务回滚");
+                    }
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 提交反向操作，不设截止时间；补偿失败只能人工对账
+     */
+    private void compensate(Command command, String reason) {
+        StockOperationLog.OperationType reverse = reverseOf(command.type);
+        if (reverse == null) {
+            return;
+        }
+        log.warn("补偿库存操作: reason={}, skuId={}, type={}, quantity={}, orderNo={}",
+            reason, command.skuId, command.type, command.quantity, command.orderNo);
+        submit(reverse, command.skuId, command.quantity, command.orderNo, Long.MAX_VALUE).future
+            .thenAccept(applied -> {
+                if (!applied) {
+                    log.error("库存补偿失败，需要人工对账: reason={}, skuId={}, type={}, quantity={}, orderNo={}",
+                        reason, command.skuId, reverse, command.quantity, command.orderNo);
+                }
+            });
+    }
+
+    private static StockOperationLog.OperationType reverseOf(StockOperationLog.OperationType type) {
+        switch (type) {
+            case LOCK:
+                return StockOperationLog.OperationType.ROLLBACK;
+            case DEDUCT:
+                return StockOperationLog.OperationType.UNDO_DEDUCT;
+            case RELEASE:
+                return StockOperationLog.OperationType.UNDO_RELEASE;
+            default:
+                return null;
+        }
+    }
+
+    private Shard shardOf(Long skuId) {
+        return shards[(int) Math.floorMod(skuId, (long) shards.length)];
+    }
+
+    /**
+     * 预热最近有锁定记录的SKU，内存状态直接取自SKU行
+     * 操作日志汇总出的未结锁定数量只用于核对，不一致时告警，由人工对账处理
+     */
+    private void recover() {
+        try {
+            List<Map<String, Object>> rows = stockLogMapper.selectOutstandingLockSummary(recoverDays);
+            int recovered = 0;
+            for (Map<String, Object> row : rows) {
+                Long skuId = toLong(row.get("sku_id"));
+                int stock = toInt(row.get("stock"));
+                int lockStock = toInt(row.get("lock_stock"));
+                int outstanding = toInt(row.get("outstanding"));
+                if (outstanding != lockStock) {
+                    log.warn("库存日志与SKU锁定库存不一致，以数据库为准: skuId={}, 日志未结={}, lock_stock={}",
+                        skuId, outstanding, lockStock);
+                }
+                shardOf(skuId).states.put(skuId, new SkuState(stock, lockStock, System.currentTimeMillis()));
+                recovered++;
+            }
+            log.info("库存预留引擎已预热 {} 个SKU", recovered);
+        } catch (Exception e) {
+            // 恢复失败不影响启动，SKU状态会在首次访问时懒加载
+            log.error("库存预留引擎恢复失败", e);
+        }
+    }
+
+    private static Long toLong(Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+
+    private static int toInt(Object value) {
+        return value == null ? 0 : ((Number) value).intValue();
+    }
+
+    /**
+     * SKU内存状态，仅由所属分片线程读写
+     */
+    private static final class SkuState {
+        int stock;
+        int lockStock;
+        final long loadedAt;
+
+        SkuState(int stock, int lockStock, long loadedAt) {
+            this.stock = stock;
+            this.lockStock = lockStock;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private static final class Command {
+        private static final int QUEUED = 0;
+        private static final int CLAIMED = 1;
+        private static final int CANCELLED = 2;
+
+        final StockOperationLog.OperationType type;
+        final Long skuId;
+        final int quantity;
+        final String orderNo;
+        final long deadline;
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        Command(StockOperationLog.OperationType type, Long skuId, int quantity, String orderNo, long deadline) {
+            this.type = type;
+            this.skuId = skuId;
+            this.quantity = quantity;
+            this.orderNo = orderNo;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 分片线程取出请求时认领，已被调用方撤销的请求不再执行
+         */
+        boolean claim() {
+            return state.compareAndSet(QUEUED, CLAIMED);
+        }
+
+        /**
+         * 调用方放弃等待时撤销，请求已被认领（正在提交）时返回 false
+         */
+        boolean cancel() {
+            if (state.compareAndSet(QUEUED, CANCELLED)) {
+                future.complete(false);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 单写线程分片
+     */
+    private final class Shard implements Runnable {
+        final BlockingQueue<Command> queue = new LinkedBlockingQueue<>(queueCapacity);
+        final Map<Long, SkuState> states = new HashMap<>();
+        final Thread thread;
+        volatile boolean running = true;
+        volatile long committedBatches;
+
+        Shard(int index) {
+            thread = new Thread(this, "stock-shard-" + index);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Command> batch = new ArrayList<>(batchSize);
+            while (running || !queue.isEmpty()) {
+                try {
+                    Command first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    batch.removeIf(command -> !command.claim());
+                    if (!batch.isEmpty()) {
+                        process(batch);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    log.error("库存分片处理异常: {}", thread.getName(), e);
+                    for (Command command : batch) {
+                        command.future.complete(false);
+                    }
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        private void process(List<Command> batch) {
+            boolean[] results = null;
+            Map<Long, int[]> committed = null;
+            for (int attempt = 0; attempt < 2 && committed == null; attempt++) {
+                long now = System.currentTimeMillis();
+                results = new boolean[batch.size()];
+                // 按SKU排序聚合增量，多节点提交时加锁顺序一致
+                Map<Long, int[]> deltas = new TreeMap<>();
+                Set<Long> touched = new HashSet<>();
+                // 本批次内已从数据库读过的SKU，不再重复读库
+                Set<Long> fresh = new HashSet<>();
+                List<StockOperationLog> logs = new ArrayList<>();
+
+                for (int i = 0; i < batch.size(); i++) {
+                    Command command = batch.get(i);
+                    if (command.deadline < now) {
+                        continue;
+                    }
+                    // 本批次已有未提交增量的SKU不能重新读库，否则会丢掉这些增量
+                    boolean pending = deltas.containsKey(command.skuId);
+                    SkuState state = states.get(command.skuId);
+                    if (state != null && !pending && now - state.loadedAt > stateTtlMs) {
+                        state = null;
+                    }
+                    if (state == null) {
+                        state = reload(command.skuId, fresh);
+                        if (state == null) {
+                            continue;
+                        }
+                    }
+                    touched.add(command.skuId);
+                    StockOperationLog applied = apply(state, command);
+                    if (applied == null && !pending && !fresh.contains(command.skuId)) {
+                        // 内存状态可能偏低（其他节点释放或补充了库存），以数据库为准再判定一次
+                        state = reload(command.skuId, fresh);
+                        applied = state != null ? apply(state, command) : null;
+                    }
+                    if (applied != null) {
+                        int[] delta = deltas.computeIfAbsent(command.skuId, k -> new int[2]);
+                        delta[0] += applied.getAfterStock() - applied.getBeforeStock();
+                        delta[1] += applied.getAfterLockStock() - applied.getBeforeLockStock();
+                        logs.add(applied);
+                        results[i] = true;
+                    }
+                }
+
+                try {
+                    if (!logs.isEmpty()) {
+                        transactionTemplate.executeWithoutResult(status -> {
+                            for (Map.Entry<Long, int[]> entry : deltas.entrySet()) {
+                                int[] delta = entry.getValue();
+                                if (delta[0] == 0 && delta[1] == 0) {
+                                    continue;
+                                }
+                                int updated = productMapper.applyStockDelta(entry.getKey(), delta[0], delta[1]);
+                                if (updated <= 0) {
+                                    throw new StockException("库存组提交冲突: " + entry.getKey());
+                                }
+                            }
+                            stockLogMapper.batchInsertLogs(logs);
+                        });
+                        committedBatches++;
+                    }
+                    committed = deltas;
+                } catch (Exception e) {
+                    // 内存状态与数据库不一致，丢弃涉及的SKU后重新加载再试
+                    log.warn("库存组提交失败，重新加载后重试: shard={}, skus={}, attempt={}, error={}",
+                        thread.getName(), touched, attempt + 1, e.getMessage());
+                    for (Long skuId : touched) {
+                        states.remove(skuId);
+                    }
+                }
+            }
+            if (committed == null) {
+                for (Command command : batch) {
+                    command.future.complete(false);
+                }
+                return;
+            }
+
+            // 已提交，以下步骤失败也不能重试整批，否则增量会重复生效
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(results[i]);
+            }
+            try {
+                List<Long> stockChanged = new ArrayList<>();
+                for (Map.Entry<Long, int[]> entry : committed.entrySet()) {
+                    if (entry.getValue()[0] != 0) {
+                        stockChanged.add(entry.getKey());
+                    }
+                }
+                productDetailCache.skuStockChangedAfterCommit(stockChanged);
+            } catch (Exception e) {
+                log.warn("淘汰商品库存快照失败: shard={}, error={}", thread.getName(), e.getMessage());
+            }
+        }
+
+        /**
+         * 从数据库重新读取SKU状态并替换内存状态
+         */
+        private SkuState reload(Long skuId, Set<Long> fresh) {
+            fresh.add(skuId);
+            Map<String, Object> sku = productMapper.selectSkuById(skuId);
+            if (sku == null) {
+                log.error("SKU不存在: {}", skuId);
+                states.remove(skuId);
+                return null;
+            }
+            SkuState state = new SkuState(toInt(sku.get("stock")), toInt(sku.get("lock_stock")),
+                System.currentTimeMillis());
+            states.put(skuId, state);
+            return state;
+        }
+
+        /**
+         * 在内存中执行一次操作，成功返回待写入的日志，失败返回 null
+         */
+        private StockOperationLog apply(SkuState state, Command command) {
+            int beforeStock = state.stock;
+            int beforeLockStock = state.lockStock;
+            int quantity = command.quantity;
+
+            switch (command.type) {
+                case LOCK:
+                    if (state.stock - state.lockStock < quantity) {
+                        log.warn("库存不足: skuId={}, 需要={}, 可用={}",
+                            command.skuId, quantity, state.stock - state.lockStock);
+                        return null;
+                    }
+                    state.lockStock += quantity;
+                    break;
+                case DEDUCT:
+                    if (state.lockStock < quantity) {
+                        return null;
+                    }
+                    state.stock -= quantity;
+                    state.lockStock -= quantity;
+                    break;
+                case RELEASE:
+                case ROLLBACK:
+                    if (state.lockStock < quantity) {
+                        return null;
+                    }
+                    state.lockStock -= quantity;
+                    break;
+                case UNDO_RELEASE:
+                    if (state.stock - state.lockStock < quantity) {
+                        return null;
+                    }
+                    state.lockStock += quantity;
+                    break;
+                case UNDO_DEDUCT:
+                    state.stock += quantity;
+                    state.lockStock += quantity;
+                    break;
+                default:
+                    return null;
+            }
+
+            return StockOperationLog.builder()
+                .skuId(command.skuId)
+                .operationType(command.type.getCode())
+                .quantity(quantity)
+                .beforeStock(beforeStock)
+                .afterStock(state.stock)
+                .beforeLockStock(beforeLockStock)
+                .afterLockStock(state.lockStock)
+                .orderNo(command.orderNo)
+                .build();
+        }
+    }
+}
@@ -8,27 +8,26 @@ import org.example.afd.exception.StockException;
 import org.example.afd.mapper.ProductMapper;
 import org.example.afd.mapper.StockOperationLogMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * 库存管理服务
  * 
  * 核心功能：
- * 1. 分布式锁保证并发安全（Redis可用时）
- * 2. 数据库锁降级方案（Redis不可用时）
- * 3. 乐观锁防止库存超卖
+ * 1. 按SKU排序后一次 SELECT ... FOR UPDATE 锁定全部行，避免交叉死锁
+ * 2. 单条多行条件更新锁定库存，日志批量写入
+ * 3. 条件更新防止库存超卖
  * 4. 库存锁定机制
  * 5. 完整的操作日志记录
  * 6. 支持库存回滚
+ * 7. 启用库存预留引擎时，锁定/扣减/释放由内存分片引擎组提交处理，本事务回滚时由引擎提交反向操作补偿
  */
 @Service
 @Slf4j
@@ -40,116 +39,100 @@ public class StockService {
     @Autowired
     private StockOperationLogMapper stockLogMapper;
     
-    @Autowired(required = false)
-    private RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    private StockReservationEngine reservationEngine;
     
-    private static final String STOCK_LOCK_PREFIX = "stock_lock:";
-    private static final int LOCK_TIMEOUT = 30; // 30秒超时
+    @Autowired
+    private ProductDetailCache productDetailCache;
     
     /**
      * 锁定库存（创建订单时调用）
      */
     @Transactional(rollbackFor = Exception.class)
     public StockLockResult lockStock(List<StockLockItem> lockItems, String orderNo) {
-        log.info("开始锁定库存，订单号: {}, 商品数量: {}, Redis可用: {}", 
-            orderNo, lockItems.size(), redisTemplate != null);
+        log.info("开始锁定库存，订单号: {}, 商品数量: {}", orderNo, lockItems.size());
         
-        List<StockLockItem> successItems = new ArrayList<>();
-        List<StockLockItem> failedItems = new ArrayList<>();
+        if (reservationEngine.isEnabled()) {
+            return reservationEngine.lock(lockItems, orderNo);
+        }
+        
+        // 按SKU合并数量并排序，保证所有订单按相同顺序加锁，避免交叉死锁
+        Map<Long, Integer> requested = new TreeMap<>();
+        for (StockLockItem item : lockItems) {
+            if (item.getSkuId() == null || item.getQuantity() == null || item.getQuantity() <= 0) {
+                continue;
+            }
+            requested.merge(item.getSkuId(), item.getQuantity(), Integer::sum);
+        }
         
+        // 一次查询锁定所有SKU行（使用悲观锁）
+        Map<Long, Map<String, Object>> skuMap = new HashMap<>();
+        if (!requested.isEmpty()) {
+            for (Map<String, Object> sku : productMapper.selectSkusForUpdate(new ArrayList<>(requested.keySet()))) {
+                skuMap.put(((Number) sku.get("sku_id")).longValue(), sku);
+            }
+        }
+        
+        // 检查可用库存，逐项报告失败原因
+        List<StockLockItem> failedItems = new ArrayList<>();
         for (StockLockItem item : lockItems) {
-            boolean lockAcquired = false;
-            String lockKey = STOCK_LOCK_PREFIX + item.getSkuId();
+            Map<String, Object> currentSku = item.getSkuId() == null ? null : skuMap.get(item.getSkuId());
+            if (currentSku == null || item.getQuantity() == null || item.getQuantity() <= 0) {
+                log.error("SKU不存在或数量无效: skuId={}, quantity={}", item.getSkuId(), item.getQuantity());
+                failedItems.add(item);
+                continue;
+            }
             
-            try {
-                // 尝试获取锁（Redis可用时使用分布式锁，否则使用数据库锁）
-                if (redisTemplate != null) {
-                    // Redis分布式锁
-                    Boolean lockResult = redisTemplate.opsForValue()
-                        .setIfAbsent(lockKey, orderNo, Duration.ofSeconds(LOCK_TIMEOUT));
-                    lockAcquired = lockResult != null && lockResult;
-                } else {
-                    // 降级到数据库锁（通过SELECT FOR UPDATE实现）
-                    lockAcquired = true; // 数据库锁在查询时获取
-                    log.debug("Redis不可用，使用数据库锁: skuId={}", item.getSkuId());
-                }
-                
-                if (!lockAcquired) {
-                    log.warn("获取库存锁失败: skuId={}", item.getSkuId());
-                    failedItems.add(item);
-                    continue;
-                }
-                
-                // 查询当前库存（使用悲观锁）
-                Map<String, Object> currentSku = productMapper.selectSkuForUpdate(item.getSkuId());
-                if (currentSku == null) {
-                    log.error("SKU不存在: {}", item.getSkuId());
-                    failedItems.add(item);
-                    continue;
-                }
-                
-                Integer stock = getIntegerValue(currentSku.get("stock"));
-                Integer lockStock = getIntegerValue(currentSku.get("lock_stock"));
-                Integer version = getIntegerValue(currentSku.get("version"));
-                
-                // 检查可用库存
-                int availableStock = stock - lockStock;
-                if (availableStock < item.getQuantity()) {
-                    log.warn("库存不足: skuId={}, 需要={}, 可用={}", 
-                        item.getSkuId(), item.getQuantity(), availableStock);
-                    failedItems.add(item);
-                    continue;
-                }
-                
-                // 乐观锁更新库存
-                int updateResult = productMapper.lockStockWithVersion(
-                    item.getSkuId(), 
-                    item.getQuantity(), 
-                    version
-                );
-                
-                if (updateResult > 0) {
-                    // 记录库存操作日志
-                    stockLogMapper.insertLog(StockOperationLog.builder()
-                        .skuId(item.getSkuId())
-                        .operationType(1) // 锁定
-                        .quantity(item.getQuantity())
-                        .beforeStock(stock)
-                        .afterStock(stock)
-                        .beforeLockStock(lockStock)
-                        .afterLockStock(lockStock + item.getQuantity())
-                        .orderNo(orderNo)
-                        .build());
-                    
-                    successItems.add(item);
-                    log.info("库存锁定成功: skuId={}, quantity={}", 
-                        item.getSkuId(), item.getQuantity());
-                } else {
-                    log.warn("库存锁定失败-版本冲突: skuId={}", item.getSkuId());
-                    failedItems.add(item);
-                }
-                
-            } finally {
-                // 释放Redis锁（如果使用了Redis锁）
-                if (redisTemplate != null && lockAcquired) {
-                    try {
-                        redisTemplate.delete(lockKey);
-                    } catch (Exception e) {
-                        log.warn("释放Redis锁失败: lockKey={}, error={}", lockKey, e.getMessage());
-                    }
-                }
+            int availableStock = getIntegerValue(currentSku.get("stock")) - getIntegerValue(currentSku.get("lock_stock"));
+            int needed = requested.get(item.getSkuId());
+            if (availableStock < needed) {
+                log.warn("库存不足: skuId={}, 需要={}, 可用={}", item.getSkuId(), needed, availableStock);
+                failedItems.add(item);
             }
         }
         
-        // 如果有失败的，回滚所有成功的锁定
+        // 有失败时尚未写入任何数据，直接返回即可
         if (!failedItems.isEmpty()) {
-            log.warn("部分库存锁定失败，回滚所有锁定: 成功={}, 失败={}", 
-                successItems.size(), failedItems.size());
-            rollbackStockLock(successItems, orderNo);
+            log.warn("部分库存锁定失败: 失败={}", failedItems.size());
             return StockLockResult.failure(failedItems);
         }
         
-        return StockLockResult.success(successItems);
+        // 一条多行条件更新完成全部锁定
+        List<StockLockItem> mergedItems = new ArrayList<>(requested.size());
+        List<StockOperationLog> lockLogs = new ArrayList<>(requested.size());
+        for (Map.Entry<Long, Integer> entry : requested.entrySet()) {
+            Map<String, Object> currentSku = skuMap.get(entry.getKey());
+            Integer stock = getIntegerValue(currentSku.get("stock"));
+            Integer lockStock = getIntegerValue(currentSku.get("lock_stock"));
+            
+            mergedItems.add(StockLockItem.builder()
+                .skuId(entry.getKey())
+                .quantity(entry.getValue())
+                .build());
+            lockLogs.add(StockOperationLog.builder()
+                .skuId(entry.getKey())
+                .operationType(1) // 锁定
+                .quantity(entry.getValue())
+                .beforeStock(stock)
+                .afterStock(stock)
+                .beforeLockStock(lockStock)
+                .afterLockStock(lockStock + entry.getValue())
+                .orderNo(orderNo)
+                .build());
+        }
+        
+        int updated = productMapper.batchLockStock(mergedItems);
+        if (updated != mergedItems.size()) {
+            // 行已被 FOR UPDATE 锁住，正常情况下不会发生，回滚整个事务
+            log.error("批量锁定库存行数不符: 期望={}, 实际={}", mergedItems.size(), updated);
+            throw new StockException("库存锁定失败，请重试");
+        }
+        
+        // 批量记录库存操作日志
+        stockLogMapper.batchInsertLogs(lockLogs);
+        
+        log.info("库存锁定成功: orderNo={}, skus={}", orderNo, requested.keySet());
+        return StockLockResult.success(new ArrayList<>(lockItems));
     }
     
     /**
@@ -161,6 +144,11 @@ public class StockService {
         
         List<StockOperationLog> lockLogs = stockLogMapper.selectByOrderNoAndType(orderNo, 1);
         
+        if (reservationEngine.isEnabled()) {
+            reservationEngine.confirm(lockLogs, orderNo);
+            return;
+        }
+        
         for (StockOperationLog lockLog : lockLogs) {
             int result = productMapper.confirmStockDeduction(
                 lockLog.getSkuId(), 
@@ -184,6 +172,12 @@ public class StockService {
                 throw new StockException("库存扣减失败: " + lockLog.getSkuId());
             }
         }
+        
+        List<Long> skuIds = new ArrayList<>(lockLogs.size());
+        for (StockOperationLog lockLog : lockLogs) {
+            skuIds.add(lockLog.getSkuId());
+        }
+        productDetailCache.skuStockChangedAfterCommit(skuIds);
     }
     
     /**
@@ -195,6 +189,11 @@ public class StockService {
         
         List<StockOperationLog> lockLogs = stockLogMapper.selectByOrderNoAndType(orderNo, 1);
         
+        if (reservationEngine.isEnabled()) {
+            reservationEngine.release(lockLogs, orderNo);
+            return;
+        }
+        
         for (StockOperationLog lockLog : lockLogs) {
             int result = productMapper.releaseStockLock(lockLog.getSkuId(), lockLog.getQuantity());
             
@@ -216,31 +215,6 @@ public class StockService {
         }
     }
     
-    /**
-     * 回滚库存锁定（内部使用）
-     */
-    private void rollbackStockLock(List<StockLockItem> items, String orderNo) {
-        for (StockLockItem item : items) {
-            try {
-                productMapper.releaseStockLock(item.getSkuId(), item.getQuantity());
-                
-                // 记录回滚日志
-                stockLogMapper.insertLog(StockOperationLog.builder()
-                    .skuId(item.getSkuId())
-                    .operationType(4) // 回滚
-                    .quantity(item.getQuantity())
-                    .orderNo(orderNo)
-                    .build());
-                
-                log.info("库存锁定回滚成功: skuId={}, quantity={}", 
-                    item.getSkuId(), item.getQuantity());
-            } catch (Exception e) {
-                log.error("库存锁定回滚失败: skuId={}, quantity={}", 
-                    item.getSkuId(), item.getQuantity(), e);
-            }
-        }
-    }
-    
     /**
      * 检查库存是否充足
      */
@@ -285,6 +259,13 @@ public class StockService {
         return stockLogMapper.selectRecentBySkuId(skuId, limit);
     }
     
+    /**
+     * 获取库存预留引擎运行状态
+     */
+    public Map<String, Object> getReservationEngineStatistics() {
+        return reservationEngine.getStatistics();
+    }
+    
     /**
      * 安全地将Object转换为Integer
      */
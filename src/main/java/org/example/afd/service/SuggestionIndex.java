@@ -0,0 +1,626 @@
+package org.example.afd.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.example.afd.dto.SuggestionDTO;
+import org.example.afd.mapper.MerchantMapper;
+import org.example.afd.mapper.PostMapper;
+import org.example.afd.mapper.ProductMapper;
+import org.example.afd.utils.PinyinInitials;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * 搜索联想词索引
+ *
+ * 1. 商品（名称、关键词）、动态标签、商家名称各建一份前缀索引，输入框每次按键只查内存，不再对数据库做 LIKE
+ * 2. 索引是按字典序排好的键数组，同一前缀的键落在一段连续区间内，二分即可定位；
+ *    区间内按权重取前 N 条借助线段树求区间最大值，代价只与前缀长度和 N 有关
+ * 3. 含中文的名称额外生成拼音首字母键（见 {@link PinyinInitials}），输入 "ydx" 可以联想出 "运动鞋"
+ * 4. 权重：商品取销量，标签取使用次数，商家取在售商品的销量合计
+ * 5. 定期从数据库全量重建后整体替换；两次重建之间新增、改名或下架的条目记入增量表，
+ *    查询时与主索引合并，重建完成后并入主索引
+ */
+@Component
+@Slf4j
+public class SuggestionIndex {
+
+    public static final String TYPE_PRODUCT = "product";
+    public static final String TYPE_TAG = "tag";
+    public static final String TYPE_MERCHANT = "merchant";
+
+    private static final List<String> TYPES = Arrays.asList(TYPE_PRODUCT, TYPE_TAG, TYPE_MERCHANT);
+
+    /**
+     * 同一条目可能有多个键命中同一前缀，取前 N 条时最多检查 N 的这么多倍个候选
+     */
+    private static final int CANDIDATE_FACTOR = 4;
+
+    /**
+     * 比前缀之后任何字符都大，用于确定区间上界
+     */
+    private static final char MAX_CHAR = '\uffff';
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern KEYWORD_SEPARATOR = Pattern.compile("[,，;；|、\\s]+");
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private PostMapper postMapper;
+
+    @Autowired
+    private MerchantMapper merchantMapper;
+
+    @Value("${product.suggest.enabled:true}")
+    private boolean enabled;
+
+    @Value("${product.suggest.max-key-length:32}")
+    private int maxKeyLength;
+
+    @Value("${product.suggest.max-limit:20}")
+    private int maxLimit;
+
+    @Value("${product.suggest.rebuild-batch-size:2000}")
+    private int rebuildBatchSize;
+
+    private final Map<String, TypeIndex> indexes = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong lookupTotalMicros = new AtomicLong();
+
+    /**
+     * 查询耗时分布，第 i 个桶统计 [2^(i-1), 2^i) 微秒
+     */
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(24);
+
+    private volatile long lastRebuildMs;
+    private volatile long lastRebuildTime;
+
+    /**
+     * 联想条目，重建或增量更新时整体替换，不做修改
+     */
+    private static final class Entry {
+        final long id;
+        final String text;
+        final long weight;
+        final long seq;
+
+        /**
+         * 增量条目写入增量表时使用的键，主索引里的条目不保留
+         */
+        final String[] keys;
+
+        Entry(long id, String text, long weight, long seq, String[] keys) {
+            this.id = id;
+            this.text = text;
+            this.weight = weight;
+            this.seq = seq;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * 主索引：按键排序的数组，tree 为区间最大权重的下标（自底向上的线段树，叶子在 [n, 2n)）
+     */
+    private static final class Segment {
+        final String[] keys;
+        final Entry[] entries;
+        final int[] tree;
+        final int entryCount;
+
+        Segment(String[] keys, Entry[] entries, int entryCount) {
+            this.keys = keys;
+            this.entries = entries;
+            this.entryCount = entryCount;
+            int n = keys.length;
+            this.tree = new int[Math.max(2 * n, 1)];
+            for (int i = 0; i < n; i++) {
+                tree[n + i] = i;
+            }
+            for (int i = n - 1; i >= 1; i--) {
+                tree[i] = better(tree[2 * i], tree[2 * i + 1]);
+            }
+        }
+
+        int better(int a, int b) {
+            if (a < 0) {
+                return b;
+            }
+            if (b < 0) {
+                return a;
+            }
+            return entries[b].weight > entries[a].weight ? b : a;
+        }
+
+        /**
+         * [from, to) 中权重最大的下标
+         */
+        int argmax(int from, int to) {
+            int n = keys.length;
+            int best = -1;
+            for (int l = from + n, r = to + n; l < r; l >>= 1, r >>= 1) {
+                if ((l & 1) == 1) {
+                    best = better(best, tree[l++]);
+                }
+                if ((r & 1) == 1) {
+                    best = better(best, tree[--r]);
+                }
+            }
+            return best;
+        }
+
+        /**
+         * 第一个不小于 key 的下标
+         */
+        int lowerBound(String key) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid].compareTo(key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * 一种类型的索引：主索引加上次重建以来的增量
+     */
+    private static final class TypeIndex {
+        final Segment segment;
+
+        /**
+         * 增量条目的键，格式为 "键\0条目ID"，同一个键可以对应多个条目
+         */
+        final ConcurrentSkipListMap<String, Entry> delta = new ConcurrentSkipListMap<>();
+
+        /**
+         * 重建以来更新过的条目，主索引中同 ID 的条目以这里为准（已删除的记为 text 为 null 的条目）
+         */
+        final Map<Long, Entry> overrides = new ConcurrentHashMap<>();
+
+        TypeIndex(Segment segment) {
+            this.segment = segment;
+        }
+    }
+
+    /**
+     * 候选区间，按区间内最大权重出队
+     */
+    private static final class Range {
+        final int from;
+        final int to;
+        final int best;
+        final long weight;
+
+        Range(int from, int to, int best, long weight) {
+            this.from = from;
+            this.to = to;
+            this.best = best;
+            this.weight = weight;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        Segment empty = new Segment(new String[0], new Entry[0], 0);
+        for (String type : TYPES) {
+            indexes.put(type, new TypeIndex(empty));
+        }
+        if (!enabled) {
+            log.info("搜索联想词索引未启用");
+            return;
+        }
+        rebuild();
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * 查询联想词，按类型分组返回
+     *
+     * @param type  只查询某一类型，为空时查询全部类型
+     * @param limit 每种类型返回的数量
+     */
+    public Map<String, List<SuggestionDTO>> suggest(String keyword, String type, Integer limit) {
+        Map<String, List<SuggestionDTO>> result = new LinkedHashMap<>();
+        List<String> types = type == null || type.isEmpty() ? TYPES : List.of(type);
+        for (String name : types) {
+            if (indexes.containsKey(name)) {
+                result.put(name, new ArrayList<>());
+            }
+        }
+        String prefix = normalize(keyword);
+        if (!isReady() || prefix.isEmpty() || result.isEmpty()) {
+            return result;
+        }
+        int size = limit == null || limit <= 0 ? 10 : Math.min(limit, maxLimit);
+        long start = System.nanoTime();
+        for (Map.Entry<String, List<SuggestionDTO>> group : result.entrySet()) {
+            for (Entry entry : lookup(indexes.get(group.getKey()), prefix, size)) {
+                group.getValue().add(new SuggestionDTO(group.getKey(), entry.id, entry.text));
+            }
+        }
+        recordLatency((System.nanoTime() - start) / 1000);
+        return result;
+    }
+
+    /**
+     * 在当前事务提交后从数据库重新读取商品并更新联想词，商品下架或删除时移除
+     */
+    public void productChangedAfterCommit(Long productId) {
+        if (!enabled || productId == null) {
+            return;
+        }
+        afterCommit(() -> {
+            try {
+                Map<String, Object> row = productMapper.selectProductForIndex(productId);
+                if (row == null || toInt(row.get("status")) != 1 || toInt(row.get("is_deleted")) == 1) {
+                    remove(TYPE_PRODUCT, productId);
+                } else {
+                    put(TYPE_PRODUCT, productId, (String) row.get("product_name"),
+                        (String) row.get("keywords"), toLong(row.get("sales")));
+                }
+            } catch (Exception e) {
+                // 下次重建时修正
+                log.warn("更新商品联想词失败: productId={}, error={}", productId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 在当前事务提交后加入新建的标签
+     */
+    public void tagAddedAfterCommit(Long tagId, String tagName) {
+        if (!enabled || tagId == null || tagName == null) {
+            return;
+        }
+        afterCommit(() -> put(TYPE_TAG, tagId, tagName, null, 1));
+    }
+
+    /**
+     * 在当前事务提交后从数据库重新读取商家并更新联想词，商家停业时移除
+     */
+    public void merchantChangedAfterCommit(Long merchantId) {
+        if (!enabled || merchantId == null) {
+            return;
+        }
+        afterCommit(() -> {
+            try {
+                Map<String, Object> row = merchantMapper.selectMerchantForSuggest(merchantId);
+                if (row == null || toInt(row.get("status")) != 1) {
+                    remove(TYPE_MERCHANT, merchantId);
+                } else {
+                    put(TYPE_MERCHANT, merchantId, (String) row.get("merchant_name"), null,
+                        toLong(row.get("weight")));
+                }
+            } catch (Exception e) {
+                log.warn("更新商家联想词失败: merchantId={}, error={}", merchantId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 定期全量重建，刷新销量、使用次数等权重
+     */
+    @Scheduled(fixedDelayString = "${product.suggest.rebuild-interval-ms:600000}",
+               initialDelayString = "${product.suggest.rebuild-interval-ms:600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * 在后台线程从数据库全量重建，重建期间继续使用旧索引
+     *
+     * @return 已有重建任务在运行时返回 false
+     */
+    public boolean rebuild() {
+        if (!enabled || !rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                doRebuild();
+            } catch (Exception e) {
+                log.error("重建搜索联想词索引失败", e);
+            } finally {
+                rebuilding.set(false);
+            }
+        }, "suggestion-index-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * 运行指标
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        stats.put("rebuilding", rebuilding.get());
+        for (String type : TYPES) {
+            TypeIndex index = indexes.get(type);
+            Map<String, Object> typeStats = new HashMap<>();
+            typeStats.put("entries", index.segment.entryCount);
+            typeStats.put("keys", index.segment.keys.length);
+            typeStats.put("deltaKeys", index.delta.size());
+            typeStats.put("overrides", index.overrides.size());
+            stats.put(type, typeStats);
+        }
+        long lookupCount = lookups.get();
+        stats.put("updates", updates.get());
+        stats.put("lookups", lookupCount);
+        stats.put("avgLookupMicros", lookupCount == 0 ? 0 : lookupTotalMicros.get() / lookupCount);
+        stats.put("p99LookupMicros", percentileMicros(lookupCount, 0.99));
+        stats.put("lastRebuildMs", lastRebuildMs);
+        stats.put("lastRebuildTime", lastRebuildTime);
+        return stats;
+    }
+
+    private void doRebuild() {
+        long start = System.currentTimeMillis();
+        rebuildType(TYPE_PRODUCT, afterId -> productMapper.selectProductsForSuggest(afterId, rebuildBatchSize),
+            "product_id", "product_name", "keywords", "sales");
+        rebuildType(TYPE_TAG, afterId -> postMapper.selectTagsForSuggest(afterId, rebuildBatchSize),
+            "tag_id", "tag_name", null, "use_count");
+        rebuildType(TYPE_MERCHANT, afterId -> merchantMapper.selectMerchantsForSuggest(afterId, rebuildBatchSize),
+            "merchant_id", "merchant_name", null, "weight");
+        ready = true;
+        lastRebuildTime = System.currentTimeMillis();
+        lastRebuildMs = lastRebuildTime - start;
+        log.info("搜索联想词索引重建完成: products={}, tags={}, merchants={}, cost={}ms",
+            indexes.get(TYPE_PRODUCT).segment.entryCount, indexes.get(TYPE_TAG).segment.entryCount,
+            indexes.get(TYPE_MERCHANT).segment.entryCount, lastRebuildMs);
+    }
+
+    private void rebuildType(String type, Function<Long, List<Map<String, Object>>> loader,
+                             String idColumn, String textColumn, String keywordsColumn, String weightColumn) {
+        // 此后的增量在替换时保留，之前的增量已经提交，会被下面的查询读到
+        long since = sequence.get();
+        List<Map.Entry<String, Entry>> pairs = new ArrayList<>();
+        int entryCount = 0;
+        long afterId = 0;
+        while (true) {
+            List<Map<String, Object>> rows = loader.apply(afterId);
+            for (Map<String, Object> row : rows) {
+                long id = toLong(row.get(idColumn));
+                String text = (String) row.get(textColumn);
+                afterId = Math.max(afterId, id);
+                if (text == null || text.trim().isEmpty()) {
+                    continue;
+                }
+                String keywords = keywordsColumn != null ? (String) row.get(keywordsColumn) : null;
+                Entry entry = new Entry(id, text.trim(), toLong(row.get(weightColumn)), 0, null);
+                for (String key : keysOf(text, keywords)) {
+                    pairs.add(new AbstractMap.SimpleImmutableEntry<>(key, entry));
+                }
+                entryCount++;
+            }
+            if (rows.size() < rebuildBatchSize) {
+                break;
+            }
+        }
+        Segment segment = buildSegment(pairs, entryCount);
+        synchronized (this) {
+            TypeIndex previous = indexes.get(type);
+            TypeIndex next = new TypeIndex(segment);
+            for (Entry entry : previous.overrides.values()) {
+                if (entry.seq > since) {
+                    apply(next, entry);
+                }
+            }
+            indexes.put(type, next);
+        }
+    }
+
+    private static Segment buildSegment(List<Map.Entry<String, Entry>> pairs, int entryCount) {
+        pairs.sort(Map.Entry.comparingByKey());
+        String[] keys = new String[pairs.size()];
+        Entry[] entries = new Entry[pairs.size()];
+        for (int i = 0; i < keys.length; i++) {
+            String key = pairs.get(i).getKey();
+            // 相同的键共用一个字符串实例
+            keys[i] = i > 0 && key.equals(keys[i - 1]) ? keys[i - 1] : key;
+            entries[i] = pairs.get(i).getValue();
+        }
+        return new Segment(keys, entries, entryCount);
+    }
+
+    private List<Entry> lookup(TypeIndex index, String prefix, int limit) {
+        Map<Long, Entry> picked = new LinkedHashMap<>();
+        Segment segment = index.segment;
+        int from = segment.lowerBound(prefix);
+        int to = segment.lowerBound(prefix + MAX_CHAR);
+        if (from < to) {
+            PriorityQueue<Range> queue = new PriorityQueue<>((a, b) -> Long.compare(b.weight, a.weight));
+            int best = segment.argmax(from, to);
+            queue.add(new Range(from, to, best, segment.entries[best].weight));
+            int candidates = 0;
+            while (!queue.isEmpty() && picked.size() < limit && candidates++ < limit * CANDIDATE_FACTOR) {
+                Range range = queue.poll();
+                Entry entry = segment.entries[range.best];
+                if (!index.overrides.containsKey(entry.id)) {
+                    picked.putIfAbsent(entry.id, entry);
+                }
+                offer(queue, segment, range.from, range.best);
+                offer(queue, segment, range.best + 1, range.to);
+            }
+        }
+        if (index.delta.isEmpty()) {
+            return new ArrayList<>(picked.values());
+        }
+        for (Entry entry : index.delta.subMap(prefix, prefix + MAX_CHAR).values()) {
+            picked.putIfAbsent(entry.id, entry);
+        }
+        List<Entry> merged = new ArrayList<>(picked.values());
+        merged.sort((a, b) -> Long.compare(b.weight, a.weight));
+        return merged.size() > limit ? merged.subList(0, limit) : merged;
+    }
+
+    private static void offer(PriorityQueue<Range> queue, Segment segment, int from, int to) {
+        if (from < to) {
+            int best = segment.argmax(from, to);
+            queue.add(new Range(from, to, best, segment.entries[best].weight));
+        }
+    }
+
+    private void put(String type, long id, String text, String keywords, long weight) {
+        if (text == null || text.trim().isEmpty()) {
+            remove(type, id);
+            return;
+        }
+        String[] keys = keysOf(text, keywords).toArray(new String[0]);
+        update(type, new Entry(id, text.trim(), weight, sequence.incrementAndGet(), keys));
+    }
+
+    private void remove(String type, long id) {
+        update(type, new Entry(id, null, 0, sequence.incrementAndGet(), new String[0]));
+    }
+
+    private synchronized void update(String type, Entry entry) {
+        apply(indexes.get(type), entry);
+        updates.incrementAndGet();
+    }
+
+    private static void apply(TypeIndex index, Entry entry) {
+        Entry previous = index.overrides.put(entry.id, entry);
+        if (previous != null) {
+            for (String key : previous.keys) {
+                index.delta.remove(key + '\0' + previous.id);
+            }
+        }
+        for (String key : entry.keys) {
+            index.delta.put(key + '\0' + entry.id, entry);
+        }
+    }
+
+    /**
+     * 条目的全部索引键：完整名称、名称中每个空格之后的部分、每个关键词，以及它们的拼音首字母
+     */
+    private Set<String> keysOf(String text, String keywords) {
+        Set<String> keys = new LinkedHashSet<>();
+        String name = normalize(text);
+        addKey(keys, name);
+        for (int i = name.indexOf(' '); i >= 0; i = name.indexOf(' ', i + 1)) {
+            addKey(keys, name.substring(i + 1));
+        }
+        if (keywords != null) {
+            for (String keyword : KEYWORD_SEPARATOR.split(keywords)) {
+                addKey(keys, normalize(keyword));
+            }
+        }
+        return keys;
+    }
+
+    private void addKey(Set<String> keys, String key) {
+        if (key.isEmpty()) {
+            return;
+        }
+        keys.add(truncate(key));
+        String initials = PinyinInitials.of(key);
+        if (initials != null && !initials.isEmpty()) {
+            keys.add(truncate(initials));
+        }
+    }
+
+    private String truncate(String key) {
+        return key.length() > maxKeyLength ? key.substring(0, maxKeyLength) : key;
+    }
+
+    /**
+     * 查询与建索引使用相同的规范化：去掉首尾空白、转小写、连续空白合并为一个空格，超长部分截断
+     */
+    private String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = WHITESPACE.matcher(text.trim().toLowerCase()).replaceAll(" ");
+        return truncate(normalized);
+    }
+
+    private void recordLatency(long micros) {
+        lookups.incrementAndGet();
+        lookupTotalMicros.addAndGet(micros);
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), latencyBuckets.length() - 1);
+        latencyBuckets.incrementAndGet(bucket);
+    }
+
+    /**
+     * 按耗时分布估算百分位，返回所在桶的上界
+     */
+    private long percentileMicros(long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < latencyBuckets.length(); i++) {
+            seen += latencyBuckets.get(i);
+            if (seen >= threshold) {
+                return 1L << i;
+            }
+        }
+        return 1L << (latencyBuckets.length() - 1);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    private static int toInt(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+}
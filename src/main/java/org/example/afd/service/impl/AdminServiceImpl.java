@@ -7,12 +7,15 @@ import org.example.afd.mapper.AdminMapper;
 import org.example.afd.model.*;
 import org.example.afd.pojo.User;
 import org.example.afd.service.AdminService;
+import org.example.afd.service.CategoryTree;
+import org.example.afd.utils.CursorUtils;
 import org.example.afd.utils.PasswordUtils;
 import org.example.afd.utils.JwtUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.*;
 
 /**
@@ -26,6 +29,9 @@ public class AdminServiceImpl implements AdminService {
 
     @Autowired
     private AdminMapper adminMapper;
+
+    @Autowired
+    private CategoryTree categoryTree;
     
     @Autowired
     private PasswordUtils passwordUtils;
@@ -290,9 +296,9 @@ public class AdminServiceImpl implements AdminService {
         try {
             List<Map<String, Object>> categories;
             if (parentId != null) {
-                categories = adminMapper.getCategoriesByParentId(parentId);
+                categories = categoryTree.children(parentId);
             } else {
-                categories = adminMapper.getAllCategories();
+                categories = categoryTree.list(false);
             }
             log.info("获取到分类数量: {}", categories.size());
             return categories;
@@ -306,7 +312,7 @@ public class AdminServiceImpl implements AdminService {
     public Map<String, Object> getCategoryById(Long categoryId) {
         log.info("获取分类详情: categoryId={}", categoryId);
         try {
-            Map<String, Object> category = adminMapper.getCategoryById(categoryId);
+            Map<String, Object> category = categoryTree.get(categoryId);
             log.info("获取分类详情结果: {}", category != null ? "找到" : "未找到");
             return category;
         } catch (Exception e) {
@@ -322,6 +328,9 @@ public class AdminServiceImpl implements AdminService {
             // 使用insertCategory方法
             int result = adminMapper.insertCategory(parentId, categoryName, icon, sortOrder, status, null);
             boolean created = result > 0;
+            if (created) {
+                categoryTree.reloadAfterCommit();
+            }
             log.info("创建分类结果: {}", created ? "成功" : "失败");
             return created;
         } catch (Exception e) {
@@ -336,6 +345,9 @@ public class AdminServiceImpl implements AdminService {
         try {
             int result = adminMapper.updateCategory(categoryId, parentId, categoryName, icon, sortOrder, status);
             boolean updated = result > 0;
+            if (updated) {
+                categoryTree.reloadAfterCommit();
+            }
             log.info("更新分类结果: {}", updated ? "成功" : "失败");
             return updated;
         } catch (Exception e) {
@@ -350,6 +362,9 @@ public class AdminServiceImpl implements AdminService {
         try {
             int result = adminMapper.deleteCategory(categoryId);
             boolean deleted = result > 0;
+            if (deleted) {
+                categoryTree.reloadAfterCommit();
+            }
             log.info("删除分类结果: {}", deleted ? "成功" : "失败");
             return deleted;
         } catch (Exception e) {
@@ -364,6 +379,9 @@ public class AdminServiceImpl implements AdminService {
         try {
             int result = adminMapper.updateCategoryStatus(categoryId, status);
             boolean updated = result > 0;
+            if (updated) {
+                categoryTree.reloadAfterCommit();
+            }
             log.info("更新分类状态结果: {}", updated ? "成功" : "失败");
             return updated;
         } catch (Exception e) {
@@ -719,6 +737,19 @@ public class AdminServiceImpl implements AdminService {
         }
     }
 
+    @Override
+    public CursorPage<Map<String, Object>> getLoginRecordsByCursor(Long userId, String cursor, int size) {
+        size = CursorPage.clampSize(size, 20);
+        log.info("游标分页获取登录记录: userId={}, size={}", userId, size);
+        long[] position = CursorUtils.decode(cursor, 2);
+        LocalDateTime cursorTime = position == null ? null : CursorUtils.toDateTime(position[0]);
+        Long cursorId = position == null ? null : position[1];
+        List<Map<String, Object>> rows = adminMapper.getLoginRecordsByCursor(userId, cursorTime, cursorId, size + 1);
+        return CursorPage.of(rows, size, record -> CursorUtils.encode(
+            CursorUtils.toMillis(record.get("login_time")),
+            ((Number) record.get("record_id")).longValue()));
+    }
+
     @Override
     public Map<String, Object> getLoginRecordById(Long recordId) {
         log.info("获取登录记录详情: recordId={}", recordId);
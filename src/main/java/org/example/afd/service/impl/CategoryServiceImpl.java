@@ -1,8 +1,8 @@
 package org.example.afd.service.impl;
 
 import org.example.afd.dto.CategoryDTO;
-import org.example.afd.mapper.CategoryMapper;
 import org.example.afd.service.CategoryService;
+import org.example.afd.service.CategoryTree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,7 +22,7 @@ public class CategoryServiceImpl implements CategoryService {
     private static final Logger logger = LoggerFactory.getLogger(CategoryServiceImpl.class);
     
     @Autowired
-    private CategoryMapper categoryMapper;
+    private CategoryTree categoryTree;
 
     @Override
     public List<CategoryDTO> getCategories(Long parentId) {
@@ -30,11 +30,11 @@ public class CategoryServiceImpl implements CategoryService {
         logger.info("请求参数: parentId = {} (已忽略，直接获取所有分类)", parentId);
         try {
             // 直接获取所有状态为1的分类，不根据parentId过滤
-            List<Map<String, Object>> categories = categoryMapper.selectCategories(parentId);
-            logger.info("CategoryMapper返回原始数据数量: {}", categories != null ? categories.size() : 0);
+            List<Map<String, Object>> categories = categoryTree.list(true);
+            logger.info("分类树快照返回原始数据数量: {}", categories != null ? categories.size() : 0);
             
             if (categories != null && !categories.isEmpty()) {
-                logger.info("数据库返回的原始分类数据:");
+                logger.info("分类树快照中的原始分类数据:");
                 for (int i = 0; i < Math.min(categories.size(), 3); i++) {
                     Map<String, Object> category = categories.get(i);
                     logger.info("  原始分类[{}]: ID={}, name={}, parent_id={}, status={}", 
@@ -48,7 +48,7 @@ public class CategoryServiceImpl implements CategoryService {
                     logger.info("  ... 还有 {} 个分类", categories.size() - 3);
                 }
             } else {
-                logger.warn("CategoryMapper返回的原始数据为空!");
+                logger.warn("分类树快照返回的原始数据为空!");
             }
             
             List<CategoryDTO> result = convertToCategoryDTOList(categories);
@@ -63,7 +63,7 @@ public class CategoryServiceImpl implements CategoryService {
     @Override
     public CategoryDTO getCategory(Long categoryId) {
         try {
-            Map<String, Object> category = categoryMapper.selectCategoryById(categoryId);
+            Map<String, Object> category = categoryTree.get(categoryId);
             if (category != null) {
                 return convertToCategoryDTO(category);
             }
@@ -77,7 +77,13 @@ public class CategoryServiceImpl implements CategoryService {
     @Override
     public List<CategoryDTO> getCategoryWithChildren(Long categoryId) {
         try {
-            List<Map<String, Object>> categories = categoryMapper.selectCategoryWithChildren(categoryId);
+            Map<String, Object> category = categoryTree.get(categoryId);
+            if (category == null) {
+                return Collections.emptyList();
+            }
+            List<Map<String, Object>> categories = new ArrayList<>();
+            categories.add(category);
+            categories.addAll(categoryTree.children(categoryId));
             return convertToCategoryDTOList(categories);
         } catch (Exception e) {
             logger.error("获取分类及其子分类失败: {}", e.getMessage());
@@ -88,7 +94,7 @@ public class CategoryServiceImpl implements CategoryService {
     @Override
     public List<CategoryDTO> getCategoryPath(Long categoryId) {
         try {
-            List<Map<String, Object>> categoryPath = categoryMapper.selectCategoryPath(categoryId);
+            List<Map<String, Object>> categoryPath = categoryTree.path(categoryId);
             return convertToCategoryDTOList(categoryPath);
         } catch (Exception e) {
             logger.error("获取分类路径失败: {}", e.getMessage());
@@ -99,8 +105,8 @@ public class CategoryServiceImpl implements CategoryService {
     @Override
     public List<CategoryDTO> getHotCategories(int limit) {
         try {
-            List<Map<String, Object>> categories = categoryMapper.selectHotCategories(limit);
-            return convertToCategoryDTOList(categories);
+            List<Map<String, Object>> categories = categoryTree.list(true);
+            return convertToCategoryDTOList(categories.subList(0, Math.min(Math.max(limit, 0), categories.size())));
         } catch (Exception e) {
             logger.error("获取热门分类失败: {}", e.getMessage());
             return Collections.emptyList();
@@ -111,7 +117,7 @@ public class CategoryServiceImpl implements CategoryService {
     public List<Map<String, Object>> getCategoriesByMerchantId(Long merchantId) {
         try {
             logger.info("获取商家分类列表: merchantId={}", merchantId);
-            return categoryMapper.selectCategoriesByMerchantId(merchantId);
+            return categoryTree.list(true);
         } catch (Exception e) {
             logger.error("获取商家分类列表失败: {}", e.getMessage());
             return Collections.emptyList();
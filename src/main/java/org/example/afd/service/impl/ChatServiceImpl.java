@@ -5,14 +5,21 @@ import org.example.afd.dto.ChatMessageDTO;
 import org.example.afd.dto.ConversationDTO;
 import org.example.afd.entity.UserChatMessage;
 import org.example.afd.entity.UserChatConversation;
+import org.example.afd.entity.UserChatSyncLog;
 import org.example.afd.mapper.ChatMapper;
 import org.example.afd.mapper.UserOnlineStatusMapper;
+import org.example.afd.service.ChatReadStateService;
+import org.example.afd.service.ChatSearchIndex;
 import org.example.afd.service.ChatService;
+import org.example.afd.service.ChatSyncService;
+import org.example.afd.service.PresenceService;
+import org.example.afd.utils.SnowflakeIdGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -36,6 +43,21 @@ public class ChatServiceImpl implements ChatService {
     @Autowired
     private UserOnlineStatusMapper userOnlineStatusMapper;
 
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private ChatSearchIndex searchIndex;
+
+    @Autowired
+    private ChatSyncService chatSyncService;
+
+    @Autowired
+    private ChatReadStateService readStateService;
+
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+
     /**
      * 发送消息
      * 包括创建或更新会话、插入消息、更新未读数等操作
@@ -72,6 +94,7 @@ public class ChatServiceImpl implements ChatService {
             }
             
             // 3. 插入消息到数据库
+            message.setMessageId(idGenerator.nextId());
             int insertResult = chatMapper.insertMessage(message);
             if (insertResult <= 0) {
                 log.error("插入消息失败: 发送者={}, 接收者={}", senderId, receiverId);
@@ -79,14 +102,16 @@ public class ChatServiceImpl implements ChatService {
             }
             
             log.info("消息插入成功: messageId={}", message.getMessageId());
+            searchIndex.addAfterCommit(message);
             
-            // 4. 更新会话的最后一条消息信息
+            // 4. 更新会话的最后一条消息信息，同步日志最后写入，与其他聊天事务保持相同的加锁顺序
             String messageContent = getMessageContentSummary(content, messageType);
             updateConversationLastMessage(conversationId, message.getMessageId(), 
                     messageContent, messageType);
+            chatSyncService.appendMessages(Collections.singletonList(message));
             
-            // 5. 增加接收者的未读消息数
-            incrementUnreadCount(conversationId, receiverId);
+            // 5. 提交后在内存中增加接收者的未读消息数
+            readStateService.onMessageAfterCommit(message);
             
             // 6. 构造返回的DTO对象
             ChatMessageDTO messageDTO = new ChatMessageDTO();
@@ -143,6 +168,7 @@ public class ChatServiceImpl implements ChatService {
             // 由于查询结果是按时间倒序的，需要反转列表以按时间正序排列
             if (messages != null && !messages.isEmpty()) {
                 Collections.reverse(messages);
+                applyReadWatermarks(messages, currentUserId, targetUserId);
                 log.info("获取到{}条消息", messages.size());
             } else {
                 log.info("未获取到消息");
@@ -178,18 +204,22 @@ public class ChatServiceImpl implements ChatService {
             
             int offset = page * size;
             
-            // 调用完整的会话查询方法（包含用户在线状态）
             List<ConversationDTO> conversations = chatMapper.selectUserConversations(currentUserId, offset, size);
             
             log.debug("查询到{}个会话", conversations.size());
             
-            // 为每个会话补充在线状态信息和时间戳
+            // 对方在线状态、未读数从内存批量查询
+            List<Integer> otherUserIds = new ArrayList<>(conversations.size());
             for (ConversationDTO conversation : conversations) {
-                // 如果在线状态为null，查询用户在线状态
-                if (conversation.getIsOnline() == null) {
-                    Boolean isOnline = userOnlineStatusMapper.isUserOnline(conversation.getOtherUserId());
-                    conversation.setIsOnline(isOnline != null ? isOnline : false);
-                }
+                otherUserIds.add(conversation.getOtherUserId());
+            }
+            Map<Integer, Boolean> onlineStatus = presenceService.batchCheck(otherUserIds);
+            Map<Long, Integer> unreadCounts = readStateService.getUnreadCounts(currentUserId);
+            
+            // 为每个会话补充在线状态、未读数和时间戳
+            for (ConversationDTO conversation : conversations) {
+                conversation.setIsOnline(onlineStatus.getOrDefault(conversation.getOtherUserId(), false));
+                conversation.setUnreadCount(unreadCounts.getOrDefault(conversation.getConversationId(), 0));
                 
                 // 设置时间戳，用于前端排序
                 if (conversation.getLastMessageTime() != null) {
@@ -211,32 +241,42 @@ public class ChatServiceImpl implements ChatService {
 
     /**
      * 标记消息为已读
+     * 只把已读水位推进到会话最新消息，水位合并后批量落库；已经全部已读时不产生任何写入
      */
     @Override
     @Transactional
     public boolean markMessagesAsRead(Integer currentUserId, Integer targetUserId) {
         try {
-            log.info("标记消息为已读: 当前用户={}, 目标用户={}", currentUserId, targetUserId);
-            
-            // 1. 更新消息状态为已读
-            LocalDateTime readTime = LocalDateTime.now();
-            int updateCount = chatMapper.markMessagesAsRead(currentUserId, targetUserId, readTime);
-            
-            // 2. 获取会话并清空未读数
-            UserChatConversation conversation = chatMapper.selectConversationBetweenUsers(currentUserId, targetUserId);
-            if (conversation != null) {
-                chatMapper.clearUnreadCount(conversation.getConversationId(), currentUserId);
-            }
-            
-            log.info("标记已读完成: 更新了{}条消息", updateCount);
+            markMessagesAsRead(currentUserId, targetUserId, null);
             return true;
-            
         } catch (Exception e) {
             log.error("标记消息已读异常: 当前用户={}, 目标用户={}", currentUserId, targetUserId, e);
             return false;
         }
     }
 
+    /**
+     * 标记消息为已读，只推进到客户端已读到的消息
+     */
+    @Override
+    @Transactional
+    public Long markMessagesAsRead(Integer currentUserId, Integer targetUserId, Long upToMessageId) {
+        log.debug("标记消息为已读: 当前用户={}, 目标用户={}, 已读到={}", currentUserId, targetUserId, upToMessageId);
+        
+        Long conversationId = readStateService.markRead(currentUserId, targetUserId, upToMessageId);
+        if (conversationId == null) {
+            log.debug("标记已读完成: 水位无变化");
+            return null;
+        }
+        // 当前用户的其他设备清除未读，对方收到已读回执
+        chatSyncService.appendEvent(UserChatSyncLog.EVENT_READ, conversationId, null,
+                currentUserId, targetUserId);
+        
+        long watermark = readStateService.getWatermark(conversationId, currentUserId);
+        log.debug("标记已读完成: 水位推进到{}", watermark);
+        return watermark;
+    }
+
     /**
      * 删除会话
      */
@@ -248,6 +288,12 @@ public class ChatServiceImpl implements ChatService {
             
             int deleteCount = chatMapper.deleteConversation(userId, targetUserId);
             boolean success = deleteCount > 0;
+            if (success) {
+                UserChatConversation conversation = chatMapper.selectConversationBetweenUsers(userId, targetUserId);
+                if (conversation != null) {
+                    chatSyncService.appendEvent(UserChatSyncLog.EVENT_DELETE, conversation.getConversationId(), null, userId);
+                }
+            }
             
             log.info("删除会话{}: 影响行数={}", success ? "成功" : "失败", deleteCount);
             return success;
@@ -291,6 +337,12 @@ public class ChatServiceImpl implements ChatService {
             // 执行撤回
             int recallCount = chatMapper.recallMessage(messageId, senderId);
             boolean success = recallCount > 0;
+            if (success) {
+                chatSyncService.appendEvent(UserChatSyncLog.EVENT_RECALL, message.getConversationId(), messageId,
+                        message.getSenderId(), message.getReceiverId());
+                searchIndex.remove(message);
+                readStateService.onRecallAfterCommit(message);
+            }
             
             log.info("撤回消息{}: messageId={}", success ? "成功" : "失败", messageId);
             return success;
@@ -309,7 +361,7 @@ public class ChatServiceImpl implements ChatService {
         try {
             log.debug("获取未读消息总数: 用户={}", userId);
             
-            int unreadCount = chatMapper.selectUnreadCount(userId);
+            int unreadCount = readStateService.getUnreadCount(userId);
             
             log.debug("用户{}的未读消息数: {}", userId, unreadCount);
             return unreadCount;
@@ -345,7 +397,26 @@ public class ChatServiceImpl implements ChatService {
             }
             
             int offset = page * size;
-            List<ChatMessageDTO> messages = chatMapper.searchMessages(currentUserId, targetUserId, keyword.trim(), offset, size);
+            List<ChatMessageDTO> messages;
+            List<Long> messageIds = searchIndex.search(currentUserId, targetUserId, keyword.trim(), offset, size);
+            if (messageIds != null) {
+                // 索引命中后按ID回表，保持相关度顺序
+                messages = new ArrayList<>(messageIds.size());
+                if (!messageIds.isEmpty()) {
+                    Map<Long, ChatMessageDTO> byId = new HashMap<>();
+                    for (ChatMessageDTO message : chatMapper.selectMessagesByIds(messageIds)) {
+                        byId.put(message.getMessageId(), message);
+                    }
+                    for (Long messageId : messageIds) {
+                        ChatMessageDTO message = byId.get(messageId);
+                        if (message != null) {
+                            messages.add(message);
+                        }
+                    }
+                }
+            } else {
+                messages = chatMapper.searchMessages(currentUserId, targetUserId, keyword.trim(), offset, size);
+            }
             
             if (messages == null) {
                 messages = Collections.emptyList();
@@ -419,7 +490,7 @@ public class ChatServiceImpl implements ChatService {
             if (updateResult > 0) {
                 log.debug("更新会话最后消息成功");
             } else {
-                log.warn("更新会话最后消息失败: conversationId={}", conversationId);
+                log.debug("会话已有更新的最后消息，跳过: conversationId={}, messageId={}", conversationId, messageId);
             }
             
         } catch (Exception e) {
@@ -428,31 +499,40 @@ public class ChatServiceImpl implements ChatService {
     }
 
     /**
-     * 增加用户的未读消息数
+     * 丢弃用户缓存的已读状态
+     * 未读数由已读水位计算，不再单独维护计数，下次读取时重新加载
      */
     @Override
-    @Transactional
-    public void incrementUnreadCount(Long conversationId, Integer userId) {
-        try {
-            log.debug("增加未读消息数: conversationId={}, userId={}", conversationId, userId);
-            
-            int updateResult = chatMapper.incrementUnreadCount(conversationId, userId);
-            
-            if (updateResult > 0) {
-                log.debug("增加未读消息数成功");
-            } else {
-                log.warn("增加未读消息数失败: conversationId={}, userId={}", conversationId, userId);
+    public void invalidateReadState(Long conversationId, Integer userId) {
+        log.debug("丢弃已读状态缓存: conversationId={}, userId={}", conversationId, userId);
+        readStateService.invalidate(userId);
+    }
+    
+    /**
+     * 按双方的已读水位补充消息的已读状态，消息ID不大于接收者水位的视为已读
+     */
+    private void applyReadWatermarks(List<ChatMessageDTO> messages, Integer currentUserId, Integer targetUserId) {
+        Long conversationId = messages.get(0).getConversationId();
+        if (conversationId == null) {
+            return;
+        }
+        long myWatermark = readStateService.getWatermark(conversationId, currentUserId);
+        long targetWatermark = readStateService.getWatermark(conversationId, targetUserId);
+        for (ChatMessageDTO message : messages) {
+            if (message.isRead() || message.getMessageId() == null) {
+                continue;
+            }
+            long watermark = currentUserId.equals(message.getReceiverId()) ? myWatermark : targetWatermark;
+            if (message.getMessageId() <= watermark) {
+                message.setMessageStatus(3);
             }
-            
-        } catch (Exception e) {
-            log.error("增加未读消息数异常: conversationId={}, userId={}", conversationId, userId, e);
         }
     }
 
     /**
      * 获取消息内容摘要，用于会话列表显示
      */
-    private String getMessageContentSummary(String content, Integer messageType) {
+    public static String getMessageContentSummary(String content, Integer messageType) {
         if (messageType == null) {
             return "未知消息";
         }
@@ -503,20 +583,25 @@ public class ChatServiceImpl implements ChatService {
                 message.setCreateTime(LocalDateTime.now());
             }
             
-            // 3. 插入消息到数据库
+            // 3. 插入消息到数据库，异步管道回退到同步写库时消息ID已预分配
+            if (message.getMessageId() == null) {
+                message.setMessageId(idGenerator.nextId());
+            }
             int insertResult = chatMapper.insertMessage(message);
             if (insertResult <= 0) {
                 log.error("插入消息失败");
                 return null;
             }
+            searchIndex.addAfterCommit(message);
             
-            // 4. 更新会话的最后一条消息信息
+            // 4. 更新会话的最后一条消息信息，同步日志最后写入，与其他聊天事务保持相同的加锁顺序
             String messageContent = getMessageContentSummary(message.getContent(), message.getMessageType());
             updateConversationLastMessage(message.getConversationId(), message.getMessageId(), 
                     messageContent, message.getMessageType());
+            chatSyncService.appendMessages(Collections.singletonList(message));
             
-            // 5. 增加接收者的未读消息数
-            incrementUnreadCount(message.getConversationId(), message.getReceiverId());
+            // 5. 提交后在内存中增加接收者的未读消息数
+            readStateService.onMessageAfterCommit(message);
             
             log.info("消息发送成功: messageId={}", message.getMessageId());
             return message.getMessageId();
@@ -539,6 +624,11 @@ public class ChatServiceImpl implements ChatService {
             // 更新用户在线状态
             LocalDateTime statusTime = LocalDateTime.now();
             int status = isOnline ? 1 : 0;
+            if (isOnline) {
+                presenceService.online(userId);
+            } else {
+                presenceService.offline(userId);
+            }
             int updateResult = userOnlineStatusMapper.updateUserOnlineStatus(userId, status, statusTime, "WebSocket", statusTime);
             
             if (updateResult > 0) {
@@ -562,6 +652,8 @@ public class ChatServiceImpl implements ChatService {
         try {
             log.info("设置用户在线: userId={}, deviceInfo={}", userId, deviceInfo);
             
+            presenceService.online(userId);
+            // 设备信息只在上线时写入，只在第一个连接建立时发生
             int updateResult = userOnlineStatusMapper.setUserOnline(userId, deviceInfo, clientType, 
                                                                    sessionToken, ipAddress, location);
             
@@ -578,21 +670,13 @@ public class ChatServiceImpl implements ChatService {
 
     /**
      * 设置用户离线
+     * 只更新内存，由在线状态服务定期落库
      */
     @Override
-    @Transactional
     public void setUserOffline(Integer userId) {
         try {
             log.info("设置用户离线: userId={}", userId);
-            
-            int updateResult = userOnlineStatusMapper.setUserOffline(userId);
-            
-            if (updateResult > 0) {
-                log.info("设置用户离线成功: userId={}", userId);
-            } else {
-                log.warn("设置用户离线失败: userId={}", userId);
-            }
-            
+            presenceService.offline(userId);
         } catch (Exception e) {
             log.error("设置用户离线异常: userId={}", userId, e);
         }
@@ -600,21 +684,13 @@ public class ChatServiceImpl implements ChatService {
 
     /**
      * 更新用户活跃时间
+     * 心跳只更新内存，由在线状态服务定期落库
      */
     @Override
-    @Transactional
     public void updateUserActiveTime(Integer userId) {
         try {
             log.debug("更新用户活跃时间: userId={}", userId);
-            
-            int updateResult = userOnlineStatusMapper.updateActiveTime(userId);
-            
-            if (updateResult > 0) {
-                log.debug("更新用户活跃时间成功: userId={}", userId);
-            } else {
-                log.debug("更新用户活跃时间失败: userId={}", userId);
-            }
-            
+            presenceService.heartbeat(userId);
         } catch (Exception e) {
             log.error("更新用户活跃时间异常: userId={}", userId, e);
         }
@@ -626,12 +702,9 @@ public class ChatServiceImpl implements ChatService {
     @Override
     public Boolean isUserOnline(Integer userId) {
         try {
-            log.debug("检查用户在线状态: userId={}", userId);
-            
-            Boolean isOnline = userOnlineStatusMapper.isUserOnline(userId);
+            boolean isOnline = presenceService.isOnline(userId);
             log.debug("用户{}在线状态: {}", userId, isOnline);
-            
-            return isOnline != null ? isOnline : false;
+            return isOnline;
             
         } catch (Exception e) {
             log.error("检查用户在线状态异常: userId={}", userId, e);
@@ -651,22 +724,7 @@ public class ChatServiceImpl implements ChatService {
                 return new HashMap<>();
             }
             
-            List<Map<String, Object>> results = userOnlineStatusMapper.batchGetOnlineStatus(userIds);
-            Map<Integer, Boolean> onlineStatusMap = new HashMap<>();
-            
-            for (Map<String, Object> result : results) {
-                Integer userId = (Integer) result.get("user_id");
-                Boolean isOnline = ((Number) result.get("is_online")).intValue() == 1;
-                onlineStatusMap.put(userId, isOnline);
-            }
-            
-            // 对于未查询到的用户，设置为离线
-            for (Integer userId : userIds) {
-                if (!onlineStatusMap.containsKey(userId)) {
-                    onlineStatusMap.put(userId, false);
-                }
-            }
-            
+            Map<Integer, Boolean> onlineStatusMap = presenceService.batchCheck(userIds);
             log.debug("批量查询在线状态结果: {}", onlineStatusMap);
             return onlineStatusMap;
             
@@ -2,13 +2,15 @@ package org.example.afd.service.impl;
 
 import org.example.afd.dto.CategoryDTO;
 import org.example.afd.dto.MerchantDTO;
-import org.example.afd.mapper.CategoryMapper;
 import org.example.afd.mapper.MerchantMapper;
 import org.example.afd.mapper.UserRelationMapper;
 import org.example.afd.model.Merchant;
 import org.example.afd.service.CategoryService;
+import org.example.afd.service.CategoryTree;
 import org.example.afd.service.FileService;
 import org.example.afd.service.MerchantService;
+import org.example.afd.service.ProductDetailCache;
+import org.example.afd.service.SuggestionIndex;
 import org.example.afd.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,7 +38,7 @@ public class MerchantServiceImpl implements MerchantService {
     private MerchantMapper merchantMapper;
 
     @Autowired
-    private CategoryMapper categoryMapper;
+    private CategoryTree categoryTree;
 
     @Autowired
     private UserRelationMapper userRelationMapper;
@@ -50,6 +52,12 @@ public class MerchantServiceImpl implements MerchantService {
     @Autowired
     private CategoryService categoryService;
 
+    @Autowired
+    private SuggestionIndex suggestionIndex;
+
+    @Autowired
+    private ProductDetailCache productDetailCache;
+
     @Override
     public MerchantDTO getMerchantInfo(Long merchantId) {
         logger.info("获取商家信息, merchantId={}", merchantId);
@@ -98,8 +106,8 @@ public class MerchantServiceImpl implements MerchantService {
     public List<CategoryDTO> getMerchantCategories(Long merchantId) {
         logger.info("获取商家分类列表: merchantId={}", merchantId);
         try {
-            // 直接使用CategoryMapper查询，转换结果为CategoryDTO列表
-            List<Map<String, Object>> categories = categoryMapper.selectCategoriesByMerchantId(merchantId);
+            // 分类不再与商家关联，直接取分类树快照中启用的分类
+            List<Map<String, Object>> categories = categoryTree.list(true);
             List<CategoryDTO> categoryDTOList = new ArrayList<>();
             
             if (categories != null && !categories.isEmpty()) {
@@ -201,6 +209,8 @@ public class MerchantServiceImpl implements MerchantService {
         // 更新商家信息
         int result = merchantMapper.updateMerchant(merchantDTO);
         if (result > 0) {
+            suggestionIndex.merchantChangedAfterCommit(merchantDTO.getMerchantId());
+            productDetailCache.merchantChangedAfterCommit(merchantDTO.getMerchantId());
             return merchantMapper.selectMerchantById(merchantDTO.getMerchantId());
         }
         return null;
@@ -217,6 +227,7 @@ public class MerchantServiceImpl implements MerchantService {
 
             // 更新商家Logo
             merchantMapper.updateMerchantLogo(merchantId, fileUrl);
+            productDetailCache.merchantChangedAfterCommit(merchantId);
 
             // 返回更新后的商家信息
             return merchantMapper.selectMerchantById(merchantId);
@@ -237,6 +248,7 @@ public class MerchantServiceImpl implements MerchantService {
 
             // 更新商家营业执照
             merchantMapper.updateMerchantLicense(merchantId, fileUrl);
+            productDetailCache.merchantChangedAfterCommit(merchantId);
 
             // 返回更新后的商家信息
             return merchantMapper.selectMerchantById(merchantId);
@@ -260,6 +272,7 @@ public class MerchantServiceImpl implements MerchantService {
             int result = merchantMapper.updateMerchantPaymentInfo(merchantId, bankAccount, bankName, settlementCycle);
             
             if (result > 0) {
+                productDetailCache.merchantChangedAfterCommit(merchantId);
                 // 返回更新后的商家信息
                 return merchantMapper.selectMerchantById(merchantId);
             }
@@ -340,6 +353,7 @@ public class MerchantServiceImpl implements MerchantService {
 
             // 插入记录
             merchantMapper.insert(merchant);
+            suggestionIndex.merchantChangedAfterCommit(merchant.getMerchantId());
 
             // 返回插入后的商家信息
             return convertToDTO(merchantMapper.selectByPrimaryKey(merchant.getMerchantId()));
@@ -5,9 +5,11 @@ import org.example.afd.dto.NotificationDTO;
 import org.example.afd.enums.NotificationType;
 import org.example.afd.mapper.NotificationMapper;
 import org.example.afd.mapper.PostMapper;
+import org.example.afd.model.CursorPage;
 import org.example.afd.model.Result;
 import org.example.afd.pojo.Notification;
 import org.example.afd.service.NotificationService;
+import org.example.afd.utils.CursorUtils;
 import org.example.afd.utils.DateUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -93,31 +95,58 @@ public class NotificationServiceImpl implements NotificationService {
 
         try {
             List<NotificationDTO> notifications = notificationMapper.getNotificationsByReceiverId(userId, offset, size);
-            // 数据后处理
-            for (NotificationDTO dto : notifications) {
-                // 1. 设置易读的相对时间
-                dto.setFormattedTime(DateUtils.getTimeAgo(dto.getCreateTime()));
-                // 2. 设置类型描述
-                dto.getTypeDescription();
-                // 3. 根据类型获取封面图
-                if (dto.getType() == NotificationType.LIKE_POST || dto.getType() == NotificationType.COMMENT_POST) {
-                    List<String> mediaUrls = postMapper.getPostMediaUrls(dto.getTargetId());
+            fillNotificationDetails(notifications);
+            return Result.success(notifications);
+        } catch (Exception e) {
+            log.error("获取用户 {} 的通知列表失败", userId, e);
+            return Result.error("获取通知列表失败");
+        }
+    }
+
+    @Override
+    public Result<CursorPage<NotificationDTO>> getNotificationsByCursor(Long userId, String cursor, int size) {
+        size = CursorPage.clampSize(size, 10);
+
+        try {
+            long[] position = CursorUtils.decode(cursor, 2);
+            LocalDateTime cursorTime = position == null ? null : CursorUtils.toDateTime(position[0]);
+            Long cursorId = position == null ? null : position[1];
+            List<NotificationDTO> rows = notificationMapper.getNotificationsByReceiverIdCursor(userId, cursorTime, cursorId, size + 1);
+            CursorPage<NotificationDTO> page = CursorPage.of(rows, size,
+                    dto -> CursorUtils.encode(CursorUtils.toMillis(dto.getCreateTime()), dto.getId()));
+            fillNotificationDetails(page.getList());
+            return Result.success(page);
+        } catch (IllegalArgumentException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("获取用户 {} 的通知列表失败", userId, e);
+            return Result.error("获取通知列表失败");
+        }
+    }
+
+    /**
+     * 通知数据后处理：相对时间、类型描述、封面图
+     */
+    private void fillNotificationDetails(List<NotificationDTO> notifications) {
+        for (NotificationDTO dto : notifications) {
+            // 1. 设置易读的相对时间
+            dto.setFormattedTime(DateUtils.getTimeAgo(dto.getCreateTime()));
+            // 2. 设置类型描述
+            dto.getTypeDescription();
+            // 3. 根据类型获取封面图
+            if (dto.getType() == NotificationType.LIKE_POST || dto.getType() == NotificationType.COMMENT_POST) {
+                List<String> mediaUrls = postMapper.getPostMediaUrls(dto.getTargetId());
+                if (mediaUrls != null && !mediaUrls.isEmpty()) {
+                    dto.setTargetCoverUrl(mediaUrls.get(0));
+                }
+            } else if (dto.getType() == NotificationType.REPLY_COMMENT || dto.getType() == NotificationType.LIKE_COMMENT) {
+                if (dto.getSecondaryTargetId() != null) {
+                    List<String> mediaUrls = postMapper.getPostMediaUrls(dto.getSecondaryTargetId());
                     if (mediaUrls != null && !mediaUrls.isEmpty()) {
                         dto.setTargetCoverUrl(mediaUrls.get(0));
                     }
-                } else if (dto.getType() == NotificationType.REPLY_COMMENT || dto.getType() == NotificationType.LIKE_COMMENT) {
-                    if (dto.getSecondaryTargetId() != null) {
-                         List<String> mediaUrls = postMapper.getPostMediaUrls(dto.getSecondaryTargetId());
-                         if (mediaUrls != null && !mediaUrls.isEmpty()) {
-                            dto.setTargetCoverUrl(mediaUrls.get(0));
-                        }
-                    }
                 }
             }
-            return Result.success(notifications);
-        } catch (Exception e) {
-            log.error("获取用户 {} 的通知列表失败", userId, e);
-            return Result.error("获取通知列表失败");
         }
     }
 
@@ -12,10 +12,14 @@ import org.example.afd.mapper.PostMapper;
 import org.example.afd.mapper.MerchantMapper;
 import org.example.afd.mapper.PaymentMapper;
 import org.example.afd.mapper.AddressMapper;
+import org.example.afd.model.CursorPage;
 import org.example.afd.model.PageResult;
 import org.example.afd.model.Result;
 import org.example.afd.model.Merchant;
+import org.example.afd.service.OrderExpiryService;
 import org.example.afd.service.OrderService;
+import org.example.afd.utils.CursorUtils;
+import org.example.afd.utils.SnowflakeIdGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,7 +28,6 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.Arrays;
 import java.util.stream.Collectors;
@@ -57,6 +60,12 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private AddressMapper addressMapper;
     
+    @Autowired
+    private OrderExpiryService orderExpiryService;
+    
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+    
     /**
      * 创建订阅订单
      */
@@ -118,6 +127,7 @@ public class OrderServiceImpl implements OrderService {
             if (result <= 0) {
                 return Result.error("创建订单失败");
             }
+            orderExpiryService.schedule(orderNo, order.getExpireTime());
             
             // 6. 创建订单项（订阅计划项）
             Map<String, Object> orderItem = new HashMap<>();
@@ -271,6 +281,7 @@ public class OrderServiceImpl implements OrderService {
                     log.error("创建订单失败: {}", orderNo);
                     continue;
                 }
+                orderExpiryService.schedule(orderNo, order.getExpireTime());
                 
                 log.info("订单插入成功: orderNo={}, orderId={}", orderNo, order.getOrderId());
                 
@@ -299,8 +310,7 @@ public class OrderServiceImpl implements OrderService {
                     totalAmount = totalAmount.add(itemAmount);
                     
                     // 同时创建支付记录
-                    String paymentNo = "PAY" + System.currentTimeMillis() + 
-                                     String.format("%04d", new Random().nextInt(10000));
+                    String paymentNo = idGenerator.nextNo("PAY");
                     
                     Payment payment = new Payment();
                     payment.setPaymentNo(paymentNo);
@@ -427,6 +437,7 @@ public class OrderServiceImpl implements OrderService {
                     log.error("创建订单失败: {}", orderNo);
                     continue;
                 }
+                orderExpiryService.schedule(orderNo, order.getExpireTime());
                 
                 // 创建订单项 - 一个订单只包含一个SKU
                 Map<String, Object> orderItem = new HashMap<>();
@@ -563,6 +574,7 @@ public class OrderServiceImpl implements OrderService {
                     log.error("创建订单失败: {}", orderNo);
                     continue;
                 }
+                orderExpiryService.schedule(orderNo, order.getExpireTime());
                 
                 // 创建订单项 - 一个订单只包含一个SKU
                 Map<String, Object> orderItem = new HashMap<>();
@@ -652,83 +664,14 @@ public class OrderServiceImpl implements OrderService {
     @Override
     public Result<List<OrderDTO>> getUserOrders(Long userId, Integer orderType, Integer orderStatus, Integer page, Integer size) {
         try {
-            log.info("=== 开始获取用户订单列表 ===");
-            log.info("参数: userId={}, orderType={}, orderStatus={}, page={}, size={}", 
+            log.info("获取用户订单列表: userId={}, orderType={}, orderStatus={}, page={}, size={}", 
                     userId, orderType, orderStatus, page, size);
             
             int offset = (page - 1) * size;
-            log.info("计算offset: {}", offset);
-            
-            log.info("=== 开始数据库查询 ===");
-            List<Map<String, Object>> orderDataList = orderMapper.selectUserOrders(userId, orderType, orderStatus, offset, size);
-            log.info("=== 数据库查询完成 ===");
-            log.info("查询到的原始订单数据数量: {}", orderDataList != null ? orderDataList.size() : 0);
-            
-            if (orderDataList != null && !orderDataList.isEmpty()) {
-                log.info("=== 开始处理订单数据 ===");
-                for (int i = 0; i < orderDataList.size(); i++) {
-                    Map<String, Object> orderData = orderDataList.get(i);
-                    log.info("原始订单数据[{}]: {}", i, orderData.keySet());
-                    log.info("订单ID: {}, 订单号: {}, 状态: {}", 
-                            orderData.get("order_id"), orderData.get("order_no"), orderData.get("order_status"));
-                }
-            }
+            List<OrderDTO> orderDTOList = orderMapper.selectUserOrders(userId, orderType, orderStatus, offset, size);
+            attachOrderItems(orderDTOList);
             
-            List<OrderDTO> orderDTOList = new ArrayList<>();
-            for (Map<String, Object> orderData : orderDataList) {
-                OrderDTO orderDTO = convertToOrderDTO(orderData);
-                
-                // 查询订单项
-                Long orderId = getLongValue(orderData, "order_id");
-                if (orderId != null) {
-                    log.info("=== 查询订单[{}]的订单项 ===", orderId);
-                    List<Map<String, Object>> orderItems = orderMapper.selectOrderItemsByOrderId(orderId);
-                    log.info("订单[{}]的订单项数量: {}", orderId, orderItems != null ? orderItems.size() : 0);
-                    
-                    // 转换订单项为DTO
-                    List<org.example.afd.dto.OrderItemDTO> orderItemDTOs = new ArrayList<>();
-                    for (Map<String, Object> itemData : orderItems) {
-                        log.info("处理订单项数据: {}", itemData.keySet());
-                        log.info("sku_name: '{}', sku_image: '{}'", itemData.get("sku_name"), itemData.get("sku_image"));
-                        
-                        org.example.afd.dto.OrderItemDTO itemDTO = new org.example.afd.dto.OrderItemDTO();
-                        itemDTO.setOrderItemId(getLongValue(itemData, "item_id"));
-                        itemDTO.setOrderId(orderId);
-                        itemDTO.setProductId(getLongValue(itemData, "product_id"));
-                        itemDTO.setSkuId(getLongValue(itemData, "sku_id"));
-                        itemDTO.setProductName((String) itemData.get("product_name"));
-                        
-                        // 直接设置SKU字段 - 数据库sku_name -> skuName, sku_image -> skuImage
-                        String skuName = (String) itemData.get("sku_name");
-                        String skuImage = (String) itemData.get("sku_image");
-                        
-                        itemDTO.setSkuName(skuName);     // 数据库sku_name -> skuName
-                        itemDTO.setSkuImage(skuImage);   // 数据库sku_image -> skuImage
-                        
-                        log.info("设置SKU字段 - skuName: '{}', skuImage: '{}'", skuName, skuImage);
-                        
-                        itemDTO.setPrice(getBigDecimalValue(itemData, "unit_price") != null ? 
-                                getBigDecimalValue(itemData, "unit_price").doubleValue() : 0.0);
-                        itemDTO.setQuantity(getIntegerValue(itemData, "quantity"));
-                        itemDTO.setTotalPrice(getBigDecimalValue(itemData, "item_amount") != null ? 
-                                getBigDecimalValue(itemData, "item_amount").doubleValue() : 0.0);
-                        
-                        orderItemDTOs.add(itemDTO);
-                        log.info("订单项DTO添加完成: productName={}, skuName={}, skuImage={}", 
-                                itemDTO.getProductName(), itemDTO.getSkuName(), itemDTO.getSkuImage());
-                    }
-                    
-                    orderDTO.setOrderItems(orderItemDTOs);
-                    log.info("订单[{}]的订单项设置完成，共{}个", orderId, orderItemDTOs.size());
-                }
-                
-                orderDTOList.add(orderDTO);
-                log.info("订单DTO添加完成: orderNo={}, status={}, orderItems={}", 
-                        orderDTO.getOrderNo(), orderDTO.getStatus(), 
-                        orderDTO.getOrderItems() != null ? orderDTO.getOrderItems().size() : 0);
-            }
-            
-            log.info("=== 最终返回订单列表，共{}条 ===", orderDTOList.size());
+            log.info("用户订单列表查询完成，共{}条", orderDTOList.size());
             return Result.success(orderDTOList);
             
         } catch (Exception e) {
@@ -737,6 +680,31 @@ public class OrderServiceImpl implements OrderService {
         }
     }
     
+    /**
+     * 游标分页获取用户订单列表
+     */
+    @Override
+    public Result<CursorPage<OrderDTO>> getUserOrdersByCursor(Long userId, Integer orderType, Integer orderStatus, String cursor, Integer size) {
+        size = CursorPage.clampSize(size, 10);
+        try {
+            long[] position = CursorUtils.decode(cursor, 2);
+            LocalDateTime cursorTime = position == null ? null : CursorUtils.toDateTime(position[0]);
+            Long cursorId = position == null ? null : position[1];
+            
+            List<OrderDTO> rows = orderMapper.selectUserOrdersByCursor(userId, orderType, orderStatus, cursorTime, cursorId, size + 1);
+            CursorPage<OrderDTO> page = CursorPage.of(rows, size,
+                    order -> CursorUtils.encode(CursorUtils.toMillis(order.getCreateTime()), order.getOrderId()));
+            attachOrderItems(page.getList());
+            return Result.success(page);
+            
+        } catch (IllegalArgumentException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("游标分页获取用户订单列表失败", e);
+            return Result.error("获取订单列表失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 获取用户订单详情
      */
@@ -1138,10 +1106,7 @@ public class OrderServiceImpl implements OrderService {
      * 生成订单号
      */
     private String generateOrderNo(String prefix) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
-        String timestamp = LocalDateTime.now().format(formatter);
-        String random = String.valueOf((int) (Math.random() * 9000) + 1000);
-        return prefix + timestamp + random;
+        return idGenerator.nextNo(prefix);
     }
     
     /**
@@ -1484,30 +1449,9 @@ public class OrderServiceImpl implements OrderService {
             int offset = (page - 1) * size;
             
             // 调用mapper方法获取筛选后的订单列表
-            List<Map<String, Object>> orderDataList = orderMapper.selectMerchantOrdersWithFilter(
+            List<OrderDTO> orderDTOList = orderMapper.selectMerchantOrdersWithFilter(
                     merchantId, status, keyword, timeFilter, refundStatus, offset, size);
-            
-            List<OrderDTO> orderDTOList = new ArrayList<>();
-            for (Map<String, Object> orderData : orderDataList) {
-                OrderDTO orderDTO = convertToOrderDTO(orderData);
-                
-                // 查询订单项
-                Long orderId = getLongValue(orderData, "order_id");
-                if (orderId != null) {
-                    List<Map<String, Object>> orderItems = orderMapper.selectOrderItemsByOrderId(orderId);
-                    
-                    // 转换订单项为DTO
-                    List<org.example.afd.dto.OrderItemDTO> orderItemDTOs = new ArrayList<>();
-                    for (Map<String, Object> itemData : orderItems) {
-                        org.example.afd.dto.OrderItemDTO itemDTO = convertToOrderItemDTO(itemData);
-                        orderItemDTOs.add(itemDTO);
-                    }
-                    
-                    orderDTO.setOrderItems(orderItemDTOs);
-                }
-                
-                orderDTOList.add(orderDTO);
-            }
+            attachOrderItems(orderDTOList);
             
             log.info("商家订单列表查询完成，共{}条订单", orderDTOList.size());
             return Result.success(orderDTOList);
@@ -1518,6 +1462,32 @@ public class OrderServiceImpl implements OrderService {
         }
     }
 
+    /**
+     * 批量加载一页订单的订单项：一次 IN 查询后在内存中按订单分组
+     */
+    private void attachOrderItems(List<OrderDTO> orders) {
+        if (orders == null || orders.isEmpty()) {
+            return;
+        }
+        
+        List<Long> orderIds = orders.stream()
+                .map(OrderDTO::getOrderId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        
+        Map<Long, List<OrderItemDTO>> itemsByOrder = orderMapper.selectOrderItemsByOrderIds(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderItemDTO::getOrderId));
+        for (OrderDTO order : orders) {
+            order.setOrderItems(itemsByOrder.getOrDefault(order.getOrderId(), new ArrayList<>()));
+        }
+        log.debug("批量加载订单项完成: orders={}, items={}", orderIds.size(), 
+                itemsByOrder.values().stream().mapToInt(List::size).sum());
+    }
+    
     private OrderItemDTO convertToOrderItemDTO(Map<String, Object> itemMap) {
         OrderItemDTO itemDTO = new OrderItemDTO();
         
@@ -1703,15 +1673,8 @@ public class OrderServiceImpl implements OrderService {
             log.info("获取超时订单列表: merchantId={}, page={}, size={}", merchantId, page, size);
             
             int offset = (page - 1) * size;
-            List<Map<String, Object>> orderDataList = orderMapper.getOvertimeOrders(merchantId, offset, size);
-            
-            List<OrderDTO> orderDTOList = new ArrayList<>();
-            for (Map<String, Object> orderData : orderDataList) {
-                OrderDTO orderDTO = convertToOrderDTO(orderData);
-                if (orderDTO != null) {
-                    orderDTOList.add(orderDTO);
-                }
-            }
+            List<OrderDTO> orderDTOList = orderMapper.getOvertimeOrders(merchantId, offset, size);
+            attachOrderItems(orderDTOList);
             
             log.info("超时订单列表获取成功，共{}条", orderDTOList.size());
             return orderDTOList;
@@ -1728,15 +1691,8 @@ public class OrderServiceImpl implements OrderService {
             log.info("获取待处理退款订单列表: merchantId={}, page={}, size={}", merchantId, page, size);
             
             int offset = (page - 1) * size;
-            List<Map<String, Object>> orderDataList = orderMapper.getPendingRefundOrders(merchantId, offset, size);
-            
-            List<OrderDTO> orderDTOList = new ArrayList<>();
-            for (Map<String, Object> orderData : orderDataList) {
-                OrderDTO orderDTO = convertToOrderDTO(orderData);
-                if (orderDTO != null) {
-                    orderDTOList.add(orderDTO);
-                }
-            }
+            List<OrderDTO> orderDTOList = orderMapper.getPendingRefundOrders(merchantId, offset, size);
+            attachOrderItems(orderDTOList);
             
             log.info("待处理退款订单列表获取成功，共{}条", orderDTOList.size());
             return orderDTOList;
@@ -7,6 +7,7 @@ import org.example.afd.mapper.PaymentMapper;
 import org.example.afd.mapper.PaymentChannelMapper;
 import org.example.afd.model.Result;
 import org.example.afd.service.PaymentService;
+import org.example.afd.utils.SnowflakeIdGenerator;
 import org.example.afd.dto.PaymentDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +45,9 @@ public class PaymentServiceImpl implements PaymentService {
     @Autowired
     private PaymentChannelMapper paymentChannelMapper;
     
+    @Autowired
+    private SnowflakeIdGenerator idGenerator;
+    
     /**
      * 创建支付
      */
@@ -80,8 +84,7 @@ public class PaymentServiceImpl implements PaymentService {
             }
             
             // 生成支付流水号
-            String paymentNo = "PAY" + System.currentTimeMillis() + 
-                              String.format("%04d", new Random().nextInt(10000));
+            String paymentNo = idGenerator.nextNo("PAY");
             
             // 创建支付记录
             Payment payment = new Payment();
@@ -409,8 +412,7 @@ public class PaymentServiceImpl implements PaymentService {
             }
             
             // 生成退款单号
-            String refundNo = "REF" + System.currentTimeMillis() + 
-                             String.format("%04d", new Random().nextInt(10000));
+            String refundNo = idGenerator.nextNo("REF");
             
             // 更新订单状态为退款中
             order.setOrderStatus(6); // 退款中
@@ -15,6 +15,7 @@ import org.example.afd.mapper.PostMapper;
 import org.example.afd.mapper.CommentMapper;
 import org.example.afd.mapper.ReplyMapper;
 import org.example.afd.mapper.UserMapper;
+import org.example.afd.model.CursorPage;
 import org.example.afd.model.Result;
 import org.example.afd.dto.CommentDTO;
 import org.example.afd.dto.PostDTO;
@@ -27,7 +28,13 @@ import org.example.afd.pojo.Post;
 import org.example.afd.pojo.Reply;
 import org.example.afd.pojo.ReplyLike;
 import org.example.afd.pojo.User;
+import org.example.afd.service.CounterBuffer;
+import org.example.afd.service.FeedTimelineService;
+import org.example.afd.service.PostHydrator;
+import org.example.afd.service.PostRankingService;
 import org.example.afd.service.PostService;
+import org.example.afd.service.SuggestionIndex;
+import org.example.afd.utils.CursorUtils;
 import org.example.afd.utils.DateUtils;
 import org.example.afd.service.OrderService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -64,6 +71,21 @@ public class PostServiceImpl implements PostService {
     @Autowired
     private OrderService orderService;
     
+    @Autowired
+    private FeedTimelineService feedTimelineService;
+    
+    @Autowired
+    private PostRankingService postRankingService;
+    
+    @Autowired
+    private PostHydrator postHydrator;
+
+    @Autowired
+    private SuggestionIndex suggestionIndex;
+    
+    @Autowired
+    private CounterBuffer counterBuffer;
+    
     // =====================================================
     // ============== 一、动态内容相关方法 =================
     // =====================================================
@@ -135,6 +157,7 @@ public class PostServiceImpl implements PostService {
                             log.info("标签不存在，创建新标签: {}", tagName);
                             postMapper.createTag(tagName);
                             tagId = postMapper.getTagIdByName(tagName);
+                            suggestionIndex.tagAddedAfterCommit(tagId, tagName);
                         }
                     }
                     
@@ -164,6 +187,9 @@ public class PostServiceImpl implements PostService {
             
             // 获取刚插入的动态详情并返回
             Post post2 = postMapper.getPostById(postId);
+            
+            // 推送到粉丝的关注时间线（事务提交后异步执行）
+            feedTimelineService.publish(postDTO.getUserId(), postId, post2 != null ? post2.getCreateTime() : null);
             PostDTO newPost = new PostDTO();
             
             // 手动转换Post为PostDTO
@@ -233,7 +259,7 @@ public class PostServiceImpl implements PostService {
             }
             
             // 增加浏览量
-            postMapper.incrementViewCount(postId);
+            counterBuffer.increment(CounterBuffer.Counter.POST_VIEW, postId, 1);
             
             // 构建返回对象
             PostDTO postDTO = new PostDTO();
@@ -241,10 +267,11 @@ public class PostServiceImpl implements PostService {
             postDTO.setUserId(post.getUserId().longValue());
             postDTO.setContent(post.getContent());
             postDTO.setVisibilityType(post.getVisibilityType());
-            postDTO.setLikeCount(post.getLikeCount());
-            postDTO.setCommentCount(post.getCommentCount());
-            postDTO.setCollectCount(post.getCollectCount());
-            postDTO.setViewCount(post.getViewCount() + 1); // 加上刚增加的1次浏览
+            // 计数叠加尚未回写的增量（包含本次浏览）
+            postDTO.setLikeCount(counterBuffer.overlay(CounterBuffer.Counter.POST_LIKE, postId, post.getLikeCount()));
+            postDTO.setCommentCount(counterBuffer.overlay(CounterBuffer.Counter.POST_COMMENT, postId, post.getCommentCount()));
+            postDTO.setCollectCount(counterBuffer.overlay(CounterBuffer.Counter.POST_COLLECT, postId, post.getCollectCount()));
+            postDTO.setViewCount(counterBuffer.overlay(CounterBuffer.Counter.POST_VIEW, postId, post.getViewCount()));
             postDTO.setCreateTime(post.getCreateTime());
             postDTO.setUsername(post.getUsername());
             postDTO.setUserAvatarUrl(post.getUserAvatarUrl());
@@ -357,7 +384,7 @@ public class PostServiceImpl implements PostService {
         try {
             int offset = (page - 1) * size;
             List<Post> posts = postMapper.getUserPosts(authorId, offset, size);
-            List<PostDTO> postDTOs = convertPostsToDTOs(posts, userId);
+            List<PostDTO> postDTOs = postHydrator.hydrate(posts, userId);
             log.info("获取到内容，准备返回数据");
             return Result.success(postDTOs);
         } catch (Exception e) {
@@ -378,9 +405,56 @@ public class PostServiceImpl implements PostService {
     public Result<List<PostDTO>> getFollowingPosts(Long userId, Integer page, Integer size) {
         try {
             int offset = (page - 1) * size;
+            if (feedTimelineService.isEnabled() && offset + size <= feedTimelineService.getMaxSize()) {
+                List<FeedTimelineService.Entry> entries = feedTimelineService.read(userId, null, null, offset + size);
+                if (entries != null) {
+                    List<Long> postIds = FeedTimelineService.postIds(entries.subList(Math.min(offset, entries.size()), entries.size()));
+                    return Result.success(postHydrator.hydrateByIds(postIds, userId));
+                }
+            }
             List<Post> posts = postMapper.getFollowingPosts(userId, offset, size);
-            List<PostDTO> postDTOs = convertPostsToDTOs(posts, userId);
-            return Result.success(postDTOs);
+            return Result.success(postHydrator.hydrate(posts, userId));
+        } catch (Exception e) {
+            log.error("获取关注用户动态列表失败", e);
+            return Result.error("获取关注用户动态列表失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 游标分页获取关注用户的动态列表
+     * 游标为 (create_time, post_id)
+     *
+     * @param userId 当前用户ID
+     * @param cursor 上一页返回的游标
+     * @param size 每页数量
+     * @return 动态列表及下一页游标
+     */
+    @Override
+    public Result<CursorPage<PostDTO>> getFollowingPostsByCursor(Long userId, String cursor, Integer size) {
+        size = CursorPage.clampSize(size, 10);
+        try {
+            long[] position = CursorUtils.decode(cursor, 2);
+            Date cursorTime = position == null ? null : new Date(position[0]);
+            Long cursorId = position == null ? null : position[1];
+            
+            if (feedTimelineService.isEnabled()) {
+                List<FeedTimelineService.Entry> entries = feedTimelineService.read(userId,
+                        position == null ? null : position[0], cursorId, size + 1);
+                if (entries != null) {
+                    CursorPage<FeedTimelineService.Entry> page = CursorPage.of(entries, size,
+                            entry -> CursorUtils.encode(entry.getTime(), entry.getPostId()));
+                    return Result.success(new CursorPage<>(postHydrator.hydrateByIds(FeedTimelineService.postIds(page.getList()), userId),
+                            page.getNextCursor(), page.isHasMore()));
+                }
+            }
+            
+            List<Post> rows = postMapper.getFollowingPostsByCursor(userId, cursorTime, cursorId, size + 1);
+            CursorPage<Post> page = CursorPage.of(rows, size,
+                    post -> CursorUtils.encode(CursorUtils.toMillis(post.getCreateTime()), post.getPostId()));
+            return Result.success(new CursorPage<>(postHydrator.hydrate(page.getList(), userId),
+                    page.getNextCursor(), page.isHasMore()));
+        } catch (IllegalArgumentException e) {
+            return Result.error(e.getMessage());
         } catch (Exception e) {
             log.error("获取关注用户动态列表失败", e);
             return Result.error("获取关注用户动态列表失败: " + e.getMessage());
@@ -399,8 +473,11 @@ public class PostServiceImpl implements PostService {
     public Result<List<PostDTO>> getRecommendPosts(Long userId, Integer page, Integer size) {
         try {
             int offset = (page - 1) * size;
-            List<Post> posts = postMapper.getRecommendPosts(offset, size);
-            List<PostDTO> postDTOs = convertPostsToDTOs(posts, userId);
+            // 优先使用预计算的排序快照，快照为空时回退到数据库排序
+            List<Long> rankedIds = postRankingService.page(offset, size);
+            List<PostDTO> postDTOs = rankedIds != null
+                    ? postHydrator.hydrateByIds(rankedIds, userId)
+                    : postHydrator.hydrate(postMapper.getRecommendPosts(offset, size), userId);
             return Result.success(postDTOs);
         } catch (Exception e) {
             log.error("获取推荐动态列表失败", e);
@@ -408,6 +485,38 @@ public class PostServiceImpl implements PostService {
         }
     }
     
+    /**
+     * 游标分页获取推荐动态列表
+     * 游标为 (like_count, create_time, post_id)；点赞数在翻页期间会变化，顺序是尽力而为的，
+     * 个别动态可能重复或被跳过
+     *
+     * @param userId 当前用户ID
+     * @param cursor 上一页返回的游标
+     * @param size 每页数量
+     * @return 动态列表及下一页游标
+     */
+    @Override
+    public Result<CursorPage<PostDTO>> getRecommendPostsByCursor(Long userId, String cursor, Integer size) {
+        size = CursorPage.clampSize(size, 10);
+        try {
+            long[] position = CursorUtils.decode(cursor, 3);
+            Integer cursorLikes = position == null ? null : (int) position[0];
+            Date cursorTime = position == null ? null : new Date(position[1]);
+            Long cursorId = position == null ? null : position[2];
+            List<Post> rows = postMapper.getRecommendPostsByCursor(cursorLikes, cursorTime, cursorId, size + 1);
+            CursorPage<Post> page = CursorPage.of(rows, size,
+                    post -> CursorUtils.encode(post.getLikeCount() == null ? 0 : post.getLikeCount(),
+                            CursorUtils.toMillis(post.getCreateTime()), post.getPostId()));
+            return Result.success(new CursorPage<>(postHydrator.hydrate(page.getList(), userId),
+                    page.getNextCursor(), page.isHasMore()));
+        } catch (IllegalArgumentException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("获取推荐动态列表失败", e);
+            return Result.error("获取推荐动态列表失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 点赞/取消点赞动态
      *
@@ -433,7 +542,8 @@ public class PostServiceImpl implements PostService {
                 // 已点赞，取消点赞
                 log.info("取消点赞");
                 postMapper.updatePostInteractionStatus(userId, postId, 1, 0); // 1表示点赞类型
-                postMapper.updateLikeCount(postId, -1);
+                counterBuffer.increment(CounterBuffer.Counter.POST_LIKE, postId, -1);
+                postRankingService.onInteraction(post, -1, 0);
                 return Result.success("取消点赞成功", false);
             } else {
                 // 未点赞，添加点赞
@@ -450,7 +560,8 @@ public class PostServiceImpl implements PostService {
                 }
                 
                 // 更新点赞数
-                postMapper.updateLikeCount(postId, 1);
+                counterBuffer.increment(CounterBuffer.Counter.POST_LIKE, postId, 1);
+                postRankingService.onInteraction(post, 1, 0);
                 return Result.success("点赞成功", true);
             }
         } catch (Exception e) {
@@ -483,7 +594,8 @@ public class PostServiceImpl implements PostService {
             if (isCollected) {
                 // 已收藏，取消收藏
                 postMapper.updatePostInteractionStatus(userId, postId, 2, 0); // 2表示收藏类型
-                postMapper.updateCollectCount(postId, -1);
+                counterBuffer.increment(CounterBuffer.Counter.POST_COLLECT, postId, -1);
+                postRankingService.onInteraction(post, 0, -1);
                 return Result.success("取消收藏成功", false);
             } else {
                 // 未收藏，添加收藏
@@ -498,7 +610,8 @@ public class PostServiceImpl implements PostService {
                 }
                 
                 // 更新收藏数
-                postMapper.updateCollectCount(postId, 1);
+                counterBuffer.increment(CounterBuffer.Counter.POST_COLLECT, postId, 1);
+                postRankingService.onInteraction(post, 0, 1);
                 return Result.success("收藏成功", true);
             }
         } catch (Exception e) {
@@ -520,7 +633,7 @@ public class PostServiceImpl implements PostService {
         try {
             int offset = (page - 1) * size;
             List<Post> posts = postMapper.getCollectedPosts(userId, offset, size);
-            List<PostDTO> postDTOs = convertPostsToDTOs(posts, userId);
+            List<PostDTO> postDTOs = postHydrator.hydrate(posts, userId);
             return Result.success(postDTOs);
         } catch (Exception e) {
             log.error("获取收藏动态列表失败", e);
@@ -528,85 +641,6 @@ public class PostServiceImpl implements PostService {
         }
     }
     
-    /**
-     * 将Post列表转换为PostDTO列表
-     * 
-     * @param posts Post实体列表
-     * @param userId 当前用户ID
-     * @return PostDTO列表
-     */
-    private List<PostDTO> convertPostsToDTOs(List<Post> posts, Long userId) {
-        List<PostDTO> dtoList = new ArrayList<>();
-        
-        for (Post post : posts) {
-            PostDTO dto = new PostDTO();
-            dto.setPostId(post.getPostId());
-            dto.setUserId(post.getUserId().longValue());
-            dto.setContent(post.getContent());
-            dto.setVisibilityType(post.getVisibilityType());
-            dto.setLikeCount(post.getLikeCount());
-            dto.setCommentCount(post.getCommentCount());
-            dto.setCollectCount(post.getCollectCount());
-            dto.setViewCount(post.getViewCount());
-            dto.setCreateTime(post.getCreateTime());
-            dto.setUsername(post.getUsername());
-            
-            // 设置头像 - 会同时设置userAvatarUrl和avatar两个字段
-            dto.setUserAvatarUrl(post.getUserAvatarUrl());
-            
-            if (post.getUserAvatarUrl() != null) {
-                log.debug("设置用户头像: avatar={}", post.getUserAvatarUrl());
-            } else {
-                log.warn("用户头像为空: userId={}, postId={}", post.getUserId(), post.getPostId());
-            }
-            
-            // 获取媒体和标签
-            List<String> mediaUrls = postMapper.getPostMediaUrls(post.getPostId());
-            List<TagDTO> postTags = postMapper.getPostTagsDTO(post.getPostId().intValue());
-            
-            // 设置媒体URL
-            dto.setMediaUrls(mediaUrls);
-            
-            // 设置mediaType
-            if (mediaUrls != null && !mediaUrls.isEmpty()) {
-                // 查询该帖子的媒体类型
-                Integer mediaType = postMapper.getPostMediaType(post.getPostId());
-                if (mediaType != null) {
-                    dto.setMediaType(mediaType);
-                    log.debug("设置媒体类型: postId={}, mediaType={}, mediaUrls.size={}", 
-                             post.getPostId(), mediaType, mediaUrls.size());
-                } else {
-                    // 如果没有查到类型但有URL，默认设为图片类型
-                    dto.setMediaType(1); // 1-图片
-                    log.warn("未查到媒体类型但有URL, 默认设为图片类型: postId={}, mediaUrls.size={}", 
-                            post.getPostId(), mediaUrls.size());
-                }
-            } else {
-                // 没有媒体
-                dto.setMediaType(0); // 0-无媒体
-            }
-            
-            // 设置标签
-            if (postTags != null) {
-                dto.setTags(postTags);
-            } else {
-                dto.setTags(new ArrayList<>());
-            }
-            
-            // 获取交互状态
-            if (userId != null) {
-                boolean isLiked = postMapper.isPostLiked(post.getPostId(), userId);
-                boolean isCollected = postMapper.isPostCollected(post.getPostId(), userId);
-                dto.setIsLiked(isLiked);
-                dto.setIsCollected(isCollected);
-            }
-            
-            dtoList.add(dto);
-        }
-        
-        return dtoList;
-    }
-    
     // =====================================================
     // ============== 二、评论相关方法 =====================
     // =====================================================
@@ -635,24 +669,7 @@ public class PostServiceImpl implements PostService {
             
             log.info("查询评论列表: postId={}, userId={}, 评论数量={}", postId, userId, comments.size());
             
-            // 格式化时间，使用带时区的格式
-            for (CommentDTO comment : comments) {
-                // 使用带时区的ISO格式
-                if (comment.getCreateTime() != null) {
-                    // 设置易读的相对时间描述
-                    comment.setFormattedTime(DateUtils.getTimeAgo(comment.getCreateTime()));
-                }
-                
-                // 格式化回复时间，同样带时区信息
-                if (comment.getReplies() != null) {
-                    for (ReplyDTO reply : comment.getReplies()) {
-                        if (reply.getCreateTime() != null) {
-                            // 设置易读的相对时间描述
-                            reply.setFormattedTime(DateUtils.getTimeAgo(reply.getCreateTime()));
-                        }
-                    }
-                }
-            }
+            formatCommentTimes(comments);
             
             return Result.success(comments);
         } catch (Exception e) {
@@ -660,6 +677,60 @@ public class PostServiceImpl implements PostService {
             return Result.error("获取评论失败: " + e.getMessage());
         }
     }
+    
+    /**
+     * 游标分页获取评论列表
+     * 游标为 (create_time, comment_id)
+     *
+     * @param postId 帖子ID
+     * @param userId 当前用户ID
+     * @param cursor 上一页返回的游标
+     * @param size 每页大小
+     * @return 评论列表及下一页游标
+     */
+    @Override
+    public Result<CursorPage<CommentDTO>> getCommentsByCursor(Long postId, Long userId, String cursor, Integer size) {
+        size = CursorPage.clampSize(size, 10);
+        try {
+            long[] position = CursorUtils.decode(cursor, 2);
+            LocalDateTime cursorTime = position == null ? null : CursorUtils.toDateTime(position[0]);
+            Long cursorId = position == null ? null : position[1];
+            Integer userIdInt = (userId != null) ? userId.intValue() : null;
+            List<CommentDTO> rows = commentMapper.getCommentsWithLikeStatusByCursor(
+                    postId, userIdInt, cursorTime, cursorId, size + 1);
+            CursorPage<CommentDTO> page = CursorPage.of(rows, size,
+                    comment -> CursorUtils.encode(CursorUtils.toMillis(comment.getCreateTime()), comment.getCommentId()));
+            formatCommentTimes(page.getList());
+            return Result.success(page);
+        } catch (IllegalArgumentException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("获取评论失败", e);
+            return Result.error("获取评论失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 为评论及其回复设置易读的相对时间描述，并叠加尚未回写的点赞数、回复数
+     */
+    private void formatCommentTimes(List<CommentDTO> comments) {
+        for (CommentDTO comment : comments) {
+            comment.setLikeCount(counterBuffer.overlay(CounterBuffer.Counter.COMMENT_LIKE, comment.getCommentId(), comment.getLikeCount()));
+            comment.setReplyCount(counterBuffer.overlay(CounterBuffer.Counter.COMMENT_REPLY, comment.getCommentId(), comment.getReplyCount()));
+            if (comment.getCreateTime() != null) {
+                comment.setFormattedTime(DateUtils.getTimeAgo(comment.getCreateTime()));
+            }
+            
+            if (comment.getReplies() != null) {
+                for (ReplyDTO reply : comment.getReplies()) {
+                    reply.setLikeCount(counterBuffer.overlay(CounterBuffer.Counter.COMMENT_LIKE, reply.getReplyId(), reply.getLikeCount()));
+                    if (reply.getCreateTime() != null) {
+                        reply.setFormattedTime(DateUtils.getTimeAgo(reply.getCreateTime()));
+                    }
+                }
+            }
+        }
+    }
 
     /**
      * 添加评论
@@ -711,7 +782,7 @@ public class PostServiceImpl implements PostService {
             commentMapper.insertComment(comment);
             
             // 更新动态评论数
-            postMapper.updateCommentCount(postId, 1);
+            counterBuffer.increment(CounterBuffer.Counter.POST_COMMENT, postId, 1);
             
             // 获取刚创建的评论信息
             CommentDTO commentDTO = commentMapper.getCommentWithLikeStatus(comment.getCommentId(), userId.intValue());
@@ -775,7 +846,7 @@ public class PostServiceImpl implements PostService {
                 commentMapper.updateCommentLike(commentLike);
                 
                 // 更新评论点赞数
-                commentMapper.updateCommentLikeCount(commentId, -1);
+                counterBuffer.increment(CounterBuffer.Counter.COMMENT_LIKE, commentId, -1);
                 
                 return Result.success("取消点赞成功", false);
             } else {
@@ -797,7 +868,7 @@ public class PostServiceImpl implements PostService {
                 }
                 
                 // 更新评论点赞数
-                commentMapper.updateCommentLikeCount(commentId, 1);
+                counterBuffer.increment(CounterBuffer.Counter.COMMENT_LIKE, commentId, 1);
                 
                 return Result.success("点赞成功", true);
             }
@@ -835,7 +906,7 @@ public class PostServiceImpl implements PostService {
                 commentMapper.updateCommentLike(commentLike);
                 
                 // 更新评论点赞数
-                commentMapper.updateCommentLikeCount(commentId, -1);
+                counterBuffer.increment(CounterBuffer.Counter.COMMENT_LIKE, commentId, -1);
                 
                 return Result.success("取消点赞成功", false);
             } else {
@@ -881,7 +952,7 @@ public class PostServiceImpl implements PostService {
             }
             
             // 获取该评论下的所有回复数量（用于更新动态评论数）
-            int replyCount = comment.getReplyCount();
+            Integer replyCount = counterBuffer.overlay(CounterBuffer.Counter.COMMENT_REPLY, commentId, comment.getReplyCount());
             log.info("删除评论及其回复: commentId={}, 回复数量={}", commentId, replyCount);
             
             // 先删除该评论下的所有回复
@@ -893,8 +964,8 @@ public class PostServiceImpl implements PostService {
             
             if (result > 0) {
                 // 更新帖子评论数：减去评论本身(1) + 所有回复数量
-                int totalDecrease = 1 + replyCount;
-                postMapper.updateCommentCount(comment.getPostId(), -totalDecrease);
+                int totalDecrease = 1 + (replyCount == null ? 0 : replyCount);
+                counterBuffer.increment(CounterBuffer.Counter.POST_COMMENT, comment.getPostId(), -totalDecrease);
                 log.info("已更新动态评论数，减少: {}", totalDecrease);
                 
                 return Result.success("删除评论成功", true);
@@ -981,17 +1052,17 @@ public class PostServiceImpl implements PostService {
             log.info("回复插入成功: replyId={}", reply.getReplyId());
             
             // 更新顶级评论的回复数
-            commentMapper.updateCommentReplyCount(commentId, 1);
+            counterBuffer.increment(CounterBuffer.Counter.COMMENT_REPLY, commentId, 1);
             log.info("更新顶级评论回复数: commentId={}, 增加1", commentId);
             
             // 如果有根评论且不等于顶级评论，也更新根评论回复数
             if (rootId != null && !rootId.equals(commentId)) {
-                commentMapper.updateCommentReplyCount(rootId, 1);
+                counterBuffer.increment(CounterBuffer.Counter.COMMENT_REPLY, rootId, 1);
                 log.info("更新根评论回复数: rootId={}, 增加1", rootId);
             }
             
             // 更新动态评论数
-            postMapper.updateCommentCount(reply.getPostId(), 1);
+            counterBuffer.increment(CounterBuffer.Counter.POST_COMMENT, reply.getPostId(), 1);
             log.info("更新动态评论数: postId={}, 增加1", reply.getPostId());
             
             // 构建返回的ReplyDTO
@@ -1312,7 +1383,7 @@ public class PostServiceImpl implements PostService {
                 replyMapper.updateReplyLike(replyLike);
                 
                 // 更新回复点赞数
-                replyMapper.updateReplyLikeCount(replyId, -1);
+                counterBuffer.increment(CounterBuffer.Counter.COMMENT_LIKE, replyId, -1);
                 
                 log.info("回复取消点赞成功: replyId={}, userId={}, 结果isLiked=false", replyId, userId);
                 return Result.success("取消点赞成功", false);
@@ -1335,7 +1406,7 @@ public class PostServiceImpl implements PostService {
                 }
                 
                 // 更新回复点赞数
-                replyMapper.updateReplyLikeCount(replyId, 1);
+                counterBuffer.increment(CounterBuffer.Counter.COMMENT_LIKE, replyId, 1);
                 
                 log.info("回复点赞成功: replyId={}, userId={}, 结果isLiked=true", replyId, userId);
                 return Result.success("点赞成功", true);
@@ -1675,7 +1746,7 @@ public class PostServiceImpl implements PostService {
             List<Post> posts = postMapper.getSubscriptionContents(planId, offset, size);
             
             // 使用统一的转换方法，包含媒体图片、标签和交互状态
-            List<PostDTO> postDTOs = convertPostsToDTOs(posts, userId);
+            List<PostDTO> postDTOs = postHydrator.hydrate(posts, userId);
             
             log.info("获取订阅内容成功: planId={}, 返回{}条动态", planId, postDTOs.size());
             return Result.success(postDTOs);
@@ -9,13 +9,17 @@ import org.example.afd.dto.SimpleSpecDTO;
 import org.example.afd.dto.MerchantDTO;
 import org.example.afd.dto.ProductSkuDTO;
 import org.example.afd.mapper.ProductMapper;
-import org.example.afd.mapper.CategoryMapper;
 import org.example.afd.mapper.ProductImageMapper;
 import org.example.afd.mapper.ProductDetailImageMapper;
 import org.example.afd.mapper.SimpleSpecMapper;
 import org.example.afd.mapper.MerchantMapper;
 import org.example.afd.model.Merchant;
+import org.example.afd.service.CategoryTree;
+import org.example.afd.service.CounterBuffer;
+import org.example.afd.service.ProductDetailCache;
+import org.example.afd.service.ProductSearchIndex;
 import org.example.afd.service.ProductService;
+import org.example.afd.service.SuggestionIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,7 +41,19 @@ public class ProductServiceImpl implements ProductService {
     private ProductMapper productMapper;
     
     @Autowired
-    private CategoryMapper categoryMapper;
+    private CounterBuffer counterBuffer;
+
+    @Autowired
+    private ProductDetailCache productDetailCache;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private SuggestionIndex suggestionIndex;
+    
+    @Autowired
+    private CategoryTree categoryTree;
     
     @Autowired
     private ProductImageMapper productImageMapper;
@@ -53,11 +69,27 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     public Map<String, Object> getProducts(int page, int size, Map<String, Object> params) {
+        // 有关键词时使用全文索引，索引未就绪时回退到数据库查询
+        Object keyword = params.get("keyword");
+        if (keyword != null && !keyword.toString().trim().isEmpty()) {
+            Map<String, Object> indexed = searchByIndex(page, size, params, keyword.toString());
+            if (indexed != null) {
+                return indexed;
+            }
+        }
+        
         Map<String, Object> result = new HashMap<>();
         
         // 计算分页参数
         int offset = (page - 1) * size;
         
+        // 按分类过滤时包含全部子孙分类
+        Long categoryId = getLongValue(params.get("categoryId"));
+        if (categoryId != null) {
+            params = new HashMap<>(params);
+            params.put("categoryIds", categoryTree.subtreeIds(categoryId));
+        }
+        
         // 查询商品列表
         List<Map<String, Object>> products = productMapper.selectProducts(params, offset, size);
         int total = productMapper.countProducts(params);
@@ -82,7 +114,25 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     public ProductDetailDTO getProductDetail(Long productId) {
-        logger.info("开始查询商品详情，商品ID: {}", productId);
+        ProductDetailDTO detailDTO = productDetailCache.get(productId, this::loadProductDetail);
+        if (detailDTO == null) {
+            return null;
+        }
+        
+        // 增加商品浏览量
+        try {
+            counterBuffer.increment(CounterBuffer.Counter.PRODUCT_VIEW, productId, 1);
+        } catch (Exception e) {
+            logger.error("更新浏览量失败，商品ID: {}", productId, e);
+        }
+        return detailDTO;
+    }
+
+    /**
+     * 从数据库组装商品详情，由详情缓存在未命中时调用
+     */
+    private ProductDetailDTO loadProductDetail(Long productId) {
+        logger.debug("开始查询商品详情，商品ID: {}", productId);
         
         // 查询商品基本信息
         Map<String, Object> product = productMapper.selectProductById(productId);
@@ -91,48 +141,17 @@ public class ProductServiceImpl implements ProductService {
             return null;
         }
         
-        logger.info("查询到商品基本信息: {}", product);
-        
-        // 详细记录每个字段的值
-        logger.info("=== 商品字段详细信息 ===");
-        logger.info("product_id: {}", product.get("product_id"));
-        logger.info("product_name: [{}]", product.get("product_name"));
-        logger.info("product_brief: [{}]", product.get("product_brief"));
-        logger.info("main_image: [{}]", product.get("main_image"));
-        logger.info("detail: [{}]", product.get("detail"));
-        logger.info("product_explain: [{}]", product.get("product_explain"));
-        logger.info("price: {}", product.get("price"));
-        logger.info("stock: {}", product.get("stock"));
-        logger.info("merchant_id: {}", product.get("merchant_id"));
-        logger.info("category_id: {}", product.get("category_id"));
-        logger.info("=== 字段信息记录完毕 ===");
-        
         ProductDetailDTO detailDTO = new ProductDetailDTO();
         
         // 设置基本信息
         detailDTO.setProductId((Long) product.get("product_id"));
-        logger.info("设置ProductId: {}", detailDTO.getProductId());
-        
         detailDTO.setProductName((String) product.get("product_name"));
-        logger.info("设置ProductName: [{}]", detailDTO.getProductName());
-        
         detailDTO.setCategoryId((Long) product.get("category_id"));
-        logger.info("设置CategoryId: {}", detailDTO.getCategoryId());
-        
         detailDTO.setMerchantId((Long) product.get("merchant_id"));
-        logger.info("设置MerchantId: {}", detailDTO.getMerchantId());
-        
         detailDTO.setMainImage((String) product.get("main_image"));
-        logger.info("设置MainImage: [{}]", detailDTO.getMainImage());
-        
         detailDTO.setDetail((String) product.get("detail"));
-        logger.info("设置Detail: [{}]", detailDTO.getDetail());
-        
         detailDTO.setProductBrief((String) product.get("product_brief"));
-        logger.info("设置ProductBrief: [{}]", detailDTO.getProductBrief());
-        
         detailDTO.setProductExplain((String) product.get("product_explain"));
-        logger.info("设置ProductExplain: [{}]", detailDTO.getProductExplain());
         
         detailDTO.setPrice(getDoubleValue(product.get("price")) != null ? 
                           BigDecimal.valueOf(getDoubleValue(product.get("price"))) : null);
@@ -156,27 +175,24 @@ public class ProductServiceImpl implements ProductService {
         detailDTO.setUnit((String) product.get("unit"));
         detailDTO.setKeywords((String) product.get("keywords"));
         
-        logger.info("设置商品基本信息完成，商品名称: [{}], 价格: {}", detailDTO.getProductName(), detailDTO.getPrice());
+        logger.debug("设置商品基本信息完成，商品名称: [{}], 价格: {}", detailDTO.getProductName(), detailDTO.getPrice());
         
         // 查询商品轮播图片（从shop_product_image表）
         try {
             List<Map<String, Object>> productImageMaps = productImageMapper.selectProductImagesByProductId(productId);
-            logger.info("查询到原始图片数据: {}", productImageMaps);
             if (productImageMaps != null && !productImageMaps.isEmpty()) {
                 List<String> images = new ArrayList<>();
                 for (Map<String, Object> imageMap : productImageMaps) {
                     String imageUrl = (String) imageMap.get("image_url");
                     if (imageUrl != null && !imageUrl.isEmpty()) {
                         images.add(imageUrl);
-                        logger.info("添加轮播图片: {}", imageUrl);
                     }
                 }
                 detailDTO.setImages(images);
-                logger.info("设置轮播图片完成，数量: {}, 内容: {}", images.size(), images);
+                logger.debug("设置轮播图片完成，数量: {}", images.size());
             } else {
-                logger.warn("未找到商品轮播图片，商品ID: {}", productId);
+                logger.debug("未找到商品轮播图片，商品ID: {}", productId);
                 detailDTO.setImages(new ArrayList<>());
-                logger.info("设置空的轮播图片列表");
             }
         } catch (Exception e) {
             logger.error("查询商品轮播图片失败，商品ID: {}", productId, e);
@@ -186,22 +202,19 @@ public class ProductServiceImpl implements ProductService {
         // 查询商品详情图片（从shop_product_detail_images表）
         try {
             List<Map<String, Object>> detailImageMaps = productDetailImageMapper.selectDetailImagesByProductId(productId);
-            logger.info("查询到原始详情图片数据: {}", detailImageMaps);
             if (detailImageMaps != null && !detailImageMaps.isEmpty()) {
                 List<String> detailImages = new ArrayList<>();
                 for (Map<String, Object> imageMap : detailImageMaps) {
                     String imageUrl = (String) imageMap.get("image_url");
                     if (imageUrl != null && !imageUrl.isEmpty()) {
                         detailImages.add(imageUrl);
-                        logger.info("添加详情图片: {}", imageUrl);
                     }
                 }
                 detailDTO.setDetailImages(detailImages);
-                logger.info("设置详情图片完成，数量: {}, 内容: {}", detailImages.size(), detailImages);
+                logger.debug("设置详情图片完成，数量: {}", detailImages.size());
             } else {
-                logger.warn("未找到商品详情图片，商品ID: {}", productId);
+                logger.debug("未找到商品详情图片，商品ID: {}", productId);
                 detailDTO.setDetailImages(new ArrayList<>());
-                logger.info("设置空的详情图片列表");
             }
         } catch (Exception e) {
             logger.error("查询商品详情图片失败，商品ID: {}", productId, e);
@@ -212,7 +225,7 @@ public class ProductServiceImpl implements ProductService {
         Long categoryId = (Long) product.get("category_id");
         if (categoryId != null) {
             try {
-                Map<String, Object> category = categoryMapper.selectCategoryById(categoryId);
+                Map<String, Object> category = categoryTree.get(categoryId);
                 if (category != null) {
                     CategoryDTO categoryDTO = new CategoryDTO();
                     categoryDTO.setCategoryId(categoryId);
@@ -221,7 +234,7 @@ public class ProductServiceImpl implements ProductService {
                     categoryDTO.setLevel((Integer) category.get("level"));
                     categoryDTO.setSort((Integer) category.get("sort"));
                     categoryDTO.setIcon((String) category.get("icon"));
-                    logger.info("查询到商品分类: {}", categoryDTO.getCategoryName());
+                    logger.debug("查询到商品分类: {}", categoryDTO.getCategoryName());
                 }
             } catch (Exception e) {
                 logger.error("查询商品分类失败，分类ID: {}", categoryId, e);
@@ -235,7 +248,7 @@ public class ProductServiceImpl implements ProductService {
                 MerchantDTO merchantDTO = merchantMapper.selectMerchantWithUserInfoById(merchantId);
                 if (merchantDTO != null) {
                     detailDTO.setMerchant(merchantDTO);
-                    logger.info("查询到商家信息: {}, 用户头像: {}", merchantDTO.getMerchantName(), merchantDTO.getUserAvatar());
+                    logger.debug("查询到商家信息: {}, 用户头像: {}", merchantDTO.getMerchantName(), merchantDTO.getUserAvatar());
                 } else {
                     logger.warn("未找到商家信息，商家ID: {}", merchantId);
                 }
@@ -247,19 +260,6 @@ public class ProductServiceImpl implements ProductService {
         // 查询SKU列表
         try {
             List<Map<String, Object>> skus = productMapper.selectSkusByProductId(productId);
-            logger.info("=== SKU原始数据调试 ===");
-            logger.info("从数据库查询到的SKU数量: {}", skus != null ? skus.size() : 0);
-            
-            if (skus != null && !skus.isEmpty()) {
-                // 添加原始数据日志
-                for (int i = 0; i < skus.size(); i++) {
-                    Map<String, Object> sku = skus.get(i);
-                    logger.info("原始SKU[{}]数据:", i);
-                    for (Map.Entry<String, Object> entry : sku.entrySet()) {
-                        logger.info("  {}: [{}]", entry.getKey(), entry.getValue());
-                    }
-                }
-                
                 List<ProductSkuDTO> skuDTOs = new ArrayList<>();
                 for (Map<String, Object> sku : skus) {
                     ProductSkuDTO skuDTO = new ProductSkuDTO();
@@ -332,16 +332,12 @@ public class ProductServiceImpl implements ProductService {
                     }
                     
                     skuDTOs.add(skuDTO);
-                    logger.info("添加SKU: ID={}, 名称={}, 图片={}, 价格={}, 库存={}", 
-                            skuDTO.getSkuId(), skuDTO.getSkuName(), skuDTO.getSkuImage(), 
-                            skuDTO.getPrice(), skuDTO.getStock());
                 }
                 detailDTO.setSkus(skuDTOs);
-                logger.info("设置SKU完成，数量: {}", skuDTOs.size());
+                logger.debug("设置SKU完成，数量: {}", skuDTOs.size());
             } else {
-                logger.warn("未找到SKU信息，商品ID: {}", productId);
+                logger.debug("未找到SKU信息，商品ID: {}", productId);
                 detailDTO.setSkus(new ArrayList<>());
-                logger.info("设置空的SKU列表");
             }
         } catch (Exception e) {
             logger.error("查询SKU信息失败，商品ID: {}", productId, e);
@@ -355,7 +351,7 @@ public class ProductServiceImpl implements ProductService {
             
             detailDTO.setReviewCount(reviewCount);
             detailDTO.setReviewScore(reviewScore);
-            logger.info("查询到评价信息 - 数量: {}, 评分: {}", reviewCount, reviewScore);
+            logger.debug("查询到评价信息 - 数量: {}, 评分: {}", reviewCount, reviewScore);
         } catch (Exception e) {
             logger.error("查询评价信息失败，商品ID: {}", productId, e);
             detailDTO.setReviewCount(0);
@@ -366,7 +362,7 @@ public class ProductServiceImpl implements ProductService {
         try {
             List<Map<String, Object>> reviews = productMapper.selectProductReviews(productId, 0, 5);
             if (reviews != null && !reviews.isEmpty()) {
-                logger.info("查询到评价数量: {}", reviews.size());
+                logger.debug("查询到评价数量: {}", reviews.size());
                 // 假设我们有ReviewDTO并且已经编写了它的转换逻辑
                 // List<ReviewDTO> reviewDTOs = convertToReviewDTOs(reviews);
                 // detailDTO.setReviews(reviewDTOs);
@@ -375,31 +371,12 @@ public class ProductServiceImpl implements ProductService {
             logger.error("查询评价列表失败，商品ID: {}", productId, e);
         }
         
-        // 增加商品浏览量
-        try {
-            productMapper.incrementViewCount(productId);
-        } catch (Exception e) {
-            logger.error("更新浏览量失败，商品ID: {}", productId, e);
-        }
-        
-        logger.info("商品详情查询完成，返回数据: 商品名称={}, 图片数量={}, 详情图片数量={}, 商家名称={}", 
+        logger.debug("商品详情查询完成，返回数据: 商品名称={}, 图片数量={}, 详情图片数量={}, 商家名称={}", 
                 detailDTO.getProductName(), 
                 detailDTO.getImages() != null ? detailDTO.getImages().size() : 0,
                 detailDTO.getDetailImages() != null ? detailDTO.getDetailImages().size() : 0,
                 detailDTO.getMerchant() != null ? detailDTO.getMerchant().getMerchantName() : "未知");
         
-        // 最终验证DTO内容
-        logger.info("=== 最终DTO验证 ===");
-        logger.info("ProductName: [{}]", detailDTO.getProductName());
-        logger.info("ProductBrief: [{}]", detailDTO.getProductBrief());
-        logger.info("MainImage: [{}]", detailDTO.getMainImage());
-        logger.info("Detail: [{}]", detailDTO.getDetail());
-        logger.info("ProductExplain: [{}]", detailDTO.getProductExplain());
-        logger.info("Images size: {}", detailDTO.getImages() != null ? detailDTO.getImages().size() : "null");
-        logger.info("DetailImages size: {}", detailDTO.getDetailImages() != null ? detailDTO.getDetailImages().size() : "null");
-        logger.info("Skus size: {}", detailDTO.getSkus() != null ? detailDTO.getSkus().size() : "null");
-        logger.info("=== DTO验证完毕 ===");
-        
         return detailDTO;
     }
 
@@ -411,6 +388,53 @@ public class ProductServiceImpl implements ProductService {
         return getProducts(page, size, params);
     }
 
+    /**
+     * 用全文索引检索商品，按索引给出的顺序回表查询当前页
+     *
+     * @return 索引不可用时返回 null
+     */
+    private Map<String, Object> searchByIndex(int page, int size, Map<String, Object> params, String keyword) {
+        Long categoryId = getLongValue(params.get("categoryId"));
+        ProductSearchIndex.Query query = new ProductSearchIndex.Query()
+                .keyword(keyword)
+                .categoryIds(categoryId != null ? categoryTree.subtreeIds(categoryId) : null)
+                .merchantId(getLongValue(params.get("merchantId")))
+                .priceRange(getDoubleValue(params.get("minPrice")), getDoubleValue(params.get("maxPrice")))
+                .flags(params.get("isHot") != null ? getBooleanValue(params.get("isHot")) : null,
+                        params.get("isRecommend") != null ? getBooleanValue(params.get("isRecommend")) : null,
+                        params.get("isNew") != null ? getBooleanValue(params.get("isNew")) : null)
+                .sort(params.get("sort") != null ? params.get("sort").toString() : null)
+                .page((page - 1) * size, size);
+        ProductSearchIndex.Result hits = productSearchIndex.search(query);
+        if (hits == null) {
+            return null;
+        }
+        
+        List<ProductDTO> productDTOs = new ArrayList<>();
+        if (!hits.getProductIds().isEmpty()) {
+            Map<Long, Map<String, Object>> rows = new HashMap<>();
+            for (Map<String, Object> product : productMapper.selectProductsByIds(hits.getProductIds())) {
+                rows.put(getLongValue(product.get("product_id")), product);
+            }
+            for (Long productId : hits.getProductIds()) {
+                Map<String, Object> product = rows.get(productId);
+                if (product != null) {
+                    productDTOs.add(convertToProductDTO(product));
+                }
+            }
+        }
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("list", productDTOs);
+        result.put("total", hits.getTotal());
+        result.put("page", page);
+        result.put("size", size);
+        result.put("totalPages", (hits.getTotal() + size - 1) / size);
+        result.put("categoryFacets", hits.getCategoryFacets());
+        result.put("merchantFacets", hits.getMerchantFacets());
+        return result;
+    }
+
     @Override
     public Map<String, Object> searchProducts(String keyword, int page, int size) {
         Map<String, Object> params = new HashMap<>();
@@ -561,6 +585,10 @@ public class ProductServiceImpl implements ProductService {
     public boolean updateProductSales(Long productId, int quantity) {
         try {
             int result = productMapper.updateProductSales(productId, quantity);
+            if (result > 0) {
+                productDetailCache.stockChangedAfterCommit(productId);
+                productSearchIndex.addSalesAfterCommit(productId, quantity);
+            }
             return result > 0;
         } catch (Exception e) {
             logger.error("更新商品销量失败: {}", e.getMessage());
@@ -572,6 +600,9 @@ public class ProductServiceImpl implements ProductService {
     public boolean decreaseStock(Long productId, int quantity) {
         try {
             int result = productMapper.decreaseStock(productId, quantity);
+            if (result > 0) {
+                productDetailCache.stockChangedAfterCommit(productId);
+            }
             return result > 0;
         } catch (Exception e) {
             logger.error("减少商品库存失败: {}", e.getMessage());
@@ -582,8 +613,8 @@ public class ProductServiceImpl implements ProductService {
     @Override
     public boolean incrementViewCount(Long productId) {
         try {
-            int result = productMapper.incrementViewCount(productId);
-            return result > 0;
+            counterBuffer.increment(CounterBuffer.Counter.PRODUCT_VIEW, productId, 1);
+            return true;
         } catch (Exception e) {
             logger.error("增加商品浏览量失败: {}", e.getMessage());
             return false;
@@ -641,6 +672,8 @@ public class ProductServiceImpl implements ProductService {
             int result = productMapper.insertProduct(productDTO);
             if (result > 0) {
                 Long productId = productDTO.getProductId();
+                productSearchIndex.reindexAfterCommit(productId);
+                suggestionIndex.productChangedAfterCommit(productId);
                 logger.info("商品插入成功，商品ID: {}", productId);
                 
                 // 保存商品图片（轮播图）
@@ -719,6 +752,9 @@ public class ProductServiceImpl implements ProductService {
             // 更新商品信息
             int result = productMapper.updateProduct(productDTO);
             if (result > 0) {
+                productDetailCache.invalidateAfterCommit(productId);
+                productSearchIndex.reindexAfterCommit(productId);
+                suggestionIndex.productChangedAfterCommit(productId);
                 // 返回更新后的商品信息
                 Map<String, Object> product = productMapper.selectProductById(productId);
                 if (product != null) {
@@ -751,6 +787,9 @@ public class ProductServiceImpl implements ProductService {
             logger.info("Service层: 最终返回结果: {}", success);
             
             if (success) {
+                productDetailCache.invalidateAfterCommit(productId);
+                productSearchIndex.reindexAfterCommit(productId);
+                suggestionIndex.productChangedAfterCommit(productId);
                 logger.info("=== Service层: 商品状态更新成功 ===");
             } else {
                 logger.warn("=== Service层: 商品状态更新失败，影响行数为0 ===");
@@ -800,6 +839,9 @@ public class ProductServiceImpl implements ProductService {
             logger.info("Service层: 最终返回结果: {}", success);
             
             if (success) {
+                productDetailCache.invalidateAfterCommit(productId);
+                productSearchIndex.reindexAfterCommit(productId);
+                suggestionIndex.productChangedAfterCommit(productId);
                 logger.info("=== Service层: 商品删除成功 ===");
             } else {
                 logger.warn("=== Service层: 商品删除失败，影响行数为0 ===");
@@ -844,6 +886,11 @@ public class ProductServiceImpl implements ProductService {
         try {
             int result = productMapper.updateProductBasicInfo(productId, productName, productBrief, 
                     price, stock, unit, keywords);
+            if (result > 0) {
+                productDetailCache.invalidateAfterCommit(productId);
+                productSearchIndex.reindexAfterCommit(productId);
+                suggestionIndex.productChangedAfterCommit(productId);
+            }
             return result > 0;
         } catch (Exception e) {
             logger.error("更新商品基本信息失败: {}", e.getMessage());
@@ -856,6 +903,9 @@ public class ProductServiceImpl implements ProductService {
         logger.info("更新商品主图: productId={}, mainImage={}", productId, mainImage);
         try {
             int result = productMapper.updateProductMainImage(productId, mainImage);
+            if (result > 0) {
+                productDetailCache.invalidateAfterCommit(productId);
+            }
             return result > 0;
         } catch (Exception e) {
             logger.error("更新商品主图失败: {}", e.getMessage());
@@ -868,6 +918,9 @@ public class ProductServiceImpl implements ProductService {
         logger.info("更新商品详情: productId={}", productId);
         try {
             int result = productMapper.updateProductDetail(productId, detail);
+            if (result > 0) {
+                productDetailCache.invalidateAfterCommit(productId);
+            }
             return result > 0;
         } catch (Exception e) {
             logger.error("更新商品详情失败: {}", e.getMessage());
@@ -880,6 +933,11 @@ public class ProductServiceImpl implements ProductService {
         logger.info("更新商品分类: productId={}, categoryId={}", productId, categoryId);
         try {
             int result = productMapper.updateProductCategory(productId, categoryId);
+            if (result > 0) {
+                productDetailCache.invalidateAfterCommit(productId);
+                productSearchIndex.reindexAfterCommit(productId);
+                suggestionIndex.productChangedAfterCommit(productId);
+            }
             return result > 0;
         } catch (Exception e) {
             logger.error("更新商品分类失败: {}", e.getMessage());
@@ -936,6 +994,9 @@ public class ProductServiceImpl implements ProductService {
             logger.info("Service层: 最终返回结果: {}", success);
             
             if (success) {
+                productDetailCache.invalidateAfterCommit(productId);
+                productSearchIndex.reindexAfterCommit(productId);
+                suggestionIndex.productChangedAfterCommit(productId);
                 logger.info("=== Service层: 商品删除成功 ===");
             } else {
                 logger.warn("=== Service层: 商品删除失败，影响行数为0 ===");
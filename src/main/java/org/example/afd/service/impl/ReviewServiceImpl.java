@@ -2,6 +2,7 @@ package org.example.afd.service.impl;
 
 import org.example.afd.dto.ReviewDTO;
 import org.example.afd.mapper.ReviewMapper;
+import org.example.afd.service.ProductDetailCache;
 import org.example.afd.service.ReviewService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -20,6 +21,9 @@ public class ReviewServiceImpl implements ReviewService {
     @Autowired
     private ReviewMapper reviewMapper;
 
+    @Autowired
+    private ProductDetailCache productDetailCache;
+
     @Override
     public Map<String, Object> getProductReviews(Long productId, int page, int size) {
         Map<String, Object> result = new HashMap<>();
@@ -79,6 +83,9 @@ public class ReviewServiceImpl implements ReviewService {
             // 更新订单项评价状态
             reviewMapper.updateOrderItemReviewStatus(orderItemId);
             
+            // 评价数和评分变化，淘汰商品详情缓存
+            productDetailCache.invalidateAfterCommit(reviewDTO.getProductId());
+            
             result.put("success", true);
             result.put("message", "评价提交成功");
         } catch (Exception e) {
@@ -145,6 +152,11 @@ public class ReviewServiceImpl implements ReviewService {
             // 插入评价
             reviewMapper.insertReview(review);
             
+            Object productId = review.get("product_id");
+            if (productId instanceof Number) {
+                productDetailCache.invalidateAfterCommit(((Number) productId).longValue());
+            }
+            
             result.put("success", true);
             result.put("message", "评价添加成功");
         } catch (Exception e) {
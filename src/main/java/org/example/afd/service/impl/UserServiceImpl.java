@@ -10,6 +10,7 @@ import org.example.afd.model.RegisterRequest;
 import org.example.afd.pojo.LoginHistory;
 import org.example.afd.pojo.User;
 import org.example.afd.model.UserToken;
+import org.example.afd.service.FeedTimelineService;
 import org.example.afd.service.UserService;
 import org.example.afd.utils.JwtUtils;
 import org.example.afd.utils.PasswordUtils;
@@ -44,6 +45,9 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private PasswordUtils passwordUtils;
 
+    @Autowired
+    private FeedTimelineService feedTimelineService;
+
     @Autowired
     private org.example.afd.mapper.MerchantMapper merchantMapper;
 
@@ -878,10 +882,12 @@ public class UserServiceImpl implements UserService {
             if (isFollowing) {
                 // 已关注，更新状态为有效
                 int rows = userMapper.updateFollowRelationStatus(userId, targetId, 1);
+                feedTimelineService.invalidate(userId.longValue());
                 return rows > 0;
             } else {
                 // 未关注，添加关注关系
                 int rows = userMapper.addFollowRelation(userId, targetId);
+                feedTimelineService.invalidate(userId.longValue());
                 return rows > 0;
             }
         } catch (Exception e) {
@@ -901,6 +907,7 @@ public class UserServiceImpl implements UserService {
         try {
             // 更新关注状态为无效
             int rows = userMapper.updateFollowRelationStatus(userId, targetId, 0);
+            feedTimelineService.invalidate(userId.longValue());
             return rows > 0;
         } catch (Exception e) {
             log.error("取消关注用户失败: userId={}, targetId={}", userId, targetId, e);
@@ -0,0 +1,94 @@
+package org.example.afd.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * 游标分页工具类
+ *
+ * 游标由排序键和主键组成，如 (create_time, id)，编码为 URL 安全的 Base64 字符串，
+ * 对客户端不透明。查询条件为 "排序键 &lt; 游标值，或排序键相等且主键 &lt; 游标主键"，
+ * 配合 (排序键, 主键) 索引，任意深度的翻页都只扫描一页数据。
+ */
+public class CursorUtils {
+
+    private static final String SEPARATOR = ":";
+
+    private CursorUtils() {
+    }
+
+    /**
+     * 编码游标
+     */
+    public static String encode(long... values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(SEPARATOR);
+            }
+            sb.append(values[i]);
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码游标
+     *
+     * @param cursor 游标字符串，为空表示第一页
+     * @param length 游标包含的字段数
+     * @return 字段值，第一页返回 null
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    public static long[] decode(String cursor, int length) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR);
+            if (parts.length != length) {
+                throw new IllegalArgumentException("无效的分页游标");
+            }
+            long[] values = new long[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = Long.parseLong(parts[i]);
+            }
+            return values;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的分页游标", e);
+        }
+    }
+
+    /**
+     * 时间转为游标中的毫秒值
+     */
+    public static long toMillis(LocalDateTime time) {
+        return time == null ? 0L : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public static long toMillis(Date time) {
+        return time == null ? 0L : time.getTime();
+    }
+
+    public static long toMillis(Object time) {
+        if (time instanceof LocalDateTime) {
+            return toMillis((LocalDateTime) time);
+        }
+        if (time instanceof Date) {
+            return ((Date) time).getTime();
+        }
+        return 0L;
+    }
+
+    /**
+     * 游标中的毫秒值转为查询参数
+     */
+    public static LocalDateTime toDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
@@ -1,6 +1,7 @@
 package org.example.afd.utils;
 
 import lombok.extern.slf4j.Slf4j;
+import org.example.afd.model.AuthPrincipal;
 import org.springframework.stereotype.Component;
 import jakarta.servlet.http.HttpServletRequest;
 
@@ -25,6 +26,20 @@ public class JwtUtil {
         return getCurrentUserId(request);
     }
     
+    /**
+     * 获取JwtAuthInterceptor已验证的身份
+     *
+     * @param request HTTP请求对象
+     * @return 请求未经过JWT认证时返回null
+     */
+    public static AuthPrincipal getPrincipal(HttpServletRequest request) {
+        if (request == null) {
+            return null;
+        }
+        Object principal = request.getAttribute(AuthPrincipal.REQUEST_ATTRIBUTE);
+        return principal instanceof AuthPrincipal ? (AuthPrincipal) principal : null;
+    }
+
     /**
      * 从HttpServletRequest中获取当前用户ID
      * 
@@ -37,6 +52,11 @@ public class JwtUtil {
             return null;
         }
         
+        AuthPrincipal principal = getPrincipal(request);
+        if (principal != null) {
+            return principal.getUserId();
+        }
+
         // 方法1：直接从请求属性中获取（由JwtAuthInterceptor设置）
         Object userIdAttr = request.getAttribute("userId");
         if (userIdAttr instanceof Integer) {
@@ -71,6 +91,11 @@ public class JwtUtil {
             return null;
         }
         
+        AuthPrincipal principal = getPrincipal(request);
+        if (principal != null) {
+            return principal.getUsername();
+        }
+
         // 从请求属性中获取（由JwtAuthInterceptor设置）
         Object usernameAttr = request.getAttribute("username");
         if (usernameAttr instanceof String) {
@@ -92,6 +117,11 @@ public class JwtUtil {
             return null;
         }
         
+        AuthPrincipal principal = getPrincipal(request);
+        if (principal != null) {
+            return principal.getRole();
+        }
+
         // 从请求属性中获取（由JwtAuthInterceptor设置）
         Object roleAttr = request.getAttribute("role");
         if (roleAttr instanceof String) {
@@ -2,28 +2,47 @@ package org.example.afd.utils;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.example.afd.model.AuthPrincipal;
 import org.example.afd.pojo.User;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * JWT工具类
+ *
+ * 签名密钥和解析器在启动时构造一次。验证通过的令牌按 SHA-256 摘要缓存其身份（{@link AuthPrincipal}），
+ * 同一令牌在过期前再次出现时不再验签和解析 JSON；缓存有容量上限，超出时先清理已过期的条目。
  */
 @Slf4j
 @Component
 public class JwtUtils {
 
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
     @Value("${jwt.secret:wohaiyoumeiyoushixiandemengxiang123456789012345678901234567890abcdefghijklmnopqrstuvwxyz}")
     private String secretKey; // 密钥
 
@@ -33,51 +52,106 @@ public class JwtUtils {
     @Value("${jwt.refresh-expiration:604800}")
     private Long refreshExpiration; // 刷新令牌过期时间(秒)，默认7天
 
-    /**
-     * 生成签名密钥
-     */
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = secretKey.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    @Value("${jwt.claims-cache.max-size:10000}")
+    private int claimsCacheSize; // 已验证令牌缓存的条目上限，0 表示不缓存
+
+    private SecretKey signingKey;
+
+    private JwtParser parser;
+
+    private final Map<ByteBuffer, AuthPrincipal> verified = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(secretKey.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
     }
 
     /**
-     * 从令牌中获取用户ID
+     * 验证令牌并返回其中的身份，每个令牌只在第一次出现时验签
+     *
+     * @return 令牌为空、签名无效、格式错误或已过期时返回 null
      */
-    public Integer getUserIdFromToken(String token) {
+    public AuthPrincipal authenticate(String token) {
+        if (token == null || token.trim().isEmpty()) {
+            log.warn("令牌验证失败: 令牌为空");
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        ByteBuffer key = claimsCacheSize > 0 ? digest(token) : null;
+        if (key != null) {
+            AuthPrincipal cached = verified.get(key);
+            if (cached != null) {
+                if (!cached.isExpired(now)) {
+                    return cached;
+                }
+                verified.remove(key);
+            }
+        }
+
+        Claims claims;
         try {
-            Claims claims = getClaimsFromToken(token);
-            return Integer.valueOf(claims.get("userId").toString());
+            claims = getClaimsFromToken(token);
+        } catch (ExpiredJwtException e) {
+            log.warn("令牌验证失败: 令牌已过期，过期时间: {}", e.getClaims().getExpiration());
+            return null;
+        } catch (io.jsonwebtoken.SignatureException e) {
+            log.warn("令牌验证失败: 签名无效");
+            return null;
+        } catch (io.jsonwebtoken.MalformedJwtException e) {
+            log.warn("令牌验证失败: 令牌格式错误");
+            return null;
+        } catch (io.jsonwebtoken.UnsupportedJwtException e) {
+            log.warn("令牌验证失败: 不支持的令牌类型");
+            return null;
+        } catch (IllegalArgumentException e) {
+            log.warn("令牌验证失败: 非法参数");
+            return null;
         } catch (Exception e) {
-            log.warn("从令牌中获取用户ID失败", e);
+            log.warn("令牌验证失败: 未知错误", e);
             return null;
         }
+
+        Object userId = claims.get("userId");
+        Date expiresAt = claims.getExpiration();
+        AuthPrincipal principal = new AuthPrincipal(
+                userId != null ? Integer.valueOf(userId.toString()) : null,
+                claims.getSubject(),
+                claims.get("role", String.class),
+                expiresAt != null ? expiresAt.getTime() : Long.MAX_VALUE);
+        log.debug("令牌解析成功，用户: {}, 用户ID: {}, 过期时间: {}",
+                principal.getUsername(), principal.getUserId(), expiresAt);
+        if (key != null) {
+            if (verified.size() >= claimsCacheSize) {
+                evict(now);
+            }
+            verified.put(key, principal);
+        }
+        return principal;
+    }
+
+    /**
+     * 从令牌中获取用户ID
+     */
+    public Integer getUserIdFromToken(String token) {
+        AuthPrincipal principal = authenticate(token);
+        return principal != null ? principal.getUserId() : null;
     }
 
     /**
      * 从令牌中获取用户名
      */
     public String getUsernameFromToken(String token) {
-        try {
-            Claims claims = getClaimsFromToken(token);
-            return claims.getSubject();
-        } catch (Exception e) {
-            log.warn("从令牌中获取用户名失败", e);
-            return null;
-        }
+        AuthPrincipal principal = authenticate(token);
+        return principal != null ? principal.getUsername() : null;
     }
 
     /**
      * 从令牌中获取用户角色
      */
     public String getRoleFromToken(String token) {
-        try {
-            Claims claims = getClaimsFromToken(token);
-            return claims.get("role", String.class);
-        } catch (Exception e) {
-            log.warn("从令牌中获取用户角色失败", e);
-            return null;
-        }
+        AuthPrincipal principal = authenticate(token);
+        return principal != null ? principal.getRole() : null;
     }
 
     /**
@@ -85,8 +159,9 @@ public class JwtUtils {
      */
     public Date getExpirationDateFromToken(String token) {
         try {
-            Claims claims = getClaimsFromToken(token);
-            return claims.getExpiration();
+            return getClaimsFromToken(token).getExpiration();
+        } catch (ExpiredJwtException e) {
+            return e.getClaims().getExpiration();
         } catch (Exception e) {
             log.warn("从令牌中获取过期时间失败", e);
             return null;
@@ -97,62 +172,15 @@ public class JwtUtils {
      * 检查令牌是否过期
      */
     public boolean isTokenExpired(String token) {
-        try {
-            Date expiration = getExpirationDateFromToken(token);
-            return expiration != null && expiration.before(new Date());
-        } catch (ExpiredJwtException e) {
-            return true;
-        } catch (Exception e) {
-            log.warn("检查令牌是否过期失败", e);
-            return true;
-        }
+        Date expiration = getExpirationDateFromToken(token);
+        return expiration == null || expiration.before(new Date());
     }
 
     /**
      * 验证令牌
      */
     public boolean validateToken(String token) {
-        try {
-            log.debug("开始验证令牌，长度: {}", token != null ? token.length() : 0);
-            
-            if (token == null || token.trim().isEmpty()) {
-                log.warn("令牌验证失败: 令牌为空");
-                return false;
-            }
-            
-            // 解析令牌，如果解析成功且未过期则有效
-            Claims claims = getClaimsFromToken(token);
-            log.debug("令牌解析成功，用户: {}, 用户ID: {}, 过期时间: {}", 
-                    claims.getSubject(), 
-                    claims.get("userId"), 
-                    claims.getExpiration());
-            
-            boolean isExpired = isTokenExpired(token);
-            log.debug("令牌过期检查结果: {}", isExpired ? "已过期" : "有效");
-            
-            boolean isValid = !isExpired;
-            log.debug("令牌验证最终结果: {}", isValid ? "有效" : "无效");
-            
-            return isValid;
-        } catch (io.jsonwebtoken.ExpiredJwtException e) {
-            log.warn("令牌验证失败: 令牌已过期，过期时间: {}", e.getClaims().getExpiration());
-            return false;
-        } catch (io.jsonwebtoken.SignatureException e) {
-            log.warn("令牌验证失败: 签名无效");
-            return false;
-        } catch (io.jsonwebtoken.MalformedJwtException e) {
-            log.warn("令牌验证失败: 令牌格式错误");
-            return false;
-        } catch (io.jsonwebtoken.UnsupportedJwtException e) {
-            log.warn("令牌验证失败: 不支持的令牌类型");
-            return false;
-        } catch (IllegalArgumentException e) {
-            log.warn("令牌验证失败: 非法参数");
-            return false;
-        } catch (Exception e) {
-            log.warn("令牌验证失败: 未知错误", e);
-            return false;
-        }
+        return authenticate(token) != null;
     }
 
     /**
@@ -188,7 +216,7 @@ public class JwtUtils {
                 .setSubject(subject)
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS512)
+                .signWith(signingKey, SignatureAlgorithm.HS512)
                 .compact();
     }
 
@@ -204,7 +232,7 @@ public class JwtUtils {
                 .setSubject(subject)
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS512)
+                .signWith(signingKey, SignatureAlgorithm.HS512)
                 .compact();
     }
 
@@ -212,11 +240,24 @@ public class JwtUtils {
      * 从令牌中获取数据声明
      */
     private Claims getClaimsFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
+    }
+
+    private static ByteBuffer digest(String token) {
+        return ByteBuffer.wrap(SHA256.get().digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * 缓存满时先清理已过期的令牌，仍然超出上限则随机淘汰一部分
+     */
+    private void evict(long now) {
+        verified.values().removeIf(principal -> principal.isExpired(now));
+        int excess = verified.size() - claimsCacheSize * 9 / 10;
+        Iterator<ByteBuffer> iterator = verified.keySet().iterator();
+        while (excess-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
     }
 
 //    private void checkUserStatus(User user, LoginHistory loginHistory) {
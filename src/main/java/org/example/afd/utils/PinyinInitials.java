@@ -0,0 +1,92 @@
+package org.example.afd.utils;
+
+import java.nio.charset.Charset;
+
+/**
+ * 汉字拼音首字母
+ *
+ * GB2312 一级汉字（3755 个常用字）按拼音排序，区位码落在哪个区间即可确定首字母，不需要拼音词典。
+ * 二级汉字按部首排序，不在此列，多音字取 GB2312 排序所用的读音。
+ * 启动时把基本汉字区（U+4E00~U+9FA5）的首字母预先算成查找表，查询时不再做编码转换。
+ */
+public final class PinyinInitials {
+
+    /**
+     * 各首字母在 GB2312 中起始的区位码（区号 * 100 + 位号），最后一个为一级汉字的结束位置
+     */
+    private static final int[] BOUNDARIES = {
+        1601, 1637, 1833, 2078, 2274, 2302, 2433, 2594, 2787, 3106, 3212, 3472,
+        3635, 3722, 3730, 3858, 4027, 4086, 4390, 4558, 4684, 4925, 5249, 5590
+    };
+
+    private static final char[] LETTERS = "abcdefghjklmnopqrstwxyz".toCharArray();
+
+    private static final char FIRST = '一';
+    private static final char LAST = '龥';
+
+    private static final byte[] TABLE = buildTable();
+
+    private PinyinInitials() {
+    }
+
+    /**
+     * 汉字的拼音首字母，不是一级汉字时返回 0
+     */
+    public static char initial(char c) {
+        if (c < FIRST || c > LAST) {
+            return 0;
+        }
+        return (char) TABLE[c - FIRST];
+    }
+
+    /**
+     * 文本的首字母串：一级汉字取首字母，字母数字转小写保留，其余汉字原样保留，标点空白丢弃
+     *
+     * @return 文本中没有可转换的汉字时返回 null
+     */
+    public static String of(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder(text.length());
+        boolean converted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char initial = initial(c);
+            if (initial != 0) {
+                builder.append(initial);
+                converted = true;
+            } else if (Character.isLetterOrDigit(c)) {
+                builder.append(Character.toLowerCase(c));
+            }
+        }
+        return converted ? builder.toString() : null;
+    }
+
+    private static byte[] buildTable() {
+        byte[] table = new byte[LAST - FIRST + 1];
+        Charset gb2312;
+        try {
+            gb2312 = Charset.forName("GB2312");
+        } catch (Exception e) {
+            // 运行时缺少扩展字符集，所有汉字都没有首字母
+            return table;
+        }
+        for (char c = FIRST; c <= LAST; c++) {
+            byte[] bytes = String.valueOf(c).getBytes(gb2312);
+            if (bytes.length != 2) {
+                continue;
+            }
+            int code = ((bytes[0] & 0xff) - 160) * 100 + ((bytes[1] & 0xff) - 160);
+            if (code < BOUNDARIES[0] || code >= BOUNDARIES[BOUNDARIES.length - 1]) {
+                continue;
+            }
+            int index = 0;
+            while (code >= BOUNDARIES[index + 1]) {
+                index++;
+            }
+            table[c - FIRST] = (byte) LETTERS[index];
+        }
+        return table;
+    }
+}
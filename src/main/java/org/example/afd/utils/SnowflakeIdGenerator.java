@@ -0,0 +1,247 @@
+package org.example.afd.utils;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 雪花算法ID生成器（无锁）
+ *
+ * 64位ID结构：1位符号 + 41位毫秒时间戳（自2024-01-01起） + 10位节点ID + 12位序列号。
+ * 时间戳与序列号打包在一个 AtomicLong 中，通过 CAS 推进，单节点每毫秒可生成 4096 个ID；
+ * 序列号用尽时借用下一毫秒。时钟回拨在容忍范围内时沿用上次的逻辑时间继续递增，
+ * 超出容忍范围时拒绝生成，避免产生重复ID。
+ *
+ * 节点ID通过 id.worker-id 配置；未配置时从 Redis 租用一个未被占用的节点ID（键 id:worker:{n}），
+ * 定时续期，停止时释放。无法租用时启动失败，不再由主机名推导，避免多个节点哈希到同一个ID。
+ */
+@Slf4j
+@Component
+public class SnowflakeIdGenerator {
+
+    /**
+     * 起始时间 2024-01-01 00:00:00 UTC
+     */
+    private static final long EPOCH = 1704067200000L;
+
+    private static final int WORKER_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int TIMESTAMP_SHIFT = WORKER_BITS + SEQUENCE_BITS;
+
+    /**
+     * 允许的最大时钟回拨（毫秒）
+     */
+    private static final long MAX_BACKWARD_MS = 5000;
+
+    private static final String LEASE_PREFIX = "id:worker:";
+
+    /**
+     * 仍由本节点持有时续期，返回 1；已过期或被其他节点占用返回 0
+     */
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) "
+            + "else return 0 end", Long.class);
+
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) "
+            + "else return 0 end", Long.class);
+
+    private final long workerId;
+
+    /**
+     * 从 Redis 租用节点ID时使用的客户端与租约标识，配置了固定ID时为空
+     */
+    private final StringRedisTemplate leaseTemplate;
+    private final String leaseToken;
+    private final long leaseTtlMs;
+
+    /**
+     * 高位为上次使用的逻辑时间戳，低 12 位为序列号
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * 使用固定的节点ID
+     */
+    public SnowflakeIdGenerator(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("节点ID超出范围: " + workerId);
+        }
+        this.workerId = workerId;
+        this.leaseTemplate = null;
+        this.leaseToken = null;
+        this.leaseTtlMs = 0;
+        log.info("雪花ID生成器初始化: workerId={}", workerId);
+    }
+
+    /**
+     * 配置了 id.worker-id 时使用配置值，否则从 Redis 租用
+     */
+    @Autowired
+    public SnowflakeIdGenerator(@Value("${id.worker-id:-1}") long workerId,
+                                @Value("${id.lease-ttl-ms:600000}") long leaseTtlMs,
+                                ObjectProvider<RedisConnectionFactory> connectionFactory) {
+        if (workerId >= 0) {
+            if (workerId > MAX_WORKER_ID) {
+                throw new IllegalArgumentException("节点ID超出范围: " + workerId);
+            }
+            this.workerId = workerId;
+            this.leaseTemplate = null;
+            this.leaseToken = null;
+            this.leaseTtlMs = 0;
+            log.info("雪花ID生成器初始化: workerId={}", workerId);
+            return;
+        }
+        RedisConnectionFactory factory = connectionFactory.getIfAvailable();
+        if (factory == null) {
+            throw new IllegalStateException("未配置 id.worker-id，且没有可用的 Redis 用于租用节点ID");
+        }
+        this.leaseTemplate = new StringRedisTemplate(factory);
+        this.leaseToken = nodeName() + "/" + UUID.randomUUID();
+        this.leaseTtlMs = leaseTtlMs;
+        this.workerId = acquireLease();
+        log.info("雪花ID生成器初始化: workerId={}（Redis 租约）", this.workerId);
+    }
+
+    /**
+     * 生成下一个ID
+     */
+    public long nextId() {
+        while (true) {
+            long last = state.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long now = System.currentTimeMillis() - EPOCH;
+
+            long next;
+            if (now > lastTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                if (lastTimestamp - now > MAX_BACKWARD_MS) {
+                    throw new IllegalStateException("系统时钟回拨过大，拒绝生成ID: " + (lastTimestamp - now) + "ms");
+                }
+                // 同一毫秒或时钟小幅回拨：沿用逻辑时间，序列号用尽时借用下一毫秒
+                next = (last & SEQUENCE_MASK) == SEQUENCE_MASK
+                    ? (lastTimestamp + 1) << SEQUENCE_BITS
+                    : last + 1;
+            }
+
+            if (state.compareAndSet(last, next)) {
+                return ((next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT)
+                    | (workerId << SEQUENCE_BITS)
+                    | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 生成带业务前缀的单号，如 PROD、SUB、PAY、REF
+     */
+    public String nextNo(String prefix) {
+        return prefix + nextId();
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * 续期节点ID租约。租约意外过期时重新占用同一个ID；已被其他节点占用说明两个节点可能生成重复ID，
+     * 只能告警，由运维为节点配置固定的 id.worker-id
+     */
+    @Scheduled(fixedDelayString = "${id.lease-renew-ms:60000}")
+    public void renewLease() {
+        if (leaseTemplate == null) {
+            return;
+        }
+        String key = LEASE_PREFIX + workerId;
+        try {
+            Long renewed = leaseTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key),
+                leaseToken, String.valueOf(leaseTtlMs));
+            if (renewed != null && renewed == 1) {
+                return;
+            }
+            if (Boolean.TRUE.equals(leaseTemplate.opsForValue()
+                .setIfAbsent(key, leaseToken, leaseTtlMs, TimeUnit.MILLISECONDS))) {
+                log.warn("节点ID租约已过期，重新占用: workerId={}", workerId);
+                return;
+            }
+            log.error("节点ID租约已被其他节点占用，可能生成重复ID: workerId={}, holder={}",
+                workerId, leaseTemplate.opsForValue().get(key));
+        } catch (Exception e) {
+            log.warn("节点ID租约续期失败: workerId={}", workerId, e);
+        }
+    }
+
+    @PreDestroy
+    public void releaseLease() {
+        if (leaseTemplate == null) {
+            return;
+        }
+        try {
+            leaseTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(LEASE_PREFIX + workerId), leaseToken);
+        } catch (Exception e) {
+            log.warn("释放节点ID租约失败，等待过期: workerId={}", workerId, e);
+        }
+    }
+
+    /**
+     * 取出生成该ID的节点ID
+     */
+    public static long workerIdOf(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_WORKER_ID;
+    }
+
+    /**
+     * 取出ID中的生成时间（毫秒时间戳）
+     */
+    public static long timeOf(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + EPOCH;
+    }
+
+    /**
+     * 该时间及之后生成的ID都不小于返回值
+     */
+    public static long firstIdAt(long epochMillis) {
+        return Math.max(0, epochMillis - EPOCH) << TIMESTAMP_SHIFT;
+    }
+
+    /**
+     * 从主机名推导的位置开始依次尝试占用，分散各节点的起点以减少冲突重试
+     */
+    private long acquireLease() {
+        long start = Math.floorMod(leaseToken.hashCode(), MAX_WORKER_ID + 1);
+        for (long i = 0; i <= MAX_WORKER_ID; i++) {
+            long candidate = (start + i) & MAX_WORKER_ID;
+            if (Boolean.TRUE.equals(leaseTemplate.opsForValue()
+                .setIfAbsent(LEASE_PREFIX + candidate, leaseToken, leaseTtlMs, TimeUnit.MILLISECONDS))) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("没有可租用的节点ID，1024 个ID均已被占用");
+    }
+
+    private static String nodeName() {
+        String process = ManagementFactory.getRuntimeMXBean().getName();
+        try {
+            return InetAddress.getLocalHost().getHostName() + "/" + process;
+        } catch (Exception e) {
+            return process;
+        }
+    }
+}
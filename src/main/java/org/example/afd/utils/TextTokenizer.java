@@ -0,0 +1,101 @@
+package org.example.afd.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 全文检索分词
+ *
+ * 中日韩文字不做词典分词，按相邻两字切分（二元组）；连续的字母、数字转小写后按相邻三字切分（三元组），
+ * 这样 "hell" 能命中 "hello"、"p40" 能命中 "P40Pro"、号码的一段能命中完整号码。
+ * 查询与索引使用相同切分，查询的所有词项都命中即近似子串匹配。
+ * 不足一个元组长度的片段（单独的一个中文字、一两个字母数字）整体输出，
+ * 这类词项只能命中原文中同样短的片段，不能用于子串检索（见 {@link #isShort}）。
+ * 其余字符（标点、空白、表情）作为分隔符。
+ */
+public final class TextTokenizer {
+
+    /**
+     * 字母、数字片段的切分长度
+     */
+    public static final int WORD_GRAM = 3;
+
+    private TextTokenizer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int cp = text.codePointAt(i);
+            if (isCjk(cp)) {
+                int start = i;
+                int count = 0;
+                int prevStart = -1;
+                while (i < length && isCjk(text.codePointAt(i))) {
+                    int next = i + Character.charCount(text.codePointAt(i));
+                    if (prevStart >= 0) {
+                        tokens.add(text.substring(prevStart, next));
+                    }
+                    prevStart = i;
+                    i = next;
+                    count++;
+                }
+                if (count == 1) {
+                    tokens.add(text.substring(start, i));
+                }
+            } else if (Character.isLetterOrDigit(cp)) {
+                StringBuilder word = new StringBuilder();
+                while (i < length) {
+                    int c = text.codePointAt(i);
+                    if (!Character.isLetterOrDigit(c) || isCjk(c)) {
+                        break;
+                    }
+                    word.appendCodePoint(Character.toLowerCase(c));
+                    i += Character.charCount(c);
+                }
+                addWordGrams(word.toString(), tokens);
+            } else {
+                i += Character.charCount(cp);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 词项是否短于所在文字的切分长度；查询中出现这样的词项时索引结果不完整，应回退到子串扫描
+     */
+    public static boolean isShort(String token) {
+        int count = token.codePointCount(0, token.length());
+        return isCjk(token.codePointAt(0)) ? count < 2 : count < WORD_GRAM;
+    }
+
+    private static void addWordGrams(String word, List<String> tokens) {
+        int count = word.codePointCount(0, word.length());
+        if (count <= WORD_GRAM) {
+            tokens.add(word);
+            return;
+        }
+        int start = 0;
+        for (int n = 0; n + WORD_GRAM <= count; n++) {
+            int end = word.offsetByCodePoints(start, WORD_GRAM);
+            tokens.add(word.substring(start, end));
+            start = word.offsetByCodePoints(start, 1);
+        }
+    }
+
+    /**
+     * 是否中日韩文字（汉字、假名、谚文）
+     */
+    public static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+            || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA
+            || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,169 @@
+package org.example.afd.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 分层时间轮
+ *
+ * 第 0 层每格 tickMs，第 n 层每格 tickMs * wheelSize^n。
+ * 任务按截止时间放入能容纳它的最低层；高层的格子在轮到时整体下放到低层，
+ * 第 0 层的格子轮到时其中任务全部到期。超出最高层范围的任务放在最高层最远的格子，
+ * 下放时重新计算位置。添加、取消均为 O(1)，推进一格的开销只与到期/下放的任务数有关。
+ *
+ * 由调用方定期调用 {@link #advance(long)} 驱动，方法均为同步方法，可多线程访问。
+ *
+ * @param <K> 任务键类型，同一个键只保留最后一次调度
+ */
+public class TimingWheel<K> {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final long[] levelTickMs;
+    private final Set<K>[][] buckets;
+    private final Map<K, Slot> slots = new HashMap<>();
+
+    /**
+     * 当前时间（对齐到 tickMs）
+     */
+    private long currentTime;
+
+    private static final class Slot {
+        final long deadline;
+        final int level;
+        final int index;
+
+        Slot(long deadline, int level, int index) {
+            this.deadline = deadline;
+            this.level = level;
+            this.index = index;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMs, int wheelSize, int levels, long startMs) {
+        if (tickMs <= 0 || wheelSize < 2 || levels < 1) {
+            throw new IllegalArgumentException("时间轮参数无效");
+        }
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.levelTickMs = new long[levels];
+        this.buckets = new Set[levels][wheelSize];
+        long levelTick = tickMs;
+        for (int level = 0; level < levels; level++) {
+            levelTickMs[level] = levelTick;
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[level][i] = new HashSet<>();
+            }
+            levelTick *= wheelSize;
+        }
+        this.currentTime = startMs - Math.floorMod(startMs, tickMs);
+    }
+
+    /**
+     * 调度任务，已存在的同键任务会被替换
+     *
+     * @return 截止时间已过时返回 false，任务不会入轮，由调用方立即处理
+     */
+    public synchronized boolean schedule(K key, long deadlineMs) {
+        cancel(key);
+        return place(key, deadlineMs);
+    }
+
+    /**
+     * 取消任务
+     */
+    public synchronized boolean cancel(K key) {
+        Slot slot = slots.remove(key);
+        if (slot == null) {
+            return false;
+        }
+        buckets[slot.level][slot.index].remove(key);
+        return true;
+    }
+
+    public synchronized boolean contains(K key) {
+        return slots.containsKey(key);
+    }
+
+    /**
+     * 任务截止时间，不存在返回 null
+     */
+    public synchronized Long deadlineOf(K key) {
+        Slot slot = slots.get(key);
+        return slot == null ? null : slot.deadline;
+    }
+
+    /**
+     * 轮中任务数
+     */
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * 推进到指定时间，返回期间到期的任务键
+     */
+    public synchronized List<K> advance(long nowMs) {
+        List<K> expired = new ArrayList<>();
+        while (currentTime + tickMs <= nowMs) {
+            currentTime += tickMs;
+            // 先由高到低下放轮到的高层格子，再处理第 0 层
+            for (int level = levelTickMs.length - 1; level >= 1; level--) {
+                if (currentTime % levelTickMs[level] == 0) {
+                    int index = (int) Math.floorMod(currentTime / levelTickMs[level], (long) wheelSize);
+                    replaceAll(buckets[level][index], expired);
+                }
+            }
+            int index = (int) Math.floorMod(currentTime / tickMs, (long) wheelSize);
+            replaceAll(buckets[0][index], expired);
+        }
+        return expired;
+    }
+
+    private void replaceAll(Set<K> bucket, List<K> expired) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<K> keys = new ArrayList<>(bucket);
+        bucket.clear();
+        for (K key : keys) {
+            Slot slot = slots.remove(key);
+            if (slot != null && !place(key, slot.deadline)) {
+                expired.add(key);
+            }
+        }
+    }
+
+    private boolean place(K key, long deadline) {
+        long currentSlot = currentTime / tickMs;
+        long slot0 = Math.floorDiv(deadline + tickMs - 1, tickMs);
+        if (slot0 <= currentSlot) {
+            return false;
+        }
+        int top = levelTickMs.length - 1;
+        int level = 0;
+        int index;
+        if (slot0 - currentSlot <= wheelSize || top == 0) {
+            // 单层时间轮超出范围的任务放在最远的格子，轮到时重新定位
+            index = (int) Math.floorMod(Math.min(slot0, currentSlot + wheelSize), (long) wheelSize);
+        } else {
+            level = 1;
+            while (level < top && Math.floorDiv(deadline, levelTickMs[level])
+                    - currentTime / levelTickMs[level] >= wheelSize) {
+                level++;
+            }
+            long currentLevelSlot = currentTime / levelTickMs[level];
+            // 超出最高层范围的任务暂存在最远的格子，下放时重新定位
+            long levelSlot = Math.min(Math.floorDiv(deadline, levelTickMs[level]), currentLevelSlot + wheelSize - 1);
+            index = (int) Math.floorMod(levelSlot, (long) wheelSize);
+        }
+        slots.put(key, new Slot(deadline, level, index));
+        buckets[level][index].add(key);
+        return true;
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.afd.utils;
+
+/**
+ * 令牌桶限流
+ *
+ * 桶容量决定允许的突发量，令牌按固定速率补充；按调用时的时间惰性补充，不需要定时任务。
+ * 线程安全。
+ */
+public final class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerMs;
+    private double tokens;
+    private long lastRefillMs;
+
+    /**
+     * @param capacity      桶容量（最大突发量）
+     * @param ratePerSecond 每秒补充的令牌数
+     */
+    public TokenBucket(int capacity, double ratePerSecond) {
+        this(capacity, ratePerSecond, System.currentTimeMillis());
+    }
+
+    public TokenBucket(int capacity, double ratePerSecond, long nowMs) {
+        if (capacity <= 0 || ratePerSecond <= 0) {
+            throw new IllegalArgumentException("capacity 与 ratePerSecond 必须大于 0");
+        }
+        this.capacity = capacity;
+        this.tokensPerMs = ratePerSecond / 1000.0;
+        this.tokens = capacity;
+        this.lastRefillMs = nowMs;
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(System.currentTimeMillis());
+    }
+
+    public synchronized boolean tryAcquire(long nowMs) {
+        if (nowMs > lastRefillMs) {
+            tokens = Math.min(capacity, tokens + (nowMs - lastRefillMs) * tokensPerMs);
+            lastRefillMs = nowMs;
+        }
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+}
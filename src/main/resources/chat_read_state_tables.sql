@@ -0,0 +1,27 @@
+-- 已读水位：每个用户在每个会话中已读到的最大消息ID，消息ID不大于水位的视为已读；
+-- 消息提交顺序可能与ID顺序不同，同时记录已读时的收件箱序号（见 chat_sync_tables.sql），
+-- 同步日志中序号更大的消息是已读之后才提交的，即使ID不大于水位也仍为未读
+CREATE TABLE IF NOT EXISTS afd.user_chat_read_state (
+    conversation_id BIGINT NOT NULL COMMENT '会话ID',
+    user_id INT NOT NULL COMMENT '用户ID',
+    last_read_message_id BIGINT NOT NULL DEFAULT 0 COMMENT '已读到的最大消息ID',
+    update_time DATETIME NOT NULL COMMENT '更新时间',
+    PRIMARY KEY (conversation_id, user_id)
+) COMMENT '用户聊天已读水位';
+
+-- 按水位统计未读数使用的索引
+ALTER TABLE afd.user_chat_message ADD INDEX idx_conversation_receiver (conversation_id, receiver_id, message_id);
+
+-- 由原有的已读状态初始化水位
+INSERT INTO afd.user_chat_read_state (conversation_id, user_id, last_read_message_id, update_time)
+SELECT conversation_id, receiver_id, MAX(message_id), NOW()
+FROM afd.user_chat_message
+WHERE message_status = 3
+GROUP BY conversation_id, receiver_id
+ON DUPLICATE KEY UPDATE last_read_message_id = GREATEST(last_read_message_id, VALUES(last_read_message_id));
+
+-- 已读时的收件箱序号，新建和已存在的表都通过这里添加；已有水位以当前序号为准
+ALTER TABLE afd.user_chat_read_state ADD COLUMN last_read_seq BIGINT NOT NULL DEFAULT 0 COMMENT '标记已读时的收件箱序号' AFTER last_read_message_id;
+UPDATE afd.user_chat_read_state r
+JOIN afd.user_chat_inbox i ON i.user_id = r.user_id
+SET r.last_read_seq = i.seq;
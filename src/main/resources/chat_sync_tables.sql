@@ -0,0 +1,18 @@
+-- 用户收件箱序号：每个用户一行，记录已分配的最大同步序号
+CREATE TABLE IF NOT EXISTS afd.user_chat_inbox (
+    user_id INT NOT NULL PRIMARY KEY COMMENT '用户ID',
+    seq BIGINT NOT NULL DEFAULT 0 COMMENT '已分配的最大同步序号',
+    update_time DATETIME NOT NULL COMMENT '更新时间'
+) COMMENT '用户聊天收件箱序号';
+
+-- 同步日志：影响用户聊天视图的每个事件按用户分配连续递增的序号
+CREATE TABLE IF NOT EXISTS afd.user_chat_sync_log (
+    user_id INT NOT NULL COMMENT '用户ID',
+    seq BIGINT NOT NULL COMMENT '用户内的同步序号，连续递增',
+    conversation_id BIGINT NOT NULL COMMENT '会话ID',
+    message_id BIGINT NULL COMMENT '相关消息ID',
+    event_type TINYINT NOT NULL COMMENT '事件类型：1-新消息，2-已读，3-撤回，4-删除会话',
+    create_time DATETIME NOT NULL COMMENT '事件时间',
+    PRIMARY KEY (user_id, seq),
+    KEY idx_create_time (create_time)
+) COMMENT '用户聊天同步日志';
@@ -0,0 +1,25 @@
+-- 游标分页使用的复合索引：列顺序为 等值过滤列 + 排序键 + 主键，
+-- 游标条件 (sort_key, id) < (?, ?) 与 ORDER BY sort_key DESC, id DESC 都在索引内完成，翻页深度不影响扫描行数
+
+-- 用户订单列表：WHERE user_id = ? ORDER BY create_time DESC, order_id DESC
+ALTER TABLE afd.orders ADD INDEX idx_user_create_time_id (user_id, create_time, order_id);
+
+-- 关注动态与作者动态：WHERE user_id IN (...) AND status = 1 ORDER BY create_time DESC, post_id DESC
+ALTER TABLE afd.post_content ADD INDEX idx_user_create_time_id (user_id, create_time, post_id);
+
+-- 推荐动态：WHERE status = 1 ORDER BY like_count DESC, create_time DESC, post_id DESC
+-- like_count 会变化，翻页期间排序不稳定，见 PostMapper.getRecommendPostsByCursor
+ALTER TABLE afd.post_content ADD INDEX idx_status_likes_create_time_id (status, like_count, create_time, post_id);
+
+-- 通知列表：WHERE receiver_id = ? ORDER BY create_time DESC, id DESC
+ALTER TABLE afd.notifications ADD INDEX idx_receiver_create_time_id (receiver_id, create_time, id);
+
+-- 一级评论：WHERE post_id = ? AND parent_id IS NULL AND status = 1 ORDER BY create_time DESC, comment_id DESC
+ALTER TABLE afd.post_comment ADD INDEX idx_post_create_time_id (post_id, create_time, comment_id);
+
+-- 登录记录：可选 user_id 过滤，ORDER BY login_time DESC, id DESC
+ALTER TABLE afd.user_login_history ADD INDEX idx_login_time_id (login_time, id);
+ALTER TABLE afd.user_login_history ADD INDEX idx_user_login_time_id (user_id, login_time, id);
+
+-- 聊天记录：两个方向各走一次 (sender_id, receiver_id) 等值 + message_id 范围，按 message_id 倒序
+ALTER TABLE afd.user_chat_message ADD INDEX idx_sender_receiver_message (sender_id, receiver_id, message_id);
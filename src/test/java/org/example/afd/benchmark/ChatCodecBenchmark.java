@@ -0,0 +1,114 @@
+package org.example.afd.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.example.afd.dto.ChatMessageDTO;
+import org.example.afd.handler.ChatBinaryCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket 消息编解码基准：JSON 文本帧 vs ChatBinaryCodec 二进制帧
+ *
+ * 每条消息的 CPU 耗时见 JMH 结果，帧字节数在运行前打印
+ *
+ * 运行：mvn test-compile 后执行
+ * java -cp target/test-classes:target/classes:$(依赖classpath) org.example.afd.benchmark.ChatCodecBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatCodecBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    /**
+     * chat：完整的聊天消息；ack：发送成功确认这类只有几个字段的系统消息
+     */
+    @Param({"chat", "ack"})
+    public String kind;
+
+    private ChatMessageDTO message;
+    private String json;
+    private byte[] binary;
+
+    @Setup
+    public void setup() throws Exception {
+        message = sample(kind);
+        json = MAPPER.writeValueAsString(message);
+        binary = ChatBinaryCodec.encode(message);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() throws Exception {
+        // TextMessage 发送时同样要转成 UTF-8 字节
+        return MAPPER.writeValueAsString(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return ChatBinaryCodec.encode(message);
+    }
+
+    @Benchmark
+    public ChatMessageDTO jsonDecode() throws Exception {
+        return MAPPER.readValue(json, ChatMessageDTO.class);
+    }
+
+    @Benchmark
+    public ChatMessageDTO binaryDecode() {
+        return ChatBinaryCodec.decode(ByteBuffer.wrap(binary));
+    }
+
+    static ChatMessageDTO sample(String kind) {
+        ChatMessageDTO message = new ChatMessageDTO();
+        message.setMessageId(1847563920184729601L);
+        message.setMessageType(5);
+        message.setCreateTime(LocalDateTime.of(2025, 3, 18, 21, 4, 37));
+        if ("ack".equals(kind)) {
+            message.setContent("消息发送成功");
+            return message;
+        }
+        message.setConversationId(10482L);
+        message.setSenderId(20931);
+        message.setSenderUsername("小林同学");
+        message.setSenderAvatar("https://afd-oss.oss-cn-hangzhou.aliyuncs.com/avatar/20931.jpg");
+        message.setReceiverId(18872);
+        message.setMessageType(1);
+        message.setContent("明天下午三点在图书馆门口见，记得带上上次借的那本书");
+        message.setMessageStatus(1);
+        message.setIsRecalled(0);
+        return message;
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (String kind : new String[]{"chat", "ack"}) {
+            ChatMessageDTO message = sample(kind);
+            System.out.printf("%s: JSON %d 字节, 二进制 %d 字节%n", kind,
+                MAPPER.writeValueAsString(message).getBytes(StandardCharsets.UTF_8).length,
+                ChatBinaryCodec.encode(message).length);
+        }
+        new Runner(new OptionsBuilder()
+            .include(ChatCodecBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -0,0 +1,179 @@
+package org.example.afd.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 深翻页开销：LIMIT offset,size vs 游标 (create_time, id) &lt; (?, ?)，分别取第 1 页和第 10000 页
+ *
+ * 需要一个可写的 MySQL 实例，连接参数通过系统属性传入，bench.jdbc.password 必须指定，
+ * 首次运行会在该库中建表 bench_cursor_page 并写入 PAGE_SIZE * 10000 + 行测试数据，不触碰业务表
+ *
+ * 运行：mvn test-compile 后执行
+ * java -Dbench.jdbc.url=... -Dbench.jdbc.user=... -Dbench.jdbc.password=...
+ * -cp target/test-classes:target/classes:$(依赖classpath) org.example.afd.benchmark.CursorPaginationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CursorPaginationBenchmark {
+
+    private static final int PAGE_SIZE = 10;
+
+    private static final int ROWS = PAGE_SIZE * 10000 + 1000;
+
+    private static final long BASE_TIME = 1_700_000_000_000L;
+
+    @Param({"1", "10000"})
+    private int page;
+
+    private Connection connection;
+
+    private PreparedStatement offsetQuery;
+
+    private PreparedStatement cursorQuery;
+
+    private PreparedStatement firstPageQuery;
+
+    // 第 page 页之前最后一行的位置，游标分页从这里继续
+    private Timestamp cursorTime;
+
+    private long cursorId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        String password = System.getProperty("bench.jdbc.password");
+        if (password == null) {
+            throw new IllegalStateException("请通过 -Dbench.jdbc.password 指定数据库密码");
+        }
+        connection = DriverManager.getConnection(
+                System.getProperty("bench.jdbc.url", "jdbc:mysql://localhost:3306/afd?characterEncoding=utf8&serverTimezone=Asia/Shanghai"),
+                System.getProperty("bench.jdbc.user", "root"),
+                password);
+        seed();
+
+        offsetQuery = connection.prepareStatement(
+                "SELECT id, create_time, content FROM bench_cursor_page ORDER BY create_time DESC, id DESC LIMIT ?, ?");
+        cursorQuery = connection.prepareStatement(
+                "SELECT id, create_time, content FROM bench_cursor_page WHERE (create_time, id) < (?, ?) " +
+                "ORDER BY create_time DESC, id DESC LIMIT ?");
+        firstPageQuery = connection.prepareStatement(
+                "SELECT id, create_time, content FROM bench_cursor_page ORDER BY create_time DESC, id DESC LIMIT ?");
+
+        // 游标由上一页的最后一行给出，这里预先定位好，不计入测量
+        if (page > 1) {
+            try (PreparedStatement locate = connection.prepareStatement(
+                    "SELECT id, create_time FROM bench_cursor_page ORDER BY create_time DESC, id DESC LIMIT ?, 1")) {
+                locate.setInt(1, (page - 1) * PAGE_SIZE - 1);
+                try (ResultSet rs = locate.executeQuery()) {
+                    rs.next();
+                    cursorId = rs.getLong(1);
+                    cursorTime = rs.getTimestamp(2);
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public long offset() throws SQLException {
+        offsetQuery.setInt(1, (page - 1) * PAGE_SIZE);
+        offsetQuery.setInt(2, PAGE_SIZE);
+        return drain(offsetQuery);
+    }
+
+    @Benchmark
+    public long cursor() throws SQLException {
+        if (cursorTime == null) {
+            firstPageQuery.setInt(1, PAGE_SIZE);
+            return drain(firstPageQuery);
+        }
+        cursorQuery.setTimestamp(1, cursorTime);
+        cursorQuery.setLong(2, cursorId);
+        cursorQuery.setInt(3, PAGE_SIZE);
+        return drain(cursorQuery);
+    }
+
+    private static long drain(PreparedStatement query) throws SQLException {
+        long sum = 0;
+        try (ResultSet rs = query.executeQuery()) {
+            while (rs.next()) {
+                sum += rs.getLong(1);
+                rs.getTimestamp(2);
+                rs.getString(3);
+            }
+        }
+        return sum;
+    }
+
+    private void seed() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS bench_cursor_page (" +
+                    "id BIGINT PRIMARY KEY, " +
+                    "create_time DATETIME(3) NOT NULL, " +
+                    "content VARCHAR(255) NOT NULL, " +
+                    "KEY idx_create_time_id (create_time, id))");
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM bench_cursor_page")) {
+                rs.next();
+                if (rs.getLong(1) >= ROWS) {
+                    return;
+                }
+            }
+            statement.execute("TRUNCATE TABLE bench_cursor_page");
+        }
+
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO bench_cursor_page (id, create_time, content) VALUES (?, ?, ?)")) {
+            for (int i = 1; i <= ROWS; i++) {
+                insert.setLong(1, i);
+                // 每秒若干行，保证 create_time 有重复，游标需要靠 id 区分
+                insert.setTimestamp(2, new Timestamp(BASE_TIME + i / 4 * 1000L));
+                insert.setString(3, "benchmark row " + i);
+                insert.addBatch();
+                if (i % 1000 == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(CursorPaginationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
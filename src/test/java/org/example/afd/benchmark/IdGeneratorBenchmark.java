@@ -0,0 +1,61 @@
+package org.example.afd.benchmark;
+
+import org.example.afd.utils.SnowflakeIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单号生成基准：雪花ID vs 原有的时间戳+随机数方案
+ *
+ * 运行：mvn test-compile 后执行
+ * java -cp target/test-classes:target/classes:$(依赖classpath) org.example.afd.benchmark.IdGeneratorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class IdGeneratorBenchmark {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+
+    @Benchmark
+    public String snowflakeOrderNo() {
+        return generator.nextNo("PROD");
+    }
+
+    @Benchmark
+    public String legacyOrderNo() {
+        return "PROD" + LocalDateTime.now().format(FORMATTER) + ((int) (Math.random() * 9000) + 1000);
+    }
+
+    @Benchmark
+    public String legacyPaymentNo() {
+        return "PAY" + System.currentTimeMillis() + String.format("%04d", new Random().nextInt(10000));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(IdGeneratorBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.afd.benchmark;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.example.afd.interceptor.JwtAuthInterceptor;
+import org.example.afd.pojo.User;
+import org.example.afd.utils.JwtUtils;
+import org.example.afd.utils.UserIdHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT认证拦截器每个请求的开销：缓存已验证的令牌 vs 每次验签 vs 原先一个请求解析五次
+ *
+ * 运行：mvn test-compile 后执行
+ * java -cp target/test-classes:target/classes:$(依赖classpath) org.example.afd.benchmark.JwtAuthBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtAuthBenchmark {
+
+    private static final String SECRET = "wohaiyoumeiyoushixiandemengxiang123456789012345678901234567890abcdefghijklmnopqrstuvwxyz";
+
+    /**
+     * 已验证令牌缓存的条目上限，0 表示每次请求都验签
+     */
+    @Param({"10000", "0"})
+    private int claimsCacheSize;
+
+    private JwtUtils jwtUtils;
+
+    private JwtAuthInterceptor interceptor;
+
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "secretKey", SECRET);
+        ReflectionTestUtils.setField(jwtUtils, "expiration", 43200L);
+        ReflectionTestUtils.setField(jwtUtils, "refreshExpiration", 604800L);
+        ReflectionTestUtils.setField(jwtUtils, "claimsCacheSize", claimsCacheSize);
+        jwtUtils.init();
+
+        interceptor = new JwtAuthInterceptor();
+        ReflectionTestUtils.setField(interceptor, "jwtUtils", jwtUtils);
+
+        User user = new User();
+        user.setUserId(10086);
+        user.setUsername("benchmark");
+        user.setRole("USER");
+        token = jwtUtils.generateToken(user);
+    }
+
+    @Benchmark
+    public boolean preHandle() throws Exception {
+        MockHttpServletRequest request = newRequest();
+        boolean passed = interceptor.preHandle(request, new MockHttpServletResponse(), null);
+        UserIdHolder.clear();
+        return passed;
+    }
+
+    /**
+     * 原先的流程：validateToken 解析两次（含 isTokenExpired），再分别取用户ID、用户名、角色，
+     * 每次解析都重新构造签名密钥和解析器
+     */
+    @Benchmark
+    public Object legacyParseFiveTimes() {
+        MockHttpServletRequest request = newRequest();
+        String token = request.getHeader("Authorization").substring(7);
+        boolean valid = parse(token) != null && !parse(token).getExpiration().before(new Date());
+        Integer userId = parse(token).get("userId", Integer.class);
+        String username = parse(token).getSubject();
+        String role = parse(token).get("role", String.class);
+        request.setAttribute("userId", userId);
+        request.setAttribute("username", username);
+        request.setAttribute("role", role);
+        return valid ? userId : null;
+    }
+
+    private MockHttpServletRequest newRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/users/info");
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+
+    private static Claims parse(String token) {
+        return Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(JwtAuthBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,140 @@
+package org.example.afd.cluster;
+
+import org.example.afd.dto.ChatMessageDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatClusterRouterTest {
+
+    private final LoopbackMessageBus bus = new LoopbackMessageBus();
+    private final LocalPresenceDirectory directory = new LocalPresenceDirectory(30_000);
+
+    private ChatClusterRouter router(String nodeId, long ackTimeoutMs) {
+        ChatClusterRouter router = new ChatClusterRouter();
+        ReflectionTestUtils.setField(router, "messageBus", bus);
+        ReflectionTestUtils.setField(router, "presenceDirectory", directory);
+        ReflectionTestUtils.setField(router, "nodeId", nodeId);
+        ReflectionTestUtils.setField(router, "ackTimeoutMs", ackTimeoutMs);
+        router.init();
+        return router;
+    }
+
+    private static ChatMessageDTO message(String content) {
+        ChatMessageDTO message = new ChatMessageDTO();
+        message.setSenderId(1);
+        message.setReceiverId(2);
+        message.setMessageType(1);
+        message.setContent(content);
+        message.setCreateTime(LocalDateTime.now().withNano(0));
+        return message;
+    }
+
+    @Test
+    void forwardsToNodeHoldingTheConnection() throws Exception {
+        ChatClusterRouter nodeA = router("a", 3000);
+        ChatClusterRouter nodeB = router("b", 3000);
+        List<ChatMessageDTO> receivedOnB = new CopyOnWriteArrayList<>();
+        nodeA.bindLocalDelivery((userId, message) -> false);
+        nodeB.bindLocalDelivery((userId, message) -> userId == 2 && receivedOnB.add(message));
+        nodeB.online(2);
+
+        ChatMessageDTO sent = message("hello");
+        assertTrue(nodeA.route(2, sent).get(5, TimeUnit.SECONDS));
+        assertEquals(1, receivedOnB.size());
+        assertEquals("hello", receivedOnB.get(0).getContent());
+        assertEquals(sent.getCreateTime(), receivedOnB.get(0).getCreateTime());
+        assertTrue(nodeA.isOnline(2));
+    }
+
+    @Test
+    void negativeAckDoesNotRemoveDirectoryEntry() throws Exception {
+        ChatClusterRouter nodeA = router("a", 3000);
+        ChatClusterRouter nodeB = router("b", 3000);
+        nodeA.bindLocalDelivery((userId, message) -> false);
+        nodeB.bindLocalDelivery((userId, message) -> false);
+        nodeB.online(2);
+
+        assertFalse(nodeA.route(2, message("hi")).get(5, TimeUnit.SECONDS));
+        assertEquals(Set.of("b"), directory.lookup(2));
+    }
+
+    @Test
+    void unansweredForwardTimesOutWithoutUnregistering() throws Exception {
+        ChatClusterRouter nodeA = router("a", 0);
+        nodeA.bindLocalDelivery((userId, message) -> false);
+        directory.register(2, "paused");
+
+        var future = nodeA.route(2, message("hi"));
+        nodeA.expireAcks();
+        assertFalse(future.get(5, TimeUnit.SECONDS));
+        assertEquals(Set.of("paused"), directory.lookup(2));
+    }
+
+    @Test
+    void leaseOfCrashedNodeExpiresAndLiveNodeRenews() throws Exception {
+        LocalPresenceDirectory shortLived = new LocalPresenceDirectory(50);
+        ChatClusterRouter live = router("live", 3000);
+        ReflectionTestUtils.setField(live, "presenceDirectory", shortLived);
+        live.online(2);
+        shortLived.register(2, "crashed");
+
+        Thread.sleep(30);
+        live.refreshPresence();
+        Thread.sleep(30);
+        assertEquals(Set.of("live"), shortLived.lookup(2));
+    }
+
+    @Test
+    void offlineOnlyRemovesOwnEntry() {
+        ChatClusterRouter nodeA = router("a", 3000);
+        ChatClusterRouter nodeB = router("b", 3000);
+        nodeA.online(2);
+        nodeB.online(2);
+        nodeA.offline(2);
+        assertEquals(Set.of("b"), directory.lookup(2));
+    }
+
+    @Test
+    void deliversToEveryNodeOfAMultiDeviceUser() throws Exception {
+        ChatClusterRouter nodeA = router("a", 3000);
+        ChatClusterRouter nodeB = router("b", 3000);
+        ChatClusterRouter nodeC = router("c", 3000);
+        List<String> deliveredOn = new CopyOnWriteArrayList<>();
+        nodeA.bindLocalDelivery((userId, message) -> deliveredOn.add("a"));
+        nodeB.bindLocalDelivery((userId, message) -> deliveredOn.add("b"));
+        nodeC.bindLocalDelivery((userId, message) -> false);
+        nodeA.online(2);
+        nodeB.online(2);
+
+        assertTrue(nodeC.route(2, message("hi")).get(5, TimeUnit.SECONDS));
+        assertEquals(Set.of("a", "b"), Set.copyOf(deliveredOn));
+    }
+
+    @Test
+    void heartbeatPresenceIsVisibleFromEveryNodeButNotRouted() throws Exception {
+        ChatClusterRouter nodeA = router("a", 3000);
+        ChatClusterRouter nodeB = router("b", 3000);
+        nodeA.online(2);
+        nodeB.heartbeat(3, 50);
+
+        assertEquals(Set.of(2, 3), nodeA.onlineAmong(List.of(2, 3, 4)));
+        assertTrue(directory.lookup(3).isEmpty());
+
+        Thread.sleep(80);
+        assertEquals(Set.of(2), nodeA.onlineAmong(List.of(2, 3)));
+
+        nodeB.heartbeat(3, 30_000);
+        nodeA.clearHeartbeat(3);
+        assertTrue(nodeB.onlineAmong(List.of(3)).isEmpty());
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.afd.handler;
+
+import org.example.afd.dto.ChatMessageDTO;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChatBinaryCodecTest {
+
+    @Test
+    void roundTripsAllFields() {
+        ChatMessageDTO message = new ChatMessageDTO();
+        message.setMessageId(Long.MAX_VALUE);
+        message.setConversationId(-3L);
+        message.setSenderId(Integer.MIN_VALUE);
+        message.setSenderUsername("张三 zhang");
+        message.setSenderAvatar("https://example.com/a.png");
+        message.setReceiverId(42);
+        message.setReceiverUsername("");
+        message.setReceiverAvatar("b");
+        message.setMessageType(1);
+        message.setContent("你好😀 \uD800 end");
+        message.setMediaUrl("m");
+        message.setThumbnailUrl("t");
+        message.setMessageStatus(3);
+        message.setIsRecalled(0);
+        message.setExtraData("{\"type\":\"sync\"}");
+        message.setCreateTime(LocalDateTime.of(2025, 1, 2, 3, 4, 5));
+        message.setReadTime(LocalDateTime.of(1969, 12, 31, 23, 59, 59));
+        message.setTimestamp(1735787045000L);
+
+        ChatMessageDTO decoded = ChatBinaryCodec.decode(ByteBuffer.wrap(ChatBinaryCodec.encode(message)));
+
+        // 孤立的代理字符按 '?' 编码，与 String.getBytes 的行为一致
+        message.setContent("你好😀 ? end");
+        assertEquals(message, decoded);
+    }
+
+    @Test
+    void omitsNullFields() {
+        ChatMessageDTO message = new ChatMessageDTO();
+        message.setMessageType(5);
+        message.setContent("消息发送成功");
+
+        byte[] frame = ChatBinaryCodec.encode(message);
+        ChatMessageDTO decoded = ChatBinaryCodec.decode(ByteBuffer.allocateDirect(frame.length).put(frame).flip());
+
+        assertEquals(5, decoded.getMessageType());
+        assertEquals("消息发送成功", decoded.getContent());
+        assertNull(decoded.getMessageId());
+        assertNull(decoded.getCreateTime());
+    }
+
+    @Test
+    void rejectsTruncatedFrame() {
+        ChatMessageDTO message = new ChatMessageDTO();
+        message.setContent("hello");
+        byte[] frame = ChatBinaryCodec.encode(message);
+        assertThrows(IllegalArgumentException.class,
+            () -> ChatBinaryCodec.decode(ByteBuffer.wrap(frame, 0, frame.length - 2)));
+    }
+}
@@ -0,0 +1,270 @@
+package org.example.afd.service;
+
+import org.example.afd.dto.StockLockItem;
+import org.example.afd.dto.StockLockResult;
+import org.example.afd.entity.StockOperationLog;
+import org.example.afd.mapper.ProductMapper;
+import org.example.afd.mapper.StockOperationLogMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StockReservationEngineTest {
+
+    /**
+     * SKU ID -> {stock, lock_stock}，按 applyStockDelta 的条件更新语义修改
+     */
+    private final Map<Long, int[]> skus = new ConcurrentHashMap<>();
+
+    private final List<StockOperationLog> logs = Collections.synchronizedList(new java.util.ArrayList<>());
+
+    // 置为非空时，写库在这里阻塞，模拟慢事务
+    private volatile CountDownLatch writeGate;
+
+    private volatile boolean writing;
+
+    private StockReservationEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        skus.put(1L, new int[]{10, 0});
+        skus.put(2L, new int[]{1, 0});
+        engine = newEngine(200);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writeGate != null) {
+            writeGate.countDown();
+        }
+        engine.stop();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void locksAndReleasesInMemoryAndInDatabase() {
+        StockLockResult result = engine.lock(List.of(item(1L, 3), item(2L, 1)), "o1");
+        assertTrue(result.isSuccess());
+        assertEquals(3, skus.get(1L)[1]);
+        assertEquals(1, skus.get(2L)[1]);
+
+        engine.release(List.of(lockLog(1L, 3), lockLog(2L, 1)), "o1");
+        assertEquals(0, skus.get(1L)[1]);
+        assertEquals(0, skus.get(2L)[1]);
+    }
+
+    @Test
+    void insufficientStockRollsBackItemsAlreadyLocked() {
+        StockLockResult result = engine.lock(List.of(item(1L, 3), item(2L, 2)), "o1");
+        assertFalse(result.isSuccess());
+        assertEquals(1, result.getFailedItems().size());
+        assertEquals(0, skus.get(1L)[1]);
+        assertEquals(0, skus.get(2L)[1]);
+    }
+
+    @Test
+    void callerRollbackCompensatesCommittedLock() {
+        TransactionSynchronizationManager.initSynchronization();
+        assertTrue(engine.lock(List.of(item(1L, 4)), "o1").isSuccess());
+        assertEquals(4, skus.get(1L)[1]);
+
+        completeCallerTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+        awaitTrue(() -> skus.get(1L)[1] == 0);
+        assertTrue(logs.stream().anyMatch(log -> log.getOperationType() == 4));
+    }
+
+    @Test
+    void callerRollbackRestoresReleasedLockWithoutNewLockRecord() {
+        assertTrue(engine.lock(List.of(item(1L, 2)), "o1").isSuccess());
+
+        TransactionSynchronizationManager.initSynchronization();
+        engine.release(List.of(lockLog(1L, 2)), "o1");
+        assertEquals(0, skus.get(1L)[1]);
+
+        completeCallerTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+        awaitTrue(() -> skus.get(1L)[1] == 2);
+        assertEquals(1, logs.stream().filter(log -> log.getOperationType() == 1).count());
+    }
+
+    @Test
+    void callerCommitKeepsLock() {
+        TransactionSynchronizationManager.initSynchronization();
+        assertTrue(engine.lock(List.of(item(1L, 4)), "o1").isSuccess());
+        completeCallerTransaction(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(4, skus.get(1L)[1]);
+    }
+
+    @Test
+    void timedOutLockIsUndoneWhenItCommitsLater() throws Exception {
+        engine.stop();
+        engine = newEngine(20);
+        writeGate = new CountDownLatch(1);
+
+        // 请求已被分片线程认领并卡在写库，超时后无法撤销
+        assertFalse(engine.lock(List.of(item(1L, 5)), "o1").isSuccess());
+        writeGate.countDown();
+
+        awaitTrue(() -> logs.stream().anyMatch(log -> log.getOperationType() == 4));
+        awaitTrue(() -> skus.get(1L)[1] == 0);
+    }
+
+    @Test
+    void queuedLockIsCancelledAfterTimeout() throws Exception {
+        engine.stop();
+        engine = newEngine(20);
+        writeGate = new CountDownLatch(1);
+
+        // 第一个请求卡在写库，第二个排在同一分片的队列里
+        Thread blocked = new Thread(() -> engine.lock(List.of(item(1L, 1)), "o1"));
+        blocked.start();
+        awaitTrue(() -> writing);
+        assertFalse(engine.lock(List.of(item(2L, 1)), "o2").isSuccess());
+
+        writeGate.countDown();
+        blocked.join(5000);
+        Thread.sleep(100);
+        assertEquals(0, skus.get(2L)[1]);
+        assertTrue(logs.stream().noneMatch(log -> log.getSkuId() == 2L));
+    }
+
+    private StockReservationEngine newEngine(long timeoutMs) {
+        StockReservationEngine engine = new StockReservationEngine();
+        ReflectionTestUtils.setField(engine, "productMapper", productMapper());
+        ReflectionTestUtils.setField(engine, "stockLogMapper", stockLogMapper());
+        ReflectionTestUtils.setField(engine, "transactionTemplate", new TransactionTemplate(new NoopTransactionManager()));
+        ReflectionTestUtils.setField(engine, "productDetailCache", new ProductDetailCache());
+        ReflectionTestUtils.setField(engine, "enabled", true);
+        ReflectionTestUtils.setField(engine, "shardCount", 1);
+        ReflectionTestUtils.setField(engine, "batchSize", 16);
+        ReflectionTestUtils.setField(engine, "queueCapacity", 100);
+        ReflectionTestUtils.setField(engine, "timeoutMs", timeoutMs);
+        ReflectionTestUtils.setField(engine, "recoverDays", 7);
+        ReflectionTestUtils.setField(engine, "stateTtlMs", 60_000L);
+        engine.start();
+        return engine;
+    }
+
+    private ProductMapper productMapper() {
+        return (ProductMapper) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ProductMapper.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "selectSkuById": {
+                        int[] row = skus.get((Long) args[0]);
+                        if (row == null) {
+                            return null;
+                        }
+                        Map<String, Object> sku = new HashMap<>();
+                        sku.put("stock", row[0]);
+                        sku.put("lock_stock", row[1]);
+                        return sku;
+                    }
+                    case "applyStockDelta": {
+                        CountDownLatch gate = writeGate;
+                        if (gate != null) {
+                            writing = true;
+                            gate.await(5, TimeUnit.SECONDS);
+                        }
+                        int[] row = skus.get((Long) args[0]);
+                        int stock = row[0] + (Integer) args[1];
+                        int lock = row[1] + (Integer) args[2];
+                        if (lock < 0 || stock - lock < 0) {
+                            return 0;
+                        }
+                        row[0] = stock;
+                        row[1] = lock;
+                        return 1;
+                    }
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    private StockOperationLogMapper stockLogMapper() {
+        return (StockOperationLogMapper) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{StockOperationLogMapper.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "batchInsertLogs":
+                        @SuppressWarnings("unchecked")
+                        List<StockOperationLog> inserted = (List<StockOperationLog>) args[0];
+                        logs.addAll(inserted);
+                        return inserted.size();
+                    case "selectOutstandingLockSummary":
+                        return List.of();
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    private static void completeCallerTransaction(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.afterCompletion(status);
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("条件未在期限内满足");
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private static StockLockItem item(Long skuId, int quantity) {
+        return StockLockItem.builder().skuId(skuId).quantity(quantity).build();
+    }
+
+    private static StockOperationLog lockLog(Long skuId, int quantity) {
+        return StockOperationLog.builder().skuId(skuId).quantity(quantity).operationType(1).build();
+    }
+
+    private static final class NoopTransactionManager implements PlatformTransactionManager {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
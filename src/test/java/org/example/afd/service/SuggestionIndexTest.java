@@ -0,0 +1,200 @@
+package org.example.afd.service;
+
+import org.example.afd.dto.SuggestionDTO;
+import org.example.afd.mapper.MerchantMapper;
+import org.example.afd.mapper.PostMapper;
+import org.example.afd.mapper.ProductMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SuggestionIndexTest {
+
+    /**
+     * 按 product_id 升序，模拟 selectProductsForSuggest 的分页读取
+     */
+    private final List<Map<String, Object>> products = new ArrayList<>();
+
+    private final Map<Long, Map<String, Object>> productRows = new HashMap<>();
+
+    private SuggestionIndex index;
+
+    @BeforeEach
+    void setUp() {
+        product(1, "手机", null, 50);
+        product(2, "手机壳", null, 80);
+        product(3, "手表", null, 90);
+        product(4, "手机支架", null, 10);
+        product(5, "iPhone 15 手机壳", null, 70);
+        product(6, "运动鞋", "运动,跑步鞋,运动鞋", 30);
+        product(7, "球鞋a", null, 5);
+        product(8, "球鞋b", null, 5);
+        product(9, "球鞋c", null, 5);
+        product(10, "球鞋d", null, 9);
+        index = newIndex();
+    }
+
+    @Test
+    void prefixMatchesOnlyKeysInsideTheRange() {
+        assertEquals(List.of(2L, 5L, 1L, 4L), ids("手机", 10));
+        // 相邻的键 "手表" 与 "手机" 共享 "手"，只有查 "手" 时才出现
+        assertEquals(List.of(3L, 2L, 5L, 1L, 4L), ids("手", 10));
+        assertEquals(List.of(3L), ids("手表", 10));
+        assertEquals(List.of(2L, 5L), ids("手机壳", 10));
+    }
+
+    @Test
+    void prefixLongerThanAnyKeyOrOutsideTheIndexFindsNothing() {
+        assertEquals(List.of(), ids("手机壳子", 10));
+        assertEquals(List.of(), ids("zzz", 10));
+        assertEquals(List.of(), ids("\uffff", 10));
+        assertEquals(List.of(), ids("", 10));
+        assertEquals(List.of(), ids("   ", 10));
+    }
+
+    @Test
+    void topKPicksHighestWeightsAndBreaksTiesByKeyOrder() {
+        assertEquals(List.of(10L), ids("球鞋", 1));
+        // 权重相同的条目按键的字典序取
+        assertEquals(List.of(10L, 7L, 8L), ids("球鞋", 3));
+        assertEquals(List.of(10L, 7L, 8L, 9L), ids("球鞋", 10));
+    }
+
+    @Test
+    void entryMatchedByManyKeysIsReturnedOnce() {
+        // 名称、关键词 "运动"、"运动鞋" 和首字母都命中同一个商品
+        assertEquals(List.of(6L), ids("运动", 10));
+        assertEquals(List.of(6L), ids("ydx", 10));
+        assertEquals(List.of(6L), ids("pbx", 10));
+    }
+
+    @Test
+    void limitIsCappedAndDefaulted() {
+        for (int i = 0; i < 30; i++) {
+            product(100 + i, "积木" + i, null, i);
+        }
+        index = newIndex();
+        assertEquals(20, ids("积木", 100).size());
+        assertEquals(10, index.suggest("积木", SuggestionIndex.TYPE_PRODUCT, null)
+            .get(SuggestionIndex.TYPE_PRODUCT).size());
+        assertEquals(129L, ids("积木", 1).get(0));
+    }
+
+    @Test
+    void mixedChineseAndAsciiInputMatchesEveryDerivedKey() {
+        // 完整名称、空格之后的部分及它们的拼音首字母
+        assertEquals(List.of(5L), ids("iphone 15 手", 10));
+        assertEquals(List.of(5L), ids("  IPhone   15 ", 10));
+        assertEquals(List.of(5L), ids("15 手机", 10));
+        assertEquals(List.of(5L), ids("iphone15s", 10));
+        assertEquals(List.of(5L), ids("15sj", 10));
+        assertEquals(List.of(2L, 5L), ids("sjk", 10));
+        assertEquals(List.of(2L, 5L, 1L, 4L), ids("sj", 10));
+    }
+
+    @Test
+    void incrementalUpdatesMergeWithTheMainIndex() {
+        productRows.put(4L, row(4, "手机支架", null, 100));
+        productRows.put(2L, row(2, "手机壳", null, 0));
+        productRows.get(2L).put("status", 0);
+        index.productChangedAfterCommit(4L);
+        index.productChangedAfterCommit(2L);
+        productRows.put(11L, row(11, "手机膜", null, 60));
+        index.productChangedAfterCommit(11L);
+
+        assertEquals(List.of(4L, 5L, 11L, 1L), ids("手机", 10));
+        assertEquals(List.of(4L, 5L), ids("手机", 2));
+        assertEquals(List.of(11L), ids("sjm", 10));
+    }
+
+    @Test
+    void otherTypesAreReturnedAsEmptyGroups() {
+        Map<String, List<SuggestionDTO>> result = index.suggest("手机", null, 10);
+        assertEquals(List.of(SuggestionIndex.TYPE_PRODUCT, SuggestionIndex.TYPE_TAG, SuggestionIndex.TYPE_MERCHANT),
+            new ArrayList<>(result.keySet()));
+        assertTrue(result.get(SuggestionIndex.TYPE_TAG).isEmpty());
+        assertEquals("手机壳", result.get(SuggestionIndex.TYPE_PRODUCT).get(0).getText());
+    }
+
+    private List<Long> ids(String keyword, int limit) {
+        return index.suggest(keyword, SuggestionIndex.TYPE_PRODUCT, limit).get(SuggestionIndex.TYPE_PRODUCT)
+            .stream().map(SuggestionDTO::getId).collect(Collectors.toList());
+    }
+
+    private void product(long id, String name, String keywords, long sales) {
+        products.add(row(id, name, keywords, sales));
+    }
+
+    private static Map<String, Object> row(long id, String name, String keywords, long sales) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("product_id", id);
+        row.put("product_name", name);
+        row.put("keywords", keywords);
+        row.put("sales", sales);
+        row.put("status", 1);
+        row.put("is_deleted", 0);
+        return row;
+    }
+
+    private SuggestionIndex newIndex() {
+        SuggestionIndex index = new SuggestionIndex();
+        ReflectionTestUtils.setField(index, "productMapper", productMapper());
+        ReflectionTestUtils.setField(index, "postMapper", emptyMapper(PostMapper.class));
+        ReflectionTestUtils.setField(index, "merchantMapper", emptyMapper(MerchantMapper.class));
+        ReflectionTestUtils.setField(index, "enabled", true);
+        ReflectionTestUtils.setField(index, "maxKeyLength", 32);
+        ReflectionTestUtils.setField(index, "maxLimit", 20);
+        // 小批量，覆盖分页读取
+        ReflectionTestUtils.setField(index, "rebuildBatchSize", 4);
+        index.init();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!index.isReady()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("索引未在期限内建好");
+            }
+            Thread.onSpinWait();
+        }
+        return index;
+    }
+
+    private ProductMapper productMapper() {
+        return (ProductMapper) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ProductMapper.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "selectProductsForSuggest": {
+                        long afterId = (Long) args[0];
+                        int limit = (Integer) args[1];
+                        return products.stream()
+                            .filter(row -> (Long) row.get("product_id") > afterId)
+                            .limit(limit)
+                            .collect(Collectors.toList());
+                    }
+                    case "selectProductForIndex":
+                        return productRows.get((Long) args[0]);
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T emptyMapper(Class<T> type) {
+        return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+            (proxy, method, args) -> {
+                if (method.getName().endsWith("ForSuggest")) {
+                    return List.of();
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+}
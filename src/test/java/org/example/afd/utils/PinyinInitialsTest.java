@@ -0,0 +1,87 @@
+package org.example.afd.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PinyinInitialsTest {
+
+    private static final Charset GB2312 = Charset.forName("GB2312");
+
+    /**
+     * 与 PinyinInitials 中的区间一一对应，最后一个为一级汉字的结束位置
+     */
+    private static final int[] BOUNDARIES = {
+        1601, 1637, 1833, 2078, 2274, 2302, 2433, 2594, 2787, 3106, 3212, 3472,
+        3635, 3722, 3730, 3858, 4027, 4086, 4390, 4558, 4684, 4925, 5249, 5590
+    };
+
+    private static final String LETTERS = "abcdefghjklmnopqrstwxyz";
+
+    @Test
+    void commonCharactersMapToTheirInitials() {
+        assertEquals('y', PinyinInitials.initial('运'));
+        assertEquals('d', PinyinInitials.initial('动'));
+        assertEquals('x', PinyinInitials.initial('鞋'));
+        assertEquals("ydx", PinyinInitials.of("运动鞋"));
+    }
+
+    @Test
+    void eachLetterStartsExactlyAtItsBoundary() {
+        for (int i = 0; i < LETTERS.length(); i++) {
+            char letter = LETTERS.charAt(i);
+            assertEquals(letter, PinyinInitials.initial(charAt(BOUNDARIES[i])), "区位码 " + BOUNDARIES[i]);
+            // 区间最后一个字仍属于当前字母，下一个区间从下一个字母开始
+            int last = lastCodeBefore(BOUNDARIES[i + 1]);
+            assertEquals(letter, PinyinInitials.initial(charAt(last)), "区位码 " + last);
+        }
+        assertEquals('a', PinyinInitials.initial('啊'));
+        assertEquals('z', PinyinInitials.initial('座'));
+    }
+
+    @Test
+    void charactersOutsideTheFirstLevelHaveNoInitial() {
+        // 二级汉字按部首排序，第一个字位于 56 区 1 位
+        assertEquals(0, PinyinInitials.initial(charAt(5601)));
+        assertEquals(0, PinyinInitials.initial('a'));
+        assertEquals(0, PinyinInitials.initial('，'));
+        assertEquals(0, PinyinInitials.initial('䷿'));
+    }
+
+    @Test
+    void mixedTextKeepsLettersAndDigitsAndDropsPunctuation() {
+        assertEquals("iphone15sjk", PinyinInitials.of("iPhone 15 手机壳"));
+        assertEquals("sjk2024", PinyinInitials.of("手机壳，2024!"));
+        // 没有首字母的汉字原样保留
+        char secondLevel = charAt(5601);
+        assertEquals("y" + secondLevel, PinyinInitials.of("运" + secondLevel));
+    }
+
+    @Test
+    void textWithoutConvertibleCharactersReturnsNull() {
+        assertNull(PinyinInitials.of(null));
+        assertNull(PinyinInitials.of(""));
+        assertNull(PinyinInitials.of("iPhone 15"));
+        assertNull(PinyinInitials.of("，。！"));
+        assertNull(PinyinInitials.of(String.valueOf(charAt(5601))));
+    }
+
+    private static char charAt(int code) {
+        byte[] bytes = {(byte) (code / 100 + 160), (byte) (code % 100 + 160)};
+        return new String(bytes, GB2312).charAt(0);
+    }
+
+    /**
+     * 区位码 code 之前的最后一个字，跨区时退到上一区的第 94 位之前的最后一个有效字
+     */
+    private static int lastCodeBefore(int code) {
+        int previous = code % 100 == 1 ? (code / 100 - 1) * 100 + 94 : code - 1;
+        while (charAt(previous) == '\ufffd') {
+            previous--;
+        }
+        return previous;
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.afd.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    void idsAreUniqueAcrossThreads() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+        int threads = 16;
+        int perThread = 50_000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    ids.add(generator.nextId());
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+        assertEquals(threads * perThread, ids.size());
+    }
+
+    @Test
+    void idsIncreaseWithinThread() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7);
+        long previous = generator.nextId();
+        for (int i = 0; i < 100_000; i++) {
+            long next = generator.nextId();
+            assertTrue(next > previous);
+            previous = next;
+        }
+    }
+
+    @Test
+    void numbersKeepBusinessPrefix() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3);
+        assertTrue(generator.nextNo("PROD").startsWith("PROD"));
+        assertTrue(generator.nextNo("PAY").matches("PAY\\d+"));
+    }
+
+    @Test
+    void missingWorkerIdWithoutRedisFailsFast() {
+        ObjectProvider<RedisConnectionFactory> noRedis = new ObjectProvider<>() {
+            @Override
+            public RedisConnectionFactory getObject(Object... args) {
+                return null;
+            }
+
+            @Override
+            public RedisConnectionFactory getIfAvailable() {
+                return null;
+            }
+
+            @Override
+            public RedisConnectionFactory getIfUnique() {
+                return null;
+            }
+
+            @Override
+            public RedisConnectionFactory getObject() {
+                return null;
+            }
+        };
+        assertThrows(IllegalStateException.class, () -> new SnowflakeIdGenerator(-1, 60_000, noRedis));
+        assertEquals(5, new SnowflakeIdGenerator(5, 60_000, noRedis).getWorkerId());
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(-1));
+    }
+}
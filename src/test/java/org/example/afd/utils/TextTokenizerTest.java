@@ -0,0 +1,37 @@
+package org.example.afd.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextTokenizerTest {
+
+    @Test
+    void splitsCjkIntoBigramsAndWordsIntoTrigrams() {
+        assertEquals(List.of("华为", "p40", "40p", "0pr", "pro"), TextTokenizer.tokenize("华为P40Pro"));
+        assertEquals(List.of("ok", "好"), TextTokenizer.tokenize("OK, 好!"));
+    }
+
+    @Test
+    void partialWordQueryTermsAreContainedInTheIndexedTerms() {
+        List<String> indexed = TextTokenizer.tokenize("hello 13800138000 iPhone15");
+        // 原先只索引整词，这些子串查询都查不到
+        for (String keyword : new String[]{"hell", "ello", "0013800", "iphone", "phone15"}) {
+            List<String> terms = TextTokenizer.tokenize(keyword);
+            assertFalse(terms.stream().anyMatch(TextTokenizer::isShort), keyword);
+            assertTrue(indexed.containsAll(terms), keyword);
+        }
+    }
+
+    @Test
+    void shortTermsCannotBeAnsweredFromTheIndex() {
+        assertTrue(TextTokenizer.isShort("好"));
+        assertTrue(TextTokenizer.isShort("5g"));
+        assertFalse(TextTokenizer.isShort("你好"));
+        assertFalse(TextTokenizer.isShort("p40"));
+    }
+}